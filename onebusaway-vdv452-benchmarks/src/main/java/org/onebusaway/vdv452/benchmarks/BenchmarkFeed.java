@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.onebusaway.csv_entities.EntityHandler;
+import org.onebusaway.vdv452.Vdv452Reader;
+
+/**
+ * Locates the feed the benchmarks run against. This defaults to the SASA feed
+ * of the onebusaway-vdv452 test resources, relative to the benchmarks module,
+ * and can be overridden with the "vdv452.feed" system property (pass it to
+ * forked runs with -jvmArgsAppend -Dvdv452.feed=...).
+ */
+final class BenchmarkFeed {
+
+  public static final String FEED_PROPERTY = "vdv452.feed";
+
+  private static final String DEFAULT_FEED = "../onebusaway-vdv452/src/test/resources/vdv452_sasa.zip";
+
+  private BenchmarkFeed() {
+
+  }
+
+  public static File getPath() {
+    File path = new File(System.getProperty(FEED_PROPERTY, DEFAULT_FEED));
+    if (!path.exists()) {
+      throw new IllegalStateException("benchmark feed not found: " + path
+          + " (set -D" + FEED_PROPERTY + ")");
+    }
+    return path;
+  }
+
+  public static Vdv452Reader read() throws IOException {
+    Vdv452Reader reader = new Vdv452Reader();
+    reader.setInputLocation(getPath());
+    try {
+      reader.run();
+    } finally {
+      reader.getInputSource().close();
+    }
+    return reader;
+  }
+
+  /**
+   * @return every entity of the feed, in the order in which the reader hands
+   *         them to its handlers
+   */
+  public static List<Object> readEntities() throws IOException {
+    final List<Object> entities = new ArrayList<Object>();
+    Vdv452Reader reader = new Vdv452Reader();
+    reader.setInputLocation(getPath());
+    reader.addEntityHandler(new EntityHandler() {
+      @Override
+      public void handleEntity(Object bean) {
+        entities.add(bean);
+      }
+    });
+    try {
+      reader.run();
+    } finally {
+      reader.getInputSource().close();
+    }
+    return entities;
+  }
+
+  /**
+   * @return the raw bytes of the specified table, which must be part of a
+   *         zipped feed
+   */
+  public static byte[] readTable(String filename) throws IOException {
+    ZipFile zip = new ZipFile(getPath());
+    try {
+      ZipEntry entry = zip.getEntry(filename);
+      if (entry == null) {
+        throw new IllegalStateException("table not found: " + filename);
+      }
+      InputStream in = zip.getInputStream(entry);
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+          out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+      } finally {
+        in.close();
+      }
+    } finally {
+      zip.close();
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.onebusaway.csv_entities.CsvEntityContextImpl;
+import org.onebusaway.csv_entities.schema.BeanWrapper;
+import org.onebusaway.csv_entities.schema.BeanWrapperFactory;
+import org.onebusaway.csv_entities.schema.FieldMapping;
+import org.onebusaway.vdv452.Vdv452Reader;
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.Journey;
+import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.LineId;
+import org.onebusaway.vdv452.model.Period;
+import org.onebusaway.vdv452.model.ServiceDate;
+import org.onebusaway.vdv452.model.Stop;
+import org.onebusaway.vdv452.model.StopId;
+import org.onebusaway.vdv452.model.VersionedId;
+import org.onebusaway.vdv452.serialization.DegressMinutesSecondsFieldMappingFactory;
+import org.onebusaway.vdv452.serialization.EntityFieldMappingFactory;
+import org.onebusaway.vdv452.serialization.LineIdFieldMappingFactory;
+import org.onebusaway.vdv452.serialization.ServiceDateFieldMappingFactory;
+import org.onebusaway.vdv452.serialization.StopIdFieldMappingFactory;
+import org.onebusaway.vdv452.serialization.VersionedIdFieldMappingFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Maps a single value of a row onto an entity through the
+ * {@link FieldMapping} of each of our custom field mapping factories, as the
+ * reflective csv-entities path does for every field of every row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FieldMappingBenchmark {
+
+  private CsvEntityContextImpl _context;
+
+  private Map<String, Object> _values;
+
+  private FieldMapping _versionedId;
+
+  private FieldMapping _stopId;
+
+  private FieldMapping _lineId;
+
+  private FieldMapping _serviceDate;
+
+  private FieldMapping _degreesMinutesSeconds;
+
+  private FieldMapping _entity;
+
+  private BeanWrapper _journey;
+
+  private BeanWrapper _stop;
+
+  private BeanWrapper _line;
+
+  private BeanWrapper _period;
+
+  @Setup
+  public void setup() throws IOException {
+    Vdv452Reader reader = BenchmarkFeed.read();
+    _context = new CsvEntityContextImpl();
+    _context.put(Vdv452Reader.DAO_CONTEXT_KEY, reader.getDao());
+
+    // Any day type of the feed will do, as long as the reference resolves
+    DayType dayType = reader.getDao().getAllDayTypes().iterator().next();
+    _values = new HashMap<String, Object>();
+    _values.put(VersionedId.BASIS_VERSION_FIELD,
+        Long.toString(dayType.getId().getVersion()));
+    _values.put("TAGESART_NR", Long.toString(dayType.getId().getId()));
+    _values.put("FRT_FID", "1001345");
+    _values.put("ORT_NR", "5026");
+    _values.put(StopIdFieldMappingFactory.STOP_TYPE_FIELD, "1");
+    _values.put("LI_NR", "201");
+    _values.put("STR_LI_VAR", "1");
+    _values.put("BETRIEBSTAG", "20150329");
+    _values.put("ORT_POS_BREITE", "462938282");
+
+    _versionedId = new VersionedIdFieldMappingFactory().createFieldMapping(
+        null, Journey.class, "FRT_FID", "id", VersionedId.class, true);
+    _stopId = new StopIdFieldMappingFactory().createFieldMapping(null,
+        Stop.class, "ORT_NR", "id", StopId.class, true);
+    _lineId = new LineIdFieldMappingFactory().createFieldMapping(null,
+        Line.class, "LI_NR", "id", LineId.class, true);
+    _serviceDate = new ServiceDateFieldMappingFactory().createFieldMapping(
+        null, Period.class, "BETRIEBSTAG", "date", ServiceDate.class, true);
+    _degreesMinutesSeconds = new DegressMinutesSecondsFieldMappingFactory().createFieldMapping(
+        null, Stop.class, "ORT_POS_BREITE", "lat", Double.TYPE, true);
+    _entity = new EntityFieldMappingFactory().createFieldMapping(null,
+        Journey.class, "TAGESART_NR", "dayType", DayType.class, true);
+
+    _journey = BeanWrapperFactory.wrap(new Journey());
+    _stop = BeanWrapperFactory.wrap(new Stop());
+    _line = BeanWrapperFactory.wrap(new Line());
+    _period = BeanWrapperFactory.wrap(new Period());
+  }
+
+  @Benchmark
+  public Object versionedId() {
+    _versionedId.translateFromCSVToObject(_context, _values, _journey);
+    return _journey.getWrappedInstance(Object.class);
+  }
+
+  @Benchmark
+  public Object stopId() {
+    _stopId.translateFromCSVToObject(_context, _values, _stop);
+    return _stop.getWrappedInstance(Object.class);
+  }
+
+  @Benchmark
+  public Object lineId() {
+    _lineId.translateFromCSVToObject(_context, _values, _line);
+    return _line.getWrappedInstance(Object.class);
+  }
+
+  @Benchmark
+  public Object serviceDate() {
+    _serviceDate.translateFromCSVToObject(_context, _values, _period);
+    return _period.getWrappedInstance(Object.class);
+  }
+
+  @Benchmark
+  public Object degreesMinutesSeconds() {
+    _degreesMinutesSeconds.translateFromCSVToObject(_context, _values, _stop);
+    return _stop.getWrappedInstance(Object.class);
+  }
+
+  @Benchmark
+  public Object entity() {
+    _entity.translateFromCSVToObject(_context, _values, _journey);
+    return _journey.getWrappedInstance(Object.class);
+  }
+}
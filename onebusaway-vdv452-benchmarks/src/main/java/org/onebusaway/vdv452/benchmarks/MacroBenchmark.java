@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.onebusaway.vdv452.Vdv452ToGtfsConverter;
+
+/**
+ * Converts synthetic feeds of increasing scale end to end, each in a fresh JVM,
+ * and records the wall time, GC time and peak memory of every conversion. Feeds
+ * are generated by {@link SyntheticFeedGenerator} on first use and kept in the
+ * work directory, and the results are appended to results.csv there.
+ * 
+ * <pre>
+ * MacroBenchmark [-seed N] [-runs N] [-jvmArgs "-Xmx4G ..."] [-streaming] [-threads N] [-frequencies] work_dir 1,10,100
+ * </pre>
+ */
+public class MacroBenchmark {
+
+  private static final String ARG_SEED = "seed";
+
+  private static final String ARG_RUNS = "runs";
+
+  private static final String ARG_JVM_ARGS = "jvmArgs";
+
+  private static final String ARG_STREAMING = "streaming";
+
+  private static final String ARG_THREADS = "threads";
+
+  private static final String ARG_FREQUENCIES = "frequencies";
+
+  private static final String RESULT_PREFIX = "RESULT ";
+
+  private static final String RESULTS_HEADER = "scale,run,feed_bytes,wall_ms,gc_ms,gc_count,peak_rss_kb,peak_heap_kb";
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.addOption(ARG_SEED, true, ARG_SEED);
+    options.addOption(ARG_RUNS, true, ARG_RUNS);
+    options.addOption(ARG_JVM_ARGS, true, ARG_JVM_ARGS);
+    options.addOption(ARG_STREAMING, false, ARG_STREAMING);
+    options.addOption(ARG_THREADS, true, ARG_THREADS);
+    options.addOption(ARG_FREQUENCIES, false, ARG_FREQUENCIES);
+    CommandLineParser parser = new PosixParser();
+    CommandLine cli;
+    try {
+      cli = parser.parse(options, args);
+    } catch (ParseException ex) {
+      System.err.println(ex.getMessage());
+      printUsage();
+      return;
+    }
+    if (cli.getArgs().length != 2) {
+      printUsage();
+      return;
+    }
+    new MacroBenchmark().run(cli);
+  }
+
+  public void run(CommandLine cli) throws IOException, InterruptedException {
+    File workDir = new File(cli.getArgs()[0]);
+    if (!workDir.isDirectory() && !workDir.mkdirs()) {
+      throw new IOException("could not create directory " + workDir);
+    }
+    long seed = Long.parseLong(cli.getOptionValue(ARG_SEED, "1"));
+    int runs = Integer.parseInt(cli.getOptionValue(ARG_RUNS, "3"));
+
+    List<String> converterArgs = new ArrayList<String>();
+    if (cli.hasOption(ARG_STREAMING)) {
+      converterArgs.add("-" + ARG_STREAMING);
+    }
+    if (cli.hasOption(ARG_FREQUENCIES)) {
+      converterArgs.add("-" + ARG_FREQUENCIES);
+    }
+    if (cli.hasOption(ARG_THREADS)) {
+      converterArgs.add("-" + ARG_THREADS);
+      converterArgs.add(cli.getOptionValue(ARG_THREADS));
+    }
+    List<String> jvmArgs = new ArrayList<String>();
+    if (cli.hasOption(ARG_JVM_ARGS)) {
+      jvmArgs.addAll(Arrays.asList(cli.getOptionValue(ARG_JVM_ARGS).trim().split("\\s+")));
+    }
+
+    File results = new File(workDir, "results.csv");
+    boolean newResults = !results.exists();
+    PrintWriter out = new PrintWriter(new FileWriter(results, true));
+    try {
+      if (newResults) {
+        out.println(RESULTS_HEADER);
+      }
+      System.out.println(RESULTS_HEADER);
+      for (String scaleValue : cli.getArgs()[1].split(",")) {
+        int scale = Integer.parseInt(scaleValue.trim());
+        File feed = new File(workDir, "vdv452-" + scale + "x-" + seed + ".zip");
+        if (!feed.exists()) {
+          System.out.println("generating " + feed);
+          new SyntheticFeedGenerator(scale, seed).generate(feed);
+        }
+        File gtfs = new File(workDir, "gtfs-" + scale + "x");
+        for (int run = 1; run <= runs; ++run) {
+          String result = runConversion(feed, gtfs, jvmArgs, converterArgs);
+          String row = scale + "," + run + "," + feed.length() + ","
+              + result.replace(' ', ',');
+          System.out.println(row);
+          out.println(row);
+          out.flush();
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * The entry point of the forked JVM: converts a single feed and prints the
+   * measurements as a single {@link #RESULT_PREFIX} line.
+   */
+  public static class Conversion {
+
+    public static void main(String[] args) throws IOException {
+      Vdv452ToGtfsConverter converter = new Vdv452ToGtfsConverter();
+      converter.setInputPath(new File(args[0]));
+      converter.setOutputPath(new File(args[1]));
+      for (int i = 2; i < args.length; ++i) {
+        String arg = args[i];
+        if (arg.equals("-" + ARG_STREAMING)) {
+          converter.setStreaming(true);
+        } else if (arg.equals("-" + ARG_FREQUENCIES)) {
+          converter.setDetectHeadways(true);
+        } else if (arg.equals("-" + ARG_THREADS)) {
+          converter.setThreads(Integer.parseInt(args[++i]));
+        } else {
+          throw new IllegalArgumentException("unknown argument: " + arg);
+        }
+      }
+
+      long start = System.nanoTime();
+      converter.run();
+      long wallTime = (System.nanoTime() - start) / 1000000;
+
+      long gcTime = 0;
+      long gcCount = 0;
+      for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+        gcTime += Math.max(bean.getCollectionTime(), 0);
+        gcCount += Math.max(bean.getCollectionCount(), 0);
+      }
+      long peakHeap = 0;
+      for (MemoryPoolMXBean bean : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (bean.getType() == MemoryType.HEAP) {
+          peakHeap += bean.getPeakUsage().getUsed();
+        }
+      }
+      System.out.println(RESULT_PREFIX + wallTime + " " + gcTime + " "
+          + gcCount + " " + getPeakResidentSetSize() + " " + peakHeap / 1024);
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private String runConversion(File feed, File gtfs, List<String> jvmArgs,
+      List<String> converterArgs) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<String>();
+    command.add(new File(new File(System.getProperty("java.home"), "bin"),
+        "java").getPath());
+    command.addAll(jvmArgs);
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(Conversion.class.getName());
+    command.add(feed.getPath());
+    command.add(gtfs.getPath());
+    command.addAll(converterArgs);
+
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+    Process process = builder.start();
+    String result = null;
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        process.getInputStream(), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(RESULT_PREFIX)) {
+          result = line.substring(RESULT_PREFIX.length());
+        } else {
+          System.out.println(line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    int exitCode = process.waitFor();
+    if (exitCode != 0 || result == null) {
+      throw new IllegalStateException("conversion of " + feed
+          + " failed with exit code " + exitCode);
+    }
+    return result;
+  }
+
+  /**
+   * @return the peak resident set size of this process in kB, as reported by
+   *         Linux, or -1 where that isn't available
+   */
+  private static long getPeakResidentSetSize() {
+    File status = new File("/proc/self/status");
+    if (!status.exists()) {
+      return -1;
+    }
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(status), StandardCharsets.US_ASCII));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.startsWith("VmHWM:")) {
+            return Long.parseLong(line.substring(6).replace("kB", "").trim());
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException ex) {
+      // Fall through
+    }
+    return -1;
+  }
+
+  private static void printUsage() {
+    System.err.println("usage: MacroBenchmark [-seed N] [-runs N] [-jvmArgs \"...\"] [-streaming] [-threads N] [-frequencies] work_dir scale[,scale...]");
+  }
+}
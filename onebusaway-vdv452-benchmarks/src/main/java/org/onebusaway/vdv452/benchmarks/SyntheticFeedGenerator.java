@@ -0,0 +1,613 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a synthetic but internally consistent VDV-452 feed for load
+ * testing. At a scale of one, the feed is roughly the size of the SASA feed:
+ * 1000 stops, 100 lines of two directions each and around 25,000 journeys,
+ * with everything else growing linearly with the scale. The same scale and
+ * seed always produce the same feed.
+ * 
+ * Line lengths are normally distributed around 25 stops, with each line a
+ * random walk over a grid of stops. Every line direction runs at one of a
+ * handful of clock-face headways, thinned out on school holidays and weekends,
+ * with a share of departures slightly off their slot as in real timetables.
+ */
+public class SyntheticFeedGenerator {
+
+  private static final int STOPS_PER_SCALE = 1000;
+
+  private static final int LINES_PER_SCALE = 100;
+
+  private static final int BASIS_VERSION = 1;
+
+  private static final int TRANSPORT_COMPANY = 1;
+
+  private static final int MIN_LINE_LENGTH = 6;
+
+  private static final int MAX_LINE_LENGTH = 60;
+
+  private static final int[] HEADWAYS = {5, 10, 15, 20, 30, 60};
+
+  private static final double[] HEADWAY_WEIGHTS = {
+      0.1, 0.25, 0.25, 0.15, 0.15, 0.1};
+
+  private static final int TIMING_GROUP_PEAK = 1;
+
+  private static final int TIMING_GROUP_OFF_PEAK = 2;
+
+  private static final int TIMING_GROUP_EVENING = 3;
+
+  private static final String[] TIMING_GROUP_NAMES = {
+      "Hauptverkehrszeit", "Nebenverkehrszeit", "Schwachverkehrszeit"};
+
+  /**
+   * Travel times of each timing group relative to the off-peak travel time, in
+   * percent.
+   */
+  private static final int[] TIMING_GROUP_FACTORS = {125, 100, 85};
+
+  private static final int DAY_TYPE_SCHOOL = 1;
+
+  private static final int DAY_TYPE_HOLIDAY = 2;
+
+  private static final int DAY_TYPE_SATURDAY = 3;
+
+  private static final int DAY_TYPE_SUNDAY = 4;
+
+  private static final String[] DAY_TYPE_NAMES = {
+      "Mo-Fr Schule", "Mo-Fr Ferien", "Samstag", "Sonn- und Feiertag"};
+
+  private final int _scale;
+
+  private final Random _random;
+
+  private int _serviceDays = 182;
+
+  private int _stopCount;
+
+  private int _gridSize;
+
+  /**
+   * The stops of each line direction, with the two directions of line i at
+   * index 2i and 2i + 1.
+   */
+  private List<int[]> _routes = new ArrayList<int[]>();
+
+  /**
+   * The off-peak travel time of each pair of consecutive stops, keyed by
+   * {@link #getStopPairKey(int, int)}.
+   */
+  private Map<Long, Integer> _travelTimes = new HashMap<Long, Integer>();
+
+  public SyntheticFeedGenerator(int scale, long seed) {
+    if (scale < 1) {
+      throw new IllegalArgumentException("scale must be at least 1: " + scale);
+    }
+    _scale = scale;
+    _random = new Random(seed);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 3) {
+      System.err.println("usage: SyntheticFeedGenerator scale seed path/to/vdv-output[.zip]");
+      System.exit(-1);
+    }
+    SyntheticFeedGenerator generator = new SyntheticFeedGenerator(
+        Integer.parseInt(args[0]), Long.parseLong(args[1]));
+    generator.generate(new File(args[2]));
+  }
+
+  public void setServiceDays(int serviceDays) {
+    _serviceDays = serviceDays;
+  }
+
+  /**
+   * Writes the feed to the specified path, as a zip file if the name ends in
+   * ".zip" and as a directory of .x10 files otherwise.
+   */
+  public void generate(File path) throws IOException {
+    _stopCount = STOPS_PER_SCALE * _scale;
+    _gridSize = (int) Math.ceil(Math.sqrt(_stopCount));
+    generateRoutes();
+
+    TableSink sink = path.getName().endsWith(".zip") ? new ZipTableSink(path)
+        : new DirectoryTableSink(path);
+    try {
+      writeBaseVersions(sink);
+      writeTransportCompanies(sink);
+      writeStops(sink);
+      writeStopPoints(sink);
+      writeDayTypes(sink);
+      writePeriods(sink);
+      writeTimingGroups(sink);
+      writeTravelTimes(sink);
+      writeWaitTimes(sink);
+      writeLines(sink);
+      writeRouteSequences(sink);
+      writeJourneys(sink);
+    } finally {
+      sink.close();
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void generateRoutes() {
+    int lineCount = LINES_PER_SCALE * _scale;
+    for (int line = 0; line < lineCount; ++line) {
+      int length = (int) Math.round(25 + _random.nextGaussian() * 9);
+      length = Math.max(MIN_LINE_LENGTH, Math.min(MAX_LINE_LENGTH, length));
+      int[] route = generateRandomWalk(length);
+      int[] reverse = new int[route.length];
+      for (int i = 0; i < route.length; ++i) {
+        reverse[i] = route[route.length - 1 - i];
+      }
+      _routes.add(route);
+      _routes.add(reverse);
+      for (int[] stops : new int[][] {route, reverse}) {
+        for (int i = 0; i + 1 < stops.length; ++i) {
+          Long key = getStopPairKey(stops[i], stops[i + 1]);
+          Long reverseKey = getStopPairKey(stops[i + 1], stops[i]);
+          if (!_travelTimes.containsKey(key)) {
+            Integer travelTime = _travelTimes.get(reverseKey);
+            if (travelTime == null) {
+              travelTime = 60 + 10 * _random.nextInt(10);
+            }
+            _travelTimes.put(key, travelTime);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return a walk over neighbouring grid cells that doesn't visit a stop
+   *         twice, ending early if it runs into a dead end
+   */
+  private int[] generateRandomWalk(int length) {
+    int[] route = new int[length];
+    boolean[] visited = new boolean[_stopCount];
+    int stop = _random.nextInt(_stopCount);
+    int count = 0;
+    route[count++] = stop;
+    visited[stop] = true;
+    int[] candidates = new int[8];
+    while (count < length) {
+      int row = stop / _gridSize;
+      int col = stop % _gridSize;
+      int candidateCount = 0;
+      for (int dr = -1; dr <= 1; ++dr) {
+        for (int dc = -1; dc <= 1; ++dc) {
+          int r = row + dr;
+          int c = col + dc;
+          int next = r * _gridSize + c;
+          if ((dr != 0 || dc != 0) && r >= 0 && c >= 0 && c < _gridSize
+              && next < _stopCount && !visited[next]) {
+            candidates[candidateCount++] = next;
+          }
+        }
+      }
+      if (candidateCount == 0) {
+        break;
+      }
+      stop = candidates[_random.nextInt(candidateCount)];
+      route[count++] = stop;
+      visited[stop] = true;
+    }
+    if (count < route.length) {
+      int[] shortened = new int[Math.max(count, 2)];
+      System.arraycopy(route, 0, shortened, 0, count);
+      if (count < 2) {
+        shortened[1] = (route[0] + 1) % _stopCount;
+      }
+      return shortened;
+    }
+    return route;
+  }
+
+  private void writeBaseVersions(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("MENGE_BASIS_VERSIONEN").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("BASIS_VERSION_TEXT",
+        "char[40]");
+    sink.open(table);
+    table.write(BASIS_VERSION, "Synthetischer Fahrplan");
+    sink.close(table);
+  }
+
+  private void writeTransportCompanies(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("ZUL_VERKEHRSBETRIEB").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("UNTERNEHMEN", "num[3.0]").addColumn(
+        "ABK_UNTERNEHMEN", "char[6]").addColumn("BETRIEBSGEBIET_BEZ",
+        "char[40]");
+    sink.open(table);
+    table.write(BASIS_VERSION, TRANSPORT_COMPANY, "SYN", "Verkehrsverbund "
+        + _scale + "x");
+    sink.close(table);
+  }
+
+  private void writeStops(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("REC_ORT").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("ONR_TYP_NR", "num[2.0]").addColumn(
+        "ORT_NR", "num[9.0]").addColumn("ORT_NAME", "char[40]").addColumn(
+        "ORT_REF_ORT", "num[9.0]").addColumn("ORT_REF_ORT_TYP", "num[2.0]").addColumn(
+        "ORT_REF_ORT_KUERZEL", "char[8]").addColumn("ZONE_WABE_NR", "num[4.0]").addColumn(
+        "ORT_POS_LAENGE", "num[10.0]").addColumn("ORT_POS_BREITE", "num[10.0]").addColumn(
+        "ORT_POS_HOEHE", "num[10.0]");
+    sink.open(table);
+    for (int stop = 0; stop < _stopCount; ++stop) {
+      int row = stop / _gridSize;
+      int col = stop % _gridSize;
+      // Stops are roughly 450m apart
+      double lat = 46.5 + (row - _gridSize / 2) * 0.004
+          + (_random.nextDouble() - 0.5) * 0.001;
+      double lng = 11.35 + (col - _gridSize / 2) * 0.006
+          + (_random.nextDouble() - 0.5) * 0.001;
+      table.write(BASIS_VERSION, 1, getStopId(stop), getStopName(stop),
+          getStopId(stop), 1, "H" + getStopId(stop), 1 + row / 10,
+          formatDegreesMinutesSeconds(lng), formatDegreesMinutesSeconds(lat), 0);
+    }
+    sink.close(table);
+  }
+
+  private void writeStopPoints(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("REC_HP").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("ONR_TYP_NR", "num[2.0]").addColumn(
+        "ORT_NR", "num[9.0]").addColumn("HALTEPUNKT_NR", "num[2.0]").addColumn(
+        "ZUSATZ_INFO", "char[40]");
+    sink.open(table);
+    for (int stop = 0; stop < _stopCount; ++stop) {
+      table.write(BASIS_VERSION, 1, getStopId(stop), 1, getStopName(stop));
+    }
+    sink.close(table);
+  }
+
+  private void writeDayTypes(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("MENGE_TAGESART").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("TAGESART_NR", "num[6.0]").addColumn(
+        "TAGESART_TEXT", "char[40]");
+    sink.open(table);
+    for (int i = 0; i < DAY_TYPE_NAMES.length; ++i) {
+      table.write(BASIS_VERSION, i + 1, DAY_TYPE_NAMES[i]);
+    }
+    sink.close(table);
+  }
+
+  /**
+   * Every date of the service period gets a day type by its weekday, with
+   * every seventh and eighth week a school holiday and the odd public holiday
+   * on a weekday.
+   */
+  private void writePeriods(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("FIRMENKALENDER").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("BETRIEBSTAG", "num[8.0]").addColumn(
+        "BETRIEBSTAG_TEXT", "char[40]").addColumn("TAGESART_NR", "num[6.0]");
+    sink.open(table);
+    Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    calendar.clear();
+    // A Monday
+    calendar.set(2015, Calendar.JANUARY, 5);
+    for (int day = 0; day < _serviceDays; ++day) {
+      int weekday = calendar.get(Calendar.DAY_OF_WEEK);
+      int week = day / 7;
+      String text = null;
+      int dayType;
+      if (weekday == Calendar.SUNDAY) {
+        dayType = DAY_TYPE_SUNDAY;
+      } else if (weekday == Calendar.SATURDAY) {
+        dayType = DAY_TYPE_SATURDAY;
+      } else if (_random.nextInt(50) == 0) {
+        dayType = DAY_TYPE_SUNDAY;
+        text = "Feiertag";
+      } else if (week % 8 >= 6) {
+        dayType = DAY_TYPE_HOLIDAY;
+        text = "Ferien";
+      } else {
+        dayType = DAY_TYPE_SCHOOL;
+      }
+      int date = calendar.get(Calendar.YEAR) * 10000
+          + (calendar.get(Calendar.MONTH) + 1) * 100
+          + calendar.get(Calendar.DAY_OF_MONTH);
+      table.write(BASIS_VERSION, date, text, dayType);
+      calendar.add(Calendar.DAY_OF_MONTH, 1);
+    }
+    sink.close(table);
+  }
+
+  private void writeTimingGroups(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("MENGE_FGR").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("FGR_NR", "num[9.0]").addColumn(
+        "FGR_TEXT", "char[40]");
+    sink.open(table);
+    for (int i = 0; i < TIMING_GROUP_NAMES.length; ++i) {
+      table.write(BASIS_VERSION, i + 1, TIMING_GROUP_NAMES[i]);
+    }
+    sink.close(table);
+  }
+
+  private void writeTravelTimes(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("SEL_FZT_FELD").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("BEREICH_NR", "num[3.0]").addColumn(
+        "FGR_NR", "num[9.0]").addColumn("ONR_TYP_NR", "num[2.0]").addColumn(
+        "ORT_NR", "num[9.0]").addColumn("SEL_ZIEL", "num[9.0]").addColumn(
+        "SEL_ZIEL_TYP", "num[2.0]").addColumn("SEL_FZT", "num[6.0]");
+    sink.open(table);
+    for (int group = 0; group < TIMING_GROUP_FACTORS.length; ++group) {
+      for (Map.Entry<Long, Integer> entry : _travelTimes.entrySet()) {
+        long key = entry.getKey();
+        int from = (int) (key / _stopCount);
+        int to = (int) (key % _stopCount);
+        int travelTime = entry.getValue() * TIMING_GROUP_FACTORS[group] / 100;
+        table.write(BASIS_VERSION, 1, group + 1, 1, getStopId(from),
+            getStopId(to), 1, travelTime);
+      }
+    }
+    sink.close(table);
+  }
+
+  /**
+   * One stop in ten is a major stop with a wait time, which is longer in the
+   * peak.
+   */
+  private void writeWaitTimes(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("ORT_HZTF").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("FGR_NR", "num[9.0]").addColumn(
+        "ONR_TYP_NR", "num[2.0]").addColumn("ORT_NR", "num[9.0]").addColumn(
+        "HP_HZT", "num[6.0]");
+    sink.open(table);
+    for (int stop = 0; stop < _stopCount; ++stop) {
+      if (_random.nextInt(10) != 0) {
+        continue;
+      }
+      int waitTime = 30 * (1 + _random.nextInt(3));
+      for (int group = 0; group < TIMING_GROUP_FACTORS.length; ++group) {
+        table.write(BASIS_VERSION, group + 1, 1, getStopId(stop), waitTime
+            * TIMING_GROUP_FACTORS[group] / 100);
+      }
+    }
+    sink.close(table);
+  }
+
+  private void writeLines(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("REC_LID").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("LI_NR", "num[6.0]").addColumn(
+        "STR_LI_VAR", "char[6]").addColumn("ROUTEN_NR", "num[3.0]").addColumn(
+        "LI_RI_NR", "num[3.0]").addColumn("BEREICH_NR", "num[3.0]").addColumn(
+        "LI_KUERZEL", "char[6]").addColumn("LIDNAME", "char[40]").addColumn(
+        "ROUTEN_ART", "num[2.0]");
+    sink.open(table);
+    for (int i = 0; i < _routes.size(); ++i) {
+      int[] route = _routes.get(i);
+      int line = getLineId(i);
+      table.write(BASIS_VERSION, line, getLineVariant(i), i % 2 + 1, i % 2 + 1,
+          1, Integer.toString(line), getStopName(route[0]) + " - "
+              + getStopName(route[route.length - 1]), 1);
+    }
+    sink.close(table);
+  }
+
+  private void writeRouteSequences(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("LID_VERLAUF").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("LI_LFD_NR", "num[3.0]").addColumn(
+        "LI_NR", "num[6.0]").addColumn("STR_LI_VAR", "char[6]").addColumn(
+        "ONR_TYP_NR", "num[2.0]").addColumn("ORT_NR", "num[9.0]").addColumn(
+        "ZNR_NR", "num[5.0]").addColumn("EINFANGBEREICH", "num[3.0]").addColumn(
+        "LI_KNOTEN", "num[1.0]").addColumn("EINSTEIGEVERBOT", "num[1.0]").addColumn(
+        "AUSSTEIGEVERBOT", "num[1.0]");
+    sink.open(table);
+    for (int i = 0; i < _routes.size(); ++i) {
+      int[] route = _routes.get(i);
+      for (int j = 0; j < route.length; ++j) {
+        boolean terminal = j == 0 || j == route.length - 1;
+        table.write(BASIS_VERSION, j + 1, getLineId(i), getLineVariant(i), 1,
+            getStopId(route[j]), 0, 0, terminal ? 1 : 0, j == route.length - 1
+                ? 1 : 0, j == 0 ? 1 : 0);
+      }
+    }
+    sink.close(table);
+  }
+
+  private void writeJourneys(TableSink sink) throws IOException {
+    VdvTableWriter table = new VdvTableWriter("REC_FRT").addColumn(
+        "BASIS_VERSION", "num[9.0]").addColumn("FRT_FID", "num[10.0]").addColumn(
+        "FRT_START", "num[6.0]").addColumn("LI_NR", "num[6.0]").addColumn(
+        "TAGESART_NR", "num[6.0]").addColumn("FAHRTART_NR", "num[2.0]").addColumn(
+        "FGR_NR", "num[9.0]").addColumn("STR_LI_VAR", "char[6]").addColumn(
+        "UM_UID", "num[8.0]").addColumn("FZG_TYP_NR", "num[4.0]").addColumn(
+        "BEMERKUNG", "char[1000]");
+    sink.open(table);
+    int journeyId = 1;
+    for (int i = 0; i < _routes.size(); ++i) {
+      int headway = pickHeadway();
+      // Service starts between 05:00 and 06:30 and ends between 20:00 and
+      // 24:00
+      int firstDeparture = 5 * 3600 + 300 * _random.nextInt(19);
+      int lastDeparture = 20 * 3600 + 600 * _random.nextInt(25);
+      // The two directions are offset by half a headway
+      int offset = (i % 2) * headway * 30;
+      for (int dayType = 1; dayType <= DAY_TYPE_NAMES.length; ++dayType) {
+        int dayHeadway = getHeadwayForDayType(headway, dayType);
+        int start = firstDeparture + offset;
+        if (dayType == DAY_TYPE_SUNDAY) {
+          start += 2 * 3600;
+        }
+        for (int time = start; time <= lastDeparture; time += dayHeadway * 60) {
+          int departure = time;
+          if (_random.nextInt(10) == 0) {
+            departure += 60 * (_random.nextInt(5) - 2);
+          }
+          table.write(BASIS_VERSION, journeyId++, departure, getLineId(i),
+              dayType, 1, getTimingGroupForTime(departure), getLineVariant(i),
+              null, 1, null);
+        }
+      }
+    }
+    sink.close(table);
+  }
+
+  private int pickHeadway() {
+    double value = _random.nextDouble();
+    for (int i = 0; i < HEADWAYS.length; ++i) {
+      value -= HEADWAY_WEIGHTS[i];
+      if (value < 0) {
+        return HEADWAYS[i];
+      }
+    }
+    return HEADWAYS[HEADWAYS.length - 1];
+  }
+
+  private static int getHeadwayForDayType(int headway, int dayType) {
+    switch (dayType) {
+      case DAY_TYPE_HOLIDAY:
+        return headway * 3 / 2;
+      case DAY_TYPE_SATURDAY:
+        return Math.max(headway * 2, 15);
+      case DAY_TYPE_SUNDAY:
+        return Math.max(headway * 3, 30);
+      default:
+        return headway;
+    }
+  }
+
+  private static int getTimingGroupForTime(int time) {
+    int hour = time / 3600;
+    if ((hour >= 7 && hour < 9) || (hour >= 16 && hour < 19)) {
+      return TIMING_GROUP_PEAK;
+    }
+    if (hour >= 20 || hour < 6) {
+      return TIMING_GROUP_EVENING;
+    }
+    return TIMING_GROUP_OFF_PEAK;
+  }
+
+  private long getStopPairKey(int from, int to) {
+    return (long) from * _stopCount + to;
+  }
+
+  private static int getStopId(int stop) {
+    return stop + 1;
+  }
+
+  private static String getStopName(int stop) {
+    return "Haltestelle " + (stop + 1) + " Hauptstra\u00dfe";
+  }
+
+  private static int getLineId(int route) {
+    return route / 2 + 1;
+  }
+
+  private static String getLineVariant(int route) {
+    return Integer.toString(route % 2 + 1);
+  }
+
+  /**
+   * Formats decimal degrees as VDV-452 DDDMMSSsss.
+   */
+  private static long formatDegreesMinutesSeconds(double value) {
+    long millis = Math.round(value * 3600 * 1000);
+    long degrees = millis / (3600 * 1000);
+    long minutes = millis / (60 * 1000) % 60;
+    long seconds = millis % (60 * 1000);
+    return degrees * 10000000L + minutes * 100000L + seconds;
+  }
+
+  private interface TableSink {
+
+    void open(VdvTableWriter table) throws IOException;
+
+    void close(VdvTableWriter table) throws IOException;
+
+    void close() throws IOException;
+  }
+
+  private static class ZipTableSink implements TableSink {
+
+    private final ZipOutputStream _out;
+
+    public ZipTableSink(File path) throws IOException {
+      _out = new ZipOutputStream(new FileOutputStream(path));
+    }
+
+    @Override
+    public void open(VdvTableWriter table) throws IOException {
+      _out.putNextEntry(new ZipEntry(table.getFilename()));
+      table.open(_out);
+    }
+
+    @Override
+    public void close(VdvTableWriter table) throws IOException {
+      table.close();
+      _out.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+      _out.close();
+    }
+  }
+
+  private static class DirectoryTableSink implements TableSink {
+
+    private final File _path;
+
+    private OutputStream _out;
+
+    public DirectoryTableSink(File path) throws IOException {
+      if (!path.isDirectory() && !path.mkdirs()) {
+        throw new IOException("could not create directory " + path);
+      }
+      _path = path;
+    }
+
+    @Override
+    public void open(VdvTableWriter table) throws IOException {
+      _out = new FileOutputStream(new File(_path, table.getFilename()));
+      table.open(_out);
+    }
+
+    @Override
+    public void close(VdvTableWriter table) throws IOException {
+      table.close();
+      _out.close();
+      _out = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (_out != null) {
+        _out.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line arguments, always
+ * attaching the GC profiler so that allocation rates are reported next to
+ * throughput. For example, to only run the reader benchmarks:
+ * 
+ * <pre>
+ * java -jar onebusaway-vdv452-benchmarks-withAllDependencies.jar Vdv452ReaderBenchmark
+ * </pre>
+ */
+public class Vdv452Benchmarks {
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(
+        GCProfiler.class).build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.onebusaway.vdv452.Vdv452Dao;
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.TimingGroup;
+import org.onebusaway.vdv452.model.TravelTime;
+import org.onebusaway.vdv452.model.WaitTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Fills a {@link Vdv452Dao} with every entity of the feed through
+ * {@link Vdv452Dao#putEntity(Object)}, and builds each of its lazy indices on
+ * a freshly filled DAO through the first lookup that needs it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Vdv452DaoBenchmark {
+
+  private List<Object> _entities;
+
+  private DayType _dayType;
+
+  private Line _line;
+
+  private TimingGroup _timingGroup;
+
+  private TravelTime _travelTime;
+
+  @Setup
+  public void setup() throws IOException {
+    _entities = BenchmarkFeed.readEntities();
+    for (Object entity : _entities) {
+      if (_dayType == null && entity instanceof DayType) {
+        _dayType = (DayType) entity;
+      } else if (_line == null && entity instanceof Line) {
+        _line = (Line) entity;
+      } else if (_travelTime == null && entity instanceof TravelTime) {
+        _travelTime = (TravelTime) entity;
+        _timingGroup = _travelTime.getTimingGroup();
+      }
+    }
+  }
+
+  @Benchmark
+  public Vdv452Dao putEntities() {
+    return fill(_entities);
+  }
+
+  @Benchmark
+  public Object buildPeriodIndex(FilledDao state) {
+    return state.dao.getPeriodsForDayType(_dayType);
+  }
+
+  @Benchmark
+  public Object buildRouteSequenceIndex(FilledDao state) {
+    return state.dao.getRouteSequenceForLine(_line);
+  }
+
+  @Benchmark
+  public TravelTime buildTravelTimeIndices(FilledDao state) {
+    return state.dao.getTravelTime(_travelTime.getTimingGroup(),
+        _travelTime.getFromStop(), _travelTime.getToStop());
+  }
+
+  @Benchmark
+  public List<WaitTime> buildWaitTimeIndices(FilledDao state) {
+    return state.dao.getWaitTimesForTimingGroup(_timingGroup);
+  }
+
+  /**
+   * A DAO that has been filled but not yet queried, such that the first
+   * lookup of each benchmark builds the index it needs.
+   */
+  @State(Scope.Thread)
+  public static class FilledDao {
+
+    public Vdv452Dao dao;
+
+    @Setup(Level.Invocation)
+    public void setup(Vdv452DaoBenchmark benchmark) {
+      dao = fill(benchmark._entities);
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static Vdv452Dao fill(List<Object> entities) {
+    Vdv452Dao dao = new Vdv452Dao();
+    for (Object entity : entities) {
+      dao.putEntity(entity);
+    }
+    return dao;
+  }
+}
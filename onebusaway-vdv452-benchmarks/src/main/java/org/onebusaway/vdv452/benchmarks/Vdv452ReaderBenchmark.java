@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.onebusaway.vdv452.Vdv452Dao;
+import org.onebusaway.vdv452.Vdv452Reader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reads the whole feed through {@link Vdv452Reader#run()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+public class Vdv452ReaderBenchmark {
+
+  @Param({"false", "true"})
+  public boolean columnarJourneys;
+
+  @Benchmark
+  public Vdv452Dao run() throws IOException {
+    Vdv452Reader reader = new Vdv452Reader();
+    reader.setInputLocation(BenchmarkFeed.getPath());
+    reader.setColumnarJourneys(columnarJourneys);
+    try {
+      reader.run();
+    } finally {
+      reader.getInputSource().close();
+    }
+    return reader.getDao();
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.onebusaway.gtfs.impl.GtfsRelationalDaoImpl;
+import org.onebusaway.vdv452.JourneyComparator;
+import org.onebusaway.vdv452.Vdv452Dao;
+import org.onebusaway.vdv452.Vdv452ToGtfsFactory;
+import org.onebusaway.vdv452.model.Journey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Converts every journey of the feed through
+ * {@link Vdv452ToGtfsFactory#getTripForJourney(Journey)}, on a fresh factory
+ * and output DAO for each invocation, such that the stop time pattern cache
+ * starts out empty as it does in a real conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+public class Vdv452ToGtfsFactoryBenchmark {
+
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Berlin");
+
+  private Vdv452Dao _dao;
+
+  private List<Journey> _journeys;
+
+  @Setup
+  public void setup() throws IOException {
+    _dao = BenchmarkFeed.read().getDao();
+    _journeys = new ArrayList<Journey>(_dao.getAllJourneys());
+    Collections.sort(_journeys, new JourneyComparator());
+  }
+
+  @Benchmark
+  public GtfsRelationalDaoImpl getTripForJourney(FreshFactory state) {
+    for (Journey journey : _journeys) {
+      state.factory.getTripForJourney(journey);
+    }
+    return state.out;
+  }
+
+  @State(Scope.Thread)
+  public static class FreshFactory {
+
+    public GtfsRelationalDaoImpl out;
+
+    public Vdv452ToGtfsFactory factory;
+
+    @Setup(Level.Invocation)
+    public void setup(Vdv452ToGtfsFactoryBenchmark benchmark) {
+      out = new GtfsRelationalDaoImpl();
+      factory = new Vdv452ToGtfsFactory(benchmark._dao, out, TIME_ZONE);
+    }
+  }
+}
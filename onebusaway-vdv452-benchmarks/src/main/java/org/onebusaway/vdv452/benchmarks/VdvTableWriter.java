@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a single VDV-451 table, with the same aligned layout as the exports
+ * of the common scheduling systems: numeric values are right-aligned and text
+ * values are quoted and padded to the width declared in the "frm" line.
+ */
+class VdvTableWriter {
+
+  private static final String EXPORT_DATE = "01.01.2015";
+
+  private final String _table;
+
+  private final List<String> _names = new ArrayList<String>();
+
+  private final List<String> _formats = new ArrayList<String>();
+
+  private final List<Integer> _widths = new ArrayList<Integer>();
+
+  private final List<Boolean> _numeric = new ArrayList<Boolean>();
+
+  private Writer _out;
+
+  private int _records = 0;
+
+  private final StringBuilder _line = new StringBuilder();
+
+  public VdvTableWriter(String table) {
+    _table = table;
+  }
+
+  public String getFilename() {
+    return _table + ".x10";
+  }
+
+  /**
+   * @param format a VDV-451 column format, such as "num[9.0]" or "char[40]"
+   */
+  public VdvTableWriter addColumn(String name, String format) {
+    _names.add(name);
+    _formats.add(format);
+    int open = format.indexOf('[');
+    int end = format.indexOf('.', open);
+    if (end < 0) {
+      end = format.indexOf(']', open);
+    }
+    _widths.add(Integer.parseInt(format.substring(open + 1, end)));
+    _numeric.add(format.startsWith("num"));
+    return this;
+  }
+
+  public void open(OutputStream out) throws IOException {
+    _out = new BufferedWriter(new OutputStreamWriter(out,
+        StandardCharsets.ISO_8859_1), 64 * 1024);
+    _records = 0;
+    _out.write("mod; DD.MM.YYYY;HH:MM:SS;aligned\r\n");
+    _out.write("src; \"onebusaway-vdv452-benchmarks\"; \"" + EXPORT_DATE
+        + "\"; \"00:00:00\"\r\n");
+    _out.write("chs; \"ISO8859-1\"\r\n");
+    _out.write("ver; \"1.0\"\r\n");
+    _out.write("ifv; \"1.10\"\r\n");
+    _out.write("dve; \"1\"\r\n");
+    _out.write("fft; \"\"\r\n");
+    _out.write("tbl; " + _table + "\r\n");
+    writeHeader("atr", _names);
+    writeHeader("frm", _formats);
+  }
+
+  /**
+   * Writes a record. Values are {@link Number}s for numeric columns and
+   * {@link String}s for text columns, with null for an empty value.
+   */
+  public void write(Object... values) throws IOException {
+    if (values.length != _names.size()) {
+      throw new IllegalArgumentException("expected " + _names.size()
+          + " values for " + _table + " but got " + values.length);
+    }
+    StringBuilder line = _line;
+    line.setLength(0);
+    line.append("rec;");
+    for (int i = 0; i < values.length; ++i) {
+      if (i > 0) {
+        line.append(';');
+      }
+      line.append(' ');
+      int width = _widths.get(i);
+      Object value = values[i];
+      if (_numeric.get(i)) {
+        String text = value == null ? "" : value.toString();
+        pad(line, width - text.length());
+        line.append(text);
+      } else {
+        String text = value == null ? "" : value.toString();
+        if (text.length() > width) {
+          text = text.substring(0, width);
+        }
+        line.append('"');
+        line.append(text.replace("\"", "\"\""));
+        pad(line, width - text.length());
+        line.append('"');
+      }
+    }
+    line.append("\r\n");
+    _out.append(line);
+    _records++;
+  }
+
+  public void close() throws IOException {
+    _out.write("end; " + _records + "\r\n");
+    _out.write("eof; 1\r\n");
+    _out.flush();
+    _out = null;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void writeHeader(String type, List<String> values)
+      throws IOException {
+    StringBuilder line = new StringBuilder(type).append(';');
+    for (int i = 0; i < values.size(); ++i) {
+      if (i > 0) {
+        line.append(';');
+      }
+      line.append(' ').append(values.get(i));
+    }
+    _out.write(line.append("\r\n").toString());
+  }
+
+  private static void pad(StringBuilder line, int count) {
+    for (int i = 0; i < count; ++i) {
+      line.append(' ');
+    }
+  }
+}
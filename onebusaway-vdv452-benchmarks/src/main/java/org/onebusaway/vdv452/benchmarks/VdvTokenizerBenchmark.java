@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.onebusaway.vdv452.serialization.VdvRow;
+import org.onebusaway.vdv452.serialization.VdvTokenizer;
+import org.onebusaway.vdv452.serialization.VdvTokenizerStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Tokenizes a whole table, both line by line through
+ * {@link VdvTokenizerStrategy#parse(String)}, as the reflective csv-entities
+ * path does, and from the raw bytes through {@link VdvTokenizer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VdvTokenizerBenchmark {
+
+  @Param({"REC_ORT.x10", "LID_VERLAUF.x10"})
+  public String table;
+
+  private byte[] _bytes;
+
+  private List<String> _lines;
+
+  private VdvTokenizerStrategy _strategy;
+
+  private VdvRow _row;
+
+  @Setup
+  public void setup() throws IOException {
+    _bytes = BenchmarkFeed.readTable(table);
+    _lines = new ArrayList<String>();
+    for (String line : new String(_bytes, StandardCharsets.ISO_8859_1).split(
+        "\r?\n")) {
+      _lines.add(line);
+    }
+    _strategy = new VdvTokenizerStrategy();
+    _row = new VdvRow();
+  }
+
+  @Benchmark
+  public void parseLines(Blackhole blackhole) {
+    for (String line : _lines) {
+      blackhole.consume(_strategy.parse(line));
+    }
+  }
+
+  @Benchmark
+  public void tokenizeBytes(Blackhole blackhole) throws IOException {
+    VdvTokenizer tokenizer = new VdvTokenizer(ByteBuffer.wrap(_bytes));
+    while (tokenizer.next(_row)) {
+      blackhole.consume(_row.size());
+    }
+  }
+}
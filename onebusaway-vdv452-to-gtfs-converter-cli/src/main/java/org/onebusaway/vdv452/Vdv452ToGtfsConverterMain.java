@@ -28,11 +28,34 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
 import org.apache.commons.cli.UnrecognizedOptionException;
+import org.onebusaway.vdv452.model.ServiceDate;
 
 public class Vdv452ToGtfsConverterMain {
   
   private static final String ARG_TIME_ZONE = "timeZone";
 
+  private static final String ARG_STREAMING = "streaming";
+
+  private static final String ARG_THREADS = "threads";
+
+  private static final String ARG_FREQUENCIES = "frequencies";
+
+  private static final String ARG_METRICS_REPORT = "metricsReport";
+
+  private static final String ARG_SNAPSHOT = "snapshot";
+
+  private static final String ARG_MANIFEST = "manifest";
+
+  private static final String ARG_BASE_VERSION = "baseVersion";
+
+  private static final String ARG_LINES = "lines";
+
+  private static final String ARG_FROM_DATE = "fromDate";
+
+  private static final String ARG_TO_DATE = "toDate";
+
+  private static final String ARG_BOUNDING_BOX = "boundingBox";
+
   private static CommandLineParser _parser = new PosixParser();
 
   private Options _options = new Options();
@@ -76,6 +99,17 @@ public class Vdv452ToGtfsConverterMain {
 
   private void buildOptions() {
     _options.addOption(ARG_TIME_ZONE, true, ARG_TIME_ZONE);
+    _options.addOption(ARG_STREAMING, false, ARG_STREAMING);
+    _options.addOption(ARG_THREADS, true, ARG_THREADS);
+    _options.addOption(ARG_FREQUENCIES, false, ARG_FREQUENCIES);
+    _options.addOption(ARG_METRICS_REPORT, true, ARG_METRICS_REPORT);
+    _options.addOption(ARG_SNAPSHOT, true, ARG_SNAPSHOT);
+    _options.addOption(ARG_MANIFEST, true, ARG_MANIFEST);
+    _options.addOption(ARG_BASE_VERSION, true, ARG_BASE_VERSION);
+    _options.addOption(ARG_LINES, true, ARG_LINES);
+    _options.addOption(ARG_FROM_DATE, true, ARG_FROM_DATE);
+    _options.addOption(ARG_TO_DATE, true, ARG_TO_DATE);
+    _options.addOption(ARG_BOUNDING_BOX, true, ARG_BOUNDING_BOX);
   }
 
   private void runApplication(CommandLine cli) throws IOException {
@@ -92,9 +126,56 @@ public class Vdv452ToGtfsConverterMain {
     if (cli.hasOption(ARG_TIME_ZONE)) {
       converter.setTimeZone(TimeZone.getTimeZone(cli.getOptionValue(ARG_TIME_ZONE)));
     }
+    converter.setStreaming(cli.hasOption(ARG_STREAMING));
+    converter.setDetectHeadways(cli.hasOption(ARG_FREQUENCIES));
+    if (cli.hasOption(ARG_THREADS)) {
+      converter.setThreads(Integer.parseInt(cli.getOptionValue(ARG_THREADS)));
+    }
+    // Metrics time every row read, so they're only collected when requested
+    if (cli.hasOption(ARG_METRICS_REPORT)) {
+      converter.setMetrics(new JsonReportVdv452Metrics(new File(
+          cli.getOptionValue(ARG_METRICS_REPORT))));
+    }
+    if (cli.hasOption(ARG_SNAPSHOT)) {
+      converter.setSnapshotPath(new File(cli.getOptionValue(ARG_SNAPSHOT)));
+    }
+    if (cli.hasOption(ARG_BASE_VERSION)) {
+      converter.setBaseVersionSelector(BaseVersionSelector.parse(
+          cli.getOptionValue(ARG_BASE_VERSION)));
+    }
+    if (cli.hasOption(ARG_LINES)) {
+      String[] tokens = cli.getOptionValue(ARG_LINES).split(",");
+      long[] lineNumbers = new long[tokens.length];
+      for (int i = 0; i < tokens.length; ++i) {
+        lineNumbers[i] = Long.parseLong(tokens[i].trim());
+      }
+      converter.setLineNumbers(lineNumbers);
+    }
+    if (cli.hasOption(ARG_FROM_DATE) || cli.hasOption(ARG_TO_DATE)) {
+      converter.setServiceDateRange(parseDate(cli.getOptionValue(ARG_FROM_DATE)),
+          parseDate(cli.getOptionValue(ARG_TO_DATE)));
+    }
+    if (cli.hasOption(ARG_BOUNDING_BOX)) {
+      converter.setBoundingBox(BoundingBox.parse(
+          cli.getOptionValue(ARG_BOUNDING_BOX)));
+    }
+    if (cli.hasOption(ARG_MANIFEST)) {
+      converter.setManifestPath(new File(cli.getOptionValue(ARG_MANIFEST)));
+    }
     converter.run();
   }
 
+  private static ServiceDate parseDate(String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return ServiceDate.parseString(value);
+    } catch (java.text.ParseException ex) {
+      throw new IllegalArgumentException(ex.getMessage());
+    }
+  }
+
   private void printHelp() {
     System.err.println("usage: [program] path/to/vdv-input path/to/gtfs-output");
   }
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The state of an {@link IncrementalGtfsConverter} run, as needed by the next
+ * run: the fingerprint of each input table, the selection of the records read
+ * from them, the converter settings that affect the output, the fingerprint of each converted entity, the size of each GTFS
+ * file written, and for each output segment, its fingerprint along with the
+ * range of bytes it takes up in each GTFS file.
+ *
+ * The manifest is stored as a tab-separated text file, with one entry per
+ * line.
+ */
+class ConversionManifest {
+
+  private static final String HEADER = "# vdv452-to-gtfs conversion manifest 1";
+
+  private final Map<String, String> _tables = new LinkedHashMap<String, String>();
+
+  private String _selection = "";
+
+  private final Map<String, String> _settings = new LinkedHashMap<String, String>();
+
+  private final Map<String, String> _entities = new LinkedHashMap<String, String>();
+
+  private final Map<String, Long> _files = new LinkedHashMap<String, Long>();
+
+  private final Map<String, Segment> _segments = new LinkedHashMap<String, Segment>();
+
+  /**
+   * @return the manifest, or null if there is none or it was written by an
+   *         incompatible version
+   */
+  public static ConversionManifest read(File path) throws IOException {
+    if (!path.exists()) {
+      return null;
+    }
+    ConversionManifest manifest = new ConversionManifest();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(path), StandardCharsets.UTF_8));
+    try {
+      if (!HEADER.equals(reader.readLine())) {
+        return null;
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] tokens = line.split("\t");
+        if (tokens[0].equals("table")) {
+          manifest._tables.put(tokens[1], tokens[2]);
+        } else if (tokens[0].equals("selection")) {
+          manifest._selection = tokens.length > 1 ? tokens[1] : "";
+        } else if (tokens[0].equals("setting")) {
+          manifest._settings.put(tokens[1], tokens.length > 2 ? tokens[2] : "");
+        } else if (tokens[0].equals("entity")) {
+          manifest._entities.put(tokens[1], tokens[2]);
+        } else if (tokens[0].equals("file")) {
+          manifest._files.put(tokens[1], Long.parseLong(tokens[2]));
+        } else if (tokens[0].equals("segment")) {
+          Segment segment = manifest.putSegment(tokens[1], tokens[2]);
+          for (int i = 3; i + 2 < tokens.length; i += 3) {
+            segment.putRange(tokens[i], Long.parseLong(tokens[i + 1]),
+                Long.parseLong(tokens[i + 2]));
+          }
+        } else {
+          throw new IOException("unknown manifest entry: " + line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return manifest;
+  }
+
+  public void write(File path) throws IOException {
+    File tmp = new File(path.getPath() + ".tmp");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(tmp), StandardCharsets.UTF_8));
+    try {
+      writer.write(HEADER + "\n");
+      for (Map.Entry<String, String> entry : _tables.entrySet()) {
+        writer.write("table\t" + entry.getKey() + "\t" + entry.getValue()
+            + "\n");
+      }
+      writer.write("selection\t" + _selection + "\n");
+      for (Map.Entry<String, String> entry : _settings.entrySet()) {
+        writer.write("setting\t" + entry.getKey() + "\t" + entry.getValue()
+            + "\n");
+      }
+      for (Map.Entry<String, String> entry : _entities.entrySet()) {
+        writer.write("entity\t" + entry.getKey() + "\t" + entry.getValue()
+            + "\n");
+      }
+      for (Map.Entry<String, Long> entry : _files.entrySet()) {
+        writer.write("file\t" + entry.getKey() + "\t" + entry.getValue()
+            + "\n");
+      }
+      for (Segment segment : _segments.values()) {
+        writer.write("segment\t" + segment.getKey() + "\t"
+            + segment.getFingerprint());
+        for (Map.Entry<String, long[]> entry : segment._ranges.entrySet()) {
+          long[] range = entry.getValue();
+          writer.write("\t" + entry.getKey() + "\t" + range[0] + "\t"
+              + range[1]);
+        }
+        writer.write("\n");
+      }
+    } finally {
+      writer.close();
+    }
+    Files.move(tmp.toPath(), path.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  public Map<String, String> getTables() {
+    return _tables;
+  }
+
+  public void setTables(Map<String, String> tables) {
+    _tables.clear();
+    _tables.putAll(tables);
+  }
+
+  /**
+   * See {@link Vdv452Reader#getSelectionKey()}.
+   */
+  public String getSelection() {
+    return _selection;
+  }
+
+  public void setSelection(String selection) {
+    _selection = selection;
+  }
+
+  public Map<String, String> getSettings() {
+    return _settings;
+  }
+
+  public void putSetting(String key, String value) {
+    _settings.put(key, value);
+  }
+
+  public Map<String, String> getEntities() {
+    return _entities;
+  }
+
+  public void putEntity(String key, String fingerprint) {
+    _entities.put(key, fingerprint);
+  }
+
+  public void putFile(String filename, long size) {
+    _files.put(filename, size);
+  }
+
+  /**
+   * @return true if each GTFS file recorded in the manifest still exists in
+   *         the output directory with the same size, such that its segments
+   *         can be reused
+   */
+  public boolean isOutputIntact(File outputDirectory) {
+    if (_files.isEmpty()) {
+      return false;
+    }
+    for (Map.Entry<String, Long> entry : _files.entrySet()) {
+      File file = new File(outputDirectory, entry.getKey());
+      if (!file.isFile() || file.length() != entry.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the segment with the specified key and fingerprint, or null if
+   *         there is none
+   */
+  public Segment getSegment(String key, String fingerprint) {
+    Segment segment = _segments.get(key);
+    if (segment == null || !segment.getFingerprint().equals(fingerprint)) {
+      return null;
+    }
+    return segment;
+  }
+
+  public Segment putSegment(String key, String fingerprint) {
+    Segment segment = new Segment(key, fingerprint);
+    _segments.put(key, segment);
+    return segment;
+  }
+
+  public static class Segment {
+
+    private final String _key;
+
+    private final String _fingerprint;
+
+    private final Map<String, long[]> _ranges = new LinkedHashMap<String, long[]>();
+
+    public Segment(String key, String fingerprint) {
+      _key = key;
+      _fingerprint = fingerprint;
+    }
+
+    public String getKey() {
+      return _key;
+    }
+
+    public String getFingerprint() {
+      return _fingerprint;
+    }
+
+    /**
+     * @return the offset and length of the segment in the file, or null if it
+     *         has no rows in the file
+     */
+    public long[] getRange(String filename) {
+      return _ranges.get(filename);
+    }
+
+    public void putRange(String filename, long offset, long length) {
+      if (length > 0) {
+        _ranges.put(filename, new long[] {offset, length});
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import org.onebusaway.gtfs.model.Agency;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Route;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.Trip;
+import org.onebusaway.gtfs.services.GtfsMutableRelationalDao;
+
+/**
+ * A {@link GtfsSink} that saves entities to a {@link GtfsMutableRelationalDao}.
+ */
+public class GtfsDaoSink implements GtfsSink {
+
+  private final GtfsMutableRelationalDao _dao;
+
+  public GtfsDaoSink(GtfsMutableRelationalDao dao) {
+    _dao = dao;
+  }
+
+  public GtfsMutableRelationalDao getDao() {
+    return _dao;
+  }
+
+  @Override
+  public Agency getAgencyForId(String id) {
+    return _dao.getAgencyForId(id);
+  }
+
+  @Override
+  public Route getRouteForId(AgencyAndId id) {
+    return _dao.getRouteForId(id);
+  }
+
+  @Override
+  public Stop getStopForId(AgencyAndId id) {
+    return _dao.getStopForId(id);
+  }
+
+  @Override
+  public Trip getTripForId(AgencyAndId id) {
+    return _dao.getTripForId(id);
+  }
+
+  @Override
+  public void saveEntity(Object entity) {
+    _dao.saveEntity(entity);
+  }
+
+  @Override
+  public void saveOrUpdateEntity(Object entity) {
+    _dao.saveOrUpdateEntity(entity);
+  }
+
+  @Override
+  public void close() {
+
+  }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+
+/**
+ * A reusable, growable buffer of UTF-8 encoded csv rows. Values are encoded
+ * directly into the underlying byte array, such that encoding a row of
+ * numbers and plain ASCII ids allocates nothing.
+ */
+final class GtfsRowBuffer {
+
+  private byte[] _bytes;
+
+  private int _length = 0;
+
+  private boolean _rowStart = true;
+
+  public GtfsRowBuffer(int initialCapacity) {
+    _bytes = new byte[initialCapacity];
+  }
+
+  public int length() {
+    return _length;
+  }
+
+  public void clear() {
+    _length = 0;
+    _rowStart = true;
+  }
+
+  public void endRow() {
+    ensureCapacity(1);
+    _bytes[_length++] = '\n';
+    _rowStart = true;
+  }
+
+  public void appendEmpty() {
+    startValue();
+  }
+
+  /**
+   * Appends a string value, quoting it where it contains a delimiter, a quote
+   * or a line break. A null value is appended as an empty value.
+   */
+  public void appendString(String value) {
+    startValue();
+    if (value == null) {
+      return;
+    }
+    int n = value.length();
+    boolean quote = false;
+    for (int i = 0; i < n; ++i) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        appendEncoded(value);
+        return;
+      }
+      if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+        quote = true;
+      }
+    }
+    ensureCapacity(quote ? n * 2 + 2 : n);
+    if (quote) {
+      _bytes[_length++] = '"';
+    }
+    for (int i = 0; i < n; ++i) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        _bytes[_length++] = '"';
+      }
+      _bytes[_length++] = (byte) c;
+    }
+    if (quote) {
+      _bytes[_length++] = '"';
+    }
+  }
+
+  public void appendInt(int value) {
+    startValue();
+    appendDigits(value);
+  }
+
+  public void appendDouble(double value) {
+    startValue();
+    appendAscii(Double.toString(value));
+  }
+
+  /**
+   * Appends seconds since midnight as HH:MM:SS, with hours past 24 for service
+   * after midnight.
+   */
+  public void appendTime(int time) {
+    startValue();
+    if (time < 0) {
+      _bytes[_length++] = '-';
+      time = -time;
+    }
+    int hours = time / 3600;
+    int minutes = (time / 60) % 60;
+    int seconds = time % 60;
+    if (hours < 10) {
+      ensureCapacity(1);
+      _bytes[_length++] = '0';
+    }
+    appendDigits(hours);
+    ensureCapacity(6);
+    _bytes[_length++] = ':';
+    _bytes[_length++] = (byte) ('0' + minutes / 10);
+    _bytes[_length++] = (byte) ('0' + minutes % 10);
+    _bytes[_length++] = ':';
+    _bytes[_length++] = (byte) ('0' + seconds / 10);
+    _bytes[_length++] = (byte) ('0' + seconds % 10);
+  }
+
+  /**
+   * Appends a service date as YYYYMMDD.
+   */
+  public void appendDate(ServiceDate date) {
+    startValue();
+    appendDigits(date.getYear());
+    ensureCapacity(4);
+    int month = date.getMonth();
+    int day = date.getDay();
+    _bytes[_length++] = (byte) ('0' + month / 10);
+    _bytes[_length++] = (byte) ('0' + month % 10);
+    _bytes[_length++] = (byte) ('0' + day / 10);
+    _bytes[_length++] = (byte) ('0' + day % 10);
+  }
+
+  /**
+   * Appends a raw line, such as a header, followed by a line break.
+   */
+  public void appendLine(String line) {
+    appendAscii(line);
+    endRow();
+  }
+
+  public void writeTo(WritableByteChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(_bytes, 0, _length);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void startValue() {
+    if (!_rowStart) {
+      ensureCapacity(1);
+      _bytes[_length++] = ',';
+    }
+    // Leave room for a sign, which is the only thing written before a capacity
+    // check
+    ensureCapacity(1);
+    _rowStart = false;
+  }
+
+  private void appendDigits(int value) {
+    ensureCapacity(11);
+    if (value < 0) {
+      if (value == Integer.MIN_VALUE) {
+        appendAscii(Integer.toString(value));
+        return;
+      }
+      _bytes[_length++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (int v = value; v >= 10; v /= 10) {
+      digits++;
+    }
+    int end = _length + digits;
+    for (int i = end - 1; i >= _length; --i) {
+      _bytes[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    _length = end;
+  }
+
+  private void appendAscii(String value) {
+    int n = value.length();
+    ensureCapacity(n);
+    for (int i = 0; i < n; ++i) {
+      _bytes[_length++] = (byte) value.charAt(i);
+    }
+  }
+
+  private void appendEncoded(String value) {
+    boolean quote = value.indexOf(',') != -1 || value.indexOf('"') != -1
+        || value.indexOf('\n') != -1 || value.indexOf('\r') != -1;
+    if (quote) {
+      value = "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+    ensureCapacity(encoded.length);
+    System.arraycopy(encoded, 0, _bytes, _length, encoded.length);
+    _length += encoded.length;
+  }
+
+  private void ensureCapacity(int additional) {
+    if (_length + additional > _bytes.length) {
+      _bytes = Arrays.copyOf(_bytes,
+          Math.max(_bytes.length * 2, _length + additional));
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.IOException;
+
+import org.onebusaway.gtfs.model.Agency;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Route;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.Trip;
+
+/**
+ * The output of a {@link Vdv452ToGtfsFactory}. Entities are saved once they
+ * are fully populated, and may not be modified afterwards.
+ */
+public interface GtfsSink {
+
+  public Agency getAgencyForId(String id);
+
+  public Route getRouteForId(AgencyAndId id);
+
+  public Stop getStopForId(AgencyAndId id);
+
+  /**
+   * @return the previously saved trip with the specified id, or null if there
+   *         is none or the sink doesn't retain trips
+   */
+  public Trip getTripForId(AgencyAndId id);
+
+  public void saveEntity(Object entity);
+
+  public void saveOrUpdateEntity(Object entity);
+
+  /**
+   * Completes any pending output.
+   */
+  public void close() throws IOException;
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.Journey;
+import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.TimingGroup;
+
+/**
+ * Finds runs of journeys that only differ in their departure time, which
+ * advances by a constant headway from one journey to the next. Journeys of the
+ * same line, timing group and day type share their route, their service id
+ * and their stop times relative to their departure, such that such a run can
+ * be written as a single template trip with an exact_times frequency.
+ */
+public class HeadwayDetector {
+
+  public static final int DEFAULT_MIN_RUN_LENGTH = 3;
+
+  private int _minRunLength = DEFAULT_MIN_RUN_LENGTH;
+
+  /**
+   * Runs of fewer journeys than this are left as individual journeys.
+   */
+  public void setMinRunLength(int minRunLength) {
+    _minRunLength = Math.max(minRunLength, 2);
+  }
+
+  /**
+   * @return the runs covering all of the specified journeys, ordered by their
+   *         first journey according to {@link JourneyComparator}
+   */
+  public List<JourneyRun> getRuns(List<Journey> journeys) {
+    Comparator<Journey> comparator = new JourneyComparator();
+    List<Journey> sorted = new ArrayList<Journey>(journeys);
+    Collections.sort(sorted, comparator);
+
+    // Journeys are grouped in sorted order, so each group is sorted by
+    // departure time
+    Map<GroupKey, List<Journey>> groups = new LinkedHashMap<GroupKey, List<Journey>>();
+    for (Journey journey : sorted) {
+      GroupKey key = new GroupKey(journey.getLine(), journey.getTimingGroup(),
+          journey.getDayType());
+      List<Journey> group = groups.get(key);
+      if (group == null) {
+        group = new ArrayList<Journey>();
+        groups.put(key, group);
+      }
+      group.add(journey);
+    }
+
+    List<JourneyRun> runs = new ArrayList<JourneyRun>();
+    for (List<Journey> group : groups.values()) {
+      addRunsForGroup(group, runs);
+    }
+    Collections.sort(runs, new JourneyRunComparator(comparator));
+    return runs;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void addRunsForGroup(List<Journey> group, List<JourneyRun> runs) {
+    int i = 0;
+    while (i < group.size()) {
+      int end = i + 1;
+      int headway = 0;
+      if (end < group.size()) {
+        headway = group.get(end).getDepartureTime()
+            - group.get(i).getDepartureTime();
+        if (headway > 0) {
+          while (end < group.size()
+              && group.get(end).getDepartureTime()
+                  - group.get(end - 1).getDepartureTime() == headway) {
+            end++;
+          }
+        }
+      }
+      int count = end - i;
+      if (headway > 0 && count >= _minRunLength) {
+        runs.add(new JourneyRun(group.get(i), count, headway));
+        i = end;
+      } else {
+        runs.add(new JourneyRun(group.get(i), 1, 0));
+        i++;
+      }
+    }
+  }
+
+  private static class GroupKey {
+
+    private final Line _line;
+
+    private final TimingGroup _timingGroup;
+
+    private final DayType _dayType;
+
+    public GroupKey(Line line, TimingGroup timingGroup, DayType dayType) {
+      _line = line;
+      _timingGroup = timingGroup;
+      _dayType = dayType;
+    }
+
+    @Override
+    public int hashCode() {
+      return (31 * _line.hashCode() + _timingGroup.hashCode()) * 31
+          + _dayType.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof GroupKey)) {
+        return false;
+      }
+      GroupKey other = (GroupKey) obj;
+      return _line.equals(other._line)
+          && _timingGroup.equals(other._timingGroup)
+          && _dayType.equals(other._dayType);
+    }
+  }
+
+  private static class JourneyRunComparator implements Comparator<JourneyRun> {
+
+    private final Comparator<Journey> _journeyComparator;
+
+    public JourneyRunComparator(Comparator<Journey> journeyComparator) {
+      _journeyComparator = journeyComparator;
+    }
+
+    @Override
+    public int compare(JourneyRun a, JourneyRun b) {
+      return _journeyComparator.compare(a.getFirstJourney(),
+          b.getFirstJourney());
+    }
+  }
+}
@@ -0,0 +1,490 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+
+import org.onebusaway.gtfs.model.StopTime;
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.Journey;
+import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.LineId;
+import org.onebusaway.vdv452.model.Period;
+import org.onebusaway.vdv452.model.RouteSequence;
+import org.onebusaway.vdv452.model.ServiceDate;
+import org.onebusaway.vdv452.model.Stop;
+import org.onebusaway.vdv452.model.StopId;
+import org.onebusaway.vdv452.model.StopPoint;
+import org.onebusaway.vdv452.model.TimingGroup;
+import org.onebusaway.vdv452.model.TransportCompany;
+import org.onebusaway.vdv452.model.TravelTime;
+import org.onebusaway.vdv452.model.VersionedId;
+import org.onebusaway.vdv452.model.WaitTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts a VDV feed to a GTFS directory through a
+ * {@link StreamingGtfsFileSink}, reusing the output of the previous run where
+ * its inputs haven't changed, as recorded in a {@link ConversionManifest}.
+ *
+ * The trips and stop times of each line are written as a contiguous segment
+ * of trips.txt and stop_times.txt, as are the calendar entries of each day
+ * type in calendar.txt and calendar_dates.txt. Each segment is fingerprinted
+ * from the entities its rows are derived from: a line with its route sequence
+ * and stops, the journeys of the line, and the travel and wait times of their
+ * timing groups, or a day type with its periods. As trip and service ids
+ * leave out the base version, rows are only written for the first journey or
+ * day type with an id, so the fingerprint also records which ids were
+ * already written by earlier segments. A segment whose fingerprint is
+ * unchanged is copied from the previous output instead of being converted
+ * again. Agencies, stops and routes are always converted, as they are cheap.
+ */
+class IncrementalGtfsConverter {
+
+  private static final String TRIPS = "trips.txt";
+
+  private static final String STOP_TIMES = "stop_times.txt";
+
+  private static final String CALENDAR = "calendar.txt";
+
+  private static final String CALENDAR_DATES = "calendar_dates.txt";
+
+  private static final String[] JOURNEY_FILES = {TRIPS, STOP_TIMES};
+
+  private static final String[] CALENDAR_FILES = {CALENDAR, CALENDAR_DATES};
+
+  private static Logger _log = LoggerFactory.getLogger(IncrementalGtfsConverter.class);
+
+  private final Vdv452Reader _reader;
+
+  private Vdv452Dao _in;
+
+  private final File _outputDirectory;
+
+  private final File _manifestPath;
+
+  private final TimeZone _tz;
+
+  private ExecutorService _executor = null;
+
+  private int _threads = 1;
+
+  private final Map<TimingGroup, String> _timingGroupFingerprints = new HashMap<TimingGroup, String>();
+
+  private int _reusedSegments = 0;
+
+  private int _convertedSegments = 0;
+
+  /**
+   * @param reader the reader of the VDV feed, with its input location set
+   */
+  public IncrementalGtfsConverter(Vdv452Reader reader, File outputDirectory,
+      File manifestPath, TimeZone tz) {
+    _reader = reader;
+    _outputDirectory = outputDirectory;
+    _manifestPath = manifestPath;
+    _tz = tz;
+  }
+
+  /**
+   * When set, the journeys of changed lines are converted concurrently. See
+   * {@link ParallelTripGenerator}.
+   */
+  public void setExecutor(ExecutorService executor, int threads) {
+    _executor = executor;
+    _threads = threads;
+  }
+
+  /**
+   * @return the number of segments copied from the previous output by
+   *         {@link #run()}
+   */
+  int getReusedSegments() {
+    return _reusedSegments;
+  }
+
+  /**
+   * @return the number of segments converted by {@link #run()}
+   */
+  int getConvertedSegments() {
+    return _convertedSegments;
+  }
+
+  public void run() throws IOException {
+    Map<String, String> tableFingerprints = _reader.getTableFingerprints();
+    String selection = _reader.getSelectionKey();
+    ConversionManifest manifest = new ConversionManifest();
+    manifest.setTables(tableFingerprints);
+    manifest.setSelection(selection == null ? "" : selection);
+    // Written to agency.txt, so the output is out of date once it changes
+    manifest.putSetting("timeZone", _tz.getID());
+
+    ConversionManifest previous = ConversionManifest.read(_manifestPath);
+    if (previous != null && !previous.isOutputIntact(_outputDirectory)) {
+      _log.info("output differs from the manifest, converting everything");
+      previous = null;
+    }
+    if (selection == null) {
+      _log.info("the records read can't be identified, comparing all entities");
+    } else if (previous != null
+        && previous.getTables().equals(tableFingerprints)
+        && previous.getSelection().equals(selection)
+        && previous.getSettings().equals(manifest.getSettings())) {
+      _log.info("input tables and settings are unchanged, output is up to date");
+      return;
+    }
+    _reader.run();
+    _in = _reader.getDao().freeze(_executor);
+
+    computeEntityFingerprints(manifest);
+    if (previous != null) {
+      logChangedEntities(previous, manifest);
+    } else {
+      previous = new ConversionManifest();
+    }
+
+    File tmpDirectory = new File(_outputDirectory.getPath() + ".incremental");
+    deleteFiles(tmpDirectory);
+    StreamingGtfsFileSink out = new StreamingGtfsFileSink(tmpDirectory,
+        _threads);
+    try {
+      Vdv452ToGtfsFactory factory = new Vdv452ToGtfsFactory(_in, out, _tz);
+      for (TransportCompany company : _in.getAllTransportCompanies()) {
+        factory.getAgencyForTransportCompany(company);
+      }
+      for (StopPoint stop : _in.getAllStopPoints()) {
+        factory.getStopForStopPoint(stop);
+      }
+      for (Line line : _in.getAllLines()) {
+        factory.getRouteForLine(line);
+      }
+      writeCalendars(factory, out, previous, manifest);
+      writeJourneys(factory, out, previous, manifest);
+    } finally {
+      out.close();
+    }
+
+    File[] files = tmpDirectory.listFiles();
+    _outputDirectory.mkdirs();
+    for (File file : files) {
+      manifest.putFile(file.getName(), file.length());
+      File target = new File(_outputDirectory, file.getName());
+      Files.move(file.toPath(), target.toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+    tmpDirectory.delete();
+    manifest.write(_manifestPath);
+    _log.info("segments: " + _reusedSegments + " reused, "
+        + _convertedSegments + " converted");
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void writeCalendars(Vdv452ToGtfsFactory factory,
+      StreamingGtfsFileSink out, ConversionManifest previous,
+      ConversionManifest manifest) throws IOException {
+    for (DayType dayType : _in.getAllDayTypes()) {
+      String key = getKey(dayType);
+      Fingerprint fingerprint = new Fingerprint();
+      fingerprint.add(manifest.getEntities().get(key));
+      fingerprint.add(factory.hasCalendarEntriesForDayType(dayType) ? 1 : 0);
+      long[] start = getSizes(out, CALENDAR_FILES);
+      ConversionManifest.Segment segment = previous.getSegment(key,
+          fingerprint.toString());
+      if (segment != null) {
+        appendSegment(out, segment, CALENDAR_FILES);
+        factory.putCalendarEntriesForDayType(dayType);
+      } else {
+        factory.createCalendarEntriesForDayType(dayType);
+        _convertedSegments++;
+      }
+      putSegment(manifest, key, fingerprint.toString(), CALENDAR_FILES, start,
+          getSizes(out, CALENDAR_FILES));
+    }
+  }
+
+  private void writeJourneys(Vdv452ToGtfsFactory factory,
+      StreamingGtfsFileSink out, ConversionManifest previous,
+      ConversionManifest manifest) throws IOException {
+    List<Journey> journeys = new ArrayList<Journey>(_in.getAllJourneys());
+    // Sorted by line first, so the journeys of each line are contiguous
+    Collections.sort(journeys, new JourneyComparator());
+    int start = 0;
+    while (start < journeys.size()) {
+      Line line = journeys.get(start).getLine();
+      int end = start + 1;
+      while (end < journeys.size()
+          && journeys.get(end).getLine().getId().equals(line.getId())) {
+        end++;
+      }
+      List<Journey> lineJourneys = journeys.subList(start, end);
+      String key = getKey(line);
+      String fingerprint = getJourneysFingerprint(factory, out,
+          manifest.getEntities().get(key), lineJourneys);
+      long[] startSizes = getSizes(out, JOURNEY_FILES);
+      ConversionManifest.Segment segment = previous.getSegment(key,
+          fingerprint);
+      if (segment != null) {
+        appendSegment(out, segment, JOURNEY_FILES);
+        // The appended trips must not be written again for another line, while
+        // ids written earlier are part of the fingerprint, so this only skips
+        // the journeys of the line that share a trip
+        for (Journey journey : lineJourneys) {
+          out.putTripId(factory.getTripIdForJourney(journey));
+        }
+      } else {
+        convertJourneys(factory, lineJourneys);
+        _convertedSegments++;
+      }
+      putSegment(manifest, key, fingerprint, JOURNEY_FILES, startSizes,
+          getSizes(out, JOURNEY_FILES));
+      start = end;
+    }
+  }
+
+  /**
+   * Calendars have been written per day type already, so trips are created
+   * and saved without going through
+   * {@link Vdv452ToGtfsFactory#getTripForJourney(Journey)}.
+   */
+  private void convertJourneys(Vdv452ToGtfsFactory factory,
+      List<Journey> journeys) throws IOException {
+    if (_executor != null) {
+      new ParallelTripGenerator(factory, _executor, _threads).run(journeys);
+      return;
+    }
+    List<StopTime> stopTimes = new ArrayList<StopTime>();
+    for (Journey journey : journeys) {
+      stopTimes.clear();
+      factory.saveTrip(factory.createTripForJourney(journey, stopTimes),
+          stopTimes);
+    }
+  }
+
+  private void appendSegment(StreamingGtfsFileSink out,
+      ConversionManifest.Segment segment, String[] filenames)
+      throws IOException {
+    for (String filename : filenames) {
+      long[] range = segment.getRange(filename);
+      if (range != null) {
+        out.appendSegment(filename, new File(_outputDirectory, filename),
+            range[0], range[1]);
+      }
+    }
+    _reusedSegments++;
+  }
+
+  private static long[] getSizes(StreamingGtfsFileSink out, String[] filenames)
+      throws IOException {
+    long[] sizes = new long[filenames.length];
+    for (int i = 0; i < filenames.length; ++i) {
+      sizes[i] = out.getSize(filenames[i]);
+    }
+    return sizes;
+  }
+
+  private static void putSegment(ConversionManifest manifest, String key,
+      String fingerprint, String[] filenames, long[] start, long[] end) {
+    ConversionManifest.Segment segment = manifest.putSegment(key, fingerprint);
+    for (int i = 0; i < filenames.length; ++i) {
+      segment.putRange(filenames[i], start[i], end[i] - start[i]);
+    }
+  }
+
+  private void computeEntityFingerprints(ConversionManifest manifest) {
+    for (DayType dayType : _in.getAllDayTypes()) {
+      Fingerprint fingerprint = new Fingerprint();
+      for (Period period : _in.getPeriodsForDayType(dayType)) {
+        ServiceDate date = period.getDate();
+        fingerprint.add(date.getYear() * 10000 + date.getMonth() * 100
+            + date.getDay());
+      }
+      manifest.putEntity(getKey(dayType), fingerprint.toString());
+    }
+
+    Map<TimingGroup, Fingerprint> groups = new HashMap<TimingGroup, Fingerprint>();
+    for (TravelTime travelTime : _in.getAllTravelTimes()) {
+      Fingerprint fingerprint = getFingerprint(groups,
+          travelTime.getTimingGroup());
+      fingerprint.add(travelTime.getFromStop().getId());
+      fingerprint.add(travelTime.getToStop().getId());
+      fingerprint.add(travelTime.getTravelTime());
+    }
+    for (WaitTime waitTime : _in.getAllWaitTimes()) {
+      Fingerprint fingerprint = getFingerprint(groups,
+          waitTime.getTimingGroup());
+      fingerprint.add(waitTime.getStop().getId());
+      fingerprint.add(waitTime.getWaitTime());
+    }
+    for (TimingGroup timingGroup : _in.getAllTimingGroups()) {
+      Fingerprint fingerprint = getFingerprint(groups, timingGroup);
+      String value = fingerprint.toString();
+      _timingGroupFingerprints.put(timingGroup, value);
+      manifest.putEntity(getKey(timingGroup), value);
+    }
+
+    for (Line line : _in.getAllLines()) {
+      Fingerprint fingerprint = new Fingerprint();
+      fingerprint.add(line.getShortName());
+      fingerprint.add(line.getLongName());
+      for (RouteSequence sequence : _in.getRouteSequenceForLine(line)) {
+        StopId stopId = sequence.getStop().getId();
+        Stop stop = _in.getStopForId(stopId);
+        fingerprint.add(sequence.getSequence());
+        fingerprint.add(stopId);
+        if (stop != null) {
+          fingerprint.add(stop.getName());
+          fingerprint.add(Double.doubleToLongBits(stop.getLat()));
+          fingerprint.add(Double.doubleToLongBits(stop.getLng()));
+        }
+      }
+      manifest.putEntity(getKey(line), fingerprint.toString());
+    }
+  }
+
+  private String getJourneysFingerprint(Vdv452ToGtfsFactory factory,
+      StreamingGtfsFileSink out, String lineFingerprint,
+      List<Journey> journeys) {
+    Fingerprint fingerprint = new Fingerprint();
+    fingerprint.add(lineFingerprint);
+    for (Journey journey : journeys) {
+      boolean written = out.getTripForId(factory.getTripIdForJourney(journey)) != null;
+      fingerprint.add(written ? 1 : 0);
+      VersionedId id = journey.getId();
+      fingerprint.add(id.getVersion());
+      fingerprint.add(id.getId());
+      fingerprint.add(journey.getDepartureTime());
+      fingerprint.add(getKey(journey.getDayType()));
+      fingerprint.add(getKey(journey.getTimingGroup()));
+      fingerprint.add(_timingGroupFingerprints.get(journey.getTimingGroup()));
+    }
+    return fingerprint.toString();
+  }
+
+  private static Fingerprint getFingerprint(
+      Map<TimingGroup, Fingerprint> fingerprints, TimingGroup timingGroup) {
+    Fingerprint fingerprint = fingerprints.get(timingGroup);
+    if (fingerprint == null) {
+      fingerprint = new Fingerprint();
+      fingerprints.put(timingGroup, fingerprint);
+    }
+    return fingerprint;
+  }
+
+  private static void logChangedEntities(ConversionManifest previous,
+      ConversionManifest manifest) {
+    Map<String, Integer> changed = new HashMap<String, Integer>();
+    for (Map.Entry<String, String> entry : manifest.getEntities().entrySet()) {
+      if (!entry.getValue().equals(previous.getEntities().get(entry.getKey()))) {
+        String type = entry.getKey().substring(0, entry.getKey().indexOf(':'));
+        Integer count = changed.get(type);
+        changed.put(type, count == null ? 1 : count + 1);
+      }
+    }
+    _log.info("changed or added entities: " + changed);
+  }
+
+  private static String getKey(DayType dayType) {
+    if (dayType == null) {
+      return "dayType:";
+    }
+    VersionedId id = dayType.getId();
+    return "dayType:" + id.getVersion() + ":" + id.getId();
+  }
+
+  private static String getKey(TimingGroup timingGroup) {
+    if (timingGroup == null) {
+      return "timingGroup:";
+    }
+    VersionedId id = timingGroup.getId();
+    return "timingGroup:" + id.getVersion() + ":" + id.getId();
+  }
+
+  private static String getKey(Line line) {
+    LineId id = line.getId();
+    String variant = id.getLineVariant();
+    try {
+      // Keeps the key free of the manifest's separators
+      variant = variant == null ? "" : URLEncoder.encode(variant, "UTF-8");
+    } catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+    return "line:" + id.getVersion() + ":" + id.getLineId() + ":" + variant;
+  }
+
+  private static void deleteFiles(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * A SHA-256 digest of a sequence of values.
+   */
+  private static class Fingerprint {
+
+    private final MessageDigest _digest = Vdv452TableFingerprints.createDigest();
+
+    private final ByteBuffer _buffer = ByteBuffer.allocate(8);
+
+    public void add(long value) {
+      _buffer.clear();
+      _digest.update(_buffer.putLong(value).array());
+    }
+
+    public void add(String value) {
+      if (value == null) {
+        add(-1);
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      add(bytes.length);
+      _digest.update(bytes);
+    }
+
+    public void add(StopId id) {
+      add(id.getVersion());
+      add(id.getType() == null ? -1 : id.getType().ordinal());
+      add(id.getId());
+    }
+
+    @Override
+    public String toString() {
+      return Vdv452TableFingerprints.toHex(_digest.digest());
+    }
+  }
+}
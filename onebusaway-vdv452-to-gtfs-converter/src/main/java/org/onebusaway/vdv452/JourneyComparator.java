@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.Comparator;
+
+import org.onebusaway.vdv452.model.Journey;
+import org.onebusaway.vdv452.model.LineId;
+import org.onebusaway.vdv452.model.VersionedId;
+
+/**
+ * Orders journeys by line, then departure time, then journey id, which gives
+ * a stable order for the converted trips that doesn't depend on how the
+ * journeys were read.
+ */
+public class JourneyComparator implements Comparator<Journey> {
+
+  @Override
+  public int compare(Journey a, Journey b) {
+    int c = compareLineIds(a.getLine().getId(), b.getLine().getId());
+    if (c != 0) {
+      return c;
+    }
+    c = compareLongs(a.getDepartureTime(), b.getDepartureTime());
+    if (c != 0) {
+      return c;
+    }
+    VersionedId idA = a.getId();
+    VersionedId idB = b.getId();
+    c = compareLongs(idA.getVersion(), idB.getVersion());
+    if (c != 0) {
+      return c;
+    }
+    return compareLongs(idA.getId(), idB.getId());
+  }
+
+  private static int compareLineIds(LineId a, LineId b) {
+    int c = compareLongs(a.getVersion(), b.getVersion());
+    if (c != 0) {
+      return c;
+    }
+    c = compareLongs(a.getLineId(), b.getLineId());
+    if (c != 0) {
+      return c;
+    }
+    String variantA = a.getLineVariant();
+    String variantB = b.getLineVariant();
+    if (variantA == null || variantB == null) {
+      return variantA == null ? (variantB == null ? 0 : -1) : 1;
+    }
+    return variantA.compareTo(variantB);
+  }
+
+  private static int compareLongs(long a, long b) {
+    return a < b ? -1 : (a > b ? 1 : 0);
+  }
+}
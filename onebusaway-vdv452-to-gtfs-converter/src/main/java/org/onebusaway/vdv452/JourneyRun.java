@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import org.onebusaway.vdv452.model.Journey;
+
+/**
+ * A run of journeys of the same line, timing group and day type that depart
+ * at a constant headway, as found by {@link HeadwayDetector}. A journey that
+ * isn't part of any such run forms a run of its own, with a headway of zero.
+ */
+public class JourneyRun {
+
+  private final Journey _firstJourney;
+
+  private final int _count;
+
+  private final int _headway;
+
+  public JourneyRun(Journey firstJourney, int count, int headway) {
+    _firstJourney = firstJourney;
+    _count = count;
+    _headway = headway;
+  }
+
+  /**
+   * @return the earliest journey of the run, which serves as the template trip
+   */
+  public Journey getFirstJourney() {
+    return _firstJourney;
+  }
+
+  public int getCount() {
+    return _count;
+  }
+
+  /**
+   * @return the headway in seconds, or zero for a single journey
+   */
+  public int getHeadway() {
+    return _headway;
+  }
+
+  public int getLastDepartureTime() {
+    return _firstJourney.getDepartureTime() + (_count - 1) * _headway;
+  }
+
+  public boolean isFrequencyBased() {
+    return _count > 1;
+  }
+}
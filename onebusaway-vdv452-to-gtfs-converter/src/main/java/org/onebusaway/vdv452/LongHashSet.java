@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+/**
+ * An open-addressing set of primitive longs, used to remember the ids of the
+ * trips written by a {@link StreamingGtfsFileSink} without retaining the trips
+ * themselves.
+ */
+class LongHashSet {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Zero marks an empty slot, so whether zero is in the set is kept apart.
+   */
+  private long[] _keys = new long[INITIAL_CAPACITY];
+
+  private boolean _containsZero = false;
+
+  private int _size = 0;
+
+  public int size() {
+    return _size;
+  }
+
+  public boolean contains(long key) {
+    if (key == 0) {
+      return _containsZero;
+    }
+    int mask = _keys.length - 1;
+    int i = hash(key) & mask;
+    while (_keys[i] != 0) {
+      if (_keys[i] == key) {
+        return true;
+      }
+      i = (i + 1) & mask;
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the key wasn't in the set yet
+   */
+  public boolean add(long key) {
+    if (key == 0) {
+      if (_containsZero) {
+        return false;
+      }
+      _containsZero = true;
+      _size++;
+      return true;
+    }
+    int mask = _keys.length - 1;
+    int i = hash(key) & mask;
+    while (_keys[i] != 0) {
+      if (_keys[i] == key) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    _keys[i] = key;
+    if (++_size * 2 > _keys.length) {
+      rehash(_keys.length * 2);
+    }
+    return true;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void rehash(int capacity) {
+    long[] keys = _keys;
+    _keys = new long[capacity];
+    int mask = capacity - 1;
+    for (long key : keys) {
+      if (key == 0) {
+        continue;
+      }
+      int i = hash(key) & mask;
+      while (_keys[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      _keys[i] = key;
+    }
+  }
+
+  private static int hash(long key) {
+    long h = key * 0xC2B2AE3D27D4EB4FL;
+    return (int) (h ^ (h >>> 32));
+  }
+}
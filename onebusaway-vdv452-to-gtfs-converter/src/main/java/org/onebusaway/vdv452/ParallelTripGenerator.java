@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.onebusaway.gtfs.model.StopTime;
+import org.onebusaway.gtfs.model.Trip;
+import org.onebusaway.vdv452.model.Journey;
+
+/**
+ * Converts journeys to trips on a pool of worker threads. Journeys are split
+ * into chunks that are converted concurrently in waves, after which the trips
+ * of a wave are saved on the calling thread in the order of the journeys, such
+ * that the output doesn't depend on the number of threads. Nothing is saved
+ * while a wave is being converted, which keeps the workers' reads of the
+ * output safe.
+ */
+class ParallelTripGenerator {
+
+  private static final int CHUNK_SIZE = 256;
+
+  private final Vdv452ToGtfsFactory _factory;
+
+  private final ExecutorService _executor;
+
+  private final int _chunksPerWave;
+
+  public ParallelTripGenerator(Vdv452ToGtfsFactory factory,
+      ExecutorService executor, int threads) {
+    _factory = factory;
+    _executor = executor;
+    _chunksPerWave = threads * 4;
+  }
+
+  public void run(List<Journey> journeys) throws InterruptedIOException {
+    int waveSize = CHUNK_SIZE * _chunksPerWave;
+    List<Future<ConvertedChunk>> wave = new ArrayList<Future<ConvertedChunk>>();
+    for (int waveStart = 0; waveStart < journeys.size(); waveStart += waveSize) {
+      int waveEnd = Math.min(waveStart + waveSize, journeys.size());
+      for (int start = waveStart; start < waveEnd; start += CHUNK_SIZE) {
+        int end = Math.min(start + CHUNK_SIZE, waveEnd);
+        wave.add(_executor.submit(new ChunkTask(journeys.subList(start, end))));
+      }
+      for (Future<ConvertedChunk> future : wave) {
+        ConvertedChunk chunk = get(future);
+        for (int i = 0; i < chunk._trips.size(); ++i) {
+          _factory.saveTrip(chunk._trips.get(i), chunk._stopTimes.get(i));
+        }
+      }
+      wave.clear();
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static ConvertedChunk get(Future<ConvertedChunk> future)
+      throws InterruptedIOException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted converting journeys");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException("error converting journeys", cause);
+    }
+  }
+
+  private class ChunkTask implements Callable<ConvertedChunk> {
+
+    private final List<Journey> _journeys;
+
+    public ChunkTask(List<Journey> journeys) {
+      _journeys = journeys;
+    }
+
+    @Override
+    public ConvertedChunk call() {
+      ConvertedChunk chunk = new ConvertedChunk(_journeys.size());
+      for (Journey journey : _journeys) {
+        List<StopTime> stopTimes = new ArrayList<StopTime>();
+        chunk._trips.add(_factory.createTripForJourney(journey, stopTimes));
+        chunk._stopTimes.add(stopTimes);
+      }
+      return chunk;
+    }
+  }
+
+  private static class ConvertedChunk {
+
+    private final List<Trip> _trips;
+
+    private final List<List<StopTime>> _stopTimes;
+
+    public ConvertedChunk(int size) {
+      _trips = new ArrayList<Trip>(size);
+      _stopTimes = new ArrayList<List<StopTime>>(size);
+    }
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.ServiceCalendar;
+import org.onebusaway.gtfs.model.ServiceCalendarDate;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.Period;
+
+/**
+ * Computes the GTFS calendar entries for a VDV day type. The operating days of
+ * the day type are held as a bitset indexed by epoch day, computed directly
+ * from the year, month and day of each {@link Period} without any time zone
+ * or {@link java.util.Calendar} objects.
+ *
+ * A weekday is part of the weekly pattern when the day type operates on the
+ * majority of its occurrences within the date range, which minimizes the
+ * number of exceptions. A calendar.txt entry plus exceptions is only used when
+ * that takes fewer rows than listing each operating day in calendar_dates.txt.
+ * The engine only reads from the {@link Vdv452Dao}, so day types can be
+ * processed concurrently.
+ */
+public class ServiceCalendarEngine {
+
+  /**
+   * For each remainder r, the bits j of a word with j % 7 == r.
+   */
+  private static final long[] WEEKDAY_MASKS = new long[7];
+
+  static {
+    for (int j = 0; j < 64; ++j) {
+      WEEKDAY_MASKS[j % 7] |= 1L << j;
+    }
+  }
+
+  private final Vdv452Dao _dao;
+
+  public ServiceCalendarEngine(Vdv452Dao dao) {
+    _dao = dao;
+  }
+
+  public List<Object> getCalendarEntitiesForDayType(AgencyAndId serviceId,
+      DayType dayType) {
+    List<Period> periods = _dao.getPeriodsForDayType(dayType);
+    List<Object> entities = new ArrayList<Object>();
+    if (periods.isEmpty()) {
+      return entities;
+    }
+    int[] days = new int[periods.size()];
+    int first = Integer.MAX_VALUE;
+    int last = Integer.MIN_VALUE;
+    for (int i = 0; i < days.length; ++i) {
+      org.onebusaway.vdv452.model.ServiceDate date = periods.get(i).getDate();
+      days[i] = getEpochDay(date.getYear(), date.getMonth(), date.getDay());
+      first = Math.min(first, days[i]);
+      last = Math.max(last, days[i]);
+    }
+    long[] active = new long[((last - first) >> 6) + 1];
+    for (int day : days) {
+      int bit = day - first;
+      active[bit >> 6] |= 1L << bit;
+    }
+    computeCalendarEntities(serviceId, first, last, active, entities);
+    return entities;
+  }
+
+  /**
+   * @return the number of days since 1970-01-01 in the proleptic Gregorian
+   *         calendar
+   */
+  public static int getEpochDay(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day
+        - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+        + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  public static ServiceDate getServiceDateForEpochDay(int epochDay) {
+    int z = epochDay + 719468;
+    int era = (z >= 0 ? z : z - 146096) / 146097;
+    int dayOfEra = z - era * 146097;
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra
+        / 146096) / 365;
+    int dayOfYear = dayOfEra
+        - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    return new ServiceDate(year, month, day);
+  }
+
+  /**
+   * @return the day of the week of an epoch day, with Monday as 0
+   */
+  public static int getWeekday(int epochDay) {
+    // 1970-01-01 was a Thursday
+    int weekday = (epochDay + 3) % 7;
+    return weekday < 0 ? weekday + 7 : weekday;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void computeCalendarEntities(AgencyAndId serviceId, int first,
+      int last, long[] active, List<Object> entities) {
+    int words = active.length;
+    int[] activeCounts = new int[7];
+    int[] totalCounts = new int[7];
+    for (int i = 0; i < words; ++i) {
+      long valid = getValidBits(i, first, last);
+      int offset = getWeekday(first + (i << 6));
+      for (int weekday = 0; weekday < 7; ++weekday) {
+        long mask = valid & getWeekdayMask(weekday, offset);
+        activeCounts[weekday] += Long.bitCount(active[i] & mask);
+        totalCounts[weekday] += Long.bitCount(mask);
+      }
+    }
+
+    boolean[] weekdays = new boolean[7];
+    boolean anyWeekday = false;
+    for (int weekday = 0; weekday < 7; ++weekday) {
+      weekdays[weekday] = activeCounts[weekday] * 2 > totalCounts[weekday];
+      anyWeekday |= weekdays[weekday];
+    }
+
+    long[] added = new long[words];
+    long[] removed = new long[words];
+    int activeDays = 0;
+    int exceptions = 0;
+    for (int i = 0; i < words; ++i) {
+      int offset = getWeekday(first + (i << 6));
+      long pattern = 0;
+      for (int weekday = 0; weekday < 7; ++weekday) {
+        if (weekdays[weekday]) {
+          pattern |= getWeekdayMask(weekday, offset);
+        }
+      }
+      pattern &= getValidBits(i, first, last);
+      added[i] = active[i] & ~pattern;
+      removed[i] = pattern & ~active[i];
+      activeDays += Long.bitCount(active[i]);
+      exceptions += Long.bitCount(added[i]) + Long.bitCount(removed[i]);
+    }
+
+    if (!anyWeekday || activeDays <= exceptions + 1) {
+      addCalendarDates(serviceId, first, active, 1, entities);
+      return;
+    }
+    ServiceCalendar calendar = new ServiceCalendar();
+    calendar.setServiceId(serviceId);
+    calendar.setMonday(weekdays[0] ? 1 : 0);
+    calendar.setTuesday(weekdays[1] ? 1 : 0);
+    calendar.setWednesday(weekdays[2] ? 1 : 0);
+    calendar.setThursday(weekdays[3] ? 1 : 0);
+    calendar.setFriday(weekdays[4] ? 1 : 0);
+    calendar.setSaturday(weekdays[5] ? 1 : 0);
+    calendar.setSunday(weekdays[6] ? 1 : 0);
+    calendar.setStartDate(getServiceDateForEpochDay(first));
+    calendar.setEndDate(getServiceDateForEpochDay(last));
+    entities.add(calendar);
+    addCalendarDates(serviceId, first, added, 1, entities);
+    addCalendarDates(serviceId, first, removed, 2, entities);
+  }
+
+  private static void addCalendarDates(AgencyAndId serviceId, int first,
+      long[] bits, int exceptionType, List<Object> entities) {
+    for (int i = 0; i < bits.length; ++i) {
+      long word = bits[i];
+      while (word != 0) {
+        int bit = Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+        ServiceCalendarDate calendarDate = new ServiceCalendarDate();
+        calendarDate.setServiceId(serviceId);
+        calendarDate.setDate(getServiceDateForEpochDay(first + (i << 6) + bit));
+        calendarDate.setExceptionType(exceptionType);
+        entities.add(calendarDate);
+      }
+    }
+  }
+
+  /**
+   * @param offset the weekday of bit 0 of the word
+   * @return the bits of a word that fall on the specified weekday
+   */
+  private static long getWeekdayMask(int weekday, int offset) {
+    return WEEKDAY_MASKS[(weekday - offset + 7) % 7];
+  }
+
+  /**
+   * @return the bits of the i-th word that fall within the date range
+   */
+  private static long getValidBits(int i, int first, int last) {
+    int remaining = last - first + 1 - (i << 6);
+    return remaining >= 64 ? -1L : (1L << remaining) - 1;
+  }
+}
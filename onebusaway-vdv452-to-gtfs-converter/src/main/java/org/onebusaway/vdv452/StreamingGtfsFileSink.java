@@ -0,0 +1,514 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.onebusaway.gtfs.model.Agency;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Frequency;
+import org.onebusaway.gtfs.model.Route;
+import org.onebusaway.gtfs.model.ServiceCalendar;
+import org.onebusaway.gtfs.model.ServiceCalendarDate;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.StopTime;
+import org.onebusaway.gtfs.model.Trip;
+
+/**
+ * A {@link GtfsSink} that writes GTFS files directly, without going through a
+ * GTFS DAO and the generic csv-entities writer. Saved entities are collected
+ * into batches per file, each batch is encoded into a reusable
+ * {@link GtfsRowBuffer} on a worker thread, and the encoded batches are
+ * appended to the file's channel in the order they were saved.
+ *
+ * Only agencies, routes and stops are retained for lookups, such that trips
+ * and stop times can be written with bounded memory. Of the trips, only their
+ * ids are retained, as a trip_id may only be written once, and
+ * {@link #getTripForId(AgencyAndId)} returns a trip with just its id. Entities
+ * can't be updated once saved, and {@link #saveOrUpdateEntity(Object)} is
+ * treated as {@link #saveEntity(Object)}.
+ */
+public class StreamingGtfsFileSink implements GtfsSink {
+
+  private static final int BATCH_SIZE = 4096;
+
+  private final File _outputDirectory;
+
+  private final ExecutorService _executor;
+
+  /**
+   * The number of encoded batches per file that may be waiting to be written,
+   * which bounds the memory used for buffering.
+   */
+  private final int _maxPendingBatches;
+
+  private final ConcurrentLinkedQueue<GtfsRowBuffer> _buffers = new ConcurrentLinkedQueue<GtfsRowBuffer>();
+
+  private final Map<String, Agency> _agencies = new HashMap<String, Agency>();
+
+  private final Map<AgencyAndId, Route> _routes = new HashMap<AgencyAndId, Route>();
+
+  private final Map<AgencyAndId, Stop> _stops = new HashMap<AgencyAndId, Stop>();
+
+  /**
+   * The ids of the trips written so far, as trip_id is written without the
+   * agency id. Numeric ids are kept without boxing, any other ids as strings.
+   */
+  private final LongHashSet _numericTripIds = new LongHashSet();
+
+  private final Set<String> _tripIds = new HashSet<String>();
+
+  private final EntityFile<Agency> _agencyFile = new EntityFile<Agency>(
+      "agency.txt",
+      "agency_id,agency_name,agency_url,agency_timezone,agency_lang") {
+    @Override
+    protected void encode(Agency agency, GtfsRowBuffer row) {
+      row.appendString(agency.getId());
+      row.appendString(agency.getName());
+      row.appendString(agency.getUrl());
+      row.appendString(agency.getTimezone());
+      row.appendString(agency.getLang());
+    }
+  };
+
+  private final EntityFile<Route> _routeFile = new EntityFile<Route>(
+      "routes.txt",
+      "route_id,agency_id,route_short_name,route_long_name,route_type") {
+    @Override
+    protected void encode(Route route, GtfsRowBuffer row) {
+      row.appendString(route.getId().getId());
+      row.appendString(route.getAgency().getId());
+      row.appendString(route.getShortName());
+      row.appendString(route.getLongName());
+      row.appendInt(route.getType());
+    }
+  };
+
+  private final EntityFile<Stop> _stopFile = new EntityFile<Stop>("stops.txt",
+      "stop_id,stop_name,stop_lat,stop_lon") {
+    @Override
+    protected void encode(Stop stop, GtfsRowBuffer row) {
+      row.appendString(stop.getId().getId());
+      row.appendString(stop.getName());
+      row.appendDouble(stop.getLat());
+      row.appendDouble(stop.getLon());
+    }
+  };
+
+  private final EntityFile<ServiceCalendar> _calendarFile = new EntityFile<ServiceCalendar>(
+      "calendar.txt",
+      "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date") {
+    @Override
+    protected void encode(ServiceCalendar calendar, GtfsRowBuffer row) {
+      row.appendString(calendar.getServiceId().getId());
+      row.appendInt(calendar.getMonday());
+      row.appendInt(calendar.getTuesday());
+      row.appendInt(calendar.getWednesday());
+      row.appendInt(calendar.getThursday());
+      row.appendInt(calendar.getFriday());
+      row.appendInt(calendar.getSaturday());
+      row.appendInt(calendar.getSunday());
+      row.appendDate(calendar.getStartDate());
+      row.appendDate(calendar.getEndDate());
+    }
+  };
+
+  private final EntityFile<ServiceCalendarDate> _calendarDateFile = new EntityFile<ServiceCalendarDate>(
+      "calendar_dates.txt", "service_id,date,exception_type") {
+    @Override
+    protected void encode(ServiceCalendarDate calendarDate, GtfsRowBuffer row) {
+      row.appendString(calendarDate.getServiceId().getId());
+      row.appendDate(calendarDate.getDate());
+      row.appendInt(calendarDate.getExceptionType());
+    }
+  };
+
+  private final EntityFile<Trip> _tripFile = new EntityFile<Trip>("trips.txt",
+      "route_id,service_id,trip_id") {
+    @Override
+    protected void encode(Trip trip, GtfsRowBuffer row) {
+      row.appendString(trip.getRoute().getId().getId());
+      row.appendString(trip.getServiceId().getId());
+      row.appendString(trip.getId().getId());
+    }
+  };
+
+  private final EntityFile<StopTime> _stopTimeFile = new EntityFile<StopTime>(
+      "stop_times.txt",
+      "trip_id,arrival_time,departure_time,stop_id,stop_sequence") {
+    @Override
+    protected void encode(StopTime stopTime, GtfsRowBuffer row) {
+      row.appendString(stopTime.getTrip().getId().getId());
+      row.appendTime(stopTime.getArrivalTime());
+      row.appendTime(stopTime.getDepartureTime());
+      row.appendString(stopTime.getStop().getId().getId());
+      row.appendInt(stopTime.getStopSequence());
+    }
+  };
+
+  private final EntityFile<Frequency> _frequencyFile = new EntityFile<Frequency>(
+      "frequencies.txt",
+      "trip_id,start_time,end_time,headway_secs,exact_times") {
+    @Override
+    protected void encode(Frequency frequency, GtfsRowBuffer row) {
+      row.appendString(frequency.getTrip().getId().getId());
+      row.appendTime(frequency.getStartTime());
+      row.appendTime(frequency.getEndTime());
+      row.appendInt(frequency.getHeadwaySecs());
+      row.appendInt(frequency.getExactTimes());
+    }
+  };
+
+  private final List<EntityFile<?>> _files = Arrays.<EntityFile<?>> asList(
+      _agencyFile, _routeFile, _stopFile, _calendarFile, _calendarDateFile,
+      _tripFile, _stopTimeFile, _frequencyFile);
+
+  public StreamingGtfsFileSink(File outputDirectory) {
+    this(outputDirectory, 1);
+  }
+
+  public StreamingGtfsFileSink(File outputDirectory, int threads) {
+    _outputDirectory = outputDirectory;
+    _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "gtfs-sink");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    _maxPendingBatches = threads * 2;
+  }
+
+  @Override
+  public Agency getAgencyForId(String id) {
+    return _agencies.get(id);
+  }
+
+  @Override
+  public Route getRouteForId(AgencyAndId id) {
+    return _routes.get(id);
+  }
+
+  @Override
+  public Stop getStopForId(AgencyAndId id) {
+    return _stops.get(id);
+  }
+
+  /**
+   * Trips aren't retained, so this returns a trip with just the id of the
+   * previously written trip.
+   */
+  @Override
+  public Trip getTripForId(AgencyAndId id) {
+    long numericId = parseNumericId(id.getId());
+    boolean written = numericId >= 0 ? _numericTripIds.contains(numericId)
+        : _tripIds.contains(id.getId());
+    if (!written) {
+      return null;
+    }
+    Trip trip = new Trip();
+    trip.setId(id);
+    return trip;
+  }
+
+  /**
+   * Records a trip that was written without going through
+   * {@link #saveEntity(Object)}, such as in a segment appended with
+   * {@link #appendSegment(String, File, long, long)}.
+   *
+   * @return false if a trip with the same id has been written already
+   */
+  public boolean putTripId(AgencyAndId id) {
+    long numericId = parseNumericId(id.getId());
+    if (numericId >= 0) {
+      return _numericTripIds.add(numericId);
+    }
+    return _tripIds.add(id.getId());
+  }
+
+  @Override
+  public void saveEntity(Object entity) {
+    try {
+      if (entity instanceof StopTime) {
+        _stopTimeFile.add((StopTime) entity);
+      } else if (entity instanceof Trip) {
+        Trip trip = (Trip) entity;
+        if (!putTripId(trip.getId())) {
+          throw new IllegalArgumentException("duplicate trip_id: "
+              + trip.getId().getId());
+        }
+        _tripFile.add(trip);
+      } else if (entity instanceof Frequency) {
+        _frequencyFile.add((Frequency) entity);
+      } else if (entity instanceof Stop) {
+        Stop stop = (Stop) entity;
+        _stops.put(stop.getId(), stop);
+        _stopFile.add(stop);
+      } else if (entity instanceof Route) {
+        Route route = (Route) entity;
+        _routes.put(route.getId(), route);
+        _routeFile.add(route);
+      } else if (entity instanceof Agency) {
+        Agency agency = (Agency) entity;
+        _agencies.put(agency.getId(), agency);
+        _agencyFile.add(agency);
+      } else if (entity instanceof ServiceCalendar) {
+        _calendarFile.add((ServiceCalendar) entity);
+      } else if (entity instanceof ServiceCalendarDate) {
+        _calendarDateFile.add((ServiceCalendarDate) entity);
+      } else {
+        throw new IllegalArgumentException("unsupported entity type: "
+            + entity.getClass().getName());
+      }
+    } catch (IOException ex) {
+      throw new IllegalStateException("error writing entity " + entity, ex);
+    }
+  }
+
+  @Override
+  public void saveOrUpdateEntity(Object entity) {
+    saveEntity(entity);
+  }
+
+  /**
+   * Writes out everything saved to the specified file so far, creating the
+   * file if needed.
+   *
+   * @return the size of the file, including its header
+   */
+  public long getSize(String filename) throws IOException {
+    return getFile(filename).getSize();
+  }
+
+  /**
+   * Appends a range of bytes of another file, such as a segment of a
+   * previously written GTFS file, after everything saved to the specified file
+   * so far.
+   */
+  public void appendSegment(String filename, File source, long offset,
+      long length) throws IOException {
+    getFile(filename).append(source, offset, length);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      for (EntityFile<?> file : _files) {
+        file.close();
+      }
+    } finally {
+      _executor.shutdownNow();
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private EntityFile<?> getFile(String filename) {
+    for (EntityFile<?> file : _files) {
+      if (file._filename.equals(filename)) {
+        return file;
+      }
+    }
+    throw new IllegalArgumentException("unsupported file: " + filename);
+  }
+
+  /**
+   * @return the value of an id of decimal digits without leading zeros, which
+   *         fits a long, or -1 for any other id
+   */
+  private static long parseNumericId(String id) {
+    int length = id.length();
+    if (length == 0 || length > 18 || (length > 1 && id.charAt(0) == '0')) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = 0; i < length; ++i) {
+      char c = id.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private GtfsRowBuffer takeBuffer() {
+    GtfsRowBuffer buffer = _buffers.poll();
+    if (buffer == null) {
+      buffer = new GtfsRowBuffer(256 * 1024);
+    }
+    return buffer;
+  }
+
+  private void releaseBuffer(GtfsRowBuffer buffer) {
+    buffer.clear();
+    _buffers.add(buffer);
+  }
+
+  private abstract class EntityFile<T> {
+
+    private final String _filename;
+
+    private final String _header;
+
+    private FileChannel _channel;
+
+    private List<T> _batch = new ArrayList<T>();
+
+    private final ArrayDeque<Future<GtfsRowBuffer>> _pending = new ArrayDeque<Future<GtfsRowBuffer>>();
+
+    public EntityFile(String filename, String header) {
+      _filename = filename;
+      _header = header;
+    }
+
+    public void add(T entity) throws IOException {
+      if (_channel == null) {
+        open();
+      }
+      _batch.add(entity);
+      if (_batch.size() >= BATCH_SIZE) {
+        submitBatch();
+      }
+    }
+
+    public long getSize() throws IOException {
+      flush();
+      return _channel.position();
+    }
+
+    public void append(File source, long offset, long length)
+        throws IOException {
+      flush();
+      FileInputStream in = new FileInputStream(source);
+      try {
+        FileChannel channel = in.getChannel();
+        long transferred = 0;
+        while (transferred < length) {
+          long n = channel.transferTo(offset + transferred, length
+              - transferred, _channel);
+          if (n <= 0) {
+            throw new IOException("unexpected end of " + source);
+          }
+          transferred += n;
+        }
+      } finally {
+        in.close();
+      }
+    }
+
+    public void close() throws IOException {
+      if (_channel == null) {
+        return;
+      }
+      try {
+        if (!_batch.isEmpty()) {
+          submitBatch();
+        }
+        while (!_pending.isEmpty()) {
+          writePending();
+        }
+      } finally {
+        _channel.close();
+        _channel = null;
+      }
+    }
+
+    protected abstract void encode(T entity, GtfsRowBuffer row);
+
+    private void flush() throws IOException {
+      if (_channel == null) {
+        open();
+      }
+      if (!_batch.isEmpty()) {
+        submitBatch();
+      }
+      while (!_pending.isEmpty()) {
+        writePending();
+      }
+    }
+
+    private void open() throws IOException {
+      _outputDirectory.mkdirs();
+      _channel = new FileOutputStream(new File(_outputDirectory, _filename)).getChannel();
+      GtfsRowBuffer buffer = takeBuffer();
+      buffer.appendLine(_header);
+      buffer.writeTo(_channel);
+      releaseBuffer(buffer);
+    }
+
+    private void submitBatch() throws IOException {
+      while (_pending.size() >= _maxPendingBatches) {
+        writePending();
+      }
+      final List<T> batch = _batch;
+      _batch = new ArrayList<T>(BATCH_SIZE);
+      _pending.add(_executor.submit(new Callable<GtfsRowBuffer>() {
+        @Override
+        public GtfsRowBuffer call() {
+          GtfsRowBuffer row = takeBuffer();
+          for (T entity : batch) {
+            encode(entity, row);
+            row.endRow();
+          }
+          return row;
+        }
+      }));
+    }
+
+    private void writePending() throws IOException {
+      Future<GtfsRowBuffer> future = _pending.poll();
+      GtfsRowBuffer buffer;
+      try {
+        buffer = future.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted writing " + _filename);
+      } catch (ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException("error encoding " + _filename, cause);
+      }
+      buffer.writeTo(_channel);
+      releaseBuffer(buffer);
+    }
+  }
+}
@@ -17,25 +17,64 @@ package org.onebusaway.vdv452;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.TimeZone;
+import java.util.Enumeration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.onebusaway.csv_entities.EntityHandler;
 
 import org.onebusaway.gtfs.impl.GtfsRelationalDaoImpl;
 import org.onebusaway.gtfs.serialization.GtfsWriter;
 import org.onebusaway.gtfs.services.GtfsMutableRelationalDao;
 import org.onebusaway.vdv452.model.DayType;
 import org.onebusaway.vdv452.model.Journey;
+import org.onebusaway.vdv452.model.JourneyWaitTime;
 import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.ServiceDate;
 import org.onebusaway.vdv452.model.StopPoint;
 import org.onebusaway.vdv452.model.TransportCompany;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class Vdv452ToGtfsConverter {
 
+  private static Logger _log = LoggerFactory.getLogger(Vdv452ToGtfsConverter.class);
+
   private File _inputPath;
 
   private File _outputPath;
 
   private TimeZone _tz = TimeZone.getTimeZone("Europe/Berlin");
 
+  private boolean _streaming = false;
+
+  private int _threads = 1;
+
+  private boolean _detectHeadways = false;
+
+  private Vdv452Metrics _metrics = null;
+
+  private File _snapshotPath = null;
+
+  private File _manifestPath = null;
+
+  private BaseVersionSelector _baseVersionSelector = null;
+
+  private long[] _lineNumbers = null;
+
+  private ServiceDate _fromDate = null;
+
+  private ServiceDate _toDate = null;
+
+  private BoundingBox _boundingBox = null;
+
   public void setInputPath(File inputPath) {
     _inputPath = inputPath;
   }
@@ -47,11 +86,120 @@ public class Vdv452ToGtfsConverter {
   public void setTimeZone(TimeZone tz) {
     _tz = tz;
   }
-  
+
+  /**
+   * When set, the reference tables are read and converted first, after which
+   * each journey of REC_FRT is converted as soon as it is parsed, with its trip
+   * and stop times written directly to trips.txt and stop_times.txt through a
+   * {@link StreamingGtfsFileSink}. Neither journeys nor trips nor stop times
+   * are retained, such that memory use no longer grows with the number of
+   * journeys.
+   */
+  public void setStreaming(boolean streaming) {
+    _streaming = streaming;
+  }
+
+  /**
+   * The number of threads used to convert journeys to trips when not
+   * streaming, and to encode the rows of streamed GTFS files, 1 by default.
+   * Trips are written in the order of {@link JourneyComparator} regardless of
+   * the number of threads.
+   */
+  public void setThreads(int threads) {
+    _threads = threads;
+  }
+
+  /**
+   * When set, journeys of the same line, timing group and day type that depart
+   * at a constant headway are written as a single template trip with an
+   * exact_times entry in frequencies.txt, instead of a trip per journey. See
+   * {@link HeadwayDetector}. This isn't supported when streaming.
+   */
+  public void setDetectHeadways(boolean detectHeadways) {
+    _detectHeadways = detectHeadways;
+  }
+
+  /**
+   * When set, the metrics are passed on to the {@link Vdv452Reader} and are
+   * notified of the stop time pattern cache statistics, the size of each GTFS
+   * file written and the end of the conversion.
+   */
+  public void setMetrics(Vdv452Metrics metrics) {
+    _metrics = metrics;
+  }
+
+  /**
+   * When set, the parsed VDV feed is cached in a snapshot at the specified
+   * path, which later conversions of the same input load instead of parsing
+   * the feed. See {@link Vdv452Reader#setSnapshotPath(File)}.
+   */
+  public void setSnapshotPath(File snapshotPath) {
+    _snapshotPath = snapshotPath;
+  }
+
+  /**
+   * See {@link Vdv452Reader#setBaseVersionSelector(BaseVersionSelector)}.
+   */
+  public void setBaseVersionSelector(BaseVersionSelector baseVersionSelector) {
+    _baseVersionSelector = baseVersionSelector;
+  }
+
+  /**
+   * See {@link Vdv452Reader#setLineNumbers(long...)}.
+   */
+  public void setLineNumbers(long... lineNumbers) {
+    _lineNumbers = lineNumbers;
+  }
+
+  /**
+   * See {@link Vdv452Reader#setServiceDateRange(ServiceDate, ServiceDate)}.
+   */
+  public void setServiceDateRange(ServiceDate from, ServiceDate to) {
+    _fromDate = from;
+    _toDate = to;
+  }
+
+  /**
+   * See {@link Vdv452Reader#setBoundingBox(BoundingBox)}.
+   */
+  public void setBoundingBox(BoundingBox boundingBox) {
+    _boundingBox = boundingBox;
+  }
+
+  /**
+   * When set, the conversion is incremental: the output directory is updated
+   * from the previous conversion recorded in the manifest at the specified
+   * path, only converting the trips, stop times and calendars whose VDV
+   * entities have changed. See {@link IncrementalGtfsConverter}. Output is
+   * written as with {@link #setStreaming(boolean)}, while headway detection
+   * isn't supported.
+   */
+  public void setManifestPath(File manifestPath) {
+    _manifestPath = manifestPath;
+  }
+
   public void run() throws IOException {
-    Vdv452Reader reader = new Vdv452Reader();
-    reader.setInputLocation(_inputPath);
-    reader.run();
+    long start = System.nanoTime();
+    if (_manifestPath != null) {
+      runIncremental();
+    } else if (_streaming) {
+      runStreaming();
+    } else {
+      runInMemory();
+    }
+    if (_metrics != null) {
+      reportGtfsFiles();
+      _metrics.conversionFinished(System.nanoTime() - start);
+    }
+  }
+
+  private void runInMemory() throws IOException {
+    Vdv452Reader reader = createReader();
+    try {
+      reader.run();
+    } finally {
+      reader.getInputSource().close();
+    }
 
     Vdv452Dao in = reader.getDao();
     GtfsMutableRelationalDao out = new GtfsRelationalDaoImpl();
@@ -62,22 +210,194 @@ public class Vdv452ToGtfsConverter {
     writer.run(out);
   }
 
-  private void convert(Vdv452Dao in, GtfsMutableRelationalDao out) {
+  private void runStreaming() throws IOException {
+    Vdv452Reader reader = createReader();
+    // Journeys are read last, once everything they reference is available,
+    // while journey wait times aren't used by the conversion at all
+    List<Class<?>> entityClasses = new ArrayList<Class<?>>(
+        reader.getEntityClasses());
+    entityClasses.remove(Journey.class);
+    entityClasses.remove(JourneyWaitTime.class);
+    reader.setEntityClasses(entityClasses);
+    try {
+      reader.run();
+
+      // Streamed journeys aren't added to the DAO, so it's complete already
+      Vdv452Dao in = reader.getDao().freeze();
+      GtfsSink out = new StreamingGtfsFileSink(_outputPath, _threads);
+      try {
+        Vdv452ToGtfsFactory factory = new Vdv452ToGtfsFactory(in, out, _tz);
+        convertReferenceData(in, factory, null);
+        reader.addStreamedEntityClass(Journey.class);
+        reader.addEntityHandler(new JourneyHandler(factory));
+        reader.readEntities(Journey.class, reader.getInputSource());
+        logPatternCacheStats(factory);
+      } finally {
+        out.close();
+      }
+    } finally {
+      reader.getInputSource().close();
+    }
+  }
+
+  private void runIncremental() throws IOException {
+    if (_detectHeadways) {
+      _log.warn("headway detection isn't supported for incremental "
+          + "conversions");
+    }
+    Vdv452Reader reader = createReader();
+    IncrementalGtfsConverter converter = new IncrementalGtfsConverter(reader,
+        _outputPath, _manifestPath, _tz);
+    ExecutorService executor = null;
+    if (_threads > 1) {
+      executor = Executors.newFixedThreadPool(_threads);
+      converter.setExecutor(executor, _threads);
+    }
+    try {
+      converter.run();
+    } finally {
+      reader.getInputSource().close();
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private Vdv452Reader createReader() throws IOException {
+    Vdv452Reader reader = new Vdv452Reader();
+    reader.setInputLocation(_inputPath);
+    reader.setMetrics(_metrics);
+    reader.setBaseVersionSelector(_baseVersionSelector);
+    reader.setLineNumbers(_lineNumbers);
+    reader.setServiceDateRange(_fromDate, _toDate);
+    reader.setBoundingBox(_boundingBox);
+    reader.setSnapshotPath(_snapshotPath);
+    return reader;
+  }
+
+  private void convert(Vdv452Dao in, GtfsMutableRelationalDao out)
+      throws IOException {
+    ExecutorService executor = null;
+    if (_threads > 1) {
+      executor = Executors.newFixedThreadPool(_threads);
+    }
+    try {
+      convert(in, out, executor);
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private void convert(Vdv452Dao in, GtfsMutableRelationalDao out,
+      ExecutorService executor) throws IOException {
+    in.freeze(executor);
     Vdv452ToGtfsFactory factory = new Vdv452ToGtfsFactory(in, out, _tz);
+    convertReferenceData(in, factory, executor);
+    List<Journey> journeys = new ArrayList<Journey>(in.getAllJourneys());
+    Collections.sort(journeys, new JourneyComparator());
+    List<JourneyRun> runs = null;
+    if (_detectHeadways) {
+      runs = new HeadwayDetector().getRuns(journeys);
+      journeys = new ArrayList<Journey>(runs.size());
+      for (JourneyRun run : runs) {
+        journeys.add(run.getFirstJourney());
+      }
+    }
+    convertJourneys(factory, journeys, executor);
+    if (runs != null) {
+      int frequencies = 0;
+      for (JourneyRun run : runs) {
+        if (run.isFrequencyBased()) {
+          factory.createFrequencyForJourneyRun(run);
+          frequencies++;
+        }
+      }
+      _log.info("headways: " + in.getAllJourneys().size() + " journeys written as "
+          + runs.size() + " trips, with " + frequencies + " frequencies");
+    }
+    logPatternCacheStats(factory);
+  }
+
+  private void convertJourneys(Vdv452ToGtfsFactory factory,
+      List<Journey> journeys, ExecutorService executor) throws IOException {
+    if (executor == null) {
+      for (Journey journey : journeys) {
+        factory.getTripForJourney(journey);
+      }
+    } else {
+      new ParallelTripGenerator(factory, executor, _threads).run(journeys);
+    }
+  }
+
+  private void convertReferenceData(Vdv452Dao in, Vdv452ToGtfsFactory factory,
+      ExecutorService executor) throws IOException {
     for (TransportCompany company : in.getAllTransportCompanies()) {
       factory.getAgencyForTransportCompany(company);
     }
     for (StopPoint stop : in.getAllStopPoints()) {
       factory.getStopForStopPoint(stop);
     }
-    for (DayType dayType : in.getAllDayTypes()) {
-      factory.createCalendarEntriesForDayType(dayType);
+    if (executor == null) {
+      for (DayType dayType : in.getAllDayTypes()) {
+        factory.createCalendarEntriesForDayType(dayType);
+      }
+    } else {
+      factory.createCalendarEntriesForDayTypes(in.getAllDayTypes(), executor);
     }
     for (Line line : in.getAllLines()) {
       factory.getRouteForLine(line);
     }
-    for (Journey journey : in.getAllJourneys()) {
-      factory.getTripForJourney(journey);
+  }
+
+  private void logPatternCacheStats(Vdv452ToGtfsFactory factory) {
+    long hits = factory.getPatternCacheHits();
+    long misses = factory.getPatternCacheMisses();
+    long total = hits + misses;
+    _log.info("stop time patterns: " + misses + " computed for " + total
+        + " journeys, hit rate " + (total == 0 ? 0 : hits * 100 / total) + "%");
+    if (_metrics != null) {
+      _metrics.stopTimePatterns(hits, misses);
+    }
+  }
+
+  private void reportGtfsFiles() throws IOException {
+    if (_outputPath.isDirectory()) {
+      File[] files = _outputPath.listFiles();
+      Arrays.sort(files);
+      for (File file : files) {
+        if (file.isFile() && file.getName().endsWith(".txt")) {
+          _metrics.gtfsFileWritten(file.getName(), file.length());
+        }
+      }
+    } else if (_outputPath.isFile()) {
+      ZipFile zip = new ZipFile(_outputPath);
+      try {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          _metrics.gtfsFileWritten(entry.getName(), entry.getSize());
+        }
+      } finally {
+        zip.close();
+      }
+    }
+  }
+
+  private static class JourneyHandler implements EntityHandler {
+
+    private final Vdv452ToGtfsFactory _factory;
+
+    public JourneyHandler(Vdv452ToGtfsFactory factory) {
+      _factory = factory;
+    }
+
+    @Override
+    public void handleEntity(Object bean) {
+      if (bean instanceof Journey) {
+        _factory.getTripForJourney((Journey) bean);
+      }
     }
   }
 }
@@ -15,68 +15,150 @@
  */
 package org.onebusaway.vdv452;
 
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.onebusaway.collections.MappingLibrary;
-import org.onebusaway.collections.tuple.Pair;
-import org.onebusaway.collections.tuple.Tuples;
 import org.onebusaway.gtfs.model.Agency;
 import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Frequency;
 import org.onebusaway.gtfs.model.Route;
 import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.StopTime;
 import org.onebusaway.gtfs.model.Trip;
-import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.onebusaway.gtfs.services.GtfsMutableRelationalDao;
-import org.onebusaway.gtfs_transformer.updates.CalendarSimplicationLibrary;
-import org.onebusaway.gtfs_transformer.updates.CalendarSimplicationLibrary.ServiceCalendarSummary;
 import org.onebusaway.vdv452.model.*;
 
 public class Vdv452ToGtfsFactory {
 
-  private final CalendarSimplicationLibrary _calendarLibrary = new CalendarSimplicationLibrary();
-
   private final Vdv452Dao _in;
 
-  private final GtfsMutableRelationalDao _out;
+  private final GtfsSink _out;
 
   private final TimeZone _tz;
 
+  private final ServiceCalendarEngine _calendarEngine;
+
   /**
    * The set of service ids for calendar entries that have already been
    * processed.
    */
   private final Set<AgencyAndId> processedCalendars = new HashSet<AgencyAndId>();
 
+  private final ConcurrentMap<PatternKey, StopTimePattern> _patterns = new ConcurrentHashMap<PatternKey, StopTimePattern>();
+
+  private final AtomicLong _patternHits = new AtomicLong();
+
+  private final AtomicLong _patternMisses = new AtomicLong();
+
   public Vdv452ToGtfsFactory(Vdv452Dao in, GtfsMutableRelationalDao out,
       TimeZone tz) {
+    this(in, new GtfsDaoSink(out), tz);
+  }
+
+  public Vdv452ToGtfsFactory(Vdv452Dao in, GtfsSink out, TimeZone tz) {
     _in = in;
     _out = out;
     _tz = tz;
+    _calendarEngine = new ServiceCalendarEngine(in);
   }
 
-  public Trip getTripForJourney(Journey journey) {
+  /**
+   * @return the number of journeys whose stop times were derived from an
+   *         already computed pattern
+   */
+  public long getPatternCacheHits() {
+    return _patternHits.get();
+  }
 
-    VersionedId journeyId = journey.getId();
-    AgencyAndId id = new AgencyAndId("1", Long.toString(journeyId.getId()));
-    Trip trip = _out.getTripForId(id);
+  /**
+   * @return the number of distinct stop time patterns that were computed
+   */
+  public long getPatternCacheMisses() {
+    return _patternMisses.get();
+  }
+
+  public Trip getTripForJourney(Journey journey) {
+    Trip trip = _out.getTripForId(getTripIdForJourney(journey));
     if (trip == null) {
-      trip = new Trip();
-      trip.setId(id);
-      trip.setRoute(getRouteForLine(journey.getLine()));
-      trip.setServiceId(createCalendarEntriesForDayType(journey.getDayType()));
-      getStopTimesForJourney(journey, trip);
-      _out.saveEntity(trip);
+      createCalendarEntriesForDayType(journey.getDayType());
+      List<StopTime> stopTimes = new ArrayList<StopTime>();
+      trip = createTripForJourney(journey, stopTimes);
+      saveTrip(trip, stopTimes);
     }
     return trip;
   }
 
+  /**
+   * @return the id of the trip of a journey, which leaves out its base
+   *         version, such that the journeys of several versions share a trip
+   */
+  public AgencyAndId getTripIdForJourney(Journey journey) {
+    VersionedId journeyId = journey.getId();
+    return new AgencyAndId("1", Long.toString(journeyId.getId()));
+  }
+
+  /**
+   * Creates the trip and stop times for a journey without saving them. Once
+   * the agencies, stops, calendars and routes have been converted, this only
+   * reads from the output, such that journeys can be converted concurrently as
+   * long as nothing is saved in the meantime.
+   *
+   * @param stopTimes the stop times of the trip are added to this list
+   */
+  public Trip createTripForJourney(Journey journey, List<StopTime> stopTimes) {
+    Trip trip = new Trip();
+    trip.setId(getTripIdForJourney(journey));
+    trip.setRoute(getRouteForLine(journey.getLine()));
+    trip.setServiceId(getServiceIdForDayType(journey.getDayType()));
+    getStopTimesForJourney(journey, trip, stopTimes);
+    return trip;
+  }
+
+  /**
+   * Saves a trip and its stop times as created by
+   * {@link #createTripForJourney(Journey, List)}, unless a trip with the same
+   * id has already been saved.
+   */
+  public void saveTrip(Trip trip, List<StopTime> stopTimes) {
+    if (_out.getTripForId(trip.getId()) != null) {
+      return;
+    }
+    for (StopTime stopTime : stopTimes) {
+      _out.saveEntity(stopTime);
+    }
+    _out.saveEntity(trip);
+  }
+
+  /**
+   * Saves an exact_times frequency for a run of journeys, with the first
+   * journey of the run as the template trip.
+   */
+  public Frequency createFrequencyForJourneyRun(JourneyRun run) {
+    Frequency frequency = new Frequency();
+    frequency.setTrip(getTripForJourney(run.getFirstJourney()));
+    frequency.setStartTime(run.getFirstJourney().getDepartureTime());
+    // With exact times, the end time has to be after the last departure but
+    // before the one that would follow it
+    frequency.setEndTime(run.getLastDepartureTime() + 1);
+    frequency.setHeadwaySecs(run.getHeadway());
+    frequency.setExactTimes(1);
+    _out.saveEntity(frequency);
+    return frequency;
+  }
+
   public Route getRouteForLine(Line line) {
     LineId lineId = line.getId();
     Agency agency = getAgencyForLine(line);
@@ -134,18 +216,67 @@ public class Vdv452ToGtfsFactory {
     if (!processedCalendars.add(serviceId)) {
       return serviceId;
     }
-    Set<ServiceDate> serviceDates = new HashSet<ServiceDate>();
-    for (Period period : _in.getPeriodsForDayType(dayType)) {
-      // Convert the VDV ServiceDate to a GTFS ServiceDate
-      serviceDates.add(new ServiceDate(period.getDate().getAsCalendar(_tz)));
+    saveCalendarEntities(_calendarEngine.getCalendarEntitiesForDayType(
+        serviceId, dayType));
+    return serviceId;
+  }
+
+  /**
+   * @return true if the calendar entries of the service id of a day type have
+   *         been created, possibly for another base version of the day type
+   */
+  public boolean hasCalendarEntriesForDayType(DayType dayType) {
+    return processedCalendars.contains(getServiceIdForDayType(dayType));
+  }
+
+  /**
+   * Records the calendar entries of the service id of a day type as created
+   * without creating them, as when they have been written by other means.
+   */
+  public void putCalendarEntriesForDayType(DayType dayType) {
+    processedCalendars.add(getServiceIdForDayType(dayType));
+  }
+
+  /**
+   * Computes the calendar entries of the specified day types concurrently on
+   * the executor, saving them in the order of the day types.
+   */
+  public void createCalendarEntriesForDayTypes(Collection<DayType> dayTypes,
+      ExecutorService executor) throws InterruptedIOException {
+    List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>();
+    for (final DayType dayType : dayTypes) {
+      final AgencyAndId serviceId = getServiceIdForDayType(dayType);
+      if (!processedCalendars.add(serviceId)) {
+        continue;
+      }
+      futures.add(executor.submit(new Callable<List<Object>>() {
+        @Override
+        public List<Object> call() {
+          return _calendarEngine.getCalendarEntitiesForDayType(serviceId,
+              dayType);
+        }
+      }));
     }
-    ServiceCalendarSummary summary = _calendarLibrary.getSummaryForServiceDates(serviceDates);
-    List<Object> newEntities = new ArrayList<Object>();
-    _calendarLibrary.computeSimplifiedCalendar(serviceId, summary, newEntities);
-    for (Object entity : newEntities) {
+    try {
+      for (Future<List<Object>> future : futures) {
+        saveCalendarEntities(future.get());
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted computing calendars");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException("error computing calendars", cause);
+    }
+  }
+
+  private void saveCalendarEntities(List<Object> entities) {
+    for (Object entity : entities) {
       _out.saveOrUpdateEntity(entity);
     }
-    return serviceId;
   }
 
   private AgencyAndId getServiceIdForDayType(DayType dayType) {
@@ -174,63 +305,134 @@ public class Vdv452ToGtfsFactory {
     return gtfsStop;
   }
 
-  private void getStopTimesForJourney(Journey journey, Trip trip) {
-    List<RouteSequence> sequence = _in.getRouteSequenceForLine(journey.getLine());
-    List<TravelTime> travelTimes = orderTravelTimesForRouteSequence(sequence,
-        _in.getTravelTimesForTimingGroup(journey.getTimingGroup()));
-    List<WaitTime> waitTimes = orderWaitTimesForRouteSequence(sequence,
-        _in.getWaitTimesForTimingGroup(journey.getTimingGroup()));
-    int currentTime = journey.getDepartureTime();
-    for (int i = 0; i < sequence.size(); ++i) {
-      RouteSequence entry = sequence.get(i);
+
+  private void getStopTimesForJourney(Journey journey, Trip trip,
+      List<StopTime> stopTimes) {
+    StopTimePattern pattern = getStopTimePattern(journey.getLine(),
+        journey.getTimingGroup());
+    Stop[] stops = pattern._stops;
+    int[] offsets = pattern._offsets;
+    int departureTime = journey.getDepartureTime();
+    for (int i = 0; i < stops.length; ++i) {
       StopTime stopTime = new StopTime();
       stopTime.setTrip(trip);
-      Stop stopForStopPoint = getStopForStopPoint(entry.getStop());
-      if (stopForStopPoint == null) {
-        return;
-      }
-      stopTime.setStop(stopForStopPoint);
+      stopTime.setStop(stops[i]);
       stopTime.setStopSequence(i);
-      stopTime.setArrivalTime(currentTime);
-      WaitTime waitTime = waitTimes.get(i);
+      stopTime.setArrivalTime(departureTime + offsets[2 * i]);
+      stopTime.setDepartureTime(departureTime + offsets[2 * i + 1]);
+      stopTimes.add(stopTime);
+    }
+  }
+
+  /**
+   * Journeys of the same line and timing group share their stops and their
+   * arrival and departure times relative to the departure time of the
+   * journey, so these are only computed once per pattern.
+   */
+  private StopTimePattern getStopTimePattern(Line line, TimingGroup timingGroup) {
+    PatternKey key = new PatternKey(line, timingGroup);
+    StopTimePattern pattern = _patterns.get(key);
+    if (pattern != null) {
+      _patternHits.incrementAndGet();
+      return pattern;
+    }
+    pattern = createStopTimePattern(line, timingGroup);
+    StopTimePattern existing = _patterns.putIfAbsent(key, pattern);
+    if (existing != null) {
+      // Computed concurrently by another thread
+      _patternHits.incrementAndGet();
+      return existing;
+    }
+    _patternMisses.incrementAndGet();
+    return pattern;
+  }
+
+  private StopTimePattern createStopTimePattern(Line line,
+      TimingGroup timingGroup) {
+    List<RouteSequence> sequence = _in.getRouteSequenceForLine(line);
+    int[] travelTimes = orderTravelTimesForRouteSequence(sequence, timingGroup);
+    List<Stop> stops = new ArrayList<Stop>(sequence.size());
+    int[] offsets = new int[2 * sequence.size()];
+    int currentTime = 0;
+    for (int i = 0; i < sequence.size(); ++i) {
+      StopPoint stopPoint = sequence.get(i).getStop();
+      Stop stop = getStopForStopPoint(stopPoint);
+      if (stop == null) {
+        // Stop times end at the first skipped stop
+        break;
+      }
+      stops.add(stop);
+      offsets[2 * i] = currentTime;
+      WaitTime waitTime = _in.getWaitTime(timingGroup, stopPoint);
       if (waitTime != null) {
         currentTime += waitTime.getWaitTime();
       }
-      stopTime.setDepartureTime(currentTime);
+      offsets[2 * i + 1] = currentTime;
       if (i + 1 < sequence.size()) {
-        currentTime += travelTimes.get(i).getTravelTime();
+        currentTime += travelTimes[i];
       }
-      _out.saveEntity(stopTime);
     }
+    return new StopTimePattern(stops.toArray(new Stop[stops.size()]),
+        Arrays.copyOf(offsets, 2 * stops.size()));
   }
 
-  private List<TravelTime> orderTravelTimesForRouteSequence(
-      List<RouteSequence> sequence,
-      Map<Pair<StopPoint>, TravelTime> travelTimesByStopPair) {
-    List<TravelTime> ordered = new ArrayList<TravelTime>(sequence.size() - 1);
+  private int[] orderTravelTimesForRouteSequence(List<RouteSequence> sequence,
+      TimingGroup timingGroup) {
+    int[] ordered = new int[Math.max(sequence.size() - 1, 0)];
     for (int i = 0; i + 1 < sequence.size(); ++i) {
       RouteSequence from = sequence.get(i);
       RouteSequence to = sequence.get(i + 1);
-      Pair<StopPoint> pair = Tuples.pair(from.getStop(), to.getStop());
-      TravelTime travelTime = travelTimesByStopPair.get(pair);
+      TravelTime travelTime = _in.getTravelTime(timingGroup, from.getStop(),
+          to.getStop());
       if (travelTime == null) {
         throw new IllegalStateException();
       }
-      ordered.add(travelTime);
+      ordered[i] = travelTime.getTravelTime();
     }
     return ordered;
   }
 
-  private List<WaitTime> orderWaitTimesForRouteSequence(
-      List<RouteSequence> sequence, List<WaitTime> waitTimes) {
-    Map<StopPoint, WaitTime> waitTimesByStopPoint = MappingLibrary.mapToValue(
-        waitTimes, "stop");
-    List<WaitTime> ordered = new ArrayList<WaitTime>(waitTimes.size());
-    for (int i = 0; i < sequence.size(); ++i) {
-      RouteSequence entry = sequence.get(i);
-      WaitTime waitTime = waitTimesByStopPoint.get(entry.getStop());
-      ordered.add(waitTime);
+  private static class PatternKey {
+
+    private final Line _line;
+
+    private final TimingGroup _timingGroup;
+
+    public PatternKey(Line line, TimingGroup timingGroup) {
+      _line = line;
+      _timingGroup = timingGroup;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * _line.hashCode() + _timingGroup.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof PatternKey)) {
+        return false;
+      }
+      PatternKey other = (PatternKey) obj;
+      return _line.equals(other._line)
+          && _timingGroup.equals(other._timingGroup);
+    }
+  }
+
+  /**
+   * The stops of a pattern, along with the arrival and departure time at each
+   * stop relative to the departure time of a journey, interleaved as
+   * [arrival0, departure0, arrival1, ...].
+   */
+  private static class StopTimePattern {
+
+    private final Stop[] _stops;
+
+    private final int[] _offsets;
+
+    public StopTimePattern(Stop[] stops, int[] offsets) {
+      _stops = stops;
+      _offsets = offsets;
     }
-    return ordered;
   }
 }
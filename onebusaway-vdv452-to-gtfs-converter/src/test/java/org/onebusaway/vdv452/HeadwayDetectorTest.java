@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.gtfs.model.Agency;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Frequency;
+import org.onebusaway.gtfs.model.Route;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.StopTime;
+import org.onebusaway.gtfs.model.Trip;
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.EStopType;
+import org.onebusaway.vdv452.model.Journey;
+import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.LineId;
+import org.onebusaway.vdv452.model.Period;
+import org.onebusaway.vdv452.model.RouteSequence;
+import org.onebusaway.vdv452.model.ServiceDate;
+import org.onebusaway.vdv452.model.StopId;
+import org.onebusaway.vdv452.model.StopPoint;
+import org.onebusaway.vdv452.model.TimingGroup;
+import org.onebusaway.vdv452.model.TransportCompany;
+import org.onebusaway.vdv452.model.TravelTime;
+import org.onebusaway.vdv452.model.VersionedId;
+
+import junit.framework.Assert;
+
+public class HeadwayDetectorTest {
+	private Vdv452Dao dao;
+	private Line line;
+	private TimingGroup timingGroup;
+	private TimingGroup otherTimingGroup;
+	private DayType dayType;
+	private DayType otherDayType;
+	private long nextJourneyId;
+
+	@Before
+	public void setupDao() {
+		dao = new Vdv452Dao();
+		final TransportCompany company = new TransportCompany();
+		company.setId(new VersionedId(1, 1));
+		dao.putEntity(company);
+		dayType = createDayType(1);
+		otherDayType = createDayType(2);
+		timingGroup = createTimingGroup(1);
+		otherTimingGroup = createTimingGroup(2);
+
+		final StopPoint from = createStop(1);
+		final StopPoint to = createStop(2);
+		line = new Line();
+		line.setId(new LineId(1, 1, "1"));
+		dao.putEntity(line);
+		createRouteSequence(from, 1);
+		createRouteSequence(to, 2);
+		createTravelTime(timingGroup, from, to, 120);
+		createTravelTime(otherTimingGroup, from, to, 180);
+		nextJourneyId = 1;
+	}
+
+	@Test
+	public void splitRunsOnChangedHeadway() {
+		final List<Journey> journeys = new ArrayList<Journey>();
+		for (final int minutes : new int[] { 360, 370, 380, 390, 405, 420, 435, 460 }) {
+			journeys.add(createJourney(timingGroup, dayType, minutes * 60));
+		}
+
+		final List<JourneyRun> runs = new HeadwayDetector().getRuns(journeys);
+		Assert.assertEquals(3, runs.size());
+		assertRun(runs.get(0), journeys.get(0), 4, 600);
+		Assert.assertEquals(390 * 60, runs.get(0).getLastDepartureTime());
+		assertRun(runs.get(1), journeys.get(4), 3, 900);
+		Assert.assertEquals(435 * 60, runs.get(1).getLastDepartureTime());
+		assertRun(runs.get(2), journeys.get(7), 1, 0);
+		Assert.assertFalse(runs.get(2).isFrequencyBased());
+	}
+
+	@Test
+	public void groupByLineTimingGroupAndDayType() {
+		final List<Journey> journeys = new ArrayList<Journey>();
+		for (int i = 0; i < 3; ++i) {
+			journeys.add(createJourney(timingGroup, dayType, 21600 + i * 600));
+			journeys.add(createJourney(timingGroup, otherDayType, 21600 + i * 600));
+		}
+		// Interleaved with the above, but too short for a run
+		journeys.add(createJourney(otherTimingGroup, dayType, 21900));
+		journeys.add(createJourney(otherTimingGroup, dayType, 22500));
+
+		final List<JourneyRun> runs = new HeadwayDetector().getRuns(journeys);
+		Assert.assertEquals(4, runs.size());
+		assertRun(runs.get(0), journeys.get(0), 3, 600);
+		assertRun(runs.get(1), journeys.get(1), 3, 600);
+		assertRun(runs.get(2), journeys.get(6), 1, 0);
+		assertRun(runs.get(3), journeys.get(7), 1, 0);
+		for (final JourneyRun run : runs) {
+			if (run.isFrequencyBased()) {
+				Assert.assertEquals(timingGroup, run.getFirstJourney().getTimingGroup());
+			}
+		}
+	}
+
+	@Test
+	public void minRunLength() {
+		final List<Journey> journeys = new ArrayList<Journey>();
+		journeys.add(createJourney(timingGroup, dayType, 21600));
+		journeys.add(createJourney(timingGroup, dayType, 22200));
+
+		Assert.assertEquals(2, new HeadwayDetector().getRuns(journeys).size());
+		final HeadwayDetector detector = new HeadwayDetector();
+		detector.setMinRunLength(2);
+		final List<JourneyRun> runs = detector.getRuns(journeys);
+		Assert.assertEquals(1, runs.size());
+		assertRun(runs.get(0), journeys.get(0), 2, 600);
+	}
+
+	@Test
+	public void createFrequencyForJourneyRun() {
+		final List<Journey> journeys = new ArrayList<Journey>();
+		for (int i = 0; i < 4; ++i) {
+			journeys.add(createJourney(timingGroup, dayType, 21600 + i * 600));
+		}
+		final JourneyRun run = new HeadwayDetector().getRuns(journeys).get(0);
+		assertRun(run, journeys.get(0), 4, 600);
+
+		final RecordingSink sink = new RecordingSink();
+		final Vdv452ToGtfsFactory factory = new Vdv452ToGtfsFactory(dao.freeze(), sink,
+				TimeZone.getTimeZone("Europe/Rome"));
+		final Frequency frequency = factory.createFrequencyForJourneyRun(run);
+		Assert.assertEquals(21600, frequency.getStartTime());
+		// Exact times end after the last departure, before the next one
+		Assert.assertEquals(21600 + 3 * 600 + 1, frequency.getEndTime());
+		Assert.assertEquals(600, frequency.getHeadwaySecs());
+		Assert.assertEquals(1, frequency.getExactTimes());
+		Assert.assertEquals(new AgencyAndId("1", "1"), frequency.getTrip().getId());
+
+		final List<Trip> trips = sink.getEntities(Trip.class);
+		Assert.assertEquals(1, trips.size());
+		Assert.assertSame(frequency.getTrip(), trips.get(0));
+		final List<StopTime> stopTimes = sink.getEntities(StopTime.class);
+		Assert.assertEquals(2, stopTimes.size());
+		Assert.assertEquals(21600, stopTimes.get(0).getDepartureTime());
+		Assert.assertEquals(21600 + 120, stopTimes.get(1).getArrivalTime());
+		final List<Frequency> frequencies = sink.getEntities(Frequency.class);
+		Assert.assertEquals(1, frequencies.size());
+		Assert.assertSame(frequency, frequencies.get(0));
+
+		// The template trip is only written once
+		factory.getTripForJourney(journeys.get(0));
+		Assert.assertEquals(1, sink.getEntities(Trip.class).size());
+	}
+
+	private static void assertRun(final JourneyRun run, final Journey first, final int count, final int headway) {
+		Assert.assertSame(first, run.getFirstJourney());
+		Assert.assertEquals(count, run.getCount());
+		Assert.assertEquals(headway, run.getHeadway());
+	}
+
+	private Journey createJourney(final TimingGroup group, final DayType days, final int departureTime) {
+		final Journey journey = new Journey();
+		journey.setId(new VersionedId(1, nextJourneyId++));
+		journey.setLine(line);
+		journey.setTimingGroup(group);
+		journey.setDayType(days);
+		journey.setDepartureTime(departureTime);
+		return journey;
+	}
+
+	private DayType createDayType(final long id) {
+		final DayType days = new DayType();
+		days.setId(new VersionedId(1, id));
+		dao.putEntity(days);
+		final Period period = new Period();
+		period.setDayType(days);
+		period.setDate(new ServiceDate(2015, 4, (int) id));
+		dao.putEntity(period);
+		return days;
+	}
+
+	private TimingGroup createTimingGroup(final long id) {
+		final TimingGroup group = new TimingGroup();
+		group.setId(new VersionedId(1, id));
+		dao.putEntity(group);
+		return group;
+	}
+
+	private StopPoint createStop(final long id) {
+		final StopId stopId = new StopId(1, EStopType.STOP, id);
+		final org.onebusaway.vdv452.model.Stop stop = new org.onebusaway.vdv452.model.Stop();
+		stop.setId(stopId);
+		stop.setName("Stop " + id);
+		dao.putEntity(stop);
+		final StopPoint stopPoint = new StopPoint();
+		stopPoint.setId(stopId);
+		dao.putEntity(stopPoint);
+		return stopPoint;
+	}
+
+	private void createRouteSequence(final StopPoint stop, final int sequence) {
+		final RouteSequence routeSequence = new RouteSequence();
+		routeSequence.setLine(line);
+		routeSequence.setSequence(sequence);
+		routeSequence.setStop(stop);
+		dao.putEntity(routeSequence);
+	}
+
+	private void createTravelTime(final TimingGroup group, final StopPoint from, final StopPoint to, final int seconds) {
+		final TravelTime travelTime = new TravelTime();
+		travelTime.setTimingGroup(group);
+		travelTime.setFromStop(from);
+		travelTime.setToStop(to);
+		travelTime.setTravelTime(seconds);
+		dao.putEntity(travelTime);
+	}
+
+	private static class RecordingSink implements GtfsSink {
+		private final List<Object> entities = new ArrayList<Object>();
+		private final Map<String, Agency> agencies = new HashMap<String, Agency>();
+		private final Map<AgencyAndId, Route> routes = new HashMap<AgencyAndId, Route>();
+		private final Map<AgencyAndId, Stop> stops = new HashMap<AgencyAndId, Stop>();
+		private final Map<AgencyAndId, Trip> trips = new HashMap<AgencyAndId, Trip>();
+
+		public <T> List<T> getEntities(final Class<T> type) {
+			final List<T> matching = new ArrayList<T>();
+			for (final Object entity : entities) {
+				if (type.isInstance(entity)) {
+					matching.add(type.cast(entity));
+				}
+			}
+			return matching;
+		}
+
+		@Override
+		public Agency getAgencyForId(final String id) {
+			return agencies.get(id);
+		}
+
+		@Override
+		public Route getRouteForId(final AgencyAndId id) {
+			return routes.get(id);
+		}
+
+		@Override
+		public Stop getStopForId(final AgencyAndId id) {
+			return stops.get(id);
+		}
+
+		@Override
+		public Trip getTripForId(final AgencyAndId id) {
+			return trips.get(id);
+		}
+
+		@Override
+		public void saveEntity(final Object entity) {
+			entities.add(entity);
+			if (entity instanceof Agency) {
+				agencies.put(((Agency) entity).getId(), (Agency) entity);
+			} else if (entity instanceof Route) {
+				routes.put(((Route) entity).getId(), (Route) entity);
+			} else if (entity instanceof Stop) {
+				stops.put(((Stop) entity).getId(), (Stop) entity);
+			} else if (entity instanceof Trip) {
+				trips.put(((Trip) entity).getId(), (Trip) entity);
+			}
+		}
+
+		@Override
+		public void saveOrUpdateEntity(final Object entity) {
+			saveEntity(entity);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
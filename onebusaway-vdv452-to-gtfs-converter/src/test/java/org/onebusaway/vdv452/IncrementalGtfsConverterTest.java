@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+public class IncrementalGtfsConverterTest {
+
+	private static final String TEST_VDV452 = "../onebusaway-vdv452/src/test/resources/vdv452_sasa.zip";
+
+	private static final TimeZone TZ = TimeZone.getTimeZone("Europe/Rome");
+
+	@Test
+	public void convertChangedDayTypeAndTimingGroup() throws IOException {
+		final File directory = Files.createTempDirectory("vdv452").toFile();
+		try {
+			final File input = new File(TEST_VDV452);
+			final File changed = new File(directory, "changed.zip");
+			// Moves a day from day type 17 to 16 and changes a travel time of
+			// timing group 1
+			copyChanged(input, changed, "FIRMENKALENDER.x10", "(; 20150407;[^;]*;)     17", "$1     16");
+			copyChanged(input, changed, "SEL_FZT_FELD.x10",
+					"(rec;\\s+1;\\s+1;\\s+1;\\s+1;\\s+1;\\s+249;\\s+1;)    120", "$1    150");
+
+			final File output = new File(directory, "incremental");
+			final File manifest = new File(directory, "incremental.manifest");
+			final IncrementalGtfsConverter first = new IncrementalGtfsConverter(createReader(input), output, manifest,
+					TZ);
+			first.run();
+			Assert.assertEquals(0, first.getReusedSegments());
+
+			final IncrementalGtfsConverter second = new IncrementalGtfsConverter(createReader(changed), output,
+					manifest, TZ);
+			second.run();
+			Assert.assertTrue(second.getReusedSegments() > 0);
+			Assert.assertTrue(second.getConvertedSegments() > 0);
+
+			final File full = new File(directory, "full");
+			new IncrementalGtfsConverter(createReader(changed), full, new File(directory, "full.manifest"), TZ).run();
+			assertSameFiles(full, output);
+
+			final IncrementalGtfsConverter third = new IncrementalGtfsConverter(createReader(changed), output,
+					manifest, TZ);
+			third.run();
+			Assert.assertEquals(0, third.getReusedSegments());
+			Assert.assertEquals(0, third.getConvertedSegments());
+			assertSameFiles(full, output);
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	private static Vdv452Reader createReader(final File input) throws IOException {
+		final Vdv452Reader reader = new Vdv452Reader();
+		reader.setInputLocation(input);
+		return reader;
+	}
+
+	/**
+	 * Copies a VDV feed, or the copy made by a previous call, replacing the
+	 * first match of a pattern in one of its tables.
+	 */
+	private static void copyChanged(final File input, final File output, final String table, final String regex,
+			final String replacement) throws IOException {
+		final File source = output.exists() ? new File(output.getPath() + ".tmp") : input;
+		if (source != input) {
+			Files.move(output.toPath(), source.toPath());
+		}
+		final ZipFile zip = new ZipFile(source);
+		final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(output));
+		try {
+			final Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				final ZipEntry entry = entries.nextElement();
+				byte[] content = readFully(zip.getInputStream(entry));
+				if (entry.getName().equals(table)) {
+					final String text = new String(content, StandardCharsets.ISO_8859_1);
+					final String changed = text.replaceFirst(regex, replacement);
+					Assert.assertFalse(text.equals(changed));
+					content = changed.getBytes(StandardCharsets.ISO_8859_1);
+				}
+				out.putNextEntry(new ZipEntry(entry.getName()));
+				out.write(content);
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+			zip.close();
+		}
+		if (source != input) {
+			source.delete();
+		}
+	}
+
+	private static byte[] readFully(final InputStream in) throws IOException {
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int length;
+			while ((length = in.read(buffer)) != -1) {
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void assertSameFiles(final File expected, final File actual) throws IOException {
+		final String[] names = expected.list();
+		Arrays.sort(names);
+		final String[] actualNames = actual.list();
+		Arrays.sort(actualNames);
+		Assert.assertEquals(Arrays.asList(names), Arrays.asList(actualNames));
+		for (final String name : names) {
+			Assert.assertTrue(name, Arrays.equals(Files.readAllBytes(new File(expected, name).toPath()),
+					Files.readAllBytes(new File(actual, name).toPath())));
+		}
+	}
+
+	private static void deleteRecursively(final File file) {
+		final File[] files = file.listFiles();
+		if (files != null) {
+			for (final File child : files) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+}
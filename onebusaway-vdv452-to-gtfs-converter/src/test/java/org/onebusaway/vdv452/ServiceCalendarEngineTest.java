@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.ServiceCalendar;
+import org.onebusaway.gtfs.model.ServiceCalendarDate;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.Period;
+import org.onebusaway.vdv452.model.VersionedId;
+
+import junit.framework.Assert;
+
+public class ServiceCalendarEngineTest {
+	private static final AgencyAndId SERVICE_ID = new AgencyAndId("1", "1");
+
+	@Test
+	public void epochDays() {
+		Assert.assertEquals(0, ServiceCalendarEngine.getEpochDay(1970, 1, 1));
+		Assert.assertEquals(-1, ServiceCalendarEngine.getEpochDay(1969, 12, 31));
+		Assert.assertEquals(-25567, ServiceCalendarEngine.getEpochDay(1900, 1, 1));
+		Assert.assertEquals(11017, ServiceCalendarEngine.getEpochDay(2000, 3, 1));
+		Assert.assertEquals(16860, ServiceCalendarEngine.getEpochDay(2016, 2, 29));
+
+		Assert.assertEquals(3, ServiceCalendarEngine.getWeekday(0));
+		Assert.assertEquals(2, ServiceCalendarEngine.getWeekday(-1));
+		Assert.assertEquals(0, ServiceCalendarEngine.getWeekday(-25567));
+		Assert.assertEquals(0, ServiceCalendarEngine.getWeekday(16860));
+	}
+
+	@Test
+	public void epochDayRoundTrips() {
+		// Covers the non-leap 1900 and 2100, the leap 2000 and dates before 1970
+		final GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		final int first = ServiceCalendarEngine.getEpochDay(1896, 1, 1);
+		final int last = ServiceCalendarEngine.getEpochDay(2104, 12, 31);
+		for (int day = first; day <= last; ++day) {
+			final ServiceDate date = ServiceCalendarEngine.getServiceDateForEpochDay(day);
+			Assert.assertEquals(day, ServiceCalendarEngine.getEpochDay(date.getYear(), date.getMonth(), date.getDay()));
+
+			calendar.setTimeInMillis(day * 86400000L);
+			Assert.assertEquals(calendar.get(Calendar.YEAR), date.getYear());
+			Assert.assertEquals(calendar.get(Calendar.MONTH) + 1, date.getMonth());
+			Assert.assertEquals(calendar.get(Calendar.DAY_OF_MONTH), date.getDay());
+			Assert.assertEquals((calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7, ServiceCalendarEngine.getWeekday(day));
+		}
+		Assert.assertEquals(new ServiceDate(1900, 3, 1), ServiceCalendarEngine.getServiceDateForEpochDay(
+				ServiceCalendarEngine.getEpochDay(1900, 2, 28) + 1));
+		Assert.assertEquals(new ServiceDate(2000, 2, 29), ServiceCalendarEngine.getServiceDateForEpochDay(
+				ServiceCalendarEngine.getEpochDay(2000, 2, 28) + 1));
+	}
+
+	@Test
+	public void weekdaysWithHolidays() {
+		final int first = ServiceCalendarEngine.getEpochDay(2015, 3, 2);
+		final int last = ServiceCalendarEngine.getEpochDay(2015, 6, 30);
+		final Set<Integer> holidays = new HashSet<Integer>();
+		holidays.add(ServiceCalendarEngine.getEpochDay(2015, 4, 6));
+		holidays.add(ServiceCalendarEngine.getEpochDay(2015, 5, 1));
+		holidays.add(ServiceCalendarEngine.getEpochDay(2015, 6, 2));
+		final List<Integer> days = new ArrayList<Integer>();
+		for (int day = first; day <= last; ++day) {
+			if (ServiceCalendarEngine.getWeekday(day) < 5 && !holidays.contains(day)) {
+				days.add(day);
+			}
+		}
+
+		final Result result = getCalendarEntities(days);
+		Assert.assertNotNull(result.calendar);
+		assertWeekdays(result.calendar, 1, 1, 1, 1, 1, 0, 0);
+		Assert.assertEquals(new ServiceDate(2015, 3, 2), result.calendar.getStartDate());
+		Assert.assertEquals(new ServiceDate(2015, 6, 30), result.calendar.getEndDate());
+		Assert.assertTrue(result.added.isEmpty());
+		Assert.assertEquals(toDates(holidays), result.removed);
+	}
+
+	@Test
+	public void exceptionsAtWordBoundaries() {
+		// Bits 63 and 64 are the last of the first word and the first of the
+		// second one, and bit 128 the first of the third word
+		final int first = ServiceCalendarEngine.getEpochDay(2015, 1, 5);
+		Assert.assertEquals(0, ServiceCalendarEngine.getWeekday(first));
+		final List<Integer> days = new ArrayList<Integer>();
+		for (int day = first; day <= first + 130; ++day) {
+			final int bit = day - first;
+			if (bit == 63 || bit == 64) {
+				continue;
+			}
+			if (ServiceCalendarEngine.getWeekday(day) < 5 || bit == 68 || bit == 124) {
+				days.add(day);
+			}
+		}
+
+		final Result result = getCalendarEntities(days);
+		Assert.assertNotNull(result.calendar);
+		assertWeekdays(result.calendar, 1, 1, 1, 1, 1, 0, 0);
+		Assert.assertEquals(ServiceCalendarEngine.getServiceDateForEpochDay(first + 130), result.calendar.getEndDate());
+		final Set<Integer> removed = new HashSet<Integer>();
+		removed.add(first + 63);
+		removed.add(first + 64);
+		Assert.assertEquals(toDates(removed), result.removed);
+		final Set<Integer> added = new HashSet<Integer>();
+		added.add(first + 68);
+		added.add(first + 124);
+		Assert.assertEquals(toDates(added), result.added);
+	}
+
+	@Test
+	public void sparseDayTypeFallsBackToCalendarDates() {
+		final List<Integer> days = new ArrayList<Integer>();
+		days.add(ServiceCalendarEngine.getEpochDay(2015, 12, 24));
+		days.add(ServiceCalendarEngine.getEpochDay(2016, 1, 6));
+		days.add(ServiceCalendarEngine.getEpochDay(2016, 2, 14));
+
+		final Result result = getCalendarEntities(days);
+		Assert.assertNull(result.calendar);
+		Assert.assertTrue(result.removed.isEmpty());
+		Assert.assertEquals(toDates(new HashSet<Integer>(days)), result.added);
+	}
+
+	@Test
+	public void dayTypeWithoutPeriods() {
+		Assert.assertTrue(getCalendarEntities(new ArrayList<Integer>()).entities.isEmpty());
+	}
+
+	private static Result getCalendarEntities(final List<Integer> days) {
+		final Vdv452Dao dao = new Vdv452Dao();
+		final DayType dayType = new DayType();
+		dayType.setId(new VersionedId(1, 1));
+		dao.putEntity(dayType);
+		for (final int day : days) {
+			final ServiceDate date = ServiceCalendarEngine.getServiceDateForEpochDay(day);
+			final Period period = new Period();
+			period.setDayType(dayType);
+			period.setDate(new org.onebusaway.vdv452.model.ServiceDate(date.getYear(), date.getMonth(), date.getDay()));
+			dao.putEntity(period);
+		}
+
+		final Result result = new Result();
+		result.entities = new ServiceCalendarEngine(dao).getCalendarEntitiesForDayType(SERVICE_ID, dayType);
+		for (final Object entity : result.entities) {
+			if (entity instanceof ServiceCalendar) {
+				Assert.assertNull(result.calendar);
+				result.calendar = (ServiceCalendar) entity;
+				Assert.assertEquals(SERVICE_ID, result.calendar.getServiceId());
+			} else {
+				final ServiceCalendarDate calendarDate = (ServiceCalendarDate) entity;
+				Assert.assertEquals(SERVICE_ID, calendarDate.getServiceId());
+				final Set<ServiceDate> dates = calendarDate.getExceptionType() == 1 ? result.added : result.removed;
+				Assert.assertTrue(dates.add(calendarDate.getDate()));
+			}
+		}
+		return result;
+	}
+
+	private static Set<ServiceDate> toDates(final Set<Integer> days) {
+		final Set<ServiceDate> dates = new HashSet<ServiceDate>();
+		for (final int day : days) {
+			dates.add(ServiceCalendarEngine.getServiceDateForEpochDay(day));
+		}
+		return dates;
+	}
+
+	private static void assertWeekdays(final ServiceCalendar calendar, final int... weekdays) {
+		Assert.assertEquals(weekdays[0], calendar.getMonday());
+		Assert.assertEquals(weekdays[1], calendar.getTuesday());
+		Assert.assertEquals(weekdays[2], calendar.getWednesday());
+		Assert.assertEquals(weekdays[3], calendar.getThursday());
+		Assert.assertEquals(weekdays[4], calendar.getFriday());
+		Assert.assertEquals(weekdays[5], calendar.getSaturday());
+		Assert.assertEquals(weekdays[6], calendar.getSunday());
+	}
+
+	private static class Result {
+		private List<Object> entities;
+		private ServiceCalendar calendar;
+		private final Set<ServiceDate> added = new HashSet<ServiceDate>();
+		private final Set<ServiceDate> removed = new HashSet<ServiceDate>();
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+import org.onebusaway.gtfs.model.Agency;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Route;
+import org.onebusaway.gtfs.model.Trip;
+
+import junit.framework.Assert;
+
+public class StreamingGtfsFileSinkTest {
+
+	@Test
+	public void tripIdsAreWrittenOnce() throws IOException {
+		final File directory = Files.createTempDirectory("gtfs").toFile();
+		try {
+			final StreamingGtfsFileSink sink = new StreamingGtfsFileSink(directory);
+			final Agency agency = new Agency();
+			agency.setId("1");
+			final Route route = new Route();
+			route.setId(new AgencyAndId("1", "1"));
+			route.setAgency(agency);
+
+			Assert.assertNull(sink.getTripForId(new AgencyAndId("1", "42")));
+			sink.saveEntity(createTrip(route, "42"));
+			Assert.assertEquals(new AgencyAndId("1", "42"), sink.getTripForId(new AgencyAndId("1", "42")).getId());
+			try {
+				sink.saveEntity(createTrip(route, "42"));
+				Assert.fail();
+			} catch (final IllegalArgumentException ex) {
+				// expected
+			}
+
+			// Ids are compared as written, so 042 is a different trip_id
+			sink.saveEntity(createTrip(route, "042"));
+			Assert.assertNotNull(sink.getTripForId(new AgencyAndId("1", "042")));
+			Assert.assertNull(sink.getTripForId(new AgencyAndId("1", "43")));
+
+			Assert.assertTrue(sink.putTripId(new AgencyAndId("1", "0")));
+			Assert.assertFalse(sink.putTripId(new AgencyAndId("1", "0")));
+			Assert.assertFalse(sink.putTripId(new AgencyAndId("1", "042")));
+			sink.close();
+
+			final List<String> lines = Files.readAllLines(new File(directory, "trips.txt").toPath(),
+					StandardCharsets.UTF_8);
+			Assert.assertEquals(3, lines.size());
+		} finally {
+			for (final File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	private static Trip createTrip(final Route route, final String id) {
+		final Trip trip = new Trip();
+		trip.setId(new AgencyAndId("1", id));
+		trip.setRoute(route);
+		trip.setServiceId(new AgencyAndId("1", "1"));
+		return trip;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.onebusaway.gtfs.impl.GtfsRelationalDaoImpl;
+import org.onebusaway.gtfs.model.StopTime;
+import org.onebusaway.gtfs.model.Trip;
+import org.onebusaway.gtfs.serialization.GtfsReader;
+
+import junit.framework.Assert;
+
+public class Vdv452ToGtfsConverterTest {
+
+	private static final String TEST_VDV452 = "../onebusaway-vdv452/src/test/resources/vdv452_sasa.zip";
+
+	@Test
+	public void convertWithThreads() throws IOException {
+		final File directory = Files.createTempDirectory("vdv452").toFile();
+		try {
+			final File sequential = new File(directory, "sequential");
+			convert(sequential, 1, false);
+			final File parallel = new File(directory, "parallel");
+			convert(parallel, 4, false);
+			Assert.assertTrue(new File(sequential, "trips.txt").length() > 0);
+
+			final String[] names = sequential.list();
+			Arrays.sort(names);
+			final String[] parallelNames = parallel.list();
+			Arrays.sort(parallelNames);
+			Assert.assertEquals(Arrays.asList(names), Arrays.asList(parallelNames));
+			for (final String name : names) {
+				Assert.assertTrue(name, Arrays.equals(Files.readAllBytes(new File(sequential, name).toPath()),
+						Files.readAllBytes(new File(parallel, name).toPath())));
+			}
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void convertStreaming() throws IOException {
+		final File directory = Files.createTempDirectory("vdv452").toFile();
+		try {
+			final File inMemory = new File(directory, "inMemory");
+			convert(inMemory, 1, false);
+			final File streamed = new File(directory, "streamed");
+			convert(streamed, 1, true);
+
+			final GtfsRelationalDaoImpl expected = read(inMemory);
+			final GtfsRelationalDaoImpl actual = read(streamed);
+			Assert.assertFalse(expected.getAllTrips().isEmpty());
+			Assert.assertEquals(getTrips(expected), getTrips(actual));
+			Assert.assertEquals(getStopTimes(expected), getStopTimes(actual));
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	private static void convert(final File output, final int threads, final boolean streaming) throws IOException {
+		final Vdv452ToGtfsConverter converter = new Vdv452ToGtfsConverter();
+		converter.setInputPath(new File(TEST_VDV452));
+		converter.setOutputPath(output);
+		converter.setTimeZone(TimeZone.getTimeZone("Europe/Rome"));
+		converter.setThreads(threads);
+		converter.setStreaming(streaming);
+		converter.run();
+	}
+
+	private static GtfsRelationalDaoImpl read(final File input) throws IOException {
+		final GtfsRelationalDaoImpl dao = new GtfsRelationalDaoImpl();
+		final GtfsReader reader = new GtfsReader();
+		reader.setInputLocation(input);
+		reader.setEntityStore(dao);
+		reader.run();
+		return dao;
+	}
+
+	/**
+	 * The trips are compared regardless of their order, which differs as
+	 * streamed journeys are converted in the order of REC_FRT.
+	 */
+	private static List<String> getTrips(final GtfsRelationalDaoImpl dao) {
+		final List<String> trips = new ArrayList<String>();
+		for (final Trip trip : dao.getAllTrips()) {
+			trips.add(trip.getId().getId() + "," + trip.getRoute().getId().getId() + ","
+					+ trip.getServiceId().getId());
+		}
+		Collections.sort(trips);
+		return trips;
+	}
+
+	private static List<String> getStopTimes(final GtfsRelationalDaoImpl dao) {
+		final List<String> stopTimes = new ArrayList<String>();
+		for (final StopTime stopTime : dao.getAllStopTimes()) {
+			stopTimes.add(stopTime.getTrip().getId().getId() + "," + stopTime.getStopSequence() + ","
+					+ stopTime.getStop().getId().getId() + "," + stopTime.getArrivalTime() + ","
+					+ stopTime.getDepartureTime());
+		}
+		Collections.sort(stopTimes);
+		return stopTimes;
+	}
+
+	private static void deleteRecursively(final File file) {
+		final File[] files = file.listFiles();
+		if (files != null) {
+			for (final File child : files) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+}
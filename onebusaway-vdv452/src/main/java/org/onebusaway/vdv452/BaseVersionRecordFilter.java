@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.Arrays;
+
+import org.onebusaway.vdv452.model.VersionedId;
+import org.onebusaway.vdv452.serialization.VdvColumns;
+import org.onebusaway.vdv452.serialization.VdvRecord;
+import org.onebusaway.vdv452.serialization.VdvRecordFilter;
+
+/**
+ * Rejects the records of base versions other than the selected ones, based on
+ * the raw BASIS_VERSION column. Tables without the column are read in full.
+ */
+class BaseVersionRecordFilter implements VdvRecordFilter {
+
+  private static final int COLUMN_BASIS_VERSION = VdvColumns.getId(VersionedId.BASIS_VERSION_FIELD);
+
+  private final long[] _versions;
+
+  /**
+   * @param versions the selected versions, sorted
+   */
+  public BaseVersionRecordFilter(long[] versions) {
+    _versions = versions;
+  }
+
+  @Override
+  public boolean accept(VdvRecord record) {
+    if (record.isMissing(COLUMN_BASIS_VERSION)) {
+      return true;
+    }
+    return Arrays.binarySearch(_versions,
+        record.getLong(COLUMN_BASIS_VERSION)) >= 0;
+  }
+
+  @Override
+  public String toString() {
+    return "baseVersions" + Arrays.toString(_versions);
+  }
+}
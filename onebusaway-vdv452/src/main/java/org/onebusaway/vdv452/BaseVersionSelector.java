@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.onebusaway.vdv452.model.BaseVersion;
+import org.onebusaway.vdv452.model.BaseVersionValidity;
+import org.onebusaway.vdv452.model.ServiceDate;
+
+/**
+ * Selects the base versions (BASIS_VERSION) of a VDV feed to read, from the
+ * base versions listed in MENGE_BASIS_VERSIONEN and their validities from
+ * BASIS_VER_GUELTIGKEIT. See {@link Vdv452Reader#setBaseVersionSelector}.
+ */
+public abstract class BaseVersionSelector {
+
+  /**
+   * Selects the specified base versions.
+   */
+  public static BaseVersionSelector versions(final long... versions) {
+    final long[] sorted = versions.clone();
+    Arrays.sort(sorted);
+    return new BaseVersionSelector() {
+      @Override
+      public long[] select(List<BaseVersion> baseVersions,
+          List<BaseVersionValidity> validities) {
+        return sorted;
+      }
+
+      @Override
+      public String toString() {
+        return "versions" + Arrays.toString(sorted);
+      }
+    };
+  }
+
+  /**
+   * Selects the highest base version of MENGE_BASIS_VERSIONEN.
+   */
+  public static BaseVersionSelector latest() {
+    return new BaseVersionSelector() {
+      @Override
+      public long[] select(List<BaseVersion> baseVersions,
+          List<BaseVersionValidity> validities) {
+        if (baseVersions.isEmpty()) {
+          throw new IllegalStateException("no base versions to select from");
+        }
+        long latest = Long.MIN_VALUE;
+        for (BaseVersion baseVersion : baseVersions) {
+          latest = Math.max(latest, baseVersion.getId());
+        }
+        return new long[] {latest};
+      }
+
+      @Override
+      public String toString() {
+        return "latest";
+      }
+    };
+  }
+
+  /**
+   * Selects the base version valid on the specified date, which is the one
+   * whose validity in BASIS_VER_GUELTIGKEIT started most recently on or
+   * before the date.
+   */
+  public static BaseVersionSelector activeOn(final ServiceDate date) {
+    return new BaseVersionSelector() {
+      @Override
+      public long[] select(List<BaseVersion> baseVersions,
+          List<BaseVersionValidity> validities) {
+        BaseVersionValidity active = null;
+        for (BaseVersionValidity validity : validities) {
+          if (validity.getDate().compareTo(date) > 0) {
+            continue;
+          }
+          if (active == null) {
+            active = validity;
+            continue;
+          }
+          int c = validity.getDate().compareTo(active.getDate());
+          if (c > 0
+              || (c == 0 && validity.getBaseVersion() > active.getBaseVersion())) {
+            active = validity;
+          }
+        }
+        if (active == null) {
+          throw new IllegalStateException("no base version is valid on "
+              + date);
+        }
+        return new long[] {active.getBaseVersion()};
+      }
+
+      @Override
+      public String toString() {
+        return "activeOn(" + date.getAsString() + ")";
+      }
+    };
+  }
+
+  /**
+   * Parses a selector from "latest", "active:YYYYMMDD" or a comma-separated
+   * list of versions.
+   */
+  public static BaseVersionSelector parse(String value) {
+    if (value.equals("latest")) {
+      return latest();
+    }
+    if (value.startsWith("active:")) {
+      String date = value.substring("active:".length());
+      if (date.length() != 8) {
+        throw new IllegalArgumentException("invalid date: " + date);
+      }
+      return activeOn(new ServiceDate(Integer.parseInt(date.substring(0, 4)),
+          Integer.parseInt(date.substring(4, 6)),
+          Integer.parseInt(date.substring(6, 8))));
+    }
+    String[] tokens = value.split(",");
+    long[] versions = new long[tokens.length];
+    for (int i = 0; i < tokens.length; ++i) {
+      versions[i] = Long.parseLong(tokens[i].trim());
+    }
+    return versions(versions);
+  }
+
+  /**
+   * @return the selected base versions, sorted
+   */
+  public abstract long[] select(List<BaseVersion> baseVersions,
+      List<BaseVersionValidity> validities);
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+/**
+ * A latitude and longitude range in decimal degrees, inclusive.
+ */
+public class BoundingBox {
+
+  private final double _minLat;
+
+  private final double _minLon;
+
+  private final double _maxLat;
+
+  private final double _maxLon;
+
+  public BoundingBox(double minLat, double minLon, double maxLat, double maxLon) {
+    if (minLat > maxLat || minLon > maxLon) {
+      throw new IllegalArgumentException("invalid bounding box: " + minLat
+          + "," + minLon + "," + maxLat + "," + maxLon);
+    }
+    _minLat = minLat;
+    _minLon = minLon;
+    _maxLat = maxLat;
+    _maxLon = maxLon;
+  }
+
+  /**
+   * Parses a bounding box from "minLat,minLon,maxLat,maxLon".
+   */
+  public static BoundingBox parse(String value) {
+    String[] tokens = value.split(",");
+    if (tokens.length != 4) {
+      throw new IllegalArgumentException("invalid bounding box: " + value);
+    }
+    return new BoundingBox(Double.parseDouble(tokens[0].trim()),
+        Double.parseDouble(tokens[1].trim()),
+        Double.parseDouble(tokens[2].trim()),
+        Double.parseDouble(tokens[3].trim()));
+  }
+
+  public boolean contains(double lat, double lon) {
+    return _minLat <= lat && lat <= _maxLat && _minLon <= lon
+        && lon <= _maxLon;
+  }
+
+  @Override
+  public String toString() {
+    return "[" + _minLat + "," + _minLon + "," + _maxLat + "," + _maxLon + "]";
+  }
+}
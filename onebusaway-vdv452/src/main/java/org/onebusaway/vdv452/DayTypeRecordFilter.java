@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.Set;
+
+import org.onebusaway.vdv452.model.VersionedId;
+import org.onebusaway.vdv452.serialization.IdFactory;
+import org.onebusaway.vdv452.serialization.VdvColumns;
+import org.onebusaway.vdv452.serialization.VdvRecord;
+import org.onebusaway.vdv452.serialization.VdvRecordFilter;
+
+/**
+ * Rejects the records of day types other than the specified ones, based on
+ * the raw TAGESART_NR column of MENGE_TAGESART, FIRMENKALENDER and REC_FRT.
+ * Used to reject the journeys of the day types a {@link Vdv452Reader} pruned
+ * from its DAO from the tables read afterwards, such as streamed journeys.
+ */
+class DayTypeRecordFilter implements VdvRecordFilter {
+
+  private static final int COLUMN_TAGESART_NR = VdvColumns.getId("TAGESART_NR");
+
+  private final Set<VersionedId> _dayTypes;
+
+  public DayTypeRecordFilter(Set<VersionedId> dayTypes) {
+    _dayTypes = dayTypes;
+  }
+
+  @Override
+  public boolean accept(VdvRecord record) {
+    if (record.isMissing(COLUMN_TAGESART_NR)) {
+      return true;
+    }
+    return _dayTypes.contains(IdFactory.resolveVersionedId(record,
+        COLUMN_TAGESART_NR));
+  }
+
+  @Override
+  public String toString() {
+    return "dayTypes(" + _dayTypes.size() + ")";
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.onebusaway.vdv452.model.IdentityBean;
+
+/**
+ * The entities of a single type, each assigned a dense int index in the order
+ * they were added. Entities are looked up by the primitive components of their
+ * natural key, with the full id only compared to tell apart entities whose
+ * keys share the same components, such as the variants of a line.
+ */
+class EntityTable<T extends IdentityBean<?>> {
+
+  private final List<T> _entities = new ArrayList<T>();
+
+  private final LongPairIntMap _indexByKey = new LongPairIntMap();
+
+  /**
+   * The index of the next entity with the same key components, or -1.
+   */
+  private int[] _nextWithSameKey = new int[16];
+
+  /**
+   * Adds the entity, replacing any existing entity with the same id.
+   *
+   * @return the index of the entity
+   */
+  public int put(long key1, long key2, T entity) {
+    Object id = entity.getId();
+    int first = _indexByKey.get(key1, key2);
+    for (int index = first; index >= 0; index = _nextWithSameKey[index]) {
+      if (_entities.get(index).getId().equals(id)) {
+        _entities.set(index, entity);
+        return index;
+      }
+    }
+    int index = _entities.size();
+    _entities.add(entity);
+    if (index == _nextWithSameKey.length) {
+      _nextWithSameKey = Arrays.copyOf(_nextWithSameKey, index * 2);
+    }
+    _nextWithSameKey[index] = first;
+    _indexByKey.put(key1, key2, index);
+    return index;
+  }
+
+  /**
+   * @return the index of the entity with the specified id, or -1
+   */
+  public int getIndex(long key1, long key2, Object id) {
+    int index = _indexByKey.get(key1, key2);
+    while (index >= 0 && !_entities.get(index).getId().equals(id)) {
+      index = _nextWithSameKey[index];
+    }
+    return index;
+  }
+
+  public T get(long key1, long key2, Object id) {
+    int index = getIndex(key1, key2, id);
+    return index < 0 ? null : _entities.get(index);
+  }
+
+  public T get(int index) {
+    return _entities.get(index);
+  }
+
+  public int size() {
+    return _entities.size();
+  }
+
+  public List<T> getAll() {
+    return Collections.unmodifiableList(_entities);
+  }
+}
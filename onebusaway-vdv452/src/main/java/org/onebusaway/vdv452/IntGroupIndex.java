@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Groups the dense indices of one entity type by the dense index of another,
+ * stored as a pair of flat int arrays: the members of group g are
+ * {@code members[offsets[g]]} up to {@code members[offsets[g + 1]]}, in
+ * their original order unless another order is given.
+ */
+class IntGroupIndex {
+
+  private final int[] _offsets;
+
+  private final int[] _members;
+
+  /**
+   * @param groups the group of each member, or -1 for members that don't
+   *          belong to any group
+   */
+  public IntGroupIndex(int[] groups, int groupCount) {
+    this(groups, groupCount, null);
+  }
+
+  /**
+   * @param groups the group of each member, or -1 for members that don't
+   *          belong to any group
+   * @param order when set, a permutation of the members giving their order
+   *          within each group
+   */
+  public IntGroupIndex(int[] groups, int groupCount, int[] order) {
+    _offsets = new int[groupCount + 1];
+    for (int group : groups) {
+      if (group >= 0) {
+        _offsets[group + 1]++;
+      }
+    }
+    for (int group = 0; group < groupCount; ++group) {
+      _offsets[group + 1] += _offsets[group];
+    }
+    _members = new int[_offsets[groupCount]];
+    int[] next = Arrays.copyOf(_offsets, groupCount);
+    for (int i = 0; i < groups.length; ++i) {
+      int member = order == null ? i : order[i];
+      int group = groups[member];
+      if (group >= 0) {
+        _members[next[group]++] = member;
+      }
+    }
+  }
+
+  public int getStart(int group) {
+    return isGroup(group) ? _offsets[group] : 0;
+  }
+
+  public int getEnd(int group) {
+    return isGroup(group) ? _offsets[group + 1] : 0;
+  }
+
+  public int getMember(int i) {
+    return _members[i];
+  }
+
+  /**
+   * @return a view of the members of the group, resolved against the list of
+   *         all members
+   */
+  public <T> List<T> getMembers(int group, final List<T> values) {
+    final int start = getStart(group);
+    final int end = getEnd(group);
+    return new AbstractList<T>() {
+
+      @Override
+      public T get(int index) {
+        if (index < 0 || start + index >= end) {
+          throw new IndexOutOfBoundsException("index=" + index + " size="
+              + size());
+        }
+        return values.get(_members[start + index]);
+      }
+
+      @Override
+      public int size() {
+        return end - start;
+      }
+    };
+  }
+
+  private boolean isGroup(int group) {
+    return group >= 0 && group + 1 < _offsets.length;
+  }
+}
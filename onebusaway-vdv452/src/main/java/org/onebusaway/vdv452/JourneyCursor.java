@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.Journey;
+import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.TimingGroup;
+
+/**
+ * Iterates over the journeys of a {@link Vdv452Dao} without materializing a
+ * {@link Journey} for each of them. The values returned by the getters refer
+ * to the journey the cursor was most recently advanced to.
+ */
+public interface JourneyCursor {
+
+  /**
+   * Advances to the next journey.
+   *
+   * @return false if there are no more journeys
+   */
+  public boolean next();
+
+  public long getVersion();
+
+  public long getId();
+
+  public Line getLine();
+
+  public int getDepartureTime();
+
+  public TimingGroup getTimingGroup();
+
+  public DayType getDayType();
+
+  /**
+   * @return the current journey as a {@link Journey}, which may be a new
+   *         instance for each call
+   */
+  public Journey getJourney();
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.Arrays;
+
+/**
+ * Stores journeys as parallel primitive arrays, one entry per journey, with
+ * references to lines, timing groups and day types held as the dense indices
+ * assigned by {@link Vdv452Dao}.
+ */
+class JourneyStore {
+
+  private long[] _versions = new long[0];
+
+  private long[] _ids = new long[0];
+
+  private int[] _lines = new int[0];
+
+  private int[] _departureTimes = new int[0];
+
+  private int[] _timingGroups = new int[0];
+
+  private int[] _dayTypes = new int[0];
+
+  private int _size = 0;
+
+  private final LongPairIntMap _indexById = new LongPairIntMap();
+
+  public int size() {
+    return _size;
+  }
+
+  public void ensureCapacity(int capacity) {
+    if (capacity <= _ids.length) {
+      return;
+    }
+    _versions = Arrays.copyOf(_versions, capacity);
+    _ids = Arrays.copyOf(_ids, capacity);
+    _lines = Arrays.copyOf(_lines, capacity);
+    _departureTimes = Arrays.copyOf(_departureTimes, capacity);
+    _timingGroups = Arrays.copyOf(_timingGroups, capacity);
+    _dayTypes = Arrays.copyOf(_dayTypes, capacity);
+  }
+
+  /**
+   * Adds the journey, replacing any existing journey with the same id.
+   *
+   * @return the index of the journey
+   */
+  public int put(long version, long id, int line, int departureTime,
+      int timingGroup, int dayType) {
+    int index = _indexById.get(version, id);
+    if (index < 0) {
+      index = _size++;
+      if (index == _ids.length) {
+        ensureCapacity(Math.max(16, index + (index >> 1)));
+      }
+      _indexById.put(version, id, index);
+    }
+    _versions[index] = version;
+    _ids[index] = id;
+    _lines[index] = line;
+    _departureTimes[index] = departureTime;
+    _timingGroups[index] = timingGroup;
+    _dayTypes[index] = dayType;
+    return index;
+  }
+
+  /**
+   * @return the index of the journey, or -1
+   */
+  public int getIndex(long version, long id) {
+    return _indexById.get(version, id);
+  }
+
+  public long getVersion(int index) {
+    return _versions[index];
+  }
+
+  public long getId(int index) {
+    return _ids[index];
+  }
+
+  public int getLine(int index) {
+    return _lines[index];
+  }
+
+  public int getDepartureTime(int index) {
+    return _departureTimes[index];
+  }
+
+  public int getTimingGroup(int index) {
+    return _timingGroups[index];
+  }
+
+  public int getDayType(int index) {
+    return _dayTypes[index];
+  }
+}
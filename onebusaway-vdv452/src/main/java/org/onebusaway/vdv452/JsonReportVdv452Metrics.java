@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Logs a summary like {@link LoggingVdv452Metrics} and writes all
+ * measurements as a JSON report once the conversion has finished, such that
+ * the throughput of successive runs can be compared by a script. Times in the
+ * report are in nanoseconds.
+ */
+public class JsonReportVdv452Metrics extends LoggingVdv452Metrics {
+
+  private final File _path;
+
+  public JsonReportVdv452Metrics(File path) {
+    _path = path;
+  }
+
+  @Override
+  public void conversionFinished(long elapsedNanos) {
+    super.conversionFinished(elapsedNanos);
+    try {
+      writeReport(_path);
+    } catch (IOException ex) {
+      throw new IllegalStateException("error writing metrics report " + _path,
+          ex);
+    }
+  }
+
+  public void writeReport(File path) throws IOException {
+    Writer out = new OutputStreamWriter(new FileOutputStream(path),
+        StandardCharsets.UTF_8);
+    try {
+      writeReport(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  public void writeReport(Writer out) throws IOException {
+    StringBuilder b = new StringBuilder();
+    b.append("{\n  \"elapsedNanos\": ").append(getElapsedNanos());
+    b.append(",\n  \"tables\": [");
+    List<Vdv452TableMetrics> tables = getTables();
+    for (int i = 0; i < tables.size(); ++i) {
+      Vdv452TableMetrics table = tables.get(i);
+      b.append(i == 0 ? "\n" : ",\n");
+      b.append("    {\"filename\": ");
+      appendString(b, table.getFilename());
+      b.append(", \"entityType\": ");
+      appendString(b, table.getEntityType().getName());
+      b.append(", \"bytes\": ").append(table.getBytes());
+      b.append(", \"rows\": ").append(table.getRows());
+      b.append(", \"records\": ").append(table.getRecords());
+      b.append(", \"entities\": ").append(table.getEntities());
+      b.append(", \"rejectedRows\": ").append(table.getRejectedRows());
+      b.append(", \"tokenizeNanos\": ").append(table.getTokenizeNanos());
+      b.append(", \"mappingNanos\": ").append(table.getMappingNanos());
+      b.append(", \"insertNanos\": ").append(table.getInsertNanos());
+      b.append(", \"elapsedNanos\": ").append(table.getElapsedNanos());
+      b.append("}");
+    }
+    b.append(tables.isEmpty() ? "]" : "\n  ]");
+    b.append(",\n  \"stopTimePatterns\": {\"hits\": ").append(getPatternHits());
+    b.append(", \"misses\": ").append(getPatternMisses()).append("}");
+    b.append(",\n  \"gtfsFiles\": {");
+    boolean first = true;
+    for (Map.Entry<String, Long> entry : getGtfsFiles().entrySet()) {
+      b.append(first ? "\n    " : ",\n    ");
+      appendString(b, entry.getKey());
+      b.append(": ").append(entry.getValue());
+      first = false;
+    }
+    b.append(first ? "}" : "\n  }");
+    b.append("\n}\n");
+    out.write(b.toString());
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static void appendString(StringBuilder b, String value) {
+    b.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        b.append('\\').append(c);
+      } else if (c < 0x20) {
+        b.append(String.format("\\u%04x", (int) c));
+      } else {
+        b.append(c);
+      }
+    }
+    b.append('"');
+  }
+}
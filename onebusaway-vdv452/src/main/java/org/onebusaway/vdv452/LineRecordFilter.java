@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.Arrays;
+
+import org.onebusaway.vdv452.serialization.VdvColumns;
+import org.onebusaway.vdv452.serialization.VdvRecord;
+import org.onebusaway.vdv452.serialization.VdvRecordFilter;
+
+/**
+ * Rejects the records of lines other than the selected ones, based on the raw
+ * LI_NR column of REC_LID, LID_VERLAUF and REC_FRT. Tables without the column
+ * are read in full.
+ */
+class LineRecordFilter implements VdvRecordFilter {
+
+  private static final int COLUMN_LI_NR = VdvColumns.getId("LI_NR");
+
+  private final long[] _lineNumbers;
+
+  /**
+   * @param lineNumbers the selected line numbers, sorted
+   */
+  public LineRecordFilter(long[] lineNumbers) {
+    _lineNumbers = lineNumbers;
+  }
+
+  @Override
+  public boolean accept(VdvRecord record) {
+    if (record.isMissing(COLUMN_LI_NR)) {
+      return true;
+    }
+    return Arrays.binarySearch(_lineNumbers, record.getLong(COLUMN_LI_NR)) >= 0;
+  }
+
+  @Override
+  public String toString() {
+    return "lines" + Arrays.toString(_lineNumbers);
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects all measurements and logs a summary once the conversion has
+ * finished.
+ */
+public class LoggingVdv452Metrics implements Vdv452Metrics {
+
+  private static Logger _log = LoggerFactory.getLogger(LoggingVdv452Metrics.class);
+
+  private final List<Vdv452TableMetrics> _tables = new ArrayList<Vdv452TableMetrics>();
+
+  private final Map<String, Long> _gtfsFiles = new LinkedHashMap<String, Long>();
+
+  private long _patternHits = 0;
+
+  private long _patternMisses = 0;
+
+  private long _elapsedNanos = 0;
+
+  @Override
+  public synchronized void tableRead(Vdv452TableMetrics table) {
+    _tables.add(table);
+  }
+
+  @Override
+  public synchronized void stopTimePatterns(long hits, long misses) {
+    _patternHits += hits;
+    _patternMisses += misses;
+  }
+
+  @Override
+  public synchronized void gtfsFileWritten(String filename, long bytes) {
+    _gtfsFiles.put(filename, bytes);
+  }
+
+  @Override
+  public void conversionFinished(long elapsedNanos) {
+    synchronized (this) {
+      _elapsedNanos = elapsedNanos;
+    }
+    logSummary();
+  }
+
+  /**
+   * @return the tables read so far, in the order in which they were finished
+   */
+  public synchronized List<Vdv452TableMetrics> getTables() {
+    return new ArrayList<Vdv452TableMetrics>(_tables);
+  }
+
+  /**
+   * @return the size in bytes of each GTFS file written
+   */
+  public synchronized Map<String, Long> getGtfsFiles() {
+    return new LinkedHashMap<String, Long>(_gtfsFiles);
+  }
+
+  public synchronized long getPatternHits() {
+    return _patternHits;
+  }
+
+  public synchronized long getPatternMisses() {
+    return _patternMisses;
+  }
+
+  public synchronized long getElapsedNanos() {
+    return _elapsedNanos;
+  }
+
+  public void logSummary() {
+    for (Vdv452TableMetrics table : getTables()) {
+      _log.info(table.getFilename() + ": " + table.getBytes() + " bytes, "
+          + table.getRows() + " rows, " + table.getEntities() + " entities, "
+          + table.getRejectedRows() + " rejected in "
+          + toMillis(table.getElapsedNanos()) + " ms (tokenize "
+          + toMillis(table.getTokenizeNanos()) + " ms, mapping "
+          + toMillis(table.getMappingNanos()) + " ms, insert "
+          + toMillis(table.getInsertNanos()) + " ms)");
+    }
+    long hits = getPatternHits();
+    long total = hits + getPatternMisses();
+    if (total > 0) {
+      _log.info("stop time pattern cache: " + hits + " hits for " + total
+          + " journeys");
+    }
+    for (Map.Entry<String, Long> entry : getGtfsFiles().entrySet()) {
+      _log.info(entry.getKey() + ": " + entry.getValue() + " bytes written");
+    }
+    long elapsedNanos = getElapsedNanos();
+    if (elapsedNanos > 0) {
+      _log.info("conversion finished in " + toMillis(elapsedNanos) + " ms");
+    }
+  }
+
+  /****
+   * Protected Methods
+   ****/
+
+  protected static long toMillis(long nanos) {
+    return nanos / 1000000;
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+/**
+ * An open-addressing map from a pair of primitive longs to a non-negative int,
+ * used to look up the dense index of an entity by the components of its VDV
+ * natural key without boxing.
+ */
+class LongPairIntMap {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private long[] _keys1 = new long[INITIAL_CAPACITY];
+
+  private long[] _keys2 = new long[INITIAL_CAPACITY];
+
+  /**
+   * The value of each slot plus one, such that zero marks an empty slot.
+   */
+  private int[] _values = new int[INITIAL_CAPACITY];
+
+  private int _size = 0;
+
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * @return the value for the key, or -1 if there is none
+   */
+  public int get(long key1, long key2) {
+    int mask = _values.length - 1;
+    int i = hash(key1, key2) & mask;
+    while (_values[i] != 0) {
+      if (_keys1[i] == key1 && _keys2[i] == key2) {
+        return _values[i] - 1;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the previous value for the key, or -1 if there was none
+   */
+  public int put(long key1, long key2, int value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("negative value: " + value);
+    }
+    int mask = _values.length - 1;
+    int i = hash(key1, key2) & mask;
+    while (_values[i] != 0) {
+      if (_keys1[i] == key1 && _keys2[i] == key2) {
+        int previous = _values[i] - 1;
+        _values[i] = value + 1;
+        return previous;
+      }
+      i = (i + 1) & mask;
+    }
+    _keys1[i] = key1;
+    _keys2[i] = key2;
+    _values[i] = value + 1;
+    if (++_size * 2 > _values.length) {
+      rehash(_values.length * 2);
+    }
+    return -1;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void rehash(int capacity) {
+    long[] keys1 = _keys1;
+    long[] keys2 = _keys2;
+    int[] values = _values;
+    _keys1 = new long[capacity];
+    _keys2 = new long[capacity];
+    _values = new int[capacity];
+    int mask = capacity - 1;
+    for (int j = 0; j < values.length; ++j) {
+      if (values[j] == 0) {
+        continue;
+      }
+      int i = hash(keys1[j], keys2[j]) & mask;
+      while (_values[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      _keys1[i] = keys1[j];
+      _keys2[i] = keys2[j];
+      _values[i] = values[j];
+    }
+  }
+
+  private static int hash(long key1, long key2) {
+    long h = key1 * 0x9E3779B97F4A7C15L + key2;
+    h *= 0xC2B2AE3D27D4EB4FL;
+    return (int) (h ^ (h >>> 32));
+  }
+}
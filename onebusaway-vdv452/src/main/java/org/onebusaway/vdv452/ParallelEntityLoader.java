@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.onebusaway.csv_entities.CsvInputSource;
+import org.onebusaway.vdv452.serialization.EntityDependencies;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the tables of a VDV feed concurrently, starting each table as soon as
+ * all of the tables it references (see {@link EntityDependencies}) have been
+ * loaded.
+ */
+class ParallelEntityLoader {
+
+  private static Logger _log = LoggerFactory.getLogger(ParallelEntityLoader.class);
+
+  private final Vdv452Reader _reader;
+
+  private final ExecutorService _executor;
+
+  public ParallelEntityLoader(Vdv452Reader reader, ExecutorService executor) {
+    _reader = reader;
+    _executor = executor;
+  }
+
+  public void run(final CsvInputSource source, List<Class<?>> entityClasses)
+      throws IOException {
+    Map<Class<?>, List<Class<?>>> dependencies = EntityDependencies.getDependencies(entityClasses);
+    Map<Class<?>, List<Class<?>>> dependents = new HashMap<Class<?>, List<Class<?>>>();
+    Map<Class<?>, Integer> remainingDependencies = new HashMap<Class<?>, Integer>();
+    for (Class<?> entityClass : entityClasses) {
+      dependents.put(entityClass, new ArrayList<Class<?>>());
+    }
+    for (Map.Entry<Class<?>, List<Class<?>>> entry : dependencies.entrySet()) {
+      remainingDependencies.put(entry.getKey(), entry.getValue().size());
+      for (Class<?> dependency : entry.getValue()) {
+        dependents.get(dependency).add(entry.getKey());
+      }
+    }
+
+    CompletionService<TableLoad> completionService = new ExecutorCompletionService<TableLoad>(
+        _executor);
+    List<Future<TableLoad>> pending = new ArrayList<Future<TableLoad>>();
+    final long start = System.currentTimeMillis();
+    for (Class<?> entityClass : entityClasses) {
+      if (remainingDependencies.get(entityClass) == 0) {
+        pending.add(submit(completionService, source, entityClass, start));
+      }
+    }
+
+    Map<Class<?>, Long> criticalPaths = new HashMap<Class<?>, Long>();
+    int completed = 0;
+    try {
+      while (completed < entityClasses.size()) {
+        if (pending.isEmpty()) {
+          throw new IllegalStateException(
+              "cyclic dependency between entity classes: " + dependencies);
+        }
+        Future<TableLoad> future = completionService.take();
+        pending.remove(future);
+        TableLoad load = getResult(future);
+        completed++;
+
+        long criticalPath = 0;
+        for (Class<?> dependency : dependencies.get(load.entityClass)) {
+          criticalPath = Math.max(criticalPath, criticalPaths.get(dependency));
+        }
+        criticalPaths.put(load.entityClass, criticalPath + load.getDuration());
+        _log.info("read entities: " + load.entityClass.getName() + " in "
+            + load.getDuration() + "ms (started at +" + load.start + "ms)");
+
+        for (Class<?> dependent : dependents.get(load.entityClass)) {
+          int remaining = remainingDependencies.get(dependent) - 1;
+          remainingDependencies.put(dependent, remaining);
+          if (remaining == 0) {
+            pending.add(submit(completionService, source, dependent, start));
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while reading entities", ex);
+    } finally {
+      for (Future<TableLoad> future : pending) {
+        future.cancel(true);
+      }
+    }
+
+    long criticalPath = 0;
+    for (long path : criticalPaths.values()) {
+      criticalPath = Math.max(criticalPath, path);
+    }
+    _log.info("read all entities in " + (System.currentTimeMillis() - start)
+        + "ms with a critical path of " + criticalPath + "ms");
+  }
+
+  private Future<TableLoad> submit(
+      CompletionService<TableLoad> completionService,
+      final CsvInputSource source, final Class<?> entityClass, final long start) {
+    return completionService.submit(new Callable<TableLoad>() {
+      @Override
+      public TableLoad call() throws Exception {
+        TableLoad load = new TableLoad(entityClass);
+        load.start = System.currentTimeMillis() - start;
+        _reader.readEntities(entityClass, source);
+        load.end = System.currentTimeMillis() - start;
+        return load;
+      }
+    });
+  }
+
+  private static TableLoad getResult(Future<TableLoad> future)
+      throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private static class TableLoad {
+
+    private final Class<?> entityClass;
+
+    private long start;
+
+    private long end;
+
+    public TableLoad(Class<?> entityClass) {
+      this.entityClass = entityClass;
+    }
+
+    public long getDuration() {
+      return end - start;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import org.onebusaway.vdv452.model.ServiceDate;
+import org.onebusaway.vdv452.serialization.VdvColumns;
+import org.onebusaway.vdv452.serialization.VdvRecord;
+import org.onebusaway.vdv452.serialization.VdvRecordFilter;
+
+/**
+ * Rejects the operating days of FIRMENKALENDER outside of a date range, based
+ * on the raw BETRIEBSTAG column. Tables without the column are read in full.
+ */
+class ServiceDateRecordFilter implements VdvRecordFilter {
+
+  private static final int COLUMN_BETRIEBSTAG = VdvColumns.getId("BETRIEBSTAG");
+
+  private final ServiceDate _from;
+
+  private final ServiceDate _to;
+
+  /**
+   * YYYYMMDD, as returned by {@link VdvRecord#getDate(int)}
+   */
+  private final int _fromDate;
+
+  private final int _toDate;
+
+  /**
+   * @param from the first date of the range, or null for no lower bound
+   * @param to the last date of the range, or null for no upper bound
+   */
+  public ServiceDateRecordFilter(ServiceDate from, ServiceDate to) {
+    _from = from;
+    _to = to;
+    _fromDate = from == null ? Integer.MIN_VALUE : getDate(from);
+    _toDate = to == null ? Integer.MAX_VALUE : getDate(to);
+  }
+
+  @Override
+  public boolean accept(VdvRecord record) {
+    if (record.isMissing(COLUMN_BETRIEBSTAG)) {
+      return true;
+    }
+    int date = record.getDate(COLUMN_BETRIEBSTAG);
+    return _fromDate <= date && date <= _toDate;
+  }
+
+  @Override
+  public String toString() {
+    return "dates[" + (_from == null ? "" : _from.getAsString()) + ".."
+        + (_to == null ? "" : _to.getAsString()) + "]";
+  }
+
+  private static int getDate(ServiceDate date) {
+    return (date.getYear() * 100 + date.getMonth()) * 100 + date.getDay();
+  }
+}
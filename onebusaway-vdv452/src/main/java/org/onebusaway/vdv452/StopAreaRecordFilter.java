@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.util.Set;
+
+import org.onebusaway.vdv452.model.LineId;
+import org.onebusaway.vdv452.model.StopId;
+import org.onebusaway.vdv452.serialization.IdFactory;
+import org.onebusaway.vdv452.serialization.VdvColumns;
+import org.onebusaway.vdv452.serialization.VdvRecord;
+import org.onebusaway.vdv452.serialization.VdvRecordFilter;
+
+/**
+ * Restricts a feed to the line variants serving an area and the stops they
+ * serve, as resolved by {@link Vdv452Reader#setBoundingBox} once the DAO has
+ * been loaded, for the tables read afterwards, such as streamed journeys.
+ * Records with LI_NR and STR_LI_VAR columns are rejected unless their line
+ * variant is selected, and records with ORT_NR or SEL_ZIEL columns unless the
+ * referenced stops are, such that no entity is left referencing one that was
+ * pruned.
+ */
+class StopAreaRecordFilter implements VdvRecordFilter {
+
+  private static final int COLUMN_LI_NR = VdvColumns.getId("LI_NR");
+
+  private static final int COLUMN_STR_LI_VAR = VdvColumns.getId("STR_LI_VAR");
+
+  private static final int COLUMN_ORT_NR = VdvColumns.getId("ORT_NR");
+
+  private static final int COLUMN_SEL_ZIEL = VdvColumns.getId("SEL_ZIEL");
+
+  private final Set<LineId> _lines;
+
+  private final Set<StopId> _stops;
+
+  public StopAreaRecordFilter(Set<LineId> lines, Set<StopId> stops) {
+    _lines = lines;
+    _stops = stops;
+  }
+
+  @Override
+  public boolean accept(VdvRecord record) {
+    if (!record.isMissing(COLUMN_LI_NR) && !record.isMissing(COLUMN_STR_LI_VAR)
+        && !_lines.contains(IdFactory.resolveLineId(record, COLUMN_LI_NR))) {
+      return false;
+    }
+    return acceptStop(record, COLUMN_ORT_NR)
+        && acceptStop(record, COLUMN_SEL_ZIEL);
+  }
+
+  @Override
+  public String toString() {
+    return "stopArea(" + _lines.size() + " lines, " + _stops.size()
+        + " stops)";
+  }
+
+  private boolean acceptStop(VdvRecord record, int column) {
+    if (record.isMissing(column)) {
+      return true;
+    }
+    return _stops.contains(IdFactory.resolveStopId(record, column));
+  }
+}
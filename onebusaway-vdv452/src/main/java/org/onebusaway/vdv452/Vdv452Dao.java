@@ -15,17 +15,26 @@
  */
 package org.onebusaway.vdv452;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import org.onebusaway.collections.MappingLibrary;
 import org.onebusaway.collections.tuple.Pair;
 import org.onebusaway.collections.tuple.Tuples;
 import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.EStopType;
+import org.onebusaway.vdv452.model.IdentityBean;
 import org.onebusaway.vdv452.model.Journey;
 import org.onebusaway.vdv452.model.Line;
 import org.onebusaway.vdv452.model.LineId;
@@ -41,67 +50,111 @@ import org.onebusaway.vdv452.model.VehicleType;
 import org.onebusaway.vdv452.model.VersionedId;
 import org.onebusaway.vdv452.model.WaitTime;
 
+/**
+ * Holds the entities of a VDV feed. Each entity is assigned a dense int index
+ * as it is added, and is looked up by the primitive components of its VDV
+ * natural key. References between entities used by the secondary indexes are
+ * resolved to those int indices, such that the indexes themselves are flat int
+ * arrays.
+ *
+ * Journeys, by far the largest table of most feeds, can optionally be stored
+ * in columnar form (see {@link #setColumnarJourneys(boolean)}), in which case
+ * they are only materialized as {@link Journey} objects on request.
+ *
+ * Secondary indexes are built lazily on first use, in a thread-safe manner,
+ * such that a fully loaded DAO can be read from multiple threads. Once loaded,
+ * {@link #freeze(ExecutorService)} builds all of them up front and makes the
+ * DAO read-only, such that queries never wait on an index being built.
+ */
 public class Vdv452Dao {
-  
-  private Map<VersionedId, TransportCompany> _transportCompaniesById = new HashMap<VersionedId, TransportCompany>();
-  
-  private Map<VersionedId, DayType> _dayTypesById = new HashMap<VersionedId, DayType>();
-  
-  private List<Period> _periods = new ArrayList<Period>();
-  
-  private Map<DayType, List<Period>> _periodsByDayType = null;
 
-  private Map<VersionedId, TimingGroup> _timingGroupsById = new HashMap<VersionedId, TimingGroup>();
+  private EntityTable<TransportCompany> _transportCompanies = new EntityTable<TransportCompany>();
+
+  private EntityTable<DayType> _dayTypes = new EntityTable<DayType>();
+
+  private final List<Period> _periods = new ArrayList<Period>();
+
+  private volatile IntGroupIndex _periodsByDayType = null;
 
-  private Map<VersionedId, VehicleType> _vehicleTypesById = new HashMap<VersionedId, VehicleType>();
+  private EntityTable<TimingGroup> _timingGroups = new EntityTable<TimingGroup>();
 
-  private Map<StopId, StopPoint> _stopPointsById = new HashMap<StopId, StopPoint>();
+  private EntityTable<VehicleType> _vehicleTypes = new EntityTable<VehicleType>();
 
-  private Map<StopId, Stop> _stopsById = new HashMap<StopId, Stop>();
+  private EntityTable<StopPoint> _stopPoints = new EntityTable<StopPoint>();
 
-  private Map<LineId, Line> _linesById = new HashMap<LineId, Line>();
+  private EntityTable<Stop> _stops = new EntityTable<Stop>();
 
-  private Map<VersionedId, Journey> _journeysById = new HashMap<VersionedId, Journey>();
+  private EntityTable<Line> _lines = new EntityTable<Line>();
 
-  private List<RouteSequence> _routeSequences = new ArrayList<RouteSequence>();
+  private EntityTable<Journey> _journeys = new EntityTable<Journey>();
 
-  private Map<Line, List<RouteSequence>> _routeSequencesByLine = null;
+  private JourneyStore _journeyStore = null;
 
-  private List<TravelTime> _travelTimes = new ArrayList<TravelTime>();
+  private final List<RouteSequence> _routeSequences = new ArrayList<RouteSequence>();
 
-  private Map<TimingGroup, Map<Pair<StopPoint>, TravelTime>> _travelTimesByTimingGroup = null;
+  private volatile IntGroupIndex _routeSequencesByLine = null;
 
-  private List<WaitTime> _waitTimes = new ArrayList<WaitTime>();
+  private final List<TravelTime> _travelTimes = new ArrayList<TravelTime>();
 
-  private Map<TimingGroup, List<WaitTime>> _waitTimesByTimingGroup = null;
+  private volatile IntGroupIndex _travelTimesByTimingGroup = null;
+
+  /**
+   * Keyed by timing group index and the (from, to) stop point indices packed
+   * into a long.
+   */
+  private LongPairIntMap _travelTimesByTimingGroupAndStops = null;
+
+  private final List<WaitTime> _waitTimes = new ArrayList<WaitTime>();
+
+  private volatile IntGroupIndex _waitTimesByTimingGroup = null;
+
+  private LongPairIntMap _waitTimesByTimingGroupAndStop = null;
+
+  private volatile boolean _frozen = false;
 
   public void putEntity(Object bean) {
+    checkNotFrozen();
     if (bean instanceof TransportCompany) {
       TransportCompany company = (TransportCompany) bean;
-      _transportCompaniesById.put(company.getId(), company);
+      VersionedId id = company.getId();
+      _transportCompanies.put(id.getVersion(), id.getId(), company);
     } else if (bean instanceof DayType) {
       DayType dayType = (DayType) bean;
-      _dayTypesById.put(dayType.getId(), dayType);
+      VersionedId id = dayType.getId();
+      _dayTypes.put(id.getVersion(), id.getId(), dayType);
     } else if (bean instanceof Period) {
       _periods.add((Period) bean);
     } else if (bean instanceof TimingGroup) {
       TimingGroup group = (TimingGroup) bean;
-      _timingGroupsById.put(group.getId(), group);
+      VersionedId id = group.getId();
+      _timingGroups.put(id.getVersion(), id.getId(), group);
     } else if (bean instanceof VehicleType) {
       VehicleType vehicleType = (VehicleType) bean;
-      _vehicleTypesById.put(vehicleType.getId(), vehicleType);
+      VersionedId id = vehicleType.getId();
+      _vehicleTypes.put(id.getVersion(), id.getId(), vehicleType);
     } else if (bean instanceof StopPoint) {
       StopPoint stopPoint = (StopPoint) bean;
-      _stopPointsById.put(stopPoint.getId(), stopPoint);
+      StopId id = stopPoint.getId();
+      _stopPoints.put(getStopKey(id), id.getId(), stopPoint);
     } else if (bean instanceof Stop) {
       Stop stop = (Stop) bean;
-      _stopsById.put(stop.getId(), stop);
+      StopId id = stop.getId();
+      _stops.put(getStopKey(id), id.getId(), stop);
     } else if (bean instanceof Line) {
       Line line = (Line) bean;
-      _linesById.put(line.getId(), line);
+      LineId id = line.getId();
+      _lines.put(id.getVersion(), id.getLineId(), line);
     } else if (bean instanceof Journey) {
       Journey journey = (Journey) bean;
-      _journeysById.put(journey.getId(), journey);
+      VersionedId id = journey.getId();
+      if (_journeyStore != null) {
+        _journeyStore.put(id.getVersion(), id.getId(),
+            getIndexForLine(journey.getLine()), journey.getDepartureTime(),
+            getIndexForTimingGroup(journey.getTimingGroup()),
+            getIndexForDayType(journey.getDayType()));
+      } else {
+        _journeys.put(id.getVersion(), id.getId(), journey);
+      }
     } else if (bean instanceof RouteSequence) {
       _routeSequences.add((RouteSequence) bean);
     } else if (bean instanceof TravelTime) {
@@ -110,122 +163,732 @@ public class Vdv452Dao {
       _waitTimes.add((WaitTime) bean);
     }
   }
-  
+
   public Collection<TransportCompany> getAllTransportCompanies() {
-    return _transportCompaniesById.values();
+    return _transportCompanies.getAll();
   }
-  
+
   public TransportCompany getTransportCompanyForId(VersionedId id) {
-    return _transportCompaniesById.get(id);
+    return _transportCompanies.get(id.getVersion(), id.getId(), id);
   }
-  
+
   public Collection<DayType> getAllDayTypes() {
-    return _dayTypesById.values();
+    return _dayTypes.getAll();
   }
 
   public DayType getDayTypeForId(VersionedId id) {
-    return _dayTypesById.get(id);
+    return _dayTypes.get(id.getVersion(), id.getId(), id);
   }
-  
+
+  public List<Period> getAllPeriods() {
+    return Collections.unmodifiableList(_periods);
+  }
+
   public List<Period> getPeriodsForDayType(DayType dayType) {
     if (_periodsByDayType == null) {
-      _periodsByDayType = MappingLibrary.mapToValueList(_periods, "dayType");
+      buildPeriodIndex();
     }
-    return list(_periodsByDayType.get(dayType));
+    return _periodsByDayType.getMembers(getIndexForDayType(dayType), _periods);
+  }
+
+  public Collection<TimingGroup> getAllTimingGroups() {
+    return _timingGroups.getAll();
   }
 
   public TimingGroup getTimingGroupForId(VersionedId id) {
-    return _timingGroupsById.get(id);
+    return _timingGroups.get(id.getVersion(), id.getId(), id);
   }
 
-  public Map<Pair<StopPoint>, TravelTime> getTravelTimesForTimingGroup(TimingGroup timingGroup) {
-    if (_travelTimesByTimingGroup == null) {
-      _travelTimesByTimingGroup = new HashMap<TimingGroup, Map<Pair<StopPoint>,TravelTime>>();
-      for (TravelTime travelTime : _travelTimes) {
-        Map<Pair<StopPoint>, TravelTime> travelTimesByStopPair = _travelTimesByTimingGroup.get(travelTime.getTimingGroup());
-        if (travelTimesByStopPair == null) {
-          travelTimesByStopPair = new HashMap<Pair<StopPoint>, TravelTime>();
-          _travelTimesByTimingGroup.put(travelTime.getTimingGroup(), travelTimesByStopPair);
-        }
-        Pair<StopPoint> pair = Tuples.pair(travelTime.getFromStop(),
-            travelTime.getToStop());
-        TravelTime existing = travelTimesByStopPair.put(pair, travelTime);
-        if (existing != null) {
-          throw new IllegalStateException();
-        }
-      }
+  public List<TravelTime> getAllTravelTimes() {
+    return Collections.unmodifiableList(_travelTimes);
+  }
+
+  /**
+   * @deprecated builds a new map on each call, use
+   *             {@link #getTravelTime(TimingGroup, StopPoint, StopPoint)}
+   *             instead
+   */
+  @Deprecated
+  public Map<Pair<StopPoint>, TravelTime> getTravelTimesForTimingGroup(
+      TimingGroup timingGroup) {
+    ensureTravelTimeIndices();
+    Map<Pair<StopPoint>, TravelTime> travelTimesByStopPair = new HashMap<Pair<StopPoint>, TravelTime>();
+    int group = getIndexForTimingGroup(timingGroup);
+    for (int i = _travelTimesByTimingGroup.getStart(group); i < _travelTimesByTimingGroup.getEnd(group); ++i) {
+      TravelTime travelTime = _travelTimes.get(_travelTimesByTimingGroup.getMember(i));
+      Pair<StopPoint> pair = Tuples.pair(travelTime.getFromStop(),
+          travelTime.getToStop());
+      travelTimesByStopPair.put(pair, travelTime);
     }
-    return map(_travelTimesByTimingGroup.get(timingGroup));
+    return travelTimesByStopPair;
+  }
+
+  /**
+   * @return the travel time between two consecutive stops for the timing
+   *         group, or null if there is none
+   */
+  public TravelTime getTravelTime(TimingGroup timingGroup, StopPoint fromStop,
+      StopPoint toStop) {
+    ensureTravelTimeIndices();
+    int index = _travelTimesByTimingGroupAndStops.get(
+        getIndexForTimingGroup(timingGroup),
+        getStopPairKey(getIndexForStopPoint(fromStop),
+            getIndexForStopPoint(toStop)));
+    return index < 0 ? null : _travelTimes.get(index);
+  }
+
+  public List<WaitTime> getAllWaitTimes() {
+    return Collections.unmodifiableList(_waitTimes);
   }
 
   public List<WaitTime> getWaitTimesForTimingGroup(TimingGroup timingGroup) {
-    if (_waitTimesByTimingGroup == null) {
-      _waitTimesByTimingGroup = MappingLibrary.mapToValueList(_waitTimes,
-          "timingGroup");
-    }
-    return list(_waitTimesByTimingGroup.get(timingGroup));
+    ensureWaitTimeIndices();
+    return _waitTimesByTimingGroup.getMembers(
+        getIndexForTimingGroup(timingGroup), _waitTimes);
+  }
+
+  /**
+   * @return the wait time at a stop for the timing group, or null if there is
+   *         none
+   */
+  public WaitTime getWaitTime(TimingGroup timingGroup, StopPoint stop) {
+    ensureWaitTimeIndices();
+    int index = _waitTimesByTimingGroupAndStop.get(
+        getIndexForTimingGroup(timingGroup), getIndexForStopPoint(stop));
+    return index < 0 ? null : _waitTimes.get(index);
+  }
+
+  public Collection<VehicleType> getAllVehicleTypes() {
+    return _vehicleTypes.getAll();
   }
 
   public VehicleType getVehicleTypeForId(VersionedId id) {
-    return _vehicleTypesById.get(id);
+    return _vehicleTypes.get(id.getVersion(), id.getId(), id);
   }
 
   public Collection<StopPoint> getAllStopPoints() {
-    return _stopPointsById.values();
+    return _stopPoints.getAll();
   }
 
   public StopPoint getStopPointForId(StopId id) {
-    return _stopPointsById.get(id);
+    return _stopPoints.get(getStopKey(id), id.getId(), id);
+  }
+
+  public Collection<Stop> getAllStops() {
+    return _stops.getAll();
   }
 
   public Stop getStopForId(StopId id) {
-    return _stopsById.get(id);
+    return _stops.get(getStopKey(id), id.getId(), id);
   }
-  
+
   public Collection<Line> getAllLines() {
-    return _linesById.values();
+    return _lines.getAll();
   }
 
   public Line getLineForId(LineId id) {
-    return _linesById.get(id);
+    return _lines.get(id.getVersion(), id.getLineId(), id);
+  }
+
+  /**
+   * When set, journeys are stored as parallel primitive arrays instead of
+   * {@link Journey} objects. Journeys returned by {@link #getAllJourneys()}
+   * and {@link #getJourneyForId(VersionedId)} are then new instances created
+   * on each call, and {@link #getJourneyCursor()} is the cheaper way to visit
+   * them. Must be set before any journey has been added.
+   */
+  public void setColumnarJourneys(boolean columnarJourneys) {
+    checkNotFrozen();
+    if (_journeys.size() > 0
+        || (_journeyStore != null && _journeyStore.size() > 0)) {
+      throw new IllegalStateException("journeys have already been added");
+    }
+    _journeyStore = columnarJourneys ? new JourneyStore() : null;
+  }
+
+  public boolean isColumnarJourneys() {
+    return _journeyStore != null;
+  }
+
+  /**
+   * Pre-sizes the columnar journey store, typically from a count of the lines
+   * of the journey table, to avoid growing it while journeys are added.
+   */
+  public void ensureJourneyCapacity(int capacity) {
+    if (_journeyStore != null) {
+      _journeyStore.ensureCapacity(capacity);
+    }
   }
 
   public Collection<Journey> getAllJourneys() {
-    return _journeysById.values();
+    if (_journeyStore == null) {
+      return _journeys.getAll();
+    }
+    return new AbstractList<Journey>() {
+
+      @Override
+      public Journey get(int index) {
+        if (index < 0 || index >= _journeyStore.size()) {
+          throw new IndexOutOfBoundsException("index=" + index + " size="
+              + size());
+        }
+        return materializeJourney(index);
+      }
+
+      @Override
+      public int size() {
+        return _journeyStore.size();
+      }
+    };
   }
 
   public Journey getJourneyForId(VersionedId id) {
-    return _journeysById.get(id);
+    if (_journeyStore == null) {
+      return _journeys.get(id.getVersion(), id.getId(), id);
+    }
+    int index = _journeyStore.getIndex(id.getVersion(), id.getId());
+    return index < 0 ? null : materializeJourney(index);
+  }
+
+  public JourneyCursor getJourneyCursor() {
+    if (_journeyStore == null) {
+      return new JourneyObjectCursor();
+    }
+    return new JourneyStoreCursor();
+  }
+
+  public List<RouteSequence> getAllRouteSequences() {
+    return Collections.unmodifiableList(_routeSequences);
   }
 
   public List<RouteSequence> getRouteSequenceForLine(Line line) {
     if (_routeSequencesByLine == null) {
-      _routeSequencesByLine = constructRouteSequencesByLine();
+      buildRouteSequenceIndex();
+    }
+    return _routeSequencesByLine.getMembers(getIndexForLine(line),
+        _routeSequences);
+  }
+
+  /**
+   * Builds all secondary indexes and makes the DAO read-only, such that any
+   * number of threads can query it without locking. Entities can no longer be
+   * added afterwards. Freezing a frozen DAO does nothing.
+   *
+   * @param executor when set, the indexes are built concurrently on the
+   *          executor
+   * @return this DAO
+   */
+  public Vdv452Dao freeze(ExecutorService executor) {
+    if (_frozen) {
+      return this;
+    }
+    if (executor == null) {
+      buildPeriodIndex();
+      buildRouteSequenceIndex();
+      buildTravelTimeIndices();
+      buildWaitTimeIndices();
+    } else {
+      runAll(executor, getIndexBuilds());
+    }
+    _frozen = true;
+    return this;
+  }
+
+  public Vdv452Dao freeze() {
+    return freeze(null);
+  }
+
+  public boolean isFrozen() {
+    return _frozen;
+  }
+
+  /**
+   * Removes the lines, stops and day types that aren't in the specified sets,
+   * along with the entities referencing them: the route sequences and journeys
+   * of removed lines, the stop points, travel times and wait times of removed
+   * stops, and the periods and journeys of removed day types. A null set keeps
+   * all entities of its type. Entities are re-indexed in the order they were
+   * added, and secondary indexes are rebuilt on next use.
+   */
+  void retain(Set<LineId> lines, Set<StopId> stops, Set<VersionedId> dayTypes) {
+    checkNotFrozen();
+    int[] lineIndices = null;
+    if (lines != null) {
+      EntityTable<Line> retained = new EntityTable<Line>();
+      lineIndices = new int[_lines.size()];
+      for (int i = 0; i < lineIndices.length; ++i) {
+        Line line = _lines.get(i);
+        LineId id = line.getId();
+        lineIndices[i] = lines.contains(id) ? retained.put(id.getVersion(),
+            id.getLineId(), line) : -1;
+      }
+      _lines = retained;
+    }
+    if (stops != null) {
+      EntityTable<Stop> retainedStops = new EntityTable<Stop>();
+      for (Stop stop : _stops.getAll()) {
+        if (stops.contains(stop.getId())) {
+          retainedStops.put(getStopKey(stop.getId()), stop.getId().getId(), stop);
+        }
+      }
+      _stops = retainedStops;
+      EntityTable<StopPoint> retainedStopPoints = new EntityTable<StopPoint>();
+      for (StopPoint stopPoint : _stopPoints.getAll()) {
+        if (stops.contains(stopPoint.getId())) {
+          retainedStopPoints.put(getStopKey(stopPoint.getId()),
+              stopPoint.getId().getId(), stopPoint);
+        }
+      }
+      _stopPoints = retainedStopPoints;
+    }
+    int[] dayTypeIndices = null;
+    if (dayTypes != null) {
+      EntityTable<DayType> retained = new EntityTable<DayType>();
+      dayTypeIndices = new int[_dayTypes.size()];
+      for (int i = 0; i < dayTypeIndices.length; ++i) {
+        DayType dayType = _dayTypes.get(i);
+        VersionedId id = dayType.getId();
+        dayTypeIndices[i] = dayTypes.contains(id) ? retained.put(
+            id.getVersion(), id.getId(), dayType) : -1;
+      }
+      _dayTypes = retained;
+    }
+
+    int count = 0;
+    for (int i = 0; i < _periods.size(); ++i) {
+      Period period = _periods.get(i);
+      if (isRetained(period.getDayType(), dayTypes)) {
+        _periods.set(count++, period);
+      }
+    }
+    _periods.subList(count, _periods.size()).clear();
+    count = 0;
+    for (int i = 0; i < _routeSequences.size(); ++i) {
+      RouteSequence sequence = _routeSequences.get(i);
+      if (isRetained(sequence.getLine(), lines)
+          && isRetained(sequence.getStop(), stops)) {
+        _routeSequences.set(count++, sequence);
+      }
+    }
+    _routeSequences.subList(count, _routeSequences.size()).clear();
+    count = 0;
+    for (int i = 0; i < _travelTimes.size(); ++i) {
+      TravelTime travelTime = _travelTimes.get(i);
+      if (isRetained(travelTime.getFromStop(), stops)
+          && isRetained(travelTime.getToStop(), stops)) {
+        _travelTimes.set(count++, travelTime);
+      }
+    }
+    _travelTimes.subList(count, _travelTimes.size()).clear();
+    count = 0;
+    for (int i = 0; i < _waitTimes.size(); ++i) {
+      WaitTime waitTime = _waitTimes.get(i);
+      if (isRetained(waitTime.getStop(), stops)) {
+        _waitTimes.set(count++, waitTime);
+      }
+    }
+    _waitTimes.subList(count, _waitTimes.size()).clear();
+
+    if (_journeyStore != null) {
+      JourneyStore retained = new JourneyStore();
+      for (int i = 0; i < _journeyStore.size(); ++i) {
+        int line = remap(lineIndices, _journeyStore.getLine(i));
+        int dayType = remap(dayTypeIndices, _journeyStore.getDayType(i));
+        if ((line < 0 && _journeyStore.getLine(i) >= 0)
+            || (dayType < 0 && _journeyStore.getDayType(i) >= 0)) {
+          continue;
+        }
+        retained.put(_journeyStore.getVersion(i), _journeyStore.getId(i),
+            line, _journeyStore.getDepartureTime(i),
+            _journeyStore.getTimingGroup(i), dayType);
+      }
+      _journeyStore = retained;
+    } else {
+      EntityTable<Journey> retained = new EntityTable<Journey>();
+      for (Journey journey : _journeys.getAll()) {
+        if (isRetained(journey.getLine(), lines)
+            && isRetained(journey.getDayType(), dayTypes)) {
+          VersionedId id = journey.getId();
+          retained.put(id.getVersion(), id.getId(), journey);
+        }
+      }
+      _journeys = retained;
+    }
+
+    _periodsByDayType = null;
+    _routeSequencesByLine = null;
+    _travelTimesByTimingGroup = null;
+    _travelTimesByTimingGroupAndStops = null;
+    _waitTimesByTimingGroup = null;
+    _waitTimesByTimingGroupAndStop = null;
+  }
+
+  /****
+   * Package-private methods used by {@link Vdv452DaoSnapshot}, where
+   * references are expressed as the int indices of the referenced entities
+   ****/
+
+  /**
+   * Adds a journey whose line, timing group and day type are given by their
+   * indices, or -1, without materializing it when journeys are columnar.
+   */
+  void putJourney(long version, long id, int line, int departureTime,
+      int timingGroup, int dayType) {
+    checkNotFrozen();
+    if (_journeyStore != null) {
+      _journeyStore.put(version, id, line, departureTime, timingGroup, dayType);
+      return;
+    }
+    Journey journey = new Journey();
+    journey.setId(new VersionedId(version, id));
+    journey.setLine(get(_lines, line));
+    journey.setDepartureTime(departureTime);
+    journey.setTimingGroup(get(_timingGroups, timingGroup));
+    journey.setDayType(get(_dayTypes, dayType));
+    _journeys.put(version, id, journey);
+  }
+
+  int getIndexForDayType(DayType dayType) {
+    if (dayType == null) {
+      return -1;
+    }
+    VersionedId id = dayType.getId();
+    return _dayTypes.getIndex(id.getVersion(), id.getId(), id);
+  }
+
+  int getIndexForTimingGroup(TimingGroup timingGroup) {
+    if (timingGroup == null) {
+      return -1;
+    }
+    VersionedId id = timingGroup.getId();
+    return _timingGroups.getIndex(id.getVersion(), id.getId(), id);
+  }
+
+  int getIndexForStopPoint(StopPoint stopPoint) {
+    if (stopPoint == null) {
+      return -1;
+    }
+    StopId id = stopPoint.getId();
+    return _stopPoints.getIndex(getStopKey(id), id.getId(), id);
+  }
+
+  int getIndexForLine(Line line) {
+    if (line == null) {
+      return -1;
+    }
+    LineId id = line.getId();
+    return _lines.getIndex(id.getVersion(), id.getLineId(), id);
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void checkNotFrozen() {
+    if (_frozen) {
+      throw new IllegalStateException("the dao is frozen");
+    }
+  }
+
+  private List<Callable<Void>> getIndexBuilds() {
+    List<Callable<Void>> builds = new ArrayList<Callable<Void>>();
+    builds.add(new Callable<Void>() {
+      @Override
+      public Void call() {
+        buildPeriodIndex();
+        return null;
+      }
+    });
+    builds.add(new Callable<Void>() {
+      @Override
+      public Void call() {
+        buildRouteSequenceIndex();
+        return null;
+      }
+    });
+    builds.add(new Callable<Void>() {
+      @Override
+      public Void call() {
+        buildTravelTimeIndices();
+        return null;
+      }
+    });
+    builds.add(new Callable<Void>() {
+      @Override
+      public Void call() {
+        buildWaitTimeIndices();
+        return null;
+      }
+    });
+    return builds;
+  }
+
+  private static void runAll(ExecutorService executor,
+      List<Callable<Void>> tasks) {
+    List<Future<Void>> futures;
+    try {
+      futures = executor.invokeAll(tasks);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while building indexes", ex);
+    }
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while building indexes",
+            ex);
+      } catch (ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+    }
+  }
+
+  /**
+   * @return true unless the entity is set and its id isn't among the ids,
+   *         such that unresolved references don't remove their entity
+   */
+  private static boolean isRetained(IdentityBean<?> entity, Set<?> ids) {
+    return ids == null || entity == null || ids.contains(entity.getId());
+  }
+
+  /**
+   * @return the new index of an entity re-indexed by
+   *         {@link #retain(Set, Set, Set)}, or -1 if it was removed
+   */
+  private static int remap(int[] indices, int index) {
+    if (indices == null || index < 0) {
+      return index;
+    }
+    return indices[index];
+  }
+
+  private Journey materializeJourney(int index) {
+    Journey journey = new Journey();
+    journey.setId(new VersionedId(_journeyStore.getVersion(index),
+        _journeyStore.getId(index)));
+    journey.setLine(get(_lines, _journeyStore.getLine(index)));
+    journey.setDepartureTime(_journeyStore.getDepartureTime(index));
+    journey.setTimingGroup(get(_timingGroups,
+        _journeyStore.getTimingGroup(index)));
+    journey.setDayType(get(_dayTypes, _journeyStore.getDayType(index)));
+    return journey;
+  }
+
+  private static <T extends IdentityBean<?>> T get(EntityTable<T> table,
+      int index) {
+    return index < 0 ? null : table.get(index);
+  }
+
+  /**
+   * Each index is built while holding the lock of the list it indexes, such
+   * that different indexes can be built concurrently.
+   */
+  private void buildPeriodIndex() {
+    synchronized (_periods) {
+      if (_periodsByDayType != null) {
+        return;
+      }
+      int[] dayTypes = new int[_periods.size()];
+      for (int i = 0; i < dayTypes.length; ++i) {
+        dayTypes[i] = getIndexForDayType(_periods.get(i).getDayType());
+      }
+      _periodsByDayType = new IntGroupIndex(dayTypes, _dayTypes.size());
+    }
+  }
+
+  private void buildRouteSequenceIndex() {
+    synchronized (_routeSequences) {
+      if (_routeSequencesByLine != null) {
+        return;
+      }
+      // Each line's entries are ordered by their position in the route, while
+      // the list itself keeps the order in which they were added
+      Integer[] sorted = new Integer[_routeSequences.size()];
+      for (int i = 0; i < sorted.length; ++i) {
+        sorted[i] = i;
+      }
+      Arrays.sort(sorted, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+          return _routeSequences.get(a).compareTo(_routeSequences.get(b));
+        }
+      });
+      int[] order = new int[sorted.length];
+      int[] lines = new int[sorted.length];
+      for (int i = 0; i < lines.length; ++i) {
+        order[i] = sorted[i];
+        lines[i] = getIndexForLine(_routeSequences.get(i).getLine());
+      }
+      _routeSequencesByLine = new IntGroupIndex(lines, _lines.size(), order);
+    }
+  }
+
+  private void ensureTravelTimeIndices() {
+    if (_travelTimesByTimingGroup == null) {
+      buildTravelTimeIndices();
     }
-    return list(_routeSequencesByLine.get(line));
   }
 
-  private Map<Line, List<RouteSequence>> constructRouteSequencesByLine() {
-    Map<Line, List<RouteSequence>> routeSequencesByLine = MappingLibrary.mapToValueList(
-        _routeSequences, "line");
-    for (List<RouteSequence> routeSequences : routeSequencesByLine.values()) {
-      Collections.sort(routeSequences);
+  private void buildTravelTimeIndices() {
+    synchronized (_travelTimes) {
+      if (_travelTimesByTimingGroup != null) {
+        return;
+      }
+      int[] groups = new int[_travelTimes.size()];
+      LongPairIntMap byStops = new LongPairIntMap();
+      for (int i = 0; i < groups.length; ++i) {
+        TravelTime travelTime = _travelTimes.get(i);
+        groups[i] = getIndexForTimingGroup(travelTime.getTimingGroup());
+        long stops = getStopPairKey(
+            getIndexForStopPoint(travelTime.getFromStop()),
+            getIndexForStopPoint(travelTime.getToStop()));
+        if (byStops.put(groups[i], stops, i) >= 0) {
+          throw new IllegalStateException();
+        }
+      }
+      _travelTimesByTimingGroupAndStops = byStops;
+      _travelTimesByTimingGroup = new IntGroupIndex(groups,
+          _timingGroups.size());
     }
-    return routeSequencesByLine;
   }
 
-  private static <T> List<T> list(List<T> values) {
-    if (values == null) {
-      return Collections.emptyList();
+  private void ensureWaitTimeIndices() {
+    if (_waitTimesByTimingGroup == null) {
+      buildWaitTimeIndices();
     }
-    return values;
   }
-  
-  private static <X, Y> Map<X, Y> map(Map<X, Y> values) {
-    if (values == null) {
-      return Collections.emptyMap();
+
+  private void buildWaitTimeIndices() {
+    synchronized (_waitTimes) {
+      if (_waitTimesByTimingGroup != null) {
+        return;
+      }
+      int[] groups = new int[_waitTimes.size()];
+      LongPairIntMap byStop = new LongPairIntMap();
+      for (int i = 0; i < groups.length; ++i) {
+        WaitTime waitTime = _waitTimes.get(i);
+        groups[i] = getIndexForTimingGroup(waitTime.getTimingGroup());
+        // The last wait time for a stop wins
+        byStop.put(groups[i], getIndexForStopPoint(waitTime.getStop()), i);
+      }
+      _waitTimesByTimingGroupAndStop = byStop;
+      _waitTimesByTimingGroup = new IntGroupIndex(groups, _timingGroups.size());
     }
-    return values;
   }
 
+  /**
+   * Packs the version and the stop type of a stop id into a single long.
+   */
+  private static long getStopKey(StopId id) {
+    EStopType type = id.getType();
+    return (id.getVersion() << 2) | (type == null ? 3 : type.ordinal());
+  }
+
+  private static long getStopPairKey(int fromStop, int toStop) {
+    return ((long) fromStop << 32) | (toStop & 0xffffffffL);
+  }
+
+  private class JourneyStoreCursor implements JourneyCursor {
+
+    private int _index = -1;
+
+    @Override
+    public boolean next() {
+      return ++_index < _journeyStore.size();
+    }
+
+    @Override
+    public long getVersion() {
+      return _journeyStore.getVersion(_index);
+    }
+
+    @Override
+    public long getId() {
+      return _journeyStore.getId(_index);
+    }
+
+    @Override
+    public Line getLine() {
+      return get(_lines, _journeyStore.getLine(_index));
+    }
+
+    @Override
+    public int getDepartureTime() {
+      return _journeyStore.getDepartureTime(_index);
+    }
+
+    @Override
+    public TimingGroup getTimingGroup() {
+      return get(_timingGroups, _journeyStore.getTimingGroup(_index));
+    }
+
+    @Override
+    public DayType getDayType() {
+      return get(_dayTypes, _journeyStore.getDayType(_index));
+    }
+
+    @Override
+    public Journey getJourney() {
+      return materializeJourney(_index);
+    }
+  }
+
+  private class JourneyObjectCursor implements JourneyCursor {
+
+    private int _index = -1;
+
+    private Journey _journey = null;
+
+    @Override
+    public boolean next() {
+      if (++_index >= _journeys.size()) {
+        return false;
+      }
+      _journey = _journeys.get(_index);
+      return true;
+    }
+
+    @Override
+    public long getVersion() {
+      return _journey.getId().getVersion();
+    }
+
+    @Override
+    public long getId() {
+      return _journey.getId().getId();
+    }
+
+    @Override
+    public Line getLine() {
+      return _journey.getLine();
+    }
+
+    @Override
+    public int getDepartureTime() {
+      return _journey.getDepartureTime();
+    }
+
+    @Override
+    public TimingGroup getTimingGroup() {
+      return _journey.getTimingGroup();
+    }
+
+    @Override
+    public DayType getDayType() {
+      return _journey.getDayType();
+    }
+
+    @Override
+    public Journey getJourney() {
+      return _journey;
+    }
+  }
 }
@@ -0,0 +1,762 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.EStopType;
+import org.onebusaway.vdv452.model.IdentityBean;
+import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.LineId;
+import org.onebusaway.vdv452.model.Period;
+import org.onebusaway.vdv452.model.RouteSequence;
+import org.onebusaway.vdv452.model.ServiceDate;
+import org.onebusaway.vdv452.model.Stop;
+import org.onebusaway.vdv452.model.StopId;
+import org.onebusaway.vdv452.model.StopPoint;
+import org.onebusaway.vdv452.model.TimingGroup;
+import org.onebusaway.vdv452.model.TransportCompany;
+import org.onebusaway.vdv452.model.TravelTime;
+import org.onebusaway.vdv452.model.VehicleType;
+import org.onebusaway.vdv452.model.VersionedId;
+import org.onebusaway.vdv452.model.WaitTime;
+
+/**
+ * A compact binary snapshot of the entities of a {@link Vdv452Dao}, tagged with
+ * a fingerprint of the input tables they were read from, such that a later read
+ * of the same input can load the snapshot instead of parsing the tables.
+ *
+ * Each entity type is stored as a section of columns, one primitive array per
+ * field, with the entities in the order they were added to the DAO. Strings
+ * are stored once in a shared string table and referenced by their index, and
+ * references between entities by the index of the referenced entity, with -1
+ * standing for null. Snapshots are read back through a memory-mapped buffer.
+ */
+final class Vdv452DaoSnapshot {
+
+  private static final int MAGIC = 0x56445653;
+
+  /**
+   * Bumped whenever the layout changes, which invalidates existing snapshots.
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  private static final EStopType[] STOP_TYPES = EStopType.values();
+
+  private Vdv452DaoSnapshot() {
+
+  }
+
+  /**
+   * Combines the fingerprints of the input tables, as computed by
+   * {@link Vdv452TableFingerprints}, and the selection of the records read
+   * from them into the fingerprint of a snapshot.
+   */
+  public static byte[] getInputFingerprint(List<String> filenames,
+      Map<String, String> tableFingerprints, String selectionKey) {
+    MessageDigest digest = Vdv452TableFingerprints.createDigest();
+    digest.update(ByteBuffer.allocate(4).putInt(FORMAT_VERSION).array());
+    for (String filename : filenames) {
+      String fingerprint = tableFingerprints.get(filename);
+      String entry = filename + "=" + fingerprint + "\n";
+      digest.update(entry.getBytes(StandardCharsets.UTF_8));
+    }
+    digest.update(selectionKey.getBytes(StandardCharsets.UTF_8));
+    return digest.digest();
+  }
+
+  /**
+   * Writes a snapshot of the DAO, replacing any existing snapshot once the new
+   * one is complete.
+   */
+  public static void write(Vdv452Dao dao, byte[] fingerprint, File path)
+      throws IOException {
+    File tmp = new File(path.getPath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(tmp), 64 * 1024));
+    try {
+      new Writer(dao).write(out, fingerprint);
+    } finally {
+      out.close();
+    }
+    Files.move(tmp.toPath(), path.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Adds the entities of the snapshot to the specified DAO, which should be
+   * empty, if the snapshot exists and was written for the same fingerprint.
+   *
+   * @return false if there is no matching snapshot
+   */
+  public static boolean read(File path, byte[] fingerprint, Vdv452Dao dao)
+      throws IOException {
+    if (!path.exists()) {
+      return false;
+    }
+    ByteBuffer buffer;
+    FileInputStream in = new FileInputStream(path);
+    try {
+      FileChannel channel = in.getChannel();
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      in.close();
+    }
+    try {
+      if (buffer.remaining() < 8 + fingerprint.length
+          || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        return false;
+      }
+      byte[] snapshotFingerprint = new byte[fingerprint.length];
+      buffer.get(snapshotFingerprint);
+      if (!Arrays.equals(fingerprint, snapshotFingerprint)) {
+        return false;
+      }
+      new Reader(buffer, dao).read();
+      return true;
+    } catch (BufferUnderflowException ex) {
+      throw new IOException("truncated snapshot " + path, ex);
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static List<VersionedId> getIds(
+      Collection<? extends IdentityBean<VersionedId>> beans) {
+    List<VersionedId> ids = new ArrayList<VersionedId>(beans.size());
+    for (IdentityBean<VersionedId> bean : beans) {
+      ids.add(bean.getId());
+    }
+    return ids;
+  }
+
+  private static class Writer {
+
+    private final Vdv452Dao _dao;
+
+    private final Map<String, Integer> _stringIndices = new HashMap<String, Integer>();
+
+    private final List<String> _strings = new ArrayList<String>();
+
+    public Writer(Vdv452Dao dao) {
+      _dao = dao;
+    }
+
+    public void write(DataOutputStream out, byte[] fingerprint)
+        throws IOException {
+      // The string table comes first, so the sections are buffered until all
+      // strings are known
+      ByteArrayOutputStream sections = new ByteArrayOutputStream(1024 * 1024);
+      DataOutputStream body = new DataOutputStream(sections);
+      writeTransportCompanies(body, _dao.getAllTransportCompanies());
+      writeStopPoints(body, _dao.getAllStopPoints());
+      writeStops(body, _dao.getAllStops());
+      writeDayTypes(body, _dao.getAllDayTypes());
+      writePeriods(body, _dao.getAllPeriods());
+      writeTimingGroups(body, _dao.getAllTimingGroups());
+      writeTravelTimes(body, _dao.getAllTravelTimes());
+      writeWaitTimes(body, _dao.getAllWaitTimes());
+      writeLines(body, _dao.getAllLines());
+      writeRouteSequences(body, _dao.getAllRouteSequences());
+      writeVehicleTypes(body, _dao.getAllVehicleTypes());
+      writeJourneys(body, _dao.getAllJourneys().size(),
+          _dao.getJourneyCursor());
+      body.flush();
+
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.write(fingerprint);
+      out.writeInt(_strings.size());
+      for (String value : _strings) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+      sections.writeTo(out);
+    }
+
+    private void writeTransportCompanies(DataOutputStream out,
+        Collection<TransportCompany> companies) throws IOException {
+      out.writeInt(companies.size());
+      for (TransportCompany company : companies) {
+        out.writeLong(company.getId().getVersion());
+      }
+      for (TransportCompany company : companies) {
+        out.writeLong(company.getId().getId());
+      }
+      for (TransportCompany company : companies) {
+        out.writeInt(getStringIndex(company.getName()));
+      }
+      for (TransportCompany company : companies) {
+        out.writeInt(getStringIndex(company.getOperatingArea()));
+      }
+    }
+
+    private void writeStopPoints(DataOutputStream out,
+        Collection<StopPoint> stopPoints) throws IOException {
+      List<StopId> ids = new ArrayList<StopId>(stopPoints.size());
+      for (StopPoint stopPoint : stopPoints) {
+        ids.add(stopPoint.getId());
+      }
+      writeStopIds(out, ids);
+    }
+
+    private void writeStops(DataOutputStream out, Collection<Stop> stops)
+        throws IOException {
+      List<StopId> ids = new ArrayList<StopId>(stops.size());
+      for (Stop stop : stops) {
+        ids.add(stop.getId());
+      }
+      writeStopIds(out, ids);
+      for (Stop stop : stops) {
+        out.writeInt(getStringIndex(stop.getName()));
+      }
+      for (Stop stop : stops) {
+        out.writeDouble(stop.getLat());
+      }
+      for (Stop stop : stops) {
+        out.writeDouble(stop.getLng());
+      }
+    }
+
+    private void writeStopIds(DataOutputStream out, List<StopId> ids)
+        throws IOException {
+      out.writeInt(ids.size());
+      for (StopId id : ids) {
+        out.writeLong(id.getVersion());
+      }
+      for (StopId id : ids) {
+        out.writeByte(id.getType() == null ? -1 : id.getType().ordinal());
+      }
+      for (StopId id : ids) {
+        out.writeLong(id.getId());
+      }
+    }
+
+    private void writeDayTypes(DataOutputStream out,
+        Collection<DayType> dayTypes) throws IOException {
+      writeVersionedIds(out, getIds(dayTypes));
+      for (DayType dayType : dayTypes) {
+        out.writeInt(getStringIndex(dayType.getDesc()));
+      }
+    }
+
+    private void writePeriods(DataOutputStream out, List<Period> periods)
+        throws IOException {
+      out.writeInt(periods.size());
+      for (Period period : periods) {
+        ServiceDate date = period.getDate();
+        out.writeInt(date == null ? -1 : date.getYear() * 10000
+            + date.getMonth() * 100 + date.getDay());
+      }
+      for (Period period : periods) {
+        out.writeInt(_dao.getIndexForDayType(period.getDayType()));
+      }
+      for (Period period : periods) {
+        out.writeInt(getStringIndex(period.getDesc()));
+      }
+    }
+
+    private void writeTimingGroups(DataOutputStream out,
+        Collection<TimingGroup> timingGroups) throws IOException {
+      writeVersionedIds(out, getIds(timingGroups));
+      for (TimingGroup timingGroup : timingGroups) {
+        out.writeInt(getStringIndex(timingGroup.getDesc()));
+      }
+    }
+
+    private void writeTravelTimes(DataOutputStream out,
+        List<TravelTime> travelTimes) throws IOException {
+      out.writeInt(travelTimes.size());
+      for (TravelTime travelTime : travelTimes) {
+        out.writeInt(_dao.getIndexForTimingGroup(travelTime.getTimingGroup()));
+      }
+      for (TravelTime travelTime : travelTimes) {
+        out.writeInt(_dao.getIndexForStopPoint(travelTime.getFromStop()));
+      }
+      for (TravelTime travelTime : travelTimes) {
+        out.writeInt(_dao.getIndexForStopPoint(travelTime.getToStop()));
+      }
+      for (TravelTime travelTime : travelTimes) {
+        out.writeInt(travelTime.getTravelTime());
+      }
+    }
+
+    private void writeWaitTimes(DataOutputStream out, List<WaitTime> waitTimes)
+        throws IOException {
+      out.writeInt(waitTimes.size());
+      for (WaitTime waitTime : waitTimes) {
+        out.writeInt(_dao.getIndexForTimingGroup(waitTime.getTimingGroup()));
+      }
+      for (WaitTime waitTime : waitTimes) {
+        out.writeInt(_dao.getIndexForStopPoint(waitTime.getStop()));
+      }
+      for (WaitTime waitTime : waitTimes) {
+        out.writeInt(waitTime.getWaitTime());
+      }
+    }
+
+    private void writeLines(DataOutputStream out, Collection<Line> lines)
+        throws IOException {
+      out.writeInt(lines.size());
+      for (Line line : lines) {
+        out.writeLong(line.getId().getVersion());
+      }
+      for (Line line : lines) {
+        out.writeLong(line.getId().getLineId());
+      }
+      for (Line line : lines) {
+        out.writeInt(getStringIndex(line.getId().getLineVariant()));
+      }
+      for (Line line : lines) {
+        out.writeInt(getStringIndex(line.getShortName()));
+      }
+      for (Line line : lines) {
+        out.writeInt(getStringIndex(line.getLongName()));
+      }
+    }
+
+    private void writeRouteSequences(DataOutputStream out,
+        List<RouteSequence> sequences) throws IOException {
+      out.writeInt(sequences.size());
+      for (RouteSequence sequence : sequences) {
+        out.writeInt(_dao.getIndexForLine(sequence.getLine()));
+      }
+      for (RouteSequence sequence : sequences) {
+        out.writeInt(sequence.getSequence());
+      }
+      for (RouteSequence sequence : sequences) {
+        out.writeInt(_dao.getIndexForStopPoint(sequence.getStop()));
+      }
+    }
+
+    private void writeVehicleTypes(DataOutputStream out,
+        Collection<VehicleType> vehicleTypes) throws IOException {
+      writeVersionedIds(out, getIds(vehicleTypes));
+      for (VehicleType vehicleType : vehicleTypes) {
+        out.writeInt(vehicleType.getLength());
+      }
+      for (VehicleType vehicleType : vehicleTypes) {
+        out.writeInt(vehicleType.getSeatingCapacity());
+      }
+      for (VehicleType vehicleType : vehicleTypes) {
+        out.writeInt(vehicleType.getStandingCapacity());
+      }
+      for (VehicleType vehicleType : vehicleTypes) {
+        out.writeInt(vehicleType.getAccessibleCapacity());
+      }
+      for (VehicleType vehicleType : vehicleTypes) {
+        out.writeInt(getStringIndex(vehicleType.getName()));
+      }
+      for (VehicleType vehicleType : vehicleTypes) {
+        out.writeInt(getStringIndex(vehicleType.getAbreviatedName()));
+      }
+    }
+
+    /**
+     * Journeys are written through a single pass of the cursor, with each
+     * column buffered, such that columnar journeys are never materialized.
+     */
+    private void writeJourneys(DataOutputStream out, int count,
+        JourneyCursor cursor) throws IOException {
+      long[] versions = new long[count];
+      long[] ids = new long[count];
+      int[] lines = new int[count];
+      int[] departureTimes = new int[count];
+      int[] timingGroups = new int[count];
+      int[] dayTypes = new int[count];
+      int i = 0;
+      while (cursor.next()) {
+        versions[i] = cursor.getVersion();
+        ids[i] = cursor.getId();
+        lines[i] = _dao.getIndexForLine(cursor.getLine());
+        departureTimes[i] = cursor.getDepartureTime();
+        timingGroups[i] = _dao.getIndexForTimingGroup(cursor.getTimingGroup());
+        dayTypes[i] = _dao.getIndexForDayType(cursor.getDayType());
+        i++;
+      }
+      out.writeInt(count);
+      writeLongs(out, versions);
+      writeLongs(out, ids);
+      writeInts(out, lines);
+      writeInts(out, departureTimes);
+      writeInts(out, timingGroups);
+      writeInts(out, dayTypes);
+    }
+
+    private void writeVersionedIds(DataOutputStream out, List<VersionedId> ids)
+        throws IOException {
+      out.writeInt(ids.size());
+      for (VersionedId id : ids) {
+        out.writeLong(id.getVersion());
+      }
+      for (VersionedId id : ids) {
+        out.writeLong(id.getId());
+      }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values)
+        throws IOException {
+      for (long value : values) {
+        out.writeLong(value);
+      }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values)
+        throws IOException {
+      for (int value : values) {
+        out.writeInt(value);
+      }
+    }
+
+    private int getStringIndex(String value) {
+      if (value == null) {
+        return -1;
+      }
+      Integer index = _stringIndices.get(value);
+      if (index == null) {
+        index = _strings.size();
+        _strings.add(value);
+        _stringIndices.put(value, index);
+      }
+      return index;
+    }
+  }
+
+  private static class Reader {
+
+    private final ByteBuffer _buffer;
+
+    private final Vdv452Dao _dao;
+
+    private String[] _strings;
+
+    private StopPoint[] _stopPoints;
+
+    private DayType[] _dayTypes;
+
+    private TimingGroup[] _timingGroups;
+
+    private Line[] _lines;
+
+    public Reader(ByteBuffer buffer, Vdv452Dao dao) {
+      _buffer = buffer;
+      _dao = dao;
+    }
+
+    public void read() {
+      readStrings();
+      readTransportCompanies();
+      _stopPoints = readStopPoints();
+      readStops();
+      _dayTypes = readDayTypes();
+      readPeriods();
+      _timingGroups = readTimingGroups();
+      readTravelTimes();
+      readWaitTimes();
+      _lines = readLines();
+      readRouteSequences();
+      readVehicleTypes();
+      readJourneys();
+    }
+
+    private void readStrings() {
+      _strings = new String[_buffer.getInt()];
+      byte[] bytes = new byte[256];
+      for (int i = 0; i < _strings.length; ++i) {
+        int length = _buffer.getInt();
+        if (bytes.length < length) {
+          bytes = new byte[length];
+        }
+        _buffer.get(bytes, 0, length);
+        _strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+      }
+    }
+
+    private void readTransportCompanies() {
+      int count = _buffer.getInt();
+      long[] versions = readLongs(count);
+      long[] ids = readLongs(count);
+      String[] names = readStrings(count);
+      String[] operatingAreas = readStrings(count);
+      for (int i = 0; i < count; ++i) {
+        TransportCompany company = new TransportCompany();
+        company.setId(new VersionedId(versions[i], ids[i]));
+        company.setName(names[i]);
+        company.setOperatingArea(operatingAreas[i]);
+        _dao.putEntity(company);
+      }
+    }
+
+    private StopPoint[] readStopPoints() {
+      StopId[] ids = readStopIds();
+      StopPoint[] stopPoints = new StopPoint[ids.length];
+      for (int i = 0; i < ids.length; ++i) {
+        StopPoint stopPoint = new StopPoint();
+        stopPoint.setId(ids[i]);
+        _dao.putEntity(stopPoint);
+        stopPoints[i] = stopPoint;
+      }
+      return stopPoints;
+    }
+
+    private void readStops() {
+      StopId[] ids = readStopIds();
+      String[] names = readStrings(ids.length);
+      double[] lats = readDoubles(ids.length);
+      double[] lngs = readDoubles(ids.length);
+      for (int i = 0; i < ids.length; ++i) {
+        Stop stop = new Stop();
+        stop.setId(ids[i]);
+        stop.setName(names[i]);
+        stop.setLat(lats[i]);
+        stop.setLng(lngs[i]);
+        _dao.putEntity(stop);
+      }
+    }
+
+    private StopId[] readStopIds() {
+      int count = _buffer.getInt();
+      long[] versions = readLongs(count);
+      byte[] types = new byte[count];
+      _buffer.get(types);
+      long[] ids = readLongs(count);
+      StopId[] stopIds = new StopId[count];
+      for (int i = 0; i < count; ++i) {
+        stopIds[i] = new StopId(versions[i], types[i] < 0 ? null
+            : STOP_TYPES[types[i]], ids[i]);
+      }
+      return stopIds;
+    }
+
+    private DayType[] readDayTypes() {
+      VersionedId[] ids = readVersionedIds();
+      String[] descs = readStrings(ids.length);
+      DayType[] dayTypes = new DayType[ids.length];
+      for (int i = 0; i < ids.length; ++i) {
+        DayType dayType = new DayType();
+        dayType.setId(ids[i]);
+        dayType.setDesc(descs[i]);
+        _dao.putEntity(dayType);
+        dayTypes[i] = dayType;
+      }
+      return dayTypes;
+    }
+
+    private void readPeriods() {
+      int count = _buffer.getInt();
+      int[] dates = readInts(count);
+      int[] dayTypes = readInts(count);
+      String[] descs = readStrings(count);
+      for (int i = 0; i < count; ++i) {
+        Period period = new Period();
+        int date = dates[i];
+        if (date >= 0) {
+          period.setDate(new ServiceDate(date / 10000, date / 100 % 100,
+              date % 100));
+        }
+        period.setDayType(get(_dayTypes, dayTypes[i]));
+        period.setDesc(descs[i]);
+        _dao.putEntity(period);
+      }
+    }
+
+    private TimingGroup[] readTimingGroups() {
+      VersionedId[] ids = readVersionedIds();
+      String[] descs = readStrings(ids.length);
+      TimingGroup[] timingGroups = new TimingGroup[ids.length];
+      for (int i = 0; i < ids.length; ++i) {
+        TimingGroup timingGroup = new TimingGroup();
+        timingGroup.setId(ids[i]);
+        timingGroup.setDesc(descs[i]);
+        _dao.putEntity(timingGroup);
+        timingGroups[i] = timingGroup;
+      }
+      return timingGroups;
+    }
+
+    private void readTravelTimes() {
+      int count = _buffer.getInt();
+      int[] timingGroups = readInts(count);
+      int[] fromStops = readInts(count);
+      int[] toStops = readInts(count);
+      int[] travelTimes = readInts(count);
+      for (int i = 0; i < count; ++i) {
+        TravelTime travelTime = new TravelTime();
+        travelTime.setTimingGroup(get(_timingGroups, timingGroups[i]));
+        travelTime.setFromStop(get(_stopPoints, fromStops[i]));
+        travelTime.setToStop(get(_stopPoints, toStops[i]));
+        travelTime.setTravelTime(travelTimes[i]);
+        _dao.putEntity(travelTime);
+      }
+    }
+
+    private void readWaitTimes() {
+      int count = _buffer.getInt();
+      int[] timingGroups = readInts(count);
+      int[] stops = readInts(count);
+      int[] waitTimes = readInts(count);
+      for (int i = 0; i < count; ++i) {
+        WaitTime waitTime = new WaitTime();
+        waitTime.setTimingGroup(get(_timingGroups, timingGroups[i]));
+        waitTime.setStop(get(_stopPoints, stops[i]));
+        waitTime.setWaitTime(waitTimes[i]);
+        _dao.putEntity(waitTime);
+      }
+    }
+
+    private Line[] readLines() {
+      int count = _buffer.getInt();
+      long[] versions = readLongs(count);
+      long[] lineIds = readLongs(count);
+      String[] variants = readStrings(count);
+      String[] shortNames = readStrings(count);
+      String[] longNames = readStrings(count);
+      Line[] lines = new Line[count];
+      for (int i = 0; i < count; ++i) {
+        Line line = new Line();
+        line.setId(new LineId(versions[i], lineIds[i], variants[i]));
+        line.setShortName(shortNames[i]);
+        line.setLongName(longNames[i]);
+        _dao.putEntity(line);
+        lines[i] = line;
+      }
+      return lines;
+    }
+
+    private void readRouteSequences() {
+      int count = _buffer.getInt();
+      int[] lines = readInts(count);
+      int[] sequences = readInts(count);
+      int[] stops = readInts(count);
+      for (int i = 0; i < count; ++i) {
+        RouteSequence sequence = new RouteSequence();
+        sequence.setLine(get(_lines, lines[i]));
+        sequence.setSequence(sequences[i]);
+        sequence.setStop(get(_stopPoints, stops[i]));
+        _dao.putEntity(sequence);
+      }
+    }
+
+    private void readVehicleTypes() {
+      VersionedId[] ids = readVersionedIds();
+      int[] lengths = readInts(ids.length);
+      int[] seatingCapacities = readInts(ids.length);
+      int[] standingCapacities = readInts(ids.length);
+      int[] accessibleCapacities = readInts(ids.length);
+      String[] names = readStrings(ids.length);
+      String[] abreviatedNames = readStrings(ids.length);
+      for (int i = 0; i < ids.length; ++i) {
+        VehicleType vehicleType = new VehicleType();
+        vehicleType.setId(ids[i]);
+        vehicleType.setLength(lengths[i]);
+        vehicleType.setSeatingCapacity(seatingCapacities[i]);
+        vehicleType.setStandingCapacity(standingCapacities[i]);
+        vehicleType.setAccessibleCapacity(accessibleCapacities[i]);
+        vehicleType.setName(names[i]);
+        vehicleType.setAbreviatedName(abreviatedNames[i]);
+        _dao.putEntity(vehicleType);
+      }
+    }
+
+    /**
+     * The entity indices of the snapshot match those of the DAO, as both add
+     * the same entities in the same order, so references can be passed on
+     * as-is.
+     */
+    private void readJourneys() {
+      int count = _buffer.getInt();
+      long[] versions = readLongs(count);
+      long[] ids = readLongs(count);
+      int[] lines = readInts(count);
+      int[] departureTimes = readInts(count);
+      int[] timingGroups = readInts(count);
+      int[] dayTypes = readInts(count);
+      _dao.ensureJourneyCapacity(count);
+      for (int i = 0; i < count; ++i) {
+        _dao.putJourney(versions[i], ids[i], lines[i], departureTimes[i],
+            timingGroups[i], dayTypes[i]);
+      }
+    }
+
+    private VersionedId[] readVersionedIds() {
+      int count = _buffer.getInt();
+      long[] versions = readLongs(count);
+      long[] ids = readLongs(count);
+      VersionedId[] versionedIds = new VersionedId[count];
+      for (int i = 0; i < count; ++i) {
+        versionedIds[i] = new VersionedId(versions[i], ids[i]);
+      }
+      return versionedIds;
+    }
+
+    private long[] readLongs(int count) {
+      long[] values = new long[count];
+      _buffer.asLongBuffer().get(values);
+      _buffer.position(_buffer.position() + count * 8);
+      return values;
+    }
+
+    private int[] readInts(int count) {
+      int[] values = new int[count];
+      _buffer.asIntBuffer().get(values);
+      _buffer.position(_buffer.position() + count * 4);
+      return values;
+    }
+
+    private double[] readDoubles(int count) {
+      double[] values = new double[count];
+      _buffer.asDoubleBuffer().get(values);
+      _buffer.position(_buffer.position() + count * 8);
+      return values;
+    }
+
+    private String[] readStrings(int count) {
+      int[] indices = readInts(count);
+      String[] values = new String[count];
+      for (int i = 0; i < count; ++i) {
+        values[i] = indices[i] < 0 ? null : _strings[indices[i]];
+      }
+      return values;
+    }
+
+    private static <T> T get(T[] entities, int index) {
+      return index < 0 ? null : entities[index];
+    }
+  }
+}
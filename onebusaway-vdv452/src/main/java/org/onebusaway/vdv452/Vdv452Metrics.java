@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+/**
+ * Receives measurements from {@link Vdv452Reader} and the GTFS converter at
+ * well-defined points: once for each table read, and once each for the stop
+ * time pattern cache, the GTFS files written and the conversion as a whole.
+ * Tables may be read concurrently (see
+ * {@link Vdv452Reader#setExecutor(java.util.concurrent.ExecutorService)}), so
+ * implementations must be thread-safe.
+ */
+public interface Vdv452Metrics {
+
+  /**
+   * Called once a table has been read and all of its entities have been
+   * handled.
+   */
+  public void tableRead(Vdv452TableMetrics table);
+
+  /**
+   * Called once all journeys have been converted, with the number of journeys
+   * whose stop times were taken from a previously computed pattern and the
+   * number of patterns computed.
+   */
+  public void stopTimePatterns(long hits, long misses);
+
+  /**
+   * Called for each GTFS file once the output has been written.
+   */
+  public void gtfsFileWritten(String filename, long bytes);
+
+  /**
+   * Called once the conversion has finished, after all other calls.
+   */
+  public void conversionFinished(long elapsedNanos);
+}
@@ -15,11 +15,21 @@
  */
 package org.onebusaway.vdv452;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipFile;
 
 import org.onebusaway.csv_entities.CsvEntityContext;
 import org.onebusaway.csv_entities.CsvEntityReader;
@@ -27,23 +37,39 @@ import org.onebusaway.csv_entities.CsvInputSource;
 import org.onebusaway.csv_entities.EntityHandler;
 import org.onebusaway.csv_entities.IndividualCsvEntityReader;
 import org.onebusaway.csv_entities.exceptions.CsvEntityIOException;
+import org.onebusaway.csv_entities.exceptions.MissingRequiredEntityException;
 import org.onebusaway.csv_entities.schema.EntitySchema;
 import org.onebusaway.vdv452.model.BaseVersion;
+import org.onebusaway.vdv452.model.BaseVersionValidity;
 import org.onebusaway.vdv452.model.Block;
 import org.onebusaway.vdv452.model.DayType;
 import org.onebusaway.vdv452.model.Journey;
 import org.onebusaway.vdv452.model.JourneyWaitTime;
 import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.LineId;
 import org.onebusaway.vdv452.model.Period;
 import org.onebusaway.vdv452.model.RouteSequence;
+import org.onebusaway.vdv452.model.ServiceDate;
 import org.onebusaway.vdv452.model.Stop;
+import org.onebusaway.vdv452.model.StopId;
 import org.onebusaway.vdv452.model.StopPoint;
 import org.onebusaway.vdv452.model.TimingGroup;
 import org.onebusaway.vdv452.model.TransportCompany;
 import org.onebusaway.vdv452.model.TravelTime;
 import org.onebusaway.vdv452.model.VehicleType;
+import org.onebusaway.vdv452.model.VersionedId;
 import org.onebusaway.vdv452.model.WaitTime;
+import org.onebusaway.vdv452.serialization.ByteBufferCsvInputSource;
+import org.onebusaway.vdv452.serialization.ChunkedVdvTableReader;
 import org.onebusaway.vdv452.serialization.IndividaulVdvEntityReader;
+import org.onebusaway.vdv452.serialization.MappedFileCsvInputSource;
+import org.onebusaway.vdv452.serialization.PrefetchingZipCsvInputSource;
+import org.onebusaway.vdv452.serialization.VdvEntityDecoder;
+import org.onebusaway.vdv452.serialization.VdvEntityDecoders;
+import org.onebusaway.vdv452.serialization.VdvRecord;
+import org.onebusaway.vdv452.serialization.VdvRecordFilter;
+import org.onebusaway.vdv452.serialization.VdvRow;
+import org.onebusaway.vdv452.serialization.VdvTokenizer;
 import org.onebusaway.vdv452.serialization.VdvTokenizerStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,11 +84,48 @@ public class Vdv452Reader extends CsvEntityReader {
 
   private Vdv452Dao _dao = new Vdv452Dao();
 
+  private List<EntityHandler> _handlers = new ArrayList<EntityHandler>();
+
+  private Set<Class<?>> _streamedEntityClasses = new HashSet<Class<?>>();
+
+  private ExecutorService _executor = null;
+
+  private ForkJoinPool _chunkedParsingPool = null;
+
+  private int _chunkedParsingThreshold = 4 * 1024 * 1024;
+
+  private Vdv452Metrics _metrics = null;
+
+  private File _inputLocation = null;
+
+  private File _snapshotPath = null;
+
+  private Map<String, String> _tableFingerprints = null;
+
+  private BaseVersionSelector _baseVersionSelector = null;
+
+  private long[] _lineNumbers = null;
+
+  private ServiceDate _fromDate = null;
+
+  private ServiceDate _toDate = null;
+
+  private BoundingBox _boundingBox = null;
+
+  private List<VdvRecordFilter> _recordFilters = new ArrayList<VdvRecordFilter>();
+
+  /**
+   * The filter applied to the records of each table, combining the filters
+   * and the resolved base version selection, or null to read all records.
+   */
+  private VdvRecordFilter _recordFilter = null;
+
   public Vdv452Reader() {
     setTokenizerStrategy(new VdvTokenizerStrategy());
     setTrimValues(true);
 
     _entityClasses.add(BaseVersion.class);
+    _entityClasses.add(BaseVersionValidity.class);
     _entityClasses.add(TransportCompany.class);
     _entityClasses.add(StopPoint.class);
     _entityClasses.add(Stop.class);
@@ -90,6 +153,208 @@ public class Vdv452Reader extends CsvEntityReader {
 
   public void setEntityClasses(List<Class<?>> entityClasses) {
     _entityClasses = entityClasses;
+    _tableFingerprints = null;
+  }
+
+  @Override
+  public void addEntityHandler(EntityHandler handler) {
+    super.addEntityHandler(handler);
+    _handlers.add(handler);
+  }
+
+  /**
+   * Entities of a streamed class are handed to the entity handlers as they are
+   * read, but are not added to the DAO, such that they can be processed
+   * without being retained.
+   */
+  public void addStreamedEntityClass(Class<?> entityClass) {
+    _streamedEntityClasses.add(entityClass);
+    _tableFingerprints = null;
+  }
+
+  /**
+   * When set, tables are read concurrently on the specified executor, with
+   * each table started as soon as the tables it references have been read.
+   * Any additional {@link EntityHandler} must then be thread-safe.
+   */
+  public void setExecutor(ExecutorService executor) {
+    _executor = executor;
+  }
+
+  /**
+   * When set, any table of at least {@link #setChunkedParsingThreshold(int)}
+   * bytes is split into line-aligned chunks that are parsed concurrently on the
+   * specified pool. The resulting entities are identical to those of a
+   * sequential read, and are handled in the same order.
+   */
+  public void setChunkedParsingPool(ForkJoinPool pool) {
+    _chunkedParsingPool = pool;
+  }
+
+  public void setChunkedParsingThreshold(int chunkedParsingThreshold) {
+    _chunkedParsingThreshold = chunkedParsingThreshold;
+  }
+
+  /**
+   * See {@link Vdv452Dao#setColumnarJourneys(boolean)}. The journey store is
+   * pre-sized from a count of the lines of the journey table when the table is
+   * available as a buffer.
+   */
+  public void setColumnarJourneys(boolean columnarJourneys) {
+    _dao.setColumnarJourneys(columnarJourneys);
+  }
+
+  /**
+   * When set, the metrics are notified once each table has been read, with
+   * the time spent tokenizing, mapping and handling its records. As each row
+   * is timed, reading is slower with metrics than without.
+   */
+  public void setMetrics(Vdv452Metrics metrics) {
+    _metrics = metrics;
+  }
+
+  public Vdv452Metrics getMetrics() {
+    return _metrics;
+  }
+
+  /**
+   * When set, only the records of the selected base versions are read, with
+   * the records of other versions rejected from their BASIS_VERSION column
+   * before they are decoded. The selection is resolved at the start of
+   * {@link #run()}, from MENGE_BASIS_VERSIONEN and BASIS_VER_GUELTIGKEIT.
+   */
+  public void setBaseVersionSelector(BaseVersionSelector baseVersionSelector) {
+    _baseVersionSelector = baseVersionSelector;
+  }
+
+  /**
+   * When set, only the lines with the specified LI_NR are read, with the
+   * records of REC_LID, LID_VERLAUF and REC_FRT of other lines rejected before
+   * they are decoded. Once loaded, day types left without journeys are pruned
+   * from the DAO along with their periods.
+   */
+  public void setLineNumbers(long... lineNumbers) {
+    if (lineNumbers == null) {
+      _lineNumbers = null;
+      return;
+    }
+    _lineNumbers = lineNumbers.clone();
+    Arrays.sort(_lineNumbers);
+  }
+
+  /**
+   * When set, only the operating days of FIRMENKALENDER within the specified
+   * range are read. Once loaded, day types left without operating days are
+   * pruned from the DAO along with their journeys, and journeys of those day
+   * types that are read afterwards, such as streamed ones, are rejected.
+   *
+   * @param from the first date of the range, or null for no lower bound
+   * @param to the last date of the range, or null for no upper bound
+   */
+  public void setServiceDateRange(ServiceDate from, ServiceDate to) {
+    _fromDate = from;
+    _toDate = to;
+  }
+
+  /**
+   * When set, only the line variants serving at least one stop within the
+   * bounding box are kept, along with all the stops they serve, including
+   * those outside of the box, such that their journeys remain complete. The
+   * line variants are resolved once the tables have been loaded, from the
+   * stops and route sequences of the DAO, and everything else is pruned from
+   * it: other line variants, stops, their travel and wait times, journeys, and
+   * day types left without journeys. Journeys of other line variants that are
+   * read afterwards, such as streamed ones, are rejected before they are
+   * decoded.
+   */
+  public void setBoundingBox(BoundingBox boundingBox) {
+    _boundingBox = boundingBox;
+  }
+
+  /**
+   * Adds a filter for the records of all tables read with a generated
+   * {@link VdvEntityDecoder}. Rejected records count as rejected rows in the
+   * {@link Vdv452TableMetrics}. The filter should describe its configuration
+   * in its {@link Object#toString()}, as part of {@link #getSelectionKey()},
+   * otherwise snapshots aren't used.
+   */
+  public void addRecordFilter(VdvRecordFilter recordFilter) {
+    _recordFilters.add(recordFilter);
+  }
+
+  /**
+   * @return a description of the base version selector and the record
+   *         filters, which determine the records read from a feed along with
+   *         its tables, or null if a record filter doesn't override
+   *         {@link Object#toString()}, such that the records read can't be
+   *         told apart from those of another configuration
+   */
+  public String getSelectionKey() {
+    StringBuilder key = new StringBuilder();
+    key.append("baseVersions=").append(_baseVersionSelector);
+    if (_lineNumbers != null) {
+      key.append(';').append(new LineRecordFilter(_lineNumbers));
+    }
+    if (hasServiceDateRange()) {
+      key.append(';').append(new ServiceDateRecordFilter(_fromDate, _toDate));
+    }
+    if (_boundingBox != null) {
+      key.append(";boundingBox=").append(_boundingBox);
+    }
+    for (VdvRecordFilter filter : _recordFilters) {
+      if (!overridesToString(filter)) {
+        return null;
+      }
+      key.append(';').append(filter);
+    }
+    return key.toString();
+  }
+
+  /**
+   * When set, {@link #run()} loads the DAO from the snapshot at the specified
+   * path instead of reading the tables, provided the snapshot was written for
+   * the same tables of the same input location. Otherwise the tables are read
+   * and a new snapshot is written. See {@link Vdv452DaoSnapshot}.
+   *
+   * Snapshots are only used for input read from
+   * {@link #setInputLocation(File)}, and are bypassed when additional entity
+   * handlers are registered, as those wouldn't see the entities of a snapshot,
+   * or when there is no {@link #getSelectionKey()}.
+   */
+  public void setSnapshotPath(File snapshotPath) {
+    _snapshotPath = snapshotPath;
+  }
+
+  /**
+   * Directories are read through a {@link MappedFileCsvInputSource}, while zip
+   * files are read through a {@link PrefetchingZipCsvInputSource}, which holds
+   * the zip file and its inflating threads until the input source is closed.
+   */
+  @Override
+  public void setInputLocation(File path) throws IOException {
+    _inputLocation = path;
+    _tableFingerprints = null;
+    if (path.isDirectory()) {
+      setInputSource(new MappedFileCsvInputSource(path));
+    } else {
+      setInputSource(new PrefetchingZipCsvInputSource(new ZipFile(path)));
+    }
+  }
+
+  /**
+   * @return the {@link Vdv452TableFingerprints} of the tables of the entity
+   *         classes added to the DAO, by filename, as of the first call since
+   *         the input location or the entity classes were last set
+   */
+  public Map<String, String> getTableFingerprints() throws IOException {
+    if (_inputLocation == null) {
+      throw new IllegalStateException("no input location has been set");
+    }
+    if (_tableFingerprints == null) {
+      _tableFingerprints = Vdv452TableFingerprints.compute(_inputLocation,
+          getDaoFilenames());
+    }
+    return _tableFingerprints;
   }
 
   public Vdv452Dao getDao() {
@@ -97,21 +362,422 @@ public class Vdv452Reader extends CsvEntityReader {
   }
 
   public void run() throws IOException {
-    run(getInputSource());
+    if (_snapshotPath == null) {
+      run(getInputSource());
+    } else if (_inputLocation == null || _handlers.size() > 1
+        || getSelectionKey() == null) {
+      _log.warn("snapshots are not supported for this reader, ignoring "
+          + _snapshotPath);
+      run(getInputSource());
+    } else {
+      runWithSnapshot();
+    }
   }
 
   public void run(CsvInputSource source) throws IOException {
+    _recordFilter = createRecordFilter(source);
     List<Class<?>> classes = getEntityClasses();
-    for (Class<?> entityClass : classes) {
-      _log.info("reading entities: " + entityClass.getName());
-      readEntities(entityClass, source);
+    if (source instanceof PrefetchingZipCsvInputSource) {
+      List<String> filenames = new ArrayList<String>();
+      for (Class<?> entityClass : classes) {
+        filenames.add(getFilenameForEntityClass(entityClass));
+      }
+      ((PrefetchingZipCsvInputSource) source).prefetch(filenames);
+    }
+    if (_executor != null) {
+      new ParallelEntityLoader(this, _executor).run(source, classes);
+    } else {
+      for (Class<?> entityClass : classes) {
+        _log.info("reading entities: " + entityClass.getName());
+        readEntities(entityClass, source);
+      }
     }
+    applySelection();
   }
 
+  /**
+   * Reads entities with the {@link VdvEntityDecoder} generated for the entity
+   * class where one is available, falling back to the reflective csv-entities
+   * schema otherwise.
+   */
+  @Override
+  public void readEntities(Class<?> entityClass, CsvInputSource source)
+      throws IOException {
+    VdvEntityDecoder<?> decoder = VdvEntityDecoders.getDecoderForEntityType(entityClass);
+    if (decoder == null) {
+      super.readEntities(entityClass, source);
+      return;
+    }
+    String filename = decoder.getFilename();
+    if (!source.hasResource(filename)) {
+      EntitySchema schema = getEntitySchemaFactory().getSchema(entityClass);
+      if (schema.isRequired()) {
+        throw new MissingRequiredEntityException(entityClass, filename);
+      }
+      return;
+    }
+    if (_metrics == null) {
+      readEntities(entityClass, source, decoder, new EntityHandlerDispatcher(),
+          null, _recordFilter);
+      return;
+    }
+    Vdv452TableMetrics metrics = new Vdv452TableMetrics(filename, entityClass);
+    long start = System.nanoTime();
+    readEntities(entityClass, source, decoder,
+        new TimedEntityHandler(metrics), metrics, _recordFilter);
+    metrics.setElapsedNanos(System.nanoTime() - start);
+    _metrics.tableRead(metrics);
+  }
+
+  /**
+   * Reads the entities of the specified class by tokenizing the raw ISO-8859-1
+   * bytes of the table, as opposed to the line-by-line String tokenization of
+   * {@link CsvEntityReader}.
+   */
   @Override
   public void readEntities(Class<?> entityClass, InputStream is)
       throws IOException, CsvEntityIOException {
-    readEntities(entityClass, new InputStreamReader(is, "ISO-8859-1"));
+    EntitySchema schema = getEntitySchemaFactory().getSchema(entityClass);
+    IndividaulVdvEntityReader entityReader = (IndividaulVdvEntityReader) createIndividualCsvEntityReader(
+        getContext(), schema, new EntityHandlerDispatcher());
+    try {
+      readEntities(entityClass, schema.getFilename(), entityReader,
+          new VdvTokenizer(is), null);
+    } finally {
+      is.close();
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void runWithSnapshot() throws IOException {
+    long start = System.nanoTime();
+    byte[] fingerprint = Vdv452DaoSnapshot.getInputFingerprint(
+        getDaoFilenames(), getTableFingerprints(), getSelectionKey());
+    if (Vdv452DaoSnapshot.read(_snapshotPath, fingerprint, _dao)) {
+      _log.info("loaded snapshot " + _snapshotPath + " in "
+          + (System.nanoTime() - start) / 1000000 + "ms");
+      // Tables read after the snapshot, such as those of streamed entities,
+      // are still subject to the selection
+      _recordFilter = createRecordFilter(getInputSource());
+      applySelection();
+      return;
+    }
+    run(getInputSource());
+    Vdv452DaoSnapshot.write(_dao, fingerprint, _snapshotPath);
+    _log.info("wrote snapshot " + _snapshotPath);
+  }
+
+  private void readEntities(Class<?> entityClass, CsvInputSource source,
+      VdvEntityDecoder<?> decoder, EntityHandler handler,
+      Vdv452TableMetrics metrics, VdvRecordFilter filter) throws IOException {
+    String filename = decoder.getFilename();
+    IndividaulVdvEntityReader entityReader = new IndividaulVdvEntityReader(
+        getContext(), decoder, handler);
+    entityReader.setRecordFilter(filter);
+    ByteBuffer table = null;
+    if (source instanceof ByteBufferCsvInputSource) {
+      table = ((ByteBufferCsvInputSource) source).getResourceAsBuffer(filename);
+    }
+    if (table == null) {
+      InputStream is = source.getResource(filename);
+      try {
+        if (_chunkedParsingPool == null) {
+          readEntities(entityClass, filename, entityReader,
+              new VdvTokenizer(is), metrics);
+          return;
+        }
+        table = readFully(is);
+      } finally {
+        is.close();
+      }
+    }
+    if (entityClass == Journey.class && _dao.isColumnarJourneys()) {
+      _dao.ensureJourneyCapacity(VdvTokenizer.countLines(table));
+    }
+    if (_chunkedParsingPool == null
+        || table.remaining() < _chunkedParsingThreshold) {
+      readEntities(entityClass, filename, entityReader,
+          new VdvTokenizer(table), metrics);
+      return;
+    }
+    ChunkedVdvTableReader chunkedReader = new ChunkedVdvTableReader(
+        getContext(), decoder, _chunkedParsingPool);
+    chunkedReader.setRecordFilter(filter);
+    try {
+      chunkedReader.read(table, handler, metrics);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new CsvEntityIOException(entityClass, filename, 0, ex);
+    }
+  }
+
+  private VdvRecordFilter createRecordFilter(CsvInputSource source)
+      throws IOException {
+    List<VdvRecordFilter> filters = new ArrayList<VdvRecordFilter>();
+    if (_baseVersionSelector != null) {
+      long[] versions = selectBaseVersions(source);
+      _log.info("selected base versions: " + Arrays.toString(versions));
+      filters.add(new BaseVersionRecordFilter(versions));
+    }
+    if (_lineNumbers != null) {
+      filters.add(new LineRecordFilter(_lineNumbers));
+    }
+    if (hasServiceDateRange()) {
+      filters.add(new ServiceDateRecordFilter(_fromDate, _toDate));
+    }
+    filters.addAll(_recordFilters);
+    return combine(filters);
+  }
+
+  /**
+   * Resolves the line variants of the bounding box and the day types left
+   * with operating days and journeys from the loaded entities, prunes
+   * everything else from the DAO, and extends the record filter to reject the
+   * journeys of pruned line variants and day types from tables read
+   * afterwards, such as streamed journeys.
+   */
+  private void applySelection() {
+    if (_lineNumbers == null && !hasServiceDateRange() && _boundingBox == null) {
+      return;
+    }
+    Set<LineId> lines = null;
+    Set<StopId> stops = null;
+    if (_boundingBox != null) {
+      lines = new HashSet<LineId>();
+      stops = new HashSet<StopId>();
+      selectStopArea(lines, stops);
+    }
+    Set<VersionedId> dayTypes = selectDayTypes(lines);
+    _dao.retain(lines, stops, dayTypes);
+
+    List<VdvRecordFilter> filters = new ArrayList<VdvRecordFilter>();
+    if (_recordFilter != null) {
+      filters.add(_recordFilter);
+    }
+    if (lines != null) {
+      filters.add(new StopAreaRecordFilter(lines, stops));
+    }
+    if (dayTypes != null) {
+      filters.add(new DayTypeRecordFilter(dayTypes));
+    }
+    _recordFilter = combine(filters);
+  }
+
+  /**
+   * Adds the line variants serving a stop within the bounding box, along with
+   * all the stops they serve.
+   */
+  private void selectStopArea(Set<LineId> lines, Set<StopId> stops) {
+    Set<StopId> stopsInArea = new HashSet<StopId>();
+    for (Stop stop : _dao.getAllStops()) {
+      if (_boundingBox.contains(stop.getLat(), stop.getLng())) {
+        stopsInArea.add(stop.getId());
+      }
+    }
+    Map<LineId, Set<StopId>> stopsByLine = new HashMap<LineId, Set<StopId>>();
+    for (RouteSequence sequence : _dao.getAllRouteSequences()) {
+      if (sequence.getLine() == null || sequence.getStop() == null) {
+        continue;
+      }
+      LineId line = sequence.getLine().getId();
+      Set<StopId> lineStops = stopsByLine.get(line);
+      if (lineStops == null) {
+        lineStops = new HashSet<StopId>();
+        stopsByLine.put(line, lineStops);
+      }
+      lineStops.add(sequence.getStop().getId());
+    }
+    for (Map.Entry<LineId, Set<StopId>> entry : stopsByLine.entrySet()) {
+      if (!Collections.disjoint(entry.getValue(), stopsInArea)) {
+        lines.add(entry.getKey());
+        stops.addAll(entry.getValue());
+      }
+    }
+    _log.info("bounding box " + _boundingBox + ": " + stopsInArea.size()
+        + " stops within, " + lines.size() + " line variants serving "
+        + stops.size() + " stops");
+  }
+
+  /**
+   * @return the day types that still have operating days and, when journeys
+   *         are loaded into the DAO, journeys of the selected line variants,
+   *         or null to keep all of them. Day types aren't pruned on account of
+   *         a table that wasn't loaded.
+   */
+  private Set<VersionedId> selectDayTypes(Set<LineId> lines) {
+    Set<VersionedId> dayTypes = null;
+    if (hasServiceDateRange() && isLoadedIntoDao(Period.class)) {
+      dayTypes = new HashSet<VersionedId>();
+      for (Period period : _dao.getAllPeriods()) {
+        if (period.getDayType() != null) {
+          dayTypes.add(period.getDayType().getId());
+        }
+      }
+    }
+    if (isLoadedIntoDao(Journey.class)) {
+      Set<VersionedId> journeyDayTypes = new HashSet<VersionedId>();
+      JourneyCursor cursor = _dao.getJourneyCursor();
+      while (cursor.next()) {
+        Line line = cursor.getLine();
+        DayType dayType = cursor.getDayType();
+        if (dayType != null
+            && (lines == null || line == null || lines.contains(line.getId()))
+            && (dayTypes == null || dayTypes.contains(dayType.getId()))) {
+          journeyDayTypes.add(dayType.getId());
+        }
+      }
+      dayTypes = journeyDayTypes;
+    }
+    if (dayTypes != null) {
+      _log.info("selected day types: " + dayTypes.size());
+    }
+    return dayTypes;
+  }
+
+  private boolean isLoadedIntoDao(Class<?> entityClass) {
+    return getEntityClasses().contains(entityClass)
+        && !_streamedEntityClasses.contains(entityClass);
+  }
+
+  private static boolean overridesToString(Object object) {
+    try {
+      Class<?> declaringClass = object.getClass().getMethod("toString").getDeclaringClass();
+      return declaringClass != Object.class;
+    } catch (NoSuchMethodException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private boolean hasServiceDateRange() {
+    return _fromDate != null || _toDate != null;
+  }
+
+  private static VdvRecordFilter combine(List<VdvRecordFilter> filters) {
+    if (filters.isEmpty()) {
+      return null;
+    }
+    if (filters.size() == 1) {
+      return filters.get(0);
+    }
+    return new CompositeRecordFilter(filters);
+  }
+
+  /**
+   * Reads the base versions and their validities, unfiltered and without
+   * passing them to the entity handlers, to resolve the selector.
+   */
+  private long[] selectBaseVersions(CsvInputSource source) throws IOException {
+    ListEntityHandler<BaseVersion> baseVersions = new ListEntityHandler<BaseVersion>();
+    ListEntityHandler<BaseVersionValidity> validities = new ListEntityHandler<BaseVersionValidity>();
+    readUnfiltered(BaseVersion.class, source, baseVersions);
+    readUnfiltered(BaseVersionValidity.class, source, validities);
+    return _baseVersionSelector.select(baseVersions.getEntities(),
+        validities.getEntities());
+  }
+
+  private void readUnfiltered(Class<?> entityClass, CsvInputSource source,
+      EntityHandler handler) throws IOException {
+    VdvEntityDecoder<?> decoder = VdvEntityDecoders.getDecoderForEntityType(entityClass);
+    if (source.hasResource(decoder.getFilename())) {
+      readEntities(entityClass, source, decoder, handler, null, null);
+    }
+  }
+
+  /**
+   * Streamed entities aren't added to the DAO, so their tables are left out.
+   */
+  private List<String> getDaoFilenames() {
+    List<String> filenames = new ArrayList<String>();
+    for (Class<?> entityClass : getEntityClasses()) {
+      if (!_streamedEntityClasses.contains(entityClass)) {
+        filenames.add(getFilenameForEntityClass(entityClass));
+      }
+    }
+    return filenames;
+  }
+
+  private String getFilenameForEntityClass(Class<?> entityClass) {
+    VdvEntityDecoder<?> decoder = VdvEntityDecoders.getDecoderForEntityType(entityClass);
+    if (decoder != null) {
+      return decoder.getFilename();
+    }
+    return getEntitySchemaFactory().getSchema(entityClass).getFilename();
+  }
+
+  private void readEntities(Class<?> entityClass, String filename,
+      IndividaulVdvEntityReader entityReader, VdvTokenizer tokenizer,
+      Vdv452TableMetrics metrics) throws IOException {
+    VdvRow row = new VdvRow();
+    if (metrics != null) {
+      readEntitiesTimed(entityClass, filename, entityReader, tokenizer, row,
+          metrics);
+      return;
+    }
+    while (tokenizer.next(row)) {
+      try {
+        entityReader.handleRow(row);
+      } catch (Exception ex) {
+        throw new CsvEntityIOException(entityClass, filename,
+            row.getLineNumber(), ex);
+      }
+    }
+  }
+
+  /**
+   * As above, while splitting the time spent between tokenizing, mapping and
+   * the entity handlers. Handling a row includes the entity handlers, whose
+   * time is tracked by {@link TimedEntityHandler} and subtracted.
+   */
+  private void readEntitiesTimed(Class<?> entityClass, String filename,
+      IndividaulVdvEntityReader entityReader, VdvTokenizer tokenizer,
+      VdvRow row, Vdv452TableMetrics metrics) throws IOException {
+    long insertNanos = metrics.getInsertNanos();
+    long tokenizeNanos = 0;
+    long handleNanos = 0;
+    long rows = 0;
+    long records = 0;
+    long time = System.nanoTime();
+    while (tokenizer.next(row)) {
+      long tokenized = System.nanoTime();
+      tokenizeNanos += tokenized - time;
+      rows++;
+      if (row.isRecordType("rec")) {
+        records++;
+      }
+      try {
+        entityReader.handleRow(row);
+      } catch (Exception ex) {
+        throw new CsvEntityIOException(entityClass, filename,
+            row.getLineNumber(), ex);
+      }
+      time = System.nanoTime();
+      handleNanos += time - tokenized;
+    }
+    tokenizeNanos += System.nanoTime() - time;
+    metrics.addBytes(tokenizer.getBytesRead());
+    metrics.addRows(rows);
+    metrics.addRecords(records);
+    metrics.addTokenizeNanos(tokenizeNanos);
+    metrics.addMappingNanos(handleNanos
+        - (metrics.getInsertNanos() - insertNanos));
+  }
+
+  private static ByteBuffer readFully(InputStream is) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    int length = 0;
+    while (true) {
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+      int n = is.read(buffer, length, buffer.length - length);
+      if (n < 0) {
+        return ByteBuffer.wrap(buffer, 0, length);
+      }
+      length += n;
+    }
   }
 
   @Override
@@ -120,10 +786,77 @@ public class Vdv452Reader extends CsvEntityReader {
     return new IndividaulVdvEntityReader(context, schema, handler);
   }
 
+  private static class CompositeRecordFilter implements VdvRecordFilter {
+
+    private final VdvRecordFilter[] _filters;
+
+    public CompositeRecordFilter(List<VdvRecordFilter> filters) {
+      _filters = filters.toArray(new VdvRecordFilter[filters.size()]);
+    }
+
+    @Override
+    public boolean accept(VdvRecord record) {
+      for (VdvRecordFilter filter : _filters) {
+        if (!filter.accept(record)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(_filters);
+    }
+  }
+
+  private static class ListEntityHandler<T> implements EntityHandler {
+
+    private final List<T> _entities = new ArrayList<T>();
+
+    public List<T> getEntities() {
+      return _entities;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void handleEntity(Object bean) {
+      _entities.add((T) bean);
+    }
+  }
+
   private class EntityHandlerImpl implements EntityHandler {
     @Override
     public void handleEntity(Object bean) {
-      _dao.putEntity(bean);
+      if (!_streamedEntityClasses.contains(bean.getClass())) {
+        _dao.putEntity(bean);
+      }
+    }
+  }
+
+  private class EntityHandlerDispatcher implements EntityHandler {
+    @Override
+    public void handleEntity(Object bean) {
+      for (EntityHandler handler : _handlers) {
+        handler.handleEntity(bean);
+      }
+    }
+  }
+
+  private class TimedEntityHandler extends EntityHandlerDispatcher {
+
+    private final Vdv452TableMetrics _tableMetrics;
+
+    public TimedEntityHandler(Vdv452TableMetrics tableMetrics) {
+      _tableMetrics = tableMetrics;
+    }
+
+    @Override
+    public void handleEntity(Object bean) {
+      long start = System.nanoTime();
+      super.handleEntity(bean);
+      _tableMetrics.addInsertNanos(System.nanoTime() - start);
+      _tableMetrics.addEntities(1);
     }
   }
 }
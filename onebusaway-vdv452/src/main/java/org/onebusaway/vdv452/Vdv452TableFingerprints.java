@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Computes a SHA-256 fingerprint of the content of each table of a VDV feed,
+ * such that a changed table can be told apart from an unchanged one without
+ * parsing either. The tables of a zip file are fingerprinted by the size and
+ * CRC-32 recorded for each entry, which saves inflating them, while the tables
+ * of a directory are hashed in full.
+ */
+public final class Vdv452TableFingerprints {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private Vdv452TableFingerprints() {
+
+  }
+
+  /**
+   * @return the hex encoded fingerprint of each of the specified tables, in
+   *         the order of the filenames, leaving out tables that don't exist
+   */
+  public static Map<String, String> compute(File inputLocation,
+      List<String> filenames) throws IOException {
+    Map<String, String> fingerprints = new LinkedHashMap<String, String>();
+    ZipFile zip = inputLocation.isDirectory() ? null : new ZipFile(
+        inputLocation);
+    try {
+      for (String filename : filenames) {
+        byte[] fingerprint = zip == null ? computeForFile(new File(
+            inputLocation, filename)) : computeForZipEntry(zip, filename);
+        if (fingerprint != null) {
+          fingerprints.put(filename, toHex(fingerprint));
+        }
+      }
+    } finally {
+      if (zip != null) {
+        zip.close();
+      }
+    }
+    return fingerprints;
+  }
+
+  public static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  public static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; ++i) {
+      chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+      chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static byte[] computeForZipEntry(ZipFile zip, String filename)
+      throws IOException {
+    ZipEntry entry = zip.getEntry(filename);
+    if (entry == null) {
+      return null;
+    }
+    MessageDigest digest = createDigest();
+    if (entry.getCrc() == -1) {
+      update(digest, zip.getInputStream(entry));
+    } else {
+      digest.update(ByteBuffer.allocate(16).putLong(entry.getSize()).putLong(
+          entry.getCrc()).array());
+    }
+    return digest.digest();
+  }
+
+  private static byte[] computeForFile(File file) throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    MessageDigest digest = createDigest();
+    update(digest, new FileInputStream(file));
+    return digest.digest();
+  }
+
+  private static void update(MessageDigest digest, InputStream in)
+      throws IOException {
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        digest.update(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
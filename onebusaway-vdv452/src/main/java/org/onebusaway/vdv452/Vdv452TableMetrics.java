@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452;
+
+/**
+ * The measurements for a single table, as passed to
+ * {@link Vdv452Metrics#tableRead(Vdv452TableMetrics)}. Times are in
+ * nanoseconds. When a table is parsed in chunks (see
+ * {@link Vdv452Reader#setChunkedParsingPool(java.util.concurrent.ForkJoinPool)}
+ * ), tokenizing and field mapping times are summed over all threads and may
+ * exceed the elapsed time.
+ */
+public class Vdv452TableMetrics {
+
+  private final String _filename;
+
+  private final Class<?> _entityType;
+
+  private long _bytes;
+
+  private long _rows;
+
+  private long _records;
+
+  private long _entities;
+
+  private long _tokenizeNanos;
+
+  private long _mappingNanos;
+
+  private long _insertNanos;
+
+  private long _elapsedNanos;
+
+  public Vdv452TableMetrics(String filename, Class<?> entityType) {
+    _filename = filename;
+    _entityType = entityType;
+  }
+
+  public String getFilename() {
+    return _filename;
+  }
+
+  public Class<?> getEntityType() {
+    return _entityType;
+  }
+
+  /**
+   * @return the size of the table in bytes
+   */
+  public long getBytes() {
+    return _bytes;
+  }
+
+  /**
+   * @return the number of non-blank lines parsed, including header lines
+   */
+  public long getRows() {
+    return _rows;
+  }
+
+  /**
+   * @return the number of "rec" lines parsed
+   */
+  public long getRecords() {
+    return _records;
+  }
+
+  /**
+   * @return the number of entities handed to the entity handlers
+   */
+  public long getEntities() {
+    return _entities;
+  }
+
+  /**
+   * @return the number of records that were skipped instead of being turned
+   *         into an entity
+   */
+  public long getRejectedRows() {
+    return _records - _entities;
+  }
+
+  /**
+   * @return the time spent splitting the table into lines and tokens
+   */
+  public long getTokenizeNanos() {
+    return _tokenizeNanos;
+  }
+
+  /**
+   * @return the time spent mapping the tokens of each record onto an entity
+   */
+  public long getMappingNanos() {
+    return _mappingNanos;
+  }
+
+  /**
+   * @return the time spent in the entity handlers, which is mostly insertion
+   *         into the {@link Vdv452Dao}
+   */
+  public long getInsertNanos() {
+    return _insertNanos;
+  }
+
+  public long getElapsedNanos() {
+    return _elapsedNanos;
+  }
+
+  public void addBytes(long bytes) {
+    _bytes += bytes;
+  }
+
+  public void addRows(long rows) {
+    _rows += rows;
+  }
+
+  public void addRecords(long records) {
+    _records += records;
+  }
+
+  public void addEntities(long entities) {
+    _entities += entities;
+  }
+
+  public void addTokenizeNanos(long nanos) {
+    _tokenizeNanos += nanos;
+  }
+
+  public void addMappingNanos(long nanos) {
+    _mappingNanos += nanos;
+  }
+
+  public void addInsertNanos(long nanos) {
+    _insertNanos += nanos;
+  }
+
+  public void setElapsedNanos(long elapsedNanos) {
+    _elapsedNanos = elapsedNanos;
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.model;
+
+import org.onebusaway.csv_entities.schema.annotations.CsvField;
+import org.onebusaway.csv_entities.schema.annotations.CsvFields;
+import org.onebusaway.vdv452.serialization.ServiceDateFieldMappingFactory;
+
+/**
+ * The date from which a {@link BaseVersion} is valid, until the start of the
+ * validity of the next base version.
+ */
+@CsvFields(filename = "BASIS_VER_GUELTIGKEIT.x10", required = false)
+public class BaseVersionValidity {
+
+  @CsvField(name = "VER_GUELTIGKEIT", mapping = ServiceDateFieldMappingFactory.class)
+  private ServiceDate date;
+
+  @CsvField(name = "BASIS_VERSION")
+  private int baseVersion;
+
+  public ServiceDate getDate() {
+    return date;
+  }
+
+  public void setDate(ServiceDate date) {
+    this.date = date;
+  }
+
+  public int getBaseVersion() {
+    return baseVersion;
+  }
+
+  public void setBaseVersion(int baseVersion) {
+    this.baseVersion = baseVersion;
+  }
+
+  @Override
+  public String toString() {
+    return "BaseVersionValidity(" + date + " " + baseVersion + ")";
+  }
+}
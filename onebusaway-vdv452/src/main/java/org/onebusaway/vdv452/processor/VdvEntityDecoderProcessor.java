@@ -0,0 +1,352 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code VdvEntityDecoder} for each class annotated with
+ * {@code @CsvFields}, such that VDV tables can be read without going through
+ * the reflective csv-entities schema and bean wrappers.
+ *
+ * Fields without a custom mapping are converted directly. For a field of type
+ * {@code Foo} with {@code mapping = BarFieldMappingFactory.class}, the
+ * generated code calls a static
+ * {@code BarFieldMappingFactory.decodeFoo(context, entityType, record, column)}
+ * method, which every custom mapping used by the model must provide.
+ *
+ * Each column is referenced through a {@code VdvColumns} id that is resolved
+ * once when the decoder class is initialized, and values are read from a
+ * {@code VdvRecord} by that id.
+ *
+ * This class is compiled ahead of the rest of the module and must not depend
+ * on anything beyond the JDK.
+ */
+@SupportedAnnotationTypes(VdvEntityDecoderProcessor.CSV_FIELDS)
+public class VdvEntityDecoderProcessor extends AbstractProcessor {
+
+  static final String CSV_FIELDS = "org.onebusaway.csv_entities.schema.annotations.CsvFields";
+
+  private static final String CSV_FIELD = "org.onebusaway.csv_entities.schema.annotations.CsvField";
+
+  private static final String DEFAULT_MAPPING = "org.onebusaway.csv_entities.schema.FieldMappingFactory";
+
+  private static final String DECODER_BASE_CLASS = "org.onebusaway.vdv452.serialization.AbstractVdvEntityDecoder";
+
+  private static final String COLUMNS_CLASS = "org.onebusaway.vdv452.serialization.VdvColumns";
+
+  private static final String DECODER_SUFFIX = "VdvDecoder";
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations,
+      RoundEnvironment roundEnv) {
+    TypeElement csvFields = processingEnv.getElementUtils().getTypeElement(
+        CSV_FIELDS);
+    if (csvFields == null) {
+      return false;
+    }
+    for (Element element : roundEnv.getElementsAnnotatedWith(csvFields)) {
+      if (element.getKind() != ElementKind.CLASS
+          || element.getModifiers().contains(Modifier.ABSTRACT)) {
+        continue;
+      }
+      TypeElement entityType = (TypeElement) element;
+      try {
+        generateDecoder(entityType);
+      } catch (IOException ex) {
+        error(entityType, "error writing decoder: " + ex.getMessage());
+      }
+    }
+    return false;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void generateDecoder(TypeElement entityType) throws IOException {
+    List<FieldDecoder> fields = new ArrayList<FieldDecoder>();
+    for (VariableElement field : getFields(entityType)) {
+      FieldDecoder decoder = getFieldDecoder(entityType, field);
+      if (decoder == null) {
+        // An error has already been reported
+        return;
+      }
+      if (!decoder.ignore) {
+        fields.add(decoder);
+      }
+    }
+
+    String packageName = getPackage(entityType).getQualifiedName().toString();
+    String entityName = entityType.getQualifiedName().toString();
+    String simpleName = entityType.getSimpleName() + DECODER_SUFFIX;
+    String filename = getStringValue(
+        getAnnotation(entityType, CSV_FIELDS), "filename");
+
+    PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(
+        packageName + "." + simpleName, entityType).openWriter());
+    try {
+      if (packageName.length() > 0) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("/**");
+      out.println(" * Generated by " + getClass().getSimpleName()
+          + " from the @CsvField annotations of {@link " + entityName + "}.");
+      out.println(" */");
+      out.println("public final class " + simpleName + " extends "
+          + DECODER_BASE_CLASS + "<" + entityName + "> {");
+      out.println();
+      Set<String> columns = new LinkedHashSet<String>();
+      for (FieldDecoder field : fields) {
+        if (columns.add(field.csvFieldName)) {
+          out.println("  private static final int "
+              + getColumnConstant(field.csvFieldName) + " = " + COLUMNS_CLASS
+              + ".getId(" + quote(field.csvFieldName) + ");");
+          out.println();
+        }
+      }
+      out.println("  public " + simpleName + "() {");
+      out.println("    super(" + entityName + ".class, " + quote(filename)
+          + ");");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public " + entityName + " decode(");
+      out.println("      org.onebusaway.csv_entities.CsvEntityContext context,");
+      out.println("      org.onebusaway.vdv452.serialization.VdvRecord record) {");
+      out.println("    " + entityName + " entity = new " + entityName + "();");
+      for (FieldDecoder field : fields) {
+        String column = getColumnConstant(field.csvFieldName);
+        out.println("    if (!isMissingValue(record, " + column + ")) {");
+        out.println("      entity." + field.setter + "(" + field.expression
+            + ");");
+        if (field.required) {
+          out.println("    } else {");
+          out.println("      throw missingRequiredField(" + column + ");");
+        }
+        out.println("    }");
+      }
+      out.println("    return entity;");
+      out.println("  }");
+      out.println("}");
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @return the fields of the entity type, including those of its super
+   *         classes, in declaration order
+   */
+  private List<VariableElement> getFields(TypeElement entityType) {
+    List<VariableElement> fields = new ArrayList<VariableElement>();
+    TypeMirror superType = entityType.getSuperclass();
+    if (superType.getKind() == TypeKind.DECLARED) {
+      fields.addAll(getFields((TypeElement) ((DeclaredType) superType).asElement()));
+    }
+    for (VariableElement field : ElementFilter.fieldsIn(entityType.getEnclosedElements())) {
+      Set<Modifier> modifiers = field.getModifiers();
+      if (!modifiers.contains(Modifier.STATIC)
+          && !modifiers.contains(Modifier.TRANSIENT)) {
+        fields.add(field);
+      }
+    }
+    return fields;
+  }
+
+  private FieldDecoder getFieldDecoder(TypeElement entityType,
+      VariableElement field) {
+    AnnotationMirror csvField = getAnnotation(field, CSV_FIELD);
+    FieldDecoder decoder = new FieldDecoder();
+    if (csvField == null) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+          "field without @CsvField will not be decoded", field);
+      decoder.ignore = true;
+      return decoder;
+    }
+    decoder.ignore = (Boolean) getValue(csvField, "ignore");
+    if (decoder.ignore) {
+      return decoder;
+    }
+    decoder.csvFieldName = getStringValue(csvField, "name");
+    if (decoder.csvFieldName.isEmpty()) {
+      error(field, "@CsvField must specify a name");
+      return null;
+    }
+    decoder.required = !(Boolean) getValue(csvField, "optional");
+    decoder.setter = getSetter(entityType, field);
+    if (decoder.setter == null) {
+      return null;
+    }
+
+    TypeMirror fieldType = field.asType();
+    String column = getColumnConstant(decoder.csvFieldName);
+    String mapping = ((TypeMirror) getValue(csvField, "mapping")).toString();
+    if (!mapping.equals(DEFAULT_MAPPING)) {
+      decoder.expression = mapping + ".decode" + getSimpleTypeName(fieldType)
+          + "(context, getEntityType(), record, " + column + ")";
+      return decoder;
+    }
+
+    String accessor = getAccessorForType(fieldType);
+    if (accessor == null) {
+      error(field, "unsupported field type without a custom mapping: "
+          + fieldType);
+      return null;
+    }
+    decoder.expression = accessor + "(record, " + column + ")";
+    return decoder;
+  }
+
+  private static String getColumnConstant(String csvFieldName) {
+    StringBuilder b = new StringBuilder("COLUMN_");
+    for (int i = 0; i < csvFieldName.length(); ++i) {
+      char c = csvFieldName.charAt(i);
+      b.append(Character.isJavaIdentifierPart(c) ? c : '_');
+    }
+    return b.toString();
+  }
+
+  private String getSetter(TypeElement entityType, VariableElement field) {
+    String name = field.getSimpleName().toString();
+    String setter = "set" + Character.toUpperCase(name.charAt(0))
+        + name.substring(1);
+    List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(
+        entityType);
+    for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+      if (method.getSimpleName().contentEquals(setter)
+          && method.getParameters().size() == 1
+          && method.getModifiers().contains(Modifier.PUBLIC)) {
+        return setter;
+      }
+    }
+    error(field, "no public setter " + setter + " found");
+    return null;
+  }
+
+  private String getAccessorForType(TypeMirror type) {
+    switch (type.getKind()) {
+      case INT:
+        return "getInt";
+      case LONG:
+        return "getLong";
+      case DOUBLE:
+        return "getDouble";
+      case DECLARED:
+        String name = type.toString();
+        if (name.equals("java.lang.String")) {
+          return "getString";
+        } else if (name.equals("java.lang.Integer")) {
+          return "getInt";
+        } else if (name.equals("java.lang.Long")) {
+          return "getLong";
+        } else if (name.equals("java.lang.Double")) {
+          return "getDouble";
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  private String getSimpleTypeName(TypeMirror type) {
+    if (type.getKind().isPrimitive()) {
+      String name = type.getKind().name().toLowerCase();
+      return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+    return ((DeclaredType) type).asElement().getSimpleName().toString();
+  }
+
+  private PackageElement getPackage(Element element) {
+    while (element.getKind() != ElementKind.PACKAGE) {
+      element = element.getEnclosingElement();
+    }
+    return (PackageElement) element;
+  }
+
+  private AnnotationMirror getAnnotation(Element element, String annotationType) {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+      if (type.getQualifiedName().contentEquals(annotationType)) {
+        return mirror;
+      }
+    }
+    return null;
+  }
+
+  private Object getValue(AnnotationMirror mirror, String name) {
+    Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils().getElementValuesWithDefaults(
+        mirror);
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(name)) {
+        return entry.getValue().getValue();
+      }
+    }
+    throw new IllegalStateException("unknown annotation value: " + name);
+  }
+
+  private String getStringValue(AnnotationMirror mirror, String name) {
+    return (String) getValue(mirror, name);
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message,
+        element);
+  }
+
+  private static String quote(String value) {
+    return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  private static class FieldDecoder {
+    String csvFieldName;
+    boolean required;
+    boolean ignore;
+    String setter;
+    String expression;
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import org.onebusaway.csv_entities.exceptions.MissingRequiredFieldException;
+
+/**
+ * Base class for generated {@link VdvEntityDecoder} implementations, providing
+ * the conversions for fields without a custom field mapping.
+ */
+public abstract class AbstractVdvEntityDecoder<T> implements VdvEntityDecoder<T> {
+
+  private final Class<T> _entityType;
+
+  private final String _filename;
+
+  protected AbstractVdvEntityDecoder(Class<T> entityType, String filename) {
+    _entityType = entityType;
+    _filename = filename;
+  }
+
+  @Override
+  public Class<T> getEntityType() {
+    return _entityType;
+  }
+
+  @Override
+  public String getFilename() {
+    return _filename;
+  }
+
+  public static boolean isMissingValue(VdvRecord record, int column) {
+    return record.isMissing(column);
+  }
+
+  protected MissingRequiredFieldException missingRequiredField(int column) {
+    return new MissingRequiredFieldException(_entityType,
+        VdvColumns.getName(column));
+  }
+
+  protected String getString(VdvRecord record, int column) {
+    return record.getString(column);
+  }
+
+  protected int getInt(VdvRecord record, int column) {
+    return record.getInt(column);
+  }
+
+  protected long getLong(VdvRecord record, int column) {
+    return record.getLong(column);
+  }
+
+  protected double getDouble(VdvRecord record, int column) {
+    return record.getDouble(column);
+  }
+}
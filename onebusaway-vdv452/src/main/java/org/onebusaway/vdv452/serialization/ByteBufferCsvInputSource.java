@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.onebusaway.csv_entities.CsvInputSource;
+
+/**
+ * A {@link CsvInputSource} that can hand out the full contents of a resource
+ * as a {@link ByteBuffer}, which {@link VdvTokenizer} can then scan without
+ * any intermediate copy.
+ */
+public interface ByteBufferCsvInputSource extends CsvInputSource {
+
+  /**
+   * @return the contents of the resource between the position and limit of
+   *         the returned buffer, or null if the resource is only available as
+   *         a stream through {@link #getResource(String)}
+   */
+  public ByteBuffer getResourceAsBuffer(String name) throws IOException;
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.onebusaway.csv_entities.CsvEntityContext;
+import org.onebusaway.csv_entities.EntityHandler;
+import org.onebusaway.csv_entities.exceptions.CsvEntityIOException;
+import org.onebusaway.vdv452.Vdv452TableMetrics;
+
+/**
+ * Reads a single large VDV table by splitting it into line-aligned byte
+ * ranges that are decoded concurrently on a {@link ForkJoinPool}. The "atr"
+ * header is parsed once and shared between all chunks, and the decoded
+ * entities of each chunk are handed to the {@link EntityHandler} once it and
+ * all chunks before it have been decoded, such that the result is identical
+ * to reading the table sequentially. Only a bounded number of chunks are
+ * decoded ahead of the one being handed on, so the entities of the whole
+ * table are never held at once.
+ */
+public class ChunkedVdvTableReader {
+
+  private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+  private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+  /**
+   * The number of chunks per thread of the pool, so that threads that finish
+   * early can pick up more work.
+   */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  /**
+   * The number of chunks per thread of the pool that are decoded or waiting
+   * to be handed on at any time.
+   */
+  private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 2;
+
+  private final CsvEntityContext _context;
+
+  private final VdvEntityDecoder<?> _decoder;
+
+  private final ForkJoinPool _pool;
+
+  private VdvRecordFilter _recordFilter = null;
+
+  public ChunkedVdvTableReader(CsvEntityContext context,
+      VdvEntityDecoder<?> decoder, ForkJoinPool pool) {
+    _context = context;
+    _decoder = decoder;
+    _pool = pool;
+  }
+
+  /**
+   * See {@link IndividaulVdvEntityReader#setRecordFilter(VdvRecordFilter)}.
+   */
+  public void setRecordFilter(VdvRecordFilter recordFilter) {
+    _recordFilter = recordFilter;
+  }
+
+  /**
+   * Reads all entities from the table between the position and the limit of
+   * the specified buffer.
+   */
+  public void read(ByteBuffer table, EntityHandler handler)
+      throws IOException, InterruptedException {
+    read(table, handler, null);
+  }
+
+  /**
+   * As above, adding the size of the table and the number of rows and records
+   * to the specified metrics, along with the tokenizing and mapping time of
+   * all chunks.
+   */
+  public void read(ByteBuffer table, EntityHandler handler,
+      Vdv452TableMetrics metrics) throws IOException, InterruptedException {
+    Class<?> entityType = _decoder.getEntityType();
+    String filename = _decoder.getFilename();
+
+    // Parse everything up to and including the header sequentially
+    VdvTokenizer tokenizer = new VdvTokenizer(table.duplicate());
+    VdvRow row = new VdvRow();
+    List<String> fields = null;
+    while (fields == null && tokenizer.next(row)) {
+      if (row.isRecordType("atr")) {
+        fields = new ArrayList<String>(row);
+      }
+    }
+    if (metrics != null) {
+      metrics.addBytes(table.remaining());
+      metrics.addRows(tokenizer.getLineNumber());
+    }
+    if (fields == null) {
+      return;
+    }
+    int headerLines = tokenizer.getLineNumber();
+
+    List<Chunk> chunks = split(table, tokenizer.getPosition(), fields,
+        metrics != null);
+    int window = _pool.getParallelism() * CHUNKS_IN_FLIGHT_PER_THREAD;
+    ArrayDeque<Future<Chunk>> results = new ArrayDeque<Future<Chunk>>();
+    int next = 0;
+    int lineOffset = headerLines;
+    try {
+      while (next < chunks.size() || !results.isEmpty()) {
+        while (next < chunks.size() && results.size() < window) {
+          results.add(_pool.submit(chunks.get(next)));
+          // The chunk is only referenced by its future until it's handed on
+          chunks.set(next++, null);
+        }
+        Chunk chunk = getChunk(results.poll());
+        if (chunk.error != null) {
+          throw new CsvEntityIOException(entityType, filename, lineOffset
+              + chunk.errorLine, chunk.error);
+        }
+        if (metrics != null) {
+          metrics.addRows(chunk.rows);
+          metrics.addRecords(chunk.records);
+          metrics.addTokenizeNanos(chunk.tokenizeNanos);
+          metrics.addMappingNanos(chunk.mappingNanos);
+        }
+        for (Object entity : chunk.entities) {
+          handler.handleEntity(entity);
+        }
+        lineOffset += chunk.lineCount;
+      }
+    } finally {
+      for (Future<Chunk> result : results) {
+        result.cancel(true);
+      }
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private List<Chunk> split(ByteBuffer table, int start, List<String> fields,
+      boolean timed) {
+    int limit = table.limit();
+    int chunkCount = _pool.getParallelism() * CHUNKS_PER_THREAD;
+    int chunkSize = (limit - start) / chunkCount + 1;
+    chunkSize = Math.min(Math.max(chunkSize, MIN_CHUNK_SIZE), MAX_CHUNK_SIZE);
+    List<Chunk> chunks = new ArrayList<Chunk>();
+    while (start < limit) {
+      int end = (int) Math.min((long) start + chunkSize, limit);
+      // Advance the end of the chunk to the start of the next line
+      while (end < limit && table.get(end - 1) != '\n') {
+        end++;
+      }
+      ByteBuffer range = table.duplicate();
+      range.limit(end);
+      range.position(start);
+      chunks.add(new Chunk(range, fields, timed));
+      start = end;
+    }
+    return chunks;
+  }
+
+  private static Chunk getChunk(Future<Chunk> result) throws IOException,
+      InterruptedException {
+    try {
+      return result.get();
+    } catch (ExecutionException ex) {
+      // Chunks capture their own parse errors, so only IO errors remain
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private class Chunk implements Callable<Chunk>, EntityHandler {
+
+    private final ByteBuffer _range;
+
+    private final List<String> _fields;
+
+    private final boolean _timed;
+
+    private final List<Object> entities = new ArrayList<Object>();
+
+    private int lineCount = 0;
+
+    private long rows = 0;
+
+    private long records = 0;
+
+    private long tokenizeNanos = 0;
+
+    private long mappingNanos = 0;
+
+    private int errorLine = 0;
+
+    private Exception error = null;
+
+    public Chunk(ByteBuffer range, List<String> fields, boolean timed) {
+      _range = range;
+      _fields = fields;
+      _timed = timed;
+    }
+
+    @Override
+    public Chunk call() throws IOException {
+      IndividaulVdvEntityReader reader = new IndividaulVdvEntityReader(
+          _context, _decoder, this);
+      reader.setFields(_fields);
+      reader.setRecordFilter(_recordFilter);
+      VdvTokenizer tokenizer = new VdvTokenizer(_range);
+      VdvRow row = new VdvRow();
+      if (_timed) {
+        return callTimed(reader, tokenizer, row);
+      }
+      while (tokenizer.next(row)) {
+        try {
+          reader.handleRow(row);
+        } catch (Exception ex) {
+          error = ex;
+          errorLine = row.getLineNumber();
+          return this;
+        }
+      }
+      lineCount = tokenizer.getLineNumber();
+      return this;
+    }
+
+    private Chunk callTimed(IndividaulVdvEntityReader reader,
+        VdvTokenizer tokenizer, VdvRow row) throws IOException {
+      long time = System.nanoTime();
+      while (tokenizer.next(row)) {
+        long tokenized = System.nanoTime();
+        tokenizeNanos += tokenized - time;
+        rows++;
+        if (row.isRecordType("rec")) {
+          records++;
+        }
+        try {
+          reader.handleRow(row);
+        } catch (Exception ex) {
+          error = ex;
+          errorLine = row.getLineNumber();
+          return this;
+        }
+        time = System.nanoTime();
+        mappingNanos += time - tokenized;
+      }
+      tokenizeNanos += System.nanoTime() - time;
+      lineCount = tokenizer.getLineNumber();
+      return this;
+    }
+
+    @Override
+    public void handleEntity(Object bean) {
+      entities.add(bean);
+    }
+  }
+}
@@ -17,8 +17,6 @@ package org.onebusaway.vdv452.serialization;
 
 import java.text.ParseException;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.beanutils.ConversionException;
 import org.apache.commons.beanutils.Converter;
@@ -38,10 +36,26 @@ public class DegressMinutesSecondsFieldMappingFactory implements FieldMappingFac
       Class<?> objFieldType, boolean required) {
     return new Impl(entityType, csvFieldName, objFieldName, required);
   }
+
+  public static double decodeDouble(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    return toDecimalDegrees(csvValues.get(csvFieldName).toString());
+  }
+
+  public static double decodeDouble(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    return record.getDegreesMinutesSeconds(column);
+  }
+
+  private static double toDecimalDegrees(String value) {
+    try {
+      return VdvPrimitiveDecoders.parseDegreesMinutesSeconds(value);
+    } catch (NumberFormatException ex) {
+      throw new ConversionException("Could not convert " + value + " to decimal degrees");
+    }
+  }
   
   private static class Impl extends AbstractFieldMapping implements Converter {
-    
-    private static final Pattern FORMAT = Pattern.compile("^(-{0,1}\\d{2,3})(\\d{2})(\\d{2})(\\d{3})$");
 
     public Impl(Class<?> entityType, String csvFieldName, String objFieldName,
         boolean required) {
@@ -54,16 +68,8 @@ public class DegressMinutesSecondsFieldMappingFactory implements FieldMappingFac
       if (isMissingAndOptional(csvValues))
         return;
 
-      String value = csvValues.get(_csvFieldName).toString();
-      Matcher matcher = FORMAT.matcher(value);
-      if (!matcher.matches()) {
-        throw new ConversionException("Could not convert " + value + " to decimal degrees");
-      }
-      int degrees = Integer.parseInt(matcher.group(1));
-      int minutes = Integer.parseInt(matcher.group(2));
-      double seconds = Integer.parseInt(matcher.group(3))
-          + Integer.parseInt(matcher.group(4)) / 1000.0d;
-      double decimalDegrees = degrees + (minutes / 60.0) + (seconds / 3600);
+      double decimalDegrees = decodeDouble(context, _entityType, csvValues,
+          _csvFieldName);
       object.setPropertyValue(_objFieldName, decimalDegrees);
     }
 
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.onebusaway.csv_entities.schema.annotations.CsvField;
+
+/**
+ * Determines which entity classes must be loaded before others, based on the
+ * fields that reference other entities through an
+ * {@link EntityFieldMappingFactory}. For example, a {@code Period} references a
+ * {@code DayType}, so all day types must be loaded before any period can be
+ * read.
+ */
+public class EntityDependencies {
+
+  /**
+   * @return for each of the specified entity classes, the classes among them
+   *         that it depends on
+   */
+  public static Map<Class<?>, List<Class<?>>> getDependencies(
+      Collection<Class<?>> entityClasses) {
+    Map<Class<?>, List<Class<?>>> dependencies = new LinkedHashMap<Class<?>, List<Class<?>>>();
+    for (Class<?> entityClass : entityClasses) {
+      List<Class<?>> dependsOn = new ArrayList<Class<?>>();
+      for (Class<?> referenced : getReferencedEntityClasses(entityClass)) {
+        if (entityClasses.contains(referenced) && referenced != entityClass
+            && !dependsOn.contains(referenced)) {
+          dependsOn.add(referenced);
+        }
+      }
+      dependencies.put(entityClass, dependsOn);
+    }
+    return dependencies;
+  }
+
+  /**
+   * @return the types of all fields of the specified class that are resolved
+   *         through an {@link EntityFieldMappingFactory}
+   */
+  public static List<Class<?>> getReferencedEntityClasses(Class<?> entityClass) {
+    List<Class<?>> referenced = new ArrayList<Class<?>>();
+    for (Class<?> c = entityClass; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        CsvField csvField = field.getAnnotation(CsvField.class);
+        if (csvField != null && !csvField.ignore()
+            && csvField.mapping() == EntityFieldMappingFactory.class) {
+          referenced.add(field.getType());
+        }
+      }
+    }
+    return referenced;
+  }
+}
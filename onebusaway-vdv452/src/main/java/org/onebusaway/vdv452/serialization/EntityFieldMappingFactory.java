@@ -46,6 +46,117 @@ public class EntityFieldMappingFactory implements FieldMappingFactory {
         required);
   }
 
+  public static DayType decodeDayType(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    VersionedId id = IdFactory.resolveVersionedId(csvValues, csvFieldName);
+    return getDao(context).getDayTypeForId(id);
+  }
+
+  /**
+   * Consecutive rows very often reference the same entity, so the most
+   * recently resolved entity of each column is kept by the record and reused
+   * for the same interned id.
+   */
+  public static DayType decodeDayType(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    VersionedId id = IdFactory.resolveVersionedId(record, column);
+    DayType dayType = (DayType) record.getLastResolved(column, id);
+    if (dayType == null) {
+      dayType = getDao(context).getDayTypeForId(id);
+      record.setLastResolved(column, id, dayType);
+    }
+    return dayType;
+  }
+
+  public static TimingGroup decodeTimingGroup(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    VersionedId id = IdFactory.resolveVersionedId(csvValues, csvFieldName);
+    return getDao(context).getTimingGroupForId(id);
+  }
+
+  public static TimingGroup decodeTimingGroup(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    VersionedId id = IdFactory.resolveVersionedId(record, column);
+    TimingGroup timingGroup = (TimingGroup) record.getLastResolved(column, id);
+    if (timingGroup == null) {
+      timingGroup = getDao(context).getTimingGroupForId(id);
+      record.setLastResolved(column, id, timingGroup);
+    }
+    return timingGroup;
+  }
+
+  public static VehicleType decodeVehicleType(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    VersionedId id = IdFactory.resolveVersionedId(csvValues, csvFieldName);
+    return getDao(context).getVehicleTypeForId(id);
+  }
+
+  public static VehicleType decodeVehicleType(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    VersionedId id = IdFactory.resolveVersionedId(record, column);
+    VehicleType vehicleType = (VehicleType) record.getLastResolved(column, id);
+    if (vehicleType == null) {
+      vehicleType = getDao(context).getVehicleTypeForId(id);
+      record.setLastResolved(column, id, vehicleType);
+    }
+    return vehicleType;
+  }
+
+  public static StopPoint decodeStopPoint(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    StopId stopId = IdFactory.resolveStopId(csvValues, csvFieldName);
+    return getDao(context).getStopPointForId(stopId);
+  }
+
+  public static StopPoint decodeStopPoint(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    StopId stopId = IdFactory.resolveStopId(record, column);
+    StopPoint stopPoint = (StopPoint) record.getLastResolved(column, stopId);
+    if (stopPoint == null) {
+      stopPoint = getDao(context).getStopPointForId(stopId);
+      record.setLastResolved(column, stopId, stopPoint);
+    }
+    return stopPoint;
+  }
+
+  public static Line decodeLine(CsvEntityContext context, Class<?> entityType,
+      Map<String, Object> csvValues, String csvFieldName) {
+    LineId lineId = IdFactory.resolveLineId(csvValues, csvFieldName);
+    return getDao(context).getLineForId(lineId);
+  }
+
+  public static Line decodeLine(CsvEntityContext context, Class<?> entityType,
+      VdvRecord record, int column) {
+    LineId lineId = IdFactory.resolveLineId(record, column);
+    Line line = (Line) record.getLastResolved(column, lineId);
+    if (line == null) {
+      line = getDao(context).getLineForId(lineId);
+      record.setLastResolved(column, lineId, line);
+    }
+    return line;
+  }
+
+  public static Journey decodeJourney(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    VersionedId id = IdFactory.resolveVersionedId(csvValues, csvFieldName);
+    return getDao(context).getJourneyForId(id);
+  }
+
+  public static Journey decodeJourney(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    VersionedId id = IdFactory.resolveVersionedId(record, column);
+    Journey journey = (Journey) record.getLastResolved(column, id);
+    if (journey == null) {
+      journey = getDao(context).getJourneyForId(id);
+      record.setLastResolved(column, id, journey);
+    }
+    return journey;
+  }
+
+  private static Vdv452Dao getDao(CsvEntityContext context) {
+    return (Vdv452Dao) context.get(Vdv452Reader.DAO_CONTEXT_KEY);
+  }
+
   private static class Impl extends AbstractFieldMapping {
 
     private final Class<?> _objFieldType;
@@ -76,25 +187,20 @@ public class EntityFieldMappingFactory implements FieldMappingFactory {
 
     private Object resolveEntity(CsvEntityContext context,
         Map<String, Object> csvValues) {
-      Vdv452Dao dao = (Vdv452Dao) context.get(Vdv452Reader.DAO_CONTEXT_KEY);
       if (_objFieldType == DayType.class) {
-        VersionedId id = IdFactory.resolveVersionedId(csvValues, _csvFieldName);
-        return dao.getDayTypeForId(id);
+        return decodeDayType(context, _entityType, csvValues, _csvFieldName);
       } else if (_objFieldType == TimingGroup.class) {
-        VersionedId id = IdFactory.resolveVersionedId(csvValues, _csvFieldName);
-        return dao.getTimingGroupForId(id);
+        return decodeTimingGroup(context, _entityType, csvValues,
+            _csvFieldName);
       } else if (_objFieldType == VehicleType.class) {
-        VersionedId id = IdFactory.resolveVersionedId(csvValues, _csvFieldName);
-        return dao.getVehicleTypeForId(id);
+        return decodeVehicleType(context, _entityType, csvValues,
+            _csvFieldName);
       } else if (_objFieldType == StopPoint.class) {
-        StopId stopId = IdFactory.resolveStopId(csvValues, _csvFieldName);
-        return dao.getStopPointForId(stopId);
+        return decodeStopPoint(context, _entityType, csvValues, _csvFieldName);
       } else if (_objFieldType == Line.class) {
-        LineId lineId = IdFactory.resolveLineId(csvValues, _csvFieldName);
-        return dao.getLineForId(lineId);
+        return decodeLine(context, _entityType, csvValues, _csvFieldName);
       } else if (_objFieldType == Journey.class) {
-        VersionedId id = IdFactory.resolveVersionedId(csvValues, _csvFieldName);
-        return dao.getJourneyForId(id);
+        return decodeJourney(context, _entityType, csvValues, _csvFieldName);
       }
       throw new IllegalStateException("unsupported entity type: "
           + _objFieldType);
@@ -24,6 +24,28 @@ import org.onebusaway.vdv452.model.VersionedId;
 
 public class IdFactory {
 
+  private static final int BASIS_VERSION = VdvColumns.getId(VersionedId.BASIS_VERSION_FIELD);
+
+  private static final int LI_NR = VdvColumns.getId("LI_NR");
+
+  private static final int STR_LI_VAR = VdvColumns.getId("STR_LI_VAR");
+
+  private static final int ORT_NR = VdvColumns.getId("ORT_NR");
+
+  private static final int ONR_TYP_NR = VdvColumns.getId("ONR_TYP_NR");
+
+  private static final int SEL_ZIEL = VdvColumns.getId("SEL_ZIEL");
+
+  private static final int SEL_ZIEL_TYP = VdvColumns.getId("SEL_ZIEL_TYP");
+
+  private static final int ANF_ORT = VdvColumns.getId("ANF_ORT");
+
+  private static final int ANF_ONR_TYP = VdvColumns.getId("ANF_ONR_TYP");
+
+  private static final int END_ORT = VdvColumns.getId("END_ORT");
+
+  private static final int END_ONR_TYP = VdvColumns.getId("END_ONR_TYP");
+
   public static VersionedId resolveVersionedId(Map<String, Object> csvValues,
       String csvFieldName) {
     String versionString = (String) csvValues.get(VersionedId.BASIS_VERSION_FIELD);
@@ -54,6 +76,38 @@ public class IdFactory {
     return new LineId(version, lineId, lineVariation);
   }
 
+  /**
+   * Resolves the id referenced by the specified column of the current row,
+   * interned by the record's {@link IdInterner}.
+   */
+  public static VersionedId resolveVersionedId(VdvRecord record, int column) {
+    long version = record.getLong(BASIS_VERSION);
+    long id = record.getLong(column);
+    return record.getIdInterner().getVersionedId(version, id);
+  }
+
+  public static StopId resolveStopId(VdvRecord record, int column) {
+    long version = record.getLong(BASIS_VERSION);
+    int typeColumn = getStopTypeColumn(column);
+    EStopType type;
+    if (record.valueEquals(typeColumn, "1")) {
+      type = EStopType.STOP;
+    } else if (record.valueEquals(typeColumn, "2")) {
+      type = EStopType.DEPOT;
+    } else {
+      type = EStopType.parseFieldValue(record.getString(typeColumn));
+    }
+    long id = record.getLong(column);
+    return record.getIdInterner().getStopId(version, type, id);
+  }
+
+  public static LineId resolveLineId(VdvRecord record, int column) {
+    long version = record.getLong(BASIS_VERSION);
+    long lineId = record.getLong(LI_NR);
+    return record.getIdInterner().getLineId(version, lineId, record,
+        STR_LI_VAR);
+  }
+
   private static String getStopTypeFieldName(String csvFieldName) {
     if (csvFieldName.equals("ORT_NR")) {
       return "ONR_TYP_NR";
@@ -68,4 +122,17 @@ public class IdFactory {
         + csvFieldName);
   }
 
+  private static int getStopTypeColumn(int column) {
+    if (column == ORT_NR) {
+      return ONR_TYP_NR;
+    } else if (column == SEL_ZIEL) {
+      return SEL_ZIEL_TYP;
+    } else if (column == ANF_ORT) {
+      return ANF_ONR_TYP;
+    } else if (column == END_ORT) {
+      return END_ONR_TYP;
+    }
+    throw new IllegalStateException("Unknown stop point id field: "
+        + VdvColumns.getName(column));
+  }
 }
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import org.onebusaway.vdv452.model.EStopType;
+import org.onebusaway.vdv452.model.LineId;
+import org.onebusaway.vdv452.model.StopId;
+import org.onebusaway.vdv452.model.VersionedId;
+
+/**
+ * Canonicalizes the ids referenced while reading a table by their primitive
+ * components, so that an id object is only allocated the first time a given
+ * id is seen. Lookups use open-addressing tables that are probed with the
+ * primitive values directly, without building a key object.
+ *
+ * Interned ids are shared between entities and must not be modified. An
+ * interner is not thread-safe, and is owned by a single {@link VdvRecord}.
+ */
+public class IdInterner {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private VersionedId[] _versionedIds = new VersionedId[INITIAL_CAPACITY];
+
+  private int _versionedIdCount = 0;
+
+  private StopId[] _stopIds = new StopId[INITIAL_CAPACITY];
+
+  private int _stopIdCount = 0;
+
+  private LineId[] _lineIds = new LineId[INITIAL_CAPACITY];
+
+  private int _lineIdCount = 0;
+
+  public VersionedId getVersionedId(long version, long id) {
+    VersionedId[] table = _versionedIds;
+    int mask = table.length - 1;
+    int i = hash(version, id) & mask;
+    while (true) {
+      VersionedId existing = table[i];
+      if (existing == null) {
+        break;
+      }
+      if (existing.getId() == id && existing.getVersion() == version) {
+        return existing;
+      }
+      i = (i + 1) & mask;
+    }
+    VersionedId versionedId = new VersionedId(version, id);
+    table[i] = versionedId;
+    if (++_versionedIdCount * 2 > table.length) {
+      _versionedIds = new VersionedId[table.length * 2];
+      for (VersionedId existing : table) {
+        if (existing != null) {
+          insert(_versionedIds, existing,
+              hash(existing.getVersion(), existing.getId()));
+        }
+      }
+    }
+    return versionedId;
+  }
+
+  public StopId getStopId(long version, EStopType type, long id) {
+    StopId[] table = _stopIds;
+    int mask = table.length - 1;
+    int i = hash(version, id, type.ordinal()) & mask;
+    while (true) {
+      StopId existing = table[i];
+      if (existing == null) {
+        break;
+      }
+      if (existing.getId() == id && existing.getType() == type
+          && existing.getVersion() == version) {
+        return existing;
+      }
+      i = (i + 1) & mask;
+    }
+    StopId stopId = new StopId(version, type, id);
+    table[i] = stopId;
+    if (++_stopIdCount * 2 > table.length) {
+      _stopIds = new StopId[table.length * 2];
+      for (StopId existing : table) {
+        if (existing != null) {
+          insert(_stopIds, existing, hash(existing.getVersion(),
+              existing.getId(), existing.getType().ordinal()));
+        }
+      }
+    }
+    return stopId;
+  }
+
+  /**
+   * @param variantColumn the column of the current row of the record holding
+   *          the line variant, which is only decoded if the line id hasn't
+   *          been seen before
+   */
+  public LineId getLineId(long version, long lineId, VdvRecord record,
+      int variantColumn) {
+    LineId[] table = _lineIds;
+    int mask = table.length - 1;
+    int i = hash(version, lineId, record.valueHashCode(variantColumn)) & mask;
+    while (true) {
+      LineId existing = table[i];
+      if (existing == null) {
+        break;
+      }
+      if (existing.getLineId() == lineId && existing.getVersion() == version
+          && record.valueEquals(variantColumn, existing.getLineVariant())) {
+        return existing;
+      }
+      i = (i + 1) & mask;
+    }
+    LineId id = new LineId(version, lineId, record.getString(variantColumn));
+    table[i] = id;
+    if (++_lineIdCount * 2 > table.length) {
+      _lineIds = new LineId[table.length * 2];
+      for (LineId existing : table) {
+        if (existing != null) {
+          insert(_lineIds, existing, hash(existing.getVersion(),
+              existing.getLineId(), hashCode(existing.getLineVariant())));
+        }
+      }
+    }
+    return id;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static <T> void insert(T[] table, T value, int hash) {
+    int mask = table.length - 1;
+    int i = hash & mask;
+    while (table[i] != null) {
+      i = (i + 1) & mask;
+    }
+    table[i] = value;
+  }
+
+  private static int hash(long version, long id) {
+    long h = version * 0x9E3779B97F4A7C15L + id;
+    h *= 0xC2B2AE3D27D4EB4FL;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static int hash(long version, long id, int extra) {
+    return hash(version, id * 31 + extra);
+  }
+
+  private static int hashCode(String value) {
+    return value == null ? 0 : value.hashCode();
+  }
+}
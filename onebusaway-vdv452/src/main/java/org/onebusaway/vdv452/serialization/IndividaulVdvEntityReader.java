@@ -15,6 +15,7 @@
  */
 package org.onebusaway.vdv452.serialization;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.onebusaway.csv_entities.CsvEntityContext;
@@ -24,9 +25,34 @@ import org.onebusaway.csv_entities.schema.EntitySchema;
 
 public class IndividaulVdvEntityReader extends IndividualCsvEntityReader {
 
+  private final CsvEntityContext _context;
+
+  private final EntityHandler _handler;
+
+  private final VdvEntityDecoder<?> _decoder;
+
+  private VdvRecord _record = null;
+
+  private VdvRecordFilter _recordFilter = null;
+
   public IndividaulVdvEntityReader(CsvEntityContext context, EntitySchema schema,
       EntityHandler handler) {
     super(context, schema, handler);
+    _context = context;
+    _handler = handler;
+    _decoder = null;
+  }
+
+  /**
+   * Reads entities with a generated {@link VdvEntityDecoder} instead of the
+   * reflective field mappings of an {@link EntitySchema}.
+   */
+  public IndividaulVdvEntityReader(CsvEntityContext context,
+      VdvEntityDecoder<?> decoder, EntityHandler handler) {
+    super(context, null, handler);
+    _context = context;
+    _handler = handler;
+    _decoder = decoder;
   }
 
   @Override
@@ -39,4 +65,56 @@ public class IndividaulVdvEntityReader extends IndividualCsvEntityReader {
       super.handleLine(line.subList(1, line.size()));
     }
   }
+
+  /**
+   * When set, records rejected by the filter are skipped before they are
+   * decoded. Only supported when reading with a {@link VdvEntityDecoder}.
+   */
+  public void setRecordFilter(VdvRecordFilter recordFilter) {
+    _recordFilter = recordFilter;
+  }
+
+  public List<String> getFields() {
+    return _record == null ? null : _record.getFields();
+  }
+
+  /**
+   * Uses the specified header instead of expecting an "atr" line, such that
+   * a reader can be started in the middle of a table. Only supported when
+   * reading with a {@link VdvEntityDecoder}.
+   */
+  public void setFields(List<String> fields) {
+    _record = new VdvRecord(_decoder.getEntityType(), fields);
+  }
+
+  /**
+   * Equivalent to {@link #handleLine(List)}, but for a reusable row as produced
+   * by {@link VdvTokenizer}.
+   */
+  public void handleRow(VdvRow row) throws Exception {
+    if (_decoder != null) {
+      decodeRow(row);
+    } else if (row.isRecordType("rec")) {
+      super.handleLine(row);
+    } else if (row.isRecordType("atr")) {
+      // The header is retained by the underlying reader, so it can't be backed
+      // by the reusable row
+      super.handleLine(new ArrayList<String>(row));
+    }
+  }
+
+  private void decodeRow(VdvRow row) {
+    if (row.isRecordType("atr")) {
+      setFields(new ArrayList<String>(row));
+    } else if (row.isRecordType("rec")) {
+      if (_record == null) {
+        throw new IllegalStateException("record found before atr header");
+      }
+      _record.setRow(row);
+      if (_recordFilter != null && !_recordFilter.accept(_record)) {
+        return;
+      }
+      _handler.handleEntity(_decoder.decode(_context, _record));
+    }
+  }
 }
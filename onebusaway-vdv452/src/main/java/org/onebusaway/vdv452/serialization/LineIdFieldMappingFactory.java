@@ -35,6 +35,16 @@ public class LineIdFieldMappingFactory implements FieldMappingFactory {
     return new Impl(entityType, csvFieldName, objFieldName, required);
   }
 
+  public static LineId decodeLineId(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    return IdFactory.resolveLineId(csvValues, csvFieldName);
+  }
+
+  public static LineId decodeLineId(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    return IdFactory.resolveLineId(record, column);
+  }
+
   private static class Impl extends AbstractFieldMapping {
 
     public Impl(Class<?> entityType, String csvFieldName, String objFieldName,
@@ -49,7 +59,8 @@ public class LineIdFieldMappingFactory implements FieldMappingFactory {
       if (isMissingAndOptional(csvValues)) {
         return;
       }
-      LineId lineId = IdFactory.resolveLineId(csvValues, _csvFieldName);
+      LineId lineId = decodeLineId(context, _entityType, csvValues,
+          _csvFieldName);
       object.setPropertyValue(_objFieldName, lineId);
     }
 
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the tables of an unpacked VDV feed directory by memory-mapping each
+ * file, such that the tokenizer works directly on the (page cache backed)
+ * file contents and repeated reads of the same feed are nearly free.
+ */
+public class MappedFileCsvInputSource implements ByteBufferCsvInputSource {
+
+  private final File _sourceDirectory;
+
+  public MappedFileCsvInputSource(File sourceDirectory) {
+    _sourceDirectory = sourceDirectory;
+  }
+
+  @Override
+  public boolean hasResource(String name) throws IOException {
+    return new File(_sourceDirectory, name).exists();
+  }
+
+  @Override
+  public InputStream getResource(String name) throws IOException {
+    ByteBuffer buffer = getResourceAsBuffer(name);
+    if (buffer == null) {
+      return new FileInputStream(new File(_sourceDirectory, name));
+    }
+    return new ByteBufferInputStream(buffer);
+  }
+
+  /**
+   * @return the mapped contents of the file, or null if the file is too large
+   *         to be addressed by a single buffer
+   */
+  @Override
+  public ByteBuffer getResourceAsBuffer(String name) throws IOException {
+    FileInputStream in = new FileInputStream(new File(_sourceDirectory, name));
+    try {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        return null;
+      }
+      // The mapping remains valid after the channel has been closed
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } finally {
+      in.close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+
+  }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the tables of a zipped VDV feed, inflating the entries that will be
+ * needed on background threads ahead of time, so that table N+1 is
+ * decompressed while table N is being parsed. Entries that are never
+ * requested are never inflated.
+ *
+ * Inflated entries that haven't been consumed yet are bounded to a maximum
+ * number of bytes. A single entry larger than the bound is still inflated
+ * once nothing else is buffered. An entry that is requested before its
+ * background inflation has started is inflated by the requesting thread.
+ */
+public class PrefetchingZipCsvInputSource implements ByteBufferCsvInputSource {
+
+  private static final long DEFAULT_MAX_BUFFERED_BYTES = 256 * 1024 * 1024;
+
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The largest array most VMs can allocate.
+   */
+  private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+  private final ZipFile _zipFile;
+
+  private final ExecutorService _executor;
+
+  private final long _maxBufferedBytes;
+
+  private final Map<String, Entry> _entries = new HashMap<String, Entry>();
+
+  private long _bufferedBytes = 0;
+
+  public PrefetchingZipCsvInputSource(ZipFile zipFile) {
+    this(zipFile, Math.min(4, Runtime.getRuntime().availableProcessors()),
+        DEFAULT_MAX_BUFFERED_BYTES);
+  }
+
+  public PrefetchingZipCsvInputSource(ZipFile zipFile, int threads,
+      long maxBufferedBytes) {
+    _zipFile = zipFile;
+    _executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+    _maxBufferedBytes = maxBufferedBytes;
+  }
+
+  /**
+   * Schedules the background inflation of the specified entries, in order.
+   * Entries that don't exist in the zip are ignored.
+   */
+  public synchronized void prefetch(List<String> names) {
+    for (String name : names) {
+      ZipEntry zipEntry = _zipFile.getEntry(name);
+      if (zipEntry == null || _entries.containsKey(name)) {
+        continue;
+      }
+      final Entry entry = new Entry(zipEntry);
+      _entries.put(name, entry);
+      _executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          inflateInBackground(entry);
+        }
+      });
+    }
+  }
+
+  @Override
+  public boolean hasResource(String name) throws IOException {
+    return _zipFile.getEntry(name) != null;
+  }
+
+  @Override
+  public InputStream getResource(String name) throws IOException {
+    ByteBuffer buffer = getResourceAsBuffer(name);
+    if (buffer == null) {
+      return _zipFile.getInputStream(_zipFile.getEntry(name));
+    }
+    return new ByteBufferInputStream(buffer);
+  }
+
+  /**
+   * Hands over the inflated contents of a prefetched entry, waiting for its
+   * inflation to finish if needed. Each prefetched entry can only be consumed
+   * once.
+   *
+   * @return the inflated entry, or null if the entry wasn't prefetched
+   */
+  @Override
+  public ByteBuffer getResourceAsBuffer(String name) throws IOException {
+    Entry entry;
+    boolean inflateHere = false;
+    synchronized (this) {
+      entry = _entries.remove(name);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.state == State.PENDING) {
+        entry.state = State.INFLATING;
+        inflateHere = true;
+        // Releases a background thread waiting for room to inflate the entry
+        notifyAll();
+      }
+    }
+    if (inflateHere) {
+      return ByteBuffer.wrap(inflate(entry.zipEntry));
+    }
+    synchronized (this) {
+      while (entry.state != State.DONE) {
+        try {
+          wait();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new IOException("interrupted while inflating " + name);
+        }
+      }
+      _bufferedBytes -= entry.getSize();
+      notifyAll();
+    }
+    if (entry.error != null) {
+      throw entry.error;
+    }
+    return ByteBuffer.wrap(entry.data);
+  }
+
+  @Override
+  public void close() throws IOException {
+    _executor.shutdownNow();
+    _zipFile.close();
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void inflateInBackground(Entry entry) {
+    synchronized (this) {
+      // Wait for room in the buffer, unless the entry was claimed meanwhile
+      while (entry.state == State.PENDING && _bufferedBytes > 0
+          && _bufferedBytes + entry.getSize() > _maxBufferedBytes) {
+        try {
+          wait();
+        } catch (InterruptedException ex) {
+          return;
+        }
+      }
+      if (entry.state != State.PENDING) {
+        return;
+      }
+      entry.state = State.INFLATING;
+      _bufferedBytes += entry.getSize();
+    }
+    byte[] data = null;
+    IOException error = null;
+    try {
+      data = inflate(entry.zipEntry);
+    } catch (IOException ex) {
+      error = ex;
+    }
+    synchronized (this) {
+      entry.data = data;
+      entry.error = error;
+      entry.state = State.DONE;
+      notifyAll();
+    }
+  }
+
+  private byte[] inflate(ZipEntry zipEntry) throws IOException {
+    long size = zipEntry.getSize();
+    if (size > MAX_BUFFER_SIZE) {
+      throw new IOException("zip entry " + zipEntry.getName()
+          + " is too large to buffer: " + size + " bytes");
+    }
+    byte[] data = new byte[size >= 0 ? (int) size : INITIAL_BUFFER_SIZE];
+    int length = 0;
+    InputStream in = _zipFile.getInputStream(zipEntry);
+    try {
+      while (true) {
+        if (length == data.length) {
+          // Either the end of the entry, or more data than its declared size,
+          // in which case the probed byte is kept
+          int b = in.read();
+          if (b < 0) {
+            return data;
+          }
+          data = grow(zipEntry, data);
+          data[length++] = (byte) b;
+          continue;
+        }
+        int n = in.read(data, length, data.length - length);
+        if (n < 0) {
+          return length == data.length ? data : Arrays.copyOf(data, length);
+        }
+        length += n;
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static byte[] grow(ZipEntry zipEntry, byte[] data)
+      throws IOException {
+    if (data.length >= MAX_BUFFER_SIZE) {
+      throw new IOException("zip entry " + zipEntry.getName()
+          + " is too large to buffer");
+    }
+    long capacity = Math.max(2L * data.length, INITIAL_BUFFER_SIZE);
+    return Arrays.copyOf(data, (int) Math.min(capacity, MAX_BUFFER_SIZE));
+  }
+
+  private enum State {
+    PENDING, INFLATING, DONE
+  }
+
+  private static class Entry {
+
+    private final ZipEntry zipEntry;
+
+    private State state = State.PENDING;
+
+    private byte[] data;
+
+    private IOException error;
+
+    public Entry(ZipEntry zipEntry) {
+      this.zipEntry = zipEntry;
+    }
+
+    public long getSize() {
+      return Math.max(zipEntry.getSize(), 0);
+    }
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory {
+
+    private final ThreadFactory _threadFactory = Executors.defaultThreadFactory();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = _threadFactory.newThread(r);
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
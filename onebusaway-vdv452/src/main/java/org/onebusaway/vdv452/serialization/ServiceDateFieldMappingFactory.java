@@ -15,7 +15,6 @@
  */
 package org.onebusaway.vdv452.serialization;
 
-import java.text.ParseException;
 import java.util.Map;
 
 import org.apache.commons.beanutils.ConversionException;
@@ -37,6 +36,25 @@ public class ServiceDateFieldMappingFactory implements FieldMappingFactory {
     return new Impl(entityType, csvFieldName, objFieldName, required);
   }
 
+  public static ServiceDate decodeServiceDate(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    String value = csvValues.get(csvFieldName).toString();
+    try {
+      return toServiceDate(VdvPrimitiveDecoders.parseDate(value));
+    } catch (NumberFormatException ex) {
+      throw new InvalidValueEntityException(entityType, csvFieldName, value);
+    }
+  }
+
+  public static ServiceDate decodeServiceDate(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    return toServiceDate(record.getDate(column));
+  }
+
+  private static ServiceDate toServiceDate(int date) {
+    return new ServiceDate(date / 10000, date / 100 % 100, date % 100);
+  }
+
   private static class Impl extends AbstractFieldMapping implements Converter {
 
     public Impl(Class<?> entityType, String csvFieldName, String objFieldName,
@@ -50,15 +68,9 @@ public class ServiceDateFieldMappingFactory implements FieldMappingFactory {
       if (isMissingAndOptional(csvValues))
         return;
 
-      Object value = csvValues.get(_csvFieldName);
-
-      try {
-        ServiceDate date = ServiceDate.parseString(value.toString());
-        object.setPropertyValue(_objFieldName, date);
-      } catch (ParseException ex) {
-        throw new InvalidValueEntityException(_entityType, _csvFieldName,
-            value.toString());
-      }
+      ServiceDate date = decodeServiceDate(context, _entityType, csvValues,
+          _csvFieldName);
+      object.setPropertyValue(_objFieldName, date);
     }
 
     public void translateFromObjectToCSV(CsvEntityContext context,
@@ -74,8 +86,8 @@ public class ServiceDateFieldMappingFactory implements FieldMappingFactory {
     Class type, Object value) {
       if (type == ServiceDate.class) {
         try {
-          return ServiceDate.parseString(value.toString());
-        } catch (ParseException ex) {
+          return toServiceDate(VdvPrimitiveDecoders.parseDate(value.toString()));
+        } catch (NumberFormatException ex) {
           throw new InvalidValueEntityException(_entityType, _csvFieldName,
               value.toString());
         }
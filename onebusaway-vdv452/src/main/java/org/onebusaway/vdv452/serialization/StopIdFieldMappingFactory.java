@@ -38,6 +38,16 @@ public class StopIdFieldMappingFactory implements FieldMappingFactory {
     return new Impl(entityType, csvFieldName, objFieldName, required);
   }
 
+  public static StopId decodeStopId(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    return IdFactory.resolveStopId(csvValues, csvFieldName);
+  }
+
+  public static StopId decodeStopId(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    return IdFactory.resolveStopId(record, column);
+  }
+
   private static class Impl extends AbstractFieldMapping {
 
     public Impl(Class<?> entityType, String csvFieldName, String objFieldName,
@@ -52,7 +62,8 @@ public class StopIdFieldMappingFactory implements FieldMappingFactory {
       if (isMissingAndOptional(csvValues)) {
         return;
       }
-      StopId stopId = IdFactory.resolveStopId(csvValues, _csvFieldName);
+      StopId stopId = decodeStopId(context, _entityType, csvValues,
+          _csvFieldName);
       object.setPropertyValue(_objFieldName, stopId);
     }
 
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a dense, process-wide id to each VDV column name. Decoders and field
+ * mappings resolve the ids of the columns they read once, typically in a
+ * static initializer, and then read values through a {@link VdvRecord} by id,
+ * without any per-row lookup by name.
+ */
+public class VdvColumns {
+
+  private static final Map<String, Integer> _idsByName = new HashMap<String, Integer>();
+
+  private static final List<String> _names = new ArrayList<String>();
+
+  public static synchronized int getId(String name) {
+    Integer id = _idsByName.get(name);
+    if (id == null) {
+      id = _names.size();
+      _names.add(name);
+      _idsByName.put(name, id);
+    }
+    return id;
+  }
+
+  public static synchronized String getName(int id) {
+    return _names.get(id);
+  }
+
+  public static synchronized int size() {
+    return _names.size();
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import org.onebusaway.csv_entities.CsvEntityContext;
+import org.onebusaway.csv_entities.exceptions.CsvEntityException;
+
+/**
+ * Constructs an entity directly from the values of a single record of a VDV
+ * table, without the reflective {@link org.onebusaway.csv_entities.schema.BeanWrapper}
+ * path of the csv-entities library. Implementations are generated at compile
+ * time for each {@code @CsvFields} model class by
+ * {@link org.onebusaway.vdv452.processor.VdvEntityDecoderProcessor}.
+ *
+ * @param <T> the entity type
+ */
+public interface VdvEntityDecoder<T> {
+
+  public Class<T> getEntityType();
+
+  public String getFilename();
+
+  /**
+   * Decodes the current row of the specified record.
+   */
+  public T decode(CsvEntityContext context, VdvRecord record)
+      throws CsvEntityException;
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+/**
+ * Locates the {@link VdvEntityDecoder} generated for a model class.
+ */
+public class VdvEntityDecoders {
+
+  /**
+   * Generated decoders live next to their entity class, with this suffix
+   * appended to its name.
+   */
+  public static final String DECODER_SUFFIX = "VdvDecoder";
+
+  /**
+   * @return the generated decoder for the specified entity type, or null if no
+   *         decoder was generated for it, in which case the entity should be
+   *         read through the reflective csv-entities schema instead
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> VdvEntityDecoder<T> getDecoderForEntityType(
+      Class<T> entityType) {
+    Class<?> decoderType;
+    try {
+      decoderType = Class.forName(entityType.getName() + DECODER_SUFFIX, true,
+          entityType.getClassLoader());
+    } catch (ClassNotFoundException ex) {
+      return null;
+    }
+    try {
+      return (VdvEntityDecoder<T>) decoderType.newInstance();
+    } catch (InstantiationException ex) {
+      throw new IllegalStateException("error instantiating decoder "
+          + decoderType.getName(), ex);
+    } catch (IllegalAccessException ex) {
+      throw new IllegalStateException("error instantiating decoder "
+          + decoderType.getName(), ex);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation-free decoders for the primitive values of VDV tables, which
+ * parse a value directly from a range of ISO-8859-1 bytes, without regular
+ * expressions or intermediate {@link String} objects. Each decoder throws a
+ * {@link NumberFormatException} for a malformed value.
+ *
+ * The {@link String} overloads are meant for the reflective field mappings,
+ * and encode the value before decoding it.
+ */
+public final class VdvPrimitiveDecoders {
+
+  /**
+   * Values with more digits than this could overflow a long, and are left to
+   * {@link Long#parseLong(String)}.
+   */
+  private static final int MAX_SAFE_LONG_DIGITS = 18;
+
+  private VdvPrimitiveDecoders() {
+
+  }
+
+  /**
+   * Parses a signed integer, with the same results as
+   * {@link Long#parseLong(String)}.
+   */
+  public static long parseLong(ByteBuffer buffer, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end) {
+      byte first = buffer.get(i);
+      if (first == '-' || first == '+') {
+        negative = first == '-';
+        i++;
+      }
+    }
+    if (i == end || end - i > MAX_SAFE_LONG_DIGITS) {
+      return Long.parseLong(toString(buffer, start, end));
+    }
+    long value = 0;
+    for (; i < end; ++i) {
+      int digit = buffer.get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw invalid(buffer, start, end);
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  public static long parseLong(String value) {
+    ByteBuffer buffer = encode(value);
+    return parseLong(buffer, 0, buffer.limit());
+  }
+
+  /**
+   * Parses a signed integer, with the same results as
+   * {@link Integer#parseInt(String)}.
+   */
+  public static int parseInt(ByteBuffer buffer, int start, int end) {
+    long value = parseLong(buffer, start, end);
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw invalid(buffer, start, end);
+    }
+    return (int) value;
+  }
+
+  public static int parseInt(String value) {
+    ByteBuffer buffer = encode(value);
+    return parseInt(buffer, 0, buffer.limit());
+  }
+
+  /**
+   * Parses a YYYYMMDD date.
+   *
+   * @return the date as the int YYYYMMDD, such that the year, month and day are
+   *         date / 10000, date / 100 % 100 and date % 100 respectively
+   */
+  public static int parseDate(ByteBuffer buffer, int start, int end) {
+    if (end - start != 8) {
+      throw invalid(buffer, start, end);
+    }
+    return parseDigits(buffer, start, end);
+  }
+
+  public static int parseDate(String value) {
+    ByteBuffer buffer = encode(value);
+    return parseDate(buffer, 0, buffer.limit());
+  }
+
+  /**
+   * Parses a DDDMMSSmmm coordinate, with two or three digits of degrees and an
+   * optional leading minus sign that only applies to the degrees, into decimal
+   * degrees.
+   */
+  public static double parseDegreesMinutesSeconds(ByteBuffer buffer,
+      int start, int end) {
+    boolean negative = start < end && buffer.get(start) == '-';
+    int digitsStart = negative ? start + 1 : start;
+    int length = end - digitsStart;
+    if (length != 9 && length != 10) {
+      throw invalid(buffer, start, end);
+    }
+    int millisStart = end - 3;
+    int secondsStart = millisStart - 2;
+    int minutesStart = secondsStart - 2;
+    int degrees = parseDigits(buffer, digitsStart, minutesStart);
+    if (negative) {
+      degrees = -degrees;
+    }
+    int minutes = parseDigits(buffer, minutesStart, secondsStart);
+    double seconds = parseDigits(buffer, secondsStart, millisStart)
+        + parseDigits(buffer, millisStart, end) / 1000.0d;
+    return degrees + (minutes / 60.0) + (seconds / 3600);
+  }
+
+  public static double parseDegreesMinutesSeconds(String value) {
+    ByteBuffer buffer = encode(value);
+    return parseDegreesMinutesSeconds(buffer, 0, buffer.limit());
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  /**
+   * Parses a run of at most nine unsigned digits.
+   */
+  private static int parseDigits(ByteBuffer buffer, int start, int end) {
+    int value = 0;
+    for (int i = start; i < end; ++i) {
+      int digit = buffer.get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw invalid(buffer, start, end);
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static ByteBuffer encode(String value) {
+    if (value == null) {
+      throw new NumberFormatException("null");
+    }
+    return ByteBuffer.wrap(value.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  private static NumberFormatException invalid(ByteBuffer buffer, int start,
+      int end) {
+    return new NumberFormatException("For input string: \""
+        + toString(buffer, start, end) + "\"");
+  }
+
+  private static String toString(ByteBuffer buffer, int start, int end) {
+    char[] chars = new char[end - start];
+    for (int i = start; i < end; ++i) {
+      chars[i - start] = (char) (buffer.get(i) & 0xff);
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.onebusaway.csv_entities.exceptions.InvalidValueEntityException;
+
+/**
+ * An indexed view of the records of a single VDV table. Each column id, as
+ * assigned by {@link VdvColumns}, is bound to its index in the table's "atr"
+ * header once, such that reading a value is a plain array lookup into the
+ * current {@link VdvRow}.
+ */
+public class VdvRecord {
+
+  private final List<String> _fields;
+
+  private final Class<?> _entityType;
+
+  /**
+   * The index of each column id in the table header, or -1 if the table
+   * doesn't have the column.
+   */
+  private int[] _indices = new int[0];
+
+  private VdvRow _row;
+
+  private final IdInterner _idInterner = new IdInterner();
+
+  private Object[] _lastIds = new Object[0];
+
+  private Object[] _lastEntities = new Object[0];
+
+  public VdvRecord(Class<?> entityType, List<String> fields) {
+    _entityType = entityType;
+    _fields = fields;
+    bindColumns();
+  }
+
+  public Class<?> getEntityType() {
+    return _entityType;
+  }
+
+  public List<String> getFields() {
+    return _fields;
+  }
+
+  public VdvRow getRow() {
+    return _row;
+  }
+
+  /**
+   * @return true if the table doesn't have the column, or if the column is
+   *         empty in the current row
+   */
+  public boolean isMissing(int column) {
+    int index = getIndex(column);
+    return index < 0 || index >= _row.size() || _row.getLength(index) == 0;
+  }
+
+  /**
+   * @return the value of the column in the current row, or null if the table
+   *         doesn't have the column
+   */
+  public String getString(int column) {
+    int index = getIndex(column);
+    if (index < 0 || index >= _row.size()) {
+      return null;
+    }
+    return _row.get(index);
+  }
+
+  public int getInt(int column) {
+    int index = getPresentIndex(column);
+    try {
+      return _row.parseInt(index);
+    } catch (NumberFormatException ex) {
+      throw invalidValue(column, _row.get(index));
+    }
+  }
+
+  public long getLong(int column) {
+    int index = getPresentIndex(column);
+    try {
+      return _row.parseLong(index);
+    } catch (NumberFormatException ex) {
+      throw invalidValue(column, _row.get(index));
+    }
+  }
+
+  /**
+   * @return a YYYYMMDD date, as the int YYYYMMDD
+   */
+  public int getDate(int column) {
+    int index = getPresentIndex(column);
+    try {
+      return _row.parseDate(index);
+    } catch (NumberFormatException ex) {
+      throw invalidValue(column, _row.get(index));
+    }
+  }
+
+  /**
+   * @return a DDDMMSSmmm coordinate, in decimal degrees
+   */
+  public double getDegreesMinutesSeconds(int column) {
+    int index = getPresentIndex(column);
+    try {
+      return _row.parseDegreesMinutesSeconds(index);
+    } catch (NumberFormatException ex) {
+      throw invalidValue(column, _row.get(index));
+    }
+  }
+
+  /**
+   * @return true if the value of the column in the current row equals the
+   *         specified value, where a column the table doesn't have equals null
+   */
+  public boolean valueEquals(int column, String value) {
+    int index = getIndex(column);
+    if (index < 0 || index >= _row.size()) {
+      return value == null;
+    }
+    return value != null && _row.valueEquals(index, value);
+  }
+
+  /**
+   * @return the {@link String#hashCode()} of the value of the column in the
+   *         current row, or 0 if the table doesn't have the column
+   */
+  public int valueHashCode(int column) {
+    int index = getIndex(column);
+    if (index < 0 || index >= _row.size()) {
+      return 0;
+    }
+    return _row.valueHashCode(index);
+  }
+
+  /**
+   * @return the interner of the ids referenced by this table
+   */
+  public IdInterner getIdInterner() {
+    return _idInterner;
+  }
+
+  /**
+   * @return the entity most recently resolved for the column, if it was
+   *         resolved from the same (interned) id, or null otherwise
+   */
+  public Object getLastResolved(int column, Object id) {
+    if (column < _lastIds.length && _lastIds[column] == id) {
+      return _lastEntities[column];
+    }
+    return null;
+  }
+
+  public void setLastResolved(int column, Object id, Object entity) {
+    if (column >= _lastIds.length) {
+      _lastIds = Arrays.copyOf(_lastIds, column + 1);
+      _lastEntities = Arrays.copyOf(_lastEntities, column + 1);
+    }
+    _lastIds[column] = id;
+    _lastEntities[column] = entity;
+  }
+
+  public double getDouble(int column) {
+    String value = _row.get(getPresentIndex(column));
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException ex) {
+      throw invalidValue(column, value);
+    }
+  }
+
+  public InvalidValueEntityException invalidValue(int column, String value) {
+    return new InvalidValueEntityException(_entityType,
+        VdvColumns.getName(column), value);
+  }
+
+  /****
+   * Package-private methods used by {@link IndividaulVdvEntityReader}
+   ****/
+
+  void setRow(VdvRow row) {
+    _row = row;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private int getIndex(int column) {
+    if (column >= _indices.length) {
+      // A column id that was assigned after we were created
+      bindColumns();
+    }
+    return _indices[column];
+  }
+
+  /**
+   * @return the index of the column in the current row, failing where the
+   *         table doesn't have the column
+   */
+  private int getPresentIndex(int column) {
+    int index = getIndex(column);
+    if (index < 0 || index >= _row.size()) {
+      throw invalidValue(column, null);
+    }
+    return index;
+  }
+
+  private void bindColumns() {
+    int from = _indices.length;
+    int size = VdvColumns.size();
+    if (from == size) {
+      return;
+    }
+    _indices = Arrays.copyOf(_indices, size);
+    for (int column = from; column < size; ++column) {
+      _indices[column] = _fields.indexOf(VdvColumns.getName(column));
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+/**
+ * Decides from the raw columns of a record whether it is decoded at all, such
+ * that rejected records cost neither field mapping nor id allocation. Filters
+ * are called concurrently when a table is read in chunks, and so must be
+ * thread-safe.
+ *
+ * The {@link Object#toString()} of a filter should describe its
+ * configuration, as it is part of the keys of cached reads. Snapshots aren't
+ * used with filters that don't override it.
+ */
+public interface VdvRecordFilter {
+
+  /**
+   * @return false if the current row of the record should be skipped
+   */
+  public boolean accept(VdvRecord record);
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * A reusable view of a single line of a VDV-451 table, as produced by
+ * {@link VdvTokenizer}. The first token of each line is the record type (
+ * "atr", "rec", "tbl", ...) and is exposed through {@link #isRecordType(String)}
+ * . The remaining tokens are exposed through the {@link java.util.List}
+ * interface, with each value only decoded into a {@link String} when it is
+ * actually requested.
+ *
+ * Token boundaries point directly into the tokenizer's ISO-8859-1 byte buffer,
+ * so a row is only valid until the next call to
+ * {@link VdvTokenizer#next(VdvRow)}.
+ */
+public class VdvRow extends AbstractList<String> {
+
+  private static final int INITIAL_CAPACITY = 32;
+
+  private ByteBuffer _buffer;
+
+  private int _lineNumber;
+
+  private int _tokenCount = 0;
+
+  private int[] _starts = new int[INITIAL_CAPACITY];
+
+  private int[] _ends = new int[INITIAL_CAPACITY];
+
+  private boolean[] _escaped = new boolean[INITIAL_CAPACITY];
+
+  private char[] _chars = new char[256];
+
+  public int getLineNumber() {
+    return _lineNumber;
+  }
+
+  /**
+   * @return true if the record type token of this line (ex. "rec") matches the
+   *         specified value
+   */
+  public boolean isRecordType(String recordType) {
+    if (_tokenCount == 0) {
+      return false;
+    }
+    return tokenEquals(0, recordType);
+  }
+
+  @Override
+  public String get(int index) {
+    return getToken(checkIndex(index) + 1);
+  }
+
+  @Override
+  public int size() {
+    return _tokenCount == 0 ? 0 : _tokenCount - 1;
+  }
+
+  /**
+   * @return the number of bytes in the specified value, after trimming and
+   *         before any unescaping of quotes
+   */
+  public int getLength(int index) {
+    int token = checkIndex(index) + 1;
+    return _ends[token] - _starts[token];
+  }
+
+  /**
+   * Parses the specified value as a long directly from the underlying bytes,
+   * with the same results as {@link Long#parseLong(String)}.
+   */
+  public long parseLong(int index) {
+    int token = checkIndex(index) + 1;
+    if (_escaped[token]) {
+      return VdvPrimitiveDecoders.parseLong(getToken(token));
+    }
+    return VdvPrimitiveDecoders.parseLong(_buffer, _starts[token], _ends[token]);
+  }
+
+  /**
+   * Parses the specified value as an int directly from the underlying bytes,
+   * with the same results as {@link Integer#parseInt(String)}.
+   */
+  public int parseInt(int index) {
+    int token = checkIndex(index) + 1;
+    if (_escaped[token]) {
+      return VdvPrimitiveDecoders.parseInt(getToken(token));
+    }
+    return VdvPrimitiveDecoders.parseInt(_buffer, _starts[token], _ends[token]);
+  }
+
+  /**
+   * See {@link VdvPrimitiveDecoders#parseDate(ByteBuffer, int, int)}.
+   */
+  public int parseDate(int index) {
+    int token = checkIndex(index) + 1;
+    if (_escaped[token]) {
+      return VdvPrimitiveDecoders.parseDate(getToken(token));
+    }
+    return VdvPrimitiveDecoders.parseDate(_buffer, _starts[token], _ends[token]);
+  }
+
+  /**
+   * See
+   * {@link VdvPrimitiveDecoders#parseDegreesMinutesSeconds(ByteBuffer, int, int)}
+   * .
+   */
+  public double parseDegreesMinutesSeconds(int index) {
+    int token = checkIndex(index) + 1;
+    if (_escaped[token]) {
+      return VdvPrimitiveDecoders.parseDegreesMinutesSeconds(getToken(token));
+    }
+    return VdvPrimitiveDecoders.parseDegreesMinutesSeconds(_buffer,
+        _starts[token], _ends[token]);
+  }
+
+  /**
+   * @return true if the specified value equals the given string, without
+   *         decoding the value
+   */
+  public boolean valueEquals(int index, String value) {
+    int token = checkIndex(index) + 1;
+    if (_escaped[token]) {
+      return getToken(token).equals(value);
+    }
+    return tokenEquals(token, value);
+  }
+
+  /**
+   * @return the {@link String#hashCode()} of the specified value, without
+   *         decoding the value
+   */
+  public int valueHashCode(int index) {
+    int token = checkIndex(index) + 1;
+    if (_escaped[token]) {
+      return getToken(token).hashCode();
+    }
+    int hash = 0;
+    for (int i = _starts[token]; i < _ends[token]; ++i) {
+      hash = 31 * hash + (_buffer.get(i) & 0xff);
+    }
+    return hash;
+  }
+
+  /****
+   * Package-private methods used by {@link VdvTokenizer}
+   ****/
+
+  void reset(ByteBuffer buffer, int lineNumber) {
+    _buffer = buffer;
+    _lineNumber = lineNumber;
+    _tokenCount = 0;
+  }
+
+  void addToken(int start, int end, boolean escaped) {
+    if (_tokenCount == _starts.length) {
+      int capacity = _starts.length * 2;
+      _starts = Arrays.copyOf(_starts, capacity);
+      _ends = Arrays.copyOf(_ends, capacity);
+      _escaped = Arrays.copyOf(_escaped, capacity);
+    }
+    _starts[_tokenCount] = start;
+    _ends[_tokenCount] = end;
+    _escaped[_tokenCount] = escaped;
+    _tokenCount++;
+  }
+
+  int getTokenCount() {
+    return _tokenCount;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private int checkIndex(int index) {
+    if (index < 0 || index + 1 >= _tokenCount) {
+      throw new IndexOutOfBoundsException("index=" + index + " size="
+          + size());
+    }
+    return index;
+  }
+
+  private boolean tokenEquals(int token, String value) {
+    int start = _starts[token];
+    int length = _ends[token] - start;
+    if (length != value.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if ((_buffer.get(start + i) & 0xff) != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String getToken(int token) {
+    int start = _starts[token];
+    int end = _ends[token];
+    if (!_escaped[token] && _buffer.hasArray()) {
+      return new String(_buffer.array(), _buffer.arrayOffset() + start, end
+          - start, StandardCharsets.ISO_8859_1);
+    }
+    if (_chars.length < end - start) {
+      _chars = new char[end - start];
+    }
+    int length = 0;
+    for (int i = start; i < end; ++i) {
+      char c = (char) (_buffer.get(i) & 0xff);
+      _chars[length++] = c;
+      // A doubled quote inside a quoted value is an escaped quote
+      if (c == '"' && _escaped[token] && i + 1 < end
+          && _buffer.get(i + 1) == '"') {
+        i++;
+      }
+    }
+    return new String(_chars, 0, length);
+  }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits a VDV-451 table into lines and ';' delimited tokens by scanning the
+ * raw ISO-8859-1 bytes of the table. Tokens are trimmed and quoted values are
+ * unwrapped without copying, with each line handed out through a reusable
+ * {@link VdvRow}, such that tokenizing a table allocates next to nothing per
+ * line.
+ */
+public class VdvTokenizer {
+
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream _in;
+
+  private byte[] _array;
+
+  private ByteBuffer _buffer;
+
+  /**
+   * The start of the next unread line.
+   */
+  private int _position;
+
+  /**
+   * The point up to which we've already searched for the end of the next line.
+   */
+  private int _scan;
+
+  /**
+   * The end of the valid data in the buffer.
+   */
+  private int _limit;
+
+  private boolean _eof;
+
+  private int _lineNumber = 0;
+
+  private long _bytesRead = 0;
+
+  public VdvTokenizer(InputStream in) {
+    this(in, DEFAULT_BUFFER_SIZE);
+  }
+
+  public VdvTokenizer(InputStream in, int bufferSize) {
+    _in = in;
+    _array = new byte[bufferSize];
+    _buffer = ByteBuffer.wrap(_array);
+    _position = 0;
+    _scan = 0;
+    _limit = 0;
+    _eof = false;
+  }
+
+  /**
+   * Tokenizes the data between the position and the limit of the specified
+   * buffer, which must contain whole lines.
+   */
+  public VdvTokenizer(ByteBuffer buffer) {
+    _in = null;
+    _buffer = buffer;
+    _position = buffer.position();
+    _scan = _position;
+    _limit = buffer.limit();
+    _eof = true;
+  }
+
+  /**
+   * Counts the lines between the position and the limit of the buffer, which
+   * is an upper bound on the number of records of a table.
+   */
+  public static int countLines(ByteBuffer buffer) {
+    int count = 0;
+    int limit = buffer.limit();
+    if (buffer.hasArray()) {
+      byte[] array = buffer.array();
+      int offset = buffer.arrayOffset();
+      for (int i = offset + buffer.position(); i < offset + limit; ++i) {
+        if (array[i] == '\n') {
+          count++;
+        }
+      }
+    } else {
+      for (int i = buffer.position(); i < limit; ++i) {
+        if (buffer.get(i) == '\n') {
+          count++;
+        }
+      }
+    }
+    // A last line without a line break
+    if (limit > buffer.position() && buffer.get(limit - 1) != '\n') {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * @return the offset in the buffer of the start of the next unread line
+   */
+  public int getPosition() {
+    return _position;
+  }
+
+  /**
+   * @return the line number of the most recently returned row
+   */
+  public int getLineNumber() {
+    return _lineNumber;
+  }
+
+  /**
+   * @return the number of bytes of all lines read so far, including line
+   *         breaks and blank lines
+   */
+  public long getBytesRead() {
+    return _bytesRead;
+  }
+
+  /**
+   * Advances to the next non-blank line, overwriting the contents of the
+   * specified row.
+   *
+   * @return false if the end of the input has been reached
+   */
+  public boolean next(VdvRow row) throws IOException {
+    while (true) {
+      int lineEnd = findLineEnd();
+      if (lineEnd < 0) {
+        if (!_eof) {
+          fill();
+          continue;
+        }
+        if (_position >= _limit) {
+          return false;
+        }
+        lineEnd = _limit;
+      }
+      int start = _position;
+      int end = lineEnd;
+      _position = Math.min(lineEnd + 1, _limit);
+      _bytesRead += _position - start;
+      _scan = _position;
+      _lineNumber++;
+
+      if (end > start && _buffer.get(end - 1) == '\r') {
+        end--;
+      }
+      row.reset(_buffer, _lineNumber);
+      tokenize(row, start, end);
+      if (row.getTokenCount() > 0) {
+        return true;
+      }
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private int findLineEnd() {
+    ByteBuffer buffer = _buffer;
+    for (int i = _scan; i < _limit; ++i) {
+      if (buffer.get(i) == '\n') {
+        return i;
+      }
+    }
+    _scan = _limit;
+    return -1;
+  }
+
+  private void fill() throws IOException {
+    if (_position > 0) {
+      System.arraycopy(_array, _position, _array, 0, _limit - _position);
+      _limit -= _position;
+      _scan -= _position;
+      _position = 0;
+    }
+    if (_limit == _array.length) {
+      // A single line that doesn't fit the buffer
+      _array = Arrays.copyOf(_array, _array.length * 2);
+      _buffer = ByteBuffer.wrap(_array);
+    }
+    int n = _in.read(_array, _limit, _array.length - _limit);
+    if (n < 0) {
+      _eof = true;
+    } else {
+      _limit += n;
+    }
+  }
+
+  private void tokenize(VdvRow row, int start, int end) {
+    ByteBuffer buffer = _buffer;
+    int i = skipWhitespace(start, end);
+    if (i == end) {
+      return;
+    }
+    while (true) {
+      i = skipWhitespace(i, end);
+      int tokenStart;
+      int tokenEnd;
+      boolean escaped = false;
+      if (i < end && buffer.get(i) == '"') {
+        tokenStart = ++i;
+        while (i < end) {
+          if (buffer.get(i) == '"') {
+            if (i + 1 < end && buffer.get(i + 1) == '"') {
+              escaped = true;
+              i += 2;
+              continue;
+            }
+            break;
+          }
+          i++;
+        }
+        tokenEnd = i;
+        // Anything between the closing quote and the delimiter is dropped
+        while (i < end && buffer.get(i) != ';') {
+          i++;
+        }
+        tokenStart = skipWhitespace(tokenStart, tokenEnd);
+      } else {
+        tokenStart = i;
+        while (i < end && buffer.get(i) != ';') {
+          i++;
+        }
+        tokenEnd = i;
+      }
+      while (tokenEnd > tokenStart && isWhitespace(buffer.get(tokenEnd - 1))) {
+        tokenEnd--;
+      }
+      row.addToken(tokenStart, tokenEnd, escaped);
+      if (i >= end) {
+        return;
+      }
+      // Skip the delimiter
+      i++;
+    }
+  }
+
+  private int skipWhitespace(int i, int end) {
+    while (i < end && isWhitespace(_buffer.get(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    // Matches the behavior of String.trim()
+    return (b & 0xff) <= ' ';
+  }
+}
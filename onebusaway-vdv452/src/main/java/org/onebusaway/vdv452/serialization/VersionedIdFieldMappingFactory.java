@@ -35,6 +35,16 @@ public class VersionedIdFieldMappingFactory implements FieldMappingFactory {
     return new Impl(entityType, csvFieldName, objFieldName, required);
   }
 
+  public static VersionedId decodeVersionedId(CsvEntityContext context,
+      Class<?> entityType, Map<String, Object> csvValues, String csvFieldName) {
+    return IdFactory.resolveVersionedId(csvValues, csvFieldName);
+  }
+
+  public static VersionedId decodeVersionedId(CsvEntityContext context,
+      Class<?> entityType, VdvRecord record, int column) {
+    return IdFactory.resolveVersionedId(record, column);
+  }
+
   private static class Impl extends AbstractFieldMapping {
 
     public Impl(Class<?> entityType, String csvFieldName, String objFieldName,
@@ -50,13 +60,8 @@ public class VersionedIdFieldMappingFactory implements FieldMappingFactory {
       if (isMissingAndOptional(csvValues))
         return;
 
-      String versionString = (String) csvValues.get(VersionedId.BASIS_VERSION_FIELD);
-      long version = Long.parseLong(versionString);
-
-      String idString = (String) csvValues.get(_csvFieldName);
-      long id = Long.parseLong(idString);
-
-      VersionedId versionedId = new VersionedId(version, id);
+      VersionedId versionedId = decodeVersionedId(context, _entityType, csvValues,
+          _csvFieldName);
       object.setPropertyValue(_objFieldName, versionedId);
     }
 
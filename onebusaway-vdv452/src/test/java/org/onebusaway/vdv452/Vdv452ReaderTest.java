@@ -16,15 +16,40 @@
 package org.onebusaway.vdv452;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.onebusaway.csv_entities.EntityHandler;
+import org.onebusaway.csv_entities.exceptions.MissingRequiredEntityException;
+import org.onebusaway.vdv452.model.Journey;
+import org.onebusaway.vdv452.model.DayType;
+import org.onebusaway.vdv452.model.Line;
+import org.onebusaway.vdv452.model.Period;
+import org.onebusaway.vdv452.model.RouteSequence;
+import org.onebusaway.vdv452.model.ServiceDate;
 import org.onebusaway.vdv452.model.Stop;
 import org.onebusaway.vdv452.model.StopPoint;
+import org.onebusaway.vdv452.model.TravelTime;
+import org.onebusaway.vdv452.serialization.VdvRecord;
+import org.onebusaway.vdv452.serialization.VdvRecordFilter;
 
 import junit.framework.Assert;
 
@@ -62,4 +87,494 @@ public class Vdv452ReaderTest {
 	    Assert.assertEquals("Expected example stop not found", exampleStopWkt.size(), checked);
 	}
 
+	@Test
+	public void readSasaJourneysInChunks() throws IOException {
+		final Vdv452Reader sequential = new Vdv452Reader();
+		sequential.setInputLocation(new File(TEST_VDV452));
+		sequential.run();
+
+		final Vdv452Reader chunked = new Vdv452Reader();
+		chunked.setInputLocation(new File(TEST_VDV452));
+		chunked.setChunkedParsingPool(new ForkJoinPool(4));
+		chunked.setChunkedParsingThreshold(0);
+		chunked.run();
+
+		final Collection<Journey> journeys = sequential.getDao().getAllJourneys();
+		Assert.assertEquals(journeys.size(), chunked.getDao().getAllJourneys().size());
+		for (final Journey journey : journeys) {
+			final Journey other = chunked.getDao().getJourneyForId(journey.getId());
+			Assert.assertEquals(journey.getLine(), other.getLine());
+			Assert.assertEquals(journey.getTimingGroup(), other.getTimingGroup());
+			Assert.assertEquals(journey.getDayType(), other.getDayType());
+			Assert.assertEquals(journey.getDepartureTime(), other.getDepartureTime());
+		}
+	}
+
+	@Test
+	public void readSasaWithExecutor() throws IOException {
+		final Vdv452Reader sequential = new Vdv452Reader();
+		sequential.setInputLocation(new File(TEST_VDV452));
+		sequential.run();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final Vdv452Reader parallel = new Vdv452Reader();
+		try {
+			parallel.setInputLocation(new File(TEST_VDV452));
+			parallel.setExecutor(executor);
+			parallel.run();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		final Vdv452Dao dao = sequential.getDao();
+		final Vdv452Dao other = parallel.getDao();
+		Assert.assertEquals(dao.getAllStopPoints().size(), other.getAllStopPoints().size());
+		Assert.assertEquals(dao.getAllLines().size(), other.getAllLines().size());
+		final List<Period> periods = other.getAllPeriods();
+		Assert.assertEquals(dao.getAllPeriods().size(), periods.size());
+		for (int i = 0; i < periods.size(); ++i) {
+			Assert.assertNotNull(periods.get(i).getDayType());
+			Assert.assertEquals(dao.getAllPeriods().get(i).getDayType(), periods.get(i).getDayType());
+		}
+		final List<TravelTime> travelTimes = other.getAllTravelTimes();
+		Assert.assertEquals(dao.getAllTravelTimes().size(), travelTimes.size());
+		for (int i = 0; i < travelTimes.size(); ++i) {
+			final TravelTime expected = dao.getAllTravelTimes().get(i);
+			final TravelTime travelTime = travelTimes.get(i);
+			Assert.assertNotNull(travelTime.getTimingGroup());
+			Assert.assertNotNull(travelTime.getFromStop());
+			Assert.assertNotNull(travelTime.getToStop());
+			Assert.assertEquals(expected.getTimingGroup(), travelTime.getTimingGroup());
+			Assert.assertEquals(expected.getFromStop(), travelTime.getFromStop());
+			Assert.assertEquals(expected.getToStop(), travelTime.getToStop());
+		}
+		final List<RouteSequence> sequences = other.getAllRouteSequences();
+		Assert.assertEquals(dao.getAllRouteSequences().size(), sequences.size());
+		for (int i = 0; i < sequences.size(); ++i) {
+			Assert.assertNotNull(sequences.get(i).getLine());
+			Assert.assertNotNull(sequences.get(i).getStop());
+			Assert.assertEquals(dao.getAllRouteSequences().get(i).getLine(), sequences.get(i).getLine());
+			Assert.assertEquals(dao.getAllRouteSequences().get(i).getStop(), sequences.get(i).getStop());
+		}
+		final Collection<Journey> journeys = dao.getAllJourneys();
+		Assert.assertEquals(journeys.size(), other.getAllJourneys().size());
+		for (final Journey journey : journeys) {
+			final Journey otherJourney = other.getJourneyForId(journey.getId());
+			Assert.assertNotNull(otherJourney.getLine());
+			Assert.assertNotNull(otherJourney.getTimingGroup());
+			Assert.assertNotNull(otherJourney.getDayType());
+			Assert.assertEquals(journey.getLine(), otherJourney.getLine());
+			Assert.assertEquals(journey.getTimingGroup(), otherJourney.getTimingGroup());
+			Assert.assertEquals(journey.getDayType(), otherJourney.getDayType());
+		}
+	}
+
+	@Test
+	public void readSasaJourneysColumnar() throws IOException {
+		final Vdv452Reader objects = new Vdv452Reader();
+		objects.setInputLocation(new File(TEST_VDV452));
+		objects.run();
+
+		final Vdv452Reader columnar = new Vdv452Reader();
+		columnar.setInputLocation(new File(TEST_VDV452));
+		columnar.setColumnarJourneys(true);
+		columnar.run();
+
+		final Vdv452Dao dao = objects.getDao();
+		final JourneyCursor cursor = columnar.getDao().getJourneyCursor();
+		int count = 0;
+		while (cursor.next()) {
+			final Journey journey = dao.getJourneyForId(cursor.getJourney().getId());
+			Assert.assertEquals(journey.getId().getId(), cursor.getId());
+			Assert.assertEquals(journey.getLine(), cursor.getLine());
+			Assert.assertEquals(journey.getTimingGroup(), cursor.getTimingGroup());
+			Assert.assertEquals(journey.getDayType(), cursor.getDayType());
+			Assert.assertEquals(journey.getDepartureTime(), cursor.getDepartureTime());
+			count++;
+		}
+		Assert.assertEquals(dao.getAllJourneys().size(), count);
+		Assert.assertEquals(count, columnar.getDao().getAllJourneys().size());
+	}
+
+	@Test
+	public void readSasaFromSnapshot() throws IOException {
+		final File snapshot = File.createTempFile("vdv452", ".snapshot");
+		snapshot.delete();
+		try {
+			final TableCountingMetrics parsedMetrics = new TableCountingMetrics();
+			final Vdv452Reader parsed = new Vdv452Reader();
+			parsed.setInputLocation(new File(TEST_VDV452));
+			parsed.setSnapshotPath(snapshot);
+			parsed.setMetrics(parsedMetrics);
+			parsed.run();
+			Assert.assertTrue(snapshot.exists());
+			Assert.assertTrue(parsedMetrics.getTablesRead() > 0);
+
+			final TableCountingMetrics loadedMetrics = new TableCountingMetrics();
+			final Vdv452Reader loaded = new Vdv452Reader();
+			loaded.setInputLocation(new File(TEST_VDV452));
+			loaded.setSnapshotPath(snapshot);
+			loaded.setMetrics(loadedMetrics);
+			loaded.run();
+			Assert.assertEquals(0, loadedMetrics.getTablesRead());
+
+			final Vdv452Dao dao = parsed.getDao();
+			final Vdv452Dao other = loaded.getDao();
+			Assert.assertEquals(dao.getAllStops().size(), other.getAllStops().size());
+			Assert.assertEquals(dao.getAllPeriods().size(), other.getAllPeriods().size());
+			Assert.assertEquals(dao.getAllTravelTimes().size(), other.getAllTravelTimes().size());
+			Assert.assertEquals(dao.getAllWaitTimes().size(), other.getAllWaitTimes().size());
+			Assert.assertEquals(dao.getAllRouteSequences().size(), other.getAllRouteSequences().size());
+			for (final Line line : dao.getAllLines()) {
+				final Line otherLine = other.getLineForId(line.getId());
+				Assert.assertEquals(line.getLongName(), otherLine.getLongName());
+				Assert.assertEquals(dao.getRouteSequenceForLine(line).size(),
+						other.getRouteSequenceForLine(otherLine).size());
+			}
+			final Collection<Journey> journeys = dao.getAllJourneys();
+			Assert.assertEquals(journeys.size(), other.getAllJourneys().size());
+			for (final Journey journey : journeys) {
+				final Journey otherJourney = other.getJourneyForId(journey.getId());
+				Assert.assertEquals(journey.getLine(), otherJourney.getLine());
+				Assert.assertEquals(journey.getTimingGroup(), otherJourney.getTimingGroup());
+				Assert.assertEquals(journey.getDayType(), otherJourney.getDayType());
+				Assert.assertEquals(journey.getDepartureTime(), otherJourney.getDepartureTime());
+			}
+		} finally {
+			snapshot.delete();
+		}
+	}
+
+	@Test
+	public void readSasaWithUndescribedRecordFilter() throws IOException {
+		final File snapshot = File.createTempFile("vdv452", ".snapshot");
+		snapshot.delete();
+		try {
+			final Vdv452Reader undescribed = new Vdv452Reader();
+			undescribed.setInputLocation(new File(TEST_VDV452));
+			undescribed.setSnapshotPath(snapshot);
+			undescribed.addRecordFilter(new VdvRecordFilter() {
+				@Override
+				public boolean accept(final VdvRecord record) {
+					return true;
+				}
+			});
+			Assert.assertNull(undescribed.getSelectionKey());
+			undescribed.run();
+			Assert.assertFalse(snapshot.exists());
+			Assert.assertFalse(undescribed.getDao().getAllJourneys().isEmpty());
+
+			final Vdv452Reader described = new Vdv452Reader();
+			described.setInputLocation(new File(TEST_VDV452));
+			described.setSnapshotPath(snapshot);
+			described.addRecordFilter(new VdvRecordFilter() {
+				@Override
+				public boolean accept(final VdvRecord record) {
+					return true;
+				}
+
+				@Override
+				public String toString() {
+					return "acceptAll";
+				}
+			});
+			Assert.assertTrue(described.getSelectionKey().endsWith(";acceptAll"));
+			described.run();
+			Assert.assertTrue(snapshot.exists());
+		} finally {
+			snapshot.delete();
+		}
+	}
+
+	@Test
+	public void readSasaWithBaseVersionSelector() throws IOException {
+		final Vdv452Reader all = new Vdv452Reader();
+		all.setInputLocation(new File(TEST_VDV452));
+		all.run();
+
+		final Vdv452Reader latest = new Vdv452Reader();
+		latest.setInputLocation(new File(TEST_VDV452));
+		latest.setBaseVersionSelector(BaseVersionSelector.latest());
+		latest.run();
+		Assert.assertEquals(all.getDao().getAllJourneys().size(), latest.getDao().getAllJourneys().size());
+		Assert.assertEquals(all.getDao().getAllStopPoints().size(), latest.getDao().getAllStopPoints().size());
+
+		final Vdv452Reader active = new Vdv452Reader();
+		active.setInputLocation(new File(TEST_VDV452));
+		active.setBaseVersionSelector(BaseVersionSelector.parse("active:20150401"));
+		active.run();
+		Assert.assertEquals(all.getDao().getAllJourneys().size(), active.getDao().getAllJourneys().size());
+
+		final Vdv452Reader missing = new Vdv452Reader();
+		missing.setInputLocation(new File(TEST_VDV452));
+		missing.setBaseVersionSelector(BaseVersionSelector.versions(2));
+		missing.run();
+		Assert.assertTrue(missing.getDao().getAllJourneys().isEmpty());
+		Assert.assertTrue(missing.getDao().getAllStopPoints().isEmpty());
+	}
+
+	@Test
+	public void readSasaWithFilters() throws IOException {
+		final Vdv452Reader lines = new Vdv452Reader();
+		lines.setInputLocation(new File(TEST_VDV452));
+		lines.setLineNumbers(1, 3);
+		lines.run();
+		Assert.assertFalse(lines.getDao().getAllJourneys().isEmpty());
+		for (final Line line : lines.getDao().getAllLines()) {
+			Assert.assertTrue(line.getId().getLineId() == 1 || line.getId().getLineId() == 3);
+		}
+		final Set<DayType> journeyDayTypes = new HashSet<DayType>();
+		for (final Journey journey : lines.getDao().getAllJourneys()) {
+			Assert.assertNotNull(journey.getLine());
+			Assert.assertNotNull(journey.getDayType());
+			journeyDayTypes.add(journey.getDayType());
+		}
+		Assert.assertEquals(journeyDayTypes.size(), lines.getDao().getAllDayTypes().size());
+		for (final Period period : lines.getDao().getAllPeriods()) {
+			Assert.assertTrue(journeyDayTypes.contains(period.getDayType()));
+		}
+
+		final ServiceDate from = new ServiceDate(2015, 4, 1);
+		final ServiceDate to = new ServiceDate(2015, 4, 7);
+		final Vdv452Reader dates = new Vdv452Reader();
+		dates.setInputLocation(new File(TEST_VDV452));
+		dates.setServiceDateRange(from, to);
+		dates.run();
+		Assert.assertEquals(7, dates.getDao().getAllPeriods().size());
+		for (final Period period : dates.getDao().getAllPeriods()) {
+			Assert.assertTrue(period.getDate().compareTo(from) >= 0 && period.getDate().compareTo(to) <= 0);
+		}
+		for (final DayType dayType : dates.getDao().getAllDayTypes()) {
+			Assert.assertFalse(dates.getDao().getPeriodsForDayType(dayType).isEmpty());
+		}
+		for (final Journey journey : dates.getDao().getAllJourneys()) {
+			Assert.assertNotNull(journey.getDayType());
+		}
+
+		final Vdv452Reader area = new Vdv452Reader();
+		area.setInputLocation(new File(TEST_VDV452));
+		area.setBoundingBox(new BoundingBox(46.4977, 11.3516, 46.4979, 11.3520));
+		area.run();
+		final Vdv452Dao dao = area.getDao();
+		Assert.assertFalse(dao.getAllJourneys().isEmpty());
+		Assert.assertNotNull(dao.getStopForId(findStopPoint(dao, 5026L).getId()));
+		for (final Journey journey : dao.getAllJourneys()) {
+			Assert.assertNotNull(journey.getLine());
+			for (final RouteSequence sequence : dao.getRouteSequenceForLine(journey.getLine())) {
+				Assert.assertNotNull(sequence.getStop());
+				Assert.assertNotNull(dao.getStopForId(sequence.getStop().getId()));
+			}
+		}
+	}
+
+	@Test
+	public void readSasaWithBoundingBoxColumnar() throws IOException {
+		final BoundingBox box = new BoundingBox(46.49, 11.34, 46.50, 11.36);
+		final Vdv452Reader objects = new Vdv452Reader();
+		objects.setInputLocation(new File(TEST_VDV452));
+		objects.setBoundingBox(box);
+		objects.run();
+
+		final Vdv452Reader columnar = new Vdv452Reader();
+		columnar.setInputLocation(new File(TEST_VDV452));
+		columnar.setBoundingBox(box);
+		columnar.setColumnarJourneys(true);
+		columnar.run();
+
+		final Vdv452Dao dao = columnar.getDao();
+		Assert.assertEquals(objects.getDao().getAllStops().size(), dao.getAllStops().size());
+		Assert.assertEquals(objects.getDao().getAllJourneys().size(), dao.getAllJourneys().size());
+		final JourneyCursor cursor = dao.getJourneyCursor();
+		while (cursor.next()) {
+			Assert.assertNotNull(cursor.getLine());
+			Assert.assertNotNull(cursor.getDayType());
+			Assert.assertSame(cursor.getLine(), dao.getLineForId(cursor.getLine().getId()));
+			Assert.assertSame(cursor.getDayType(), dao.getDayTypeForId(cursor.getDayType().getId()));
+		}
+		for (final TravelTime travelTime : dao.getAllTravelTimes()) {
+			Assert.assertNotNull(dao.getStopPointForId(travelTime.getFromStop().getId()));
+			Assert.assertNotNull(dao.getStopPointForId(travelTime.getToStop().getId()));
+		}
+		for (final Line line : dao.getAllLines()) {
+			Assert.assertFalse(dao.getRouteSequenceForLine(line).isEmpty());
+		}
+	}
+
+	@Test
+	public void readSasaStreamedJourneysFromSnapshot() throws IOException {
+		final Vdv452Reader filtered = new Vdv452Reader();
+		filtered.setInputLocation(new File(TEST_VDV452));
+		filtered.setLineNumbers(1, 3);
+		filtered.run();
+		final int expected = filtered.getDao().getAllJourneys().size();
+
+		final File snapshot = File.createTempFile("vdv452", ".snapshot");
+		snapshot.delete();
+		try {
+			for (int i = 0; i < 2; ++i) {
+				final Vdv452Reader reader = new Vdv452Reader();
+				reader.setInputLocation(new File(TEST_VDV452));
+				reader.setLineNumbers(1, 3);
+				final List<Class<?>> entityClasses = new ArrayList<Class<?>>(reader.getEntityClasses());
+				entityClasses.remove(Journey.class);
+				reader.setEntityClasses(entityClasses);
+				reader.setSnapshotPath(snapshot);
+				reader.run();
+				Assert.assertTrue(snapshot.exists());
+
+				final List<Journey> journeys = new ArrayList<Journey>();
+				reader.addStreamedEntityClass(Journey.class);
+				reader.addEntityHandler(new EntityHandler() {
+					@Override
+					public void handleEntity(final Object bean) {
+						if (bean instanceof Journey) {
+							journeys.add((Journey) bean);
+						}
+					}
+				});
+				reader.readEntities(Journey.class, reader.getInputSource());
+				Assert.assertEquals(expected, journeys.size());
+				for (final Journey journey : journeys) {
+					final long line = journey.getLine().getId().getLineId();
+					Assert.assertTrue(line == 1 || line == 3);
+				}
+			}
+		} finally {
+			snapshot.delete();
+		}
+	}
+
+	@Test
+	public void routeSequencesKeepTheirOrder() throws IOException {
+		final Vdv452Reader reader = new Vdv452Reader();
+		reader.setInputLocation(new File(TEST_VDV452));
+		reader.run();
+
+		final Vdv452Dao dao = reader.getDao();
+		final List<RouteSequence> before = new ArrayList<>(dao.getAllRouteSequences());
+		for (final Line line : dao.getAllLines()) {
+			final List<RouteSequence> sequence = dao.getRouteSequenceForLine(line);
+			for (int i = 0; i + 1 < sequence.size(); ++i) {
+				Assert.assertTrue(sequence.get(i).getSequence() < sequence.get(i + 1).getSequence());
+			}
+		}
+		Assert.assertEquals(before, dao.getAllRouteSequences());
+	}
+
+	@Test
+	public void freezeSasa() throws IOException {
+		final Vdv452Reader lazy = new Vdv452Reader();
+		lazy.setInputLocation(new File(TEST_VDV452));
+		lazy.run();
+
+		final Vdv452Reader frozen = new Vdv452Reader();
+		frozen.setInputLocation(new File(TEST_VDV452));
+		frozen.run();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final Vdv452Dao dao;
+		try {
+			dao = frozen.getDao().freeze(executor);
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertTrue(dao.isFrozen());
+
+		final Vdv452Dao other = lazy.getDao();
+		for (final DayType dayType : other.getAllDayTypes()) {
+			Assert.assertEquals(other.getPeriodsForDayType(dayType).size(),
+					dao.getPeriodsForDayType(dao.getDayTypeForId(dayType.getId())).size());
+		}
+		for (final Line line : other.getAllLines()) {
+			Assert.assertEquals(other.getRouteSequenceForLine(line).size(),
+					dao.getRouteSequenceForLine(dao.getLineForId(line.getId())).size());
+		}
+		for (final Journey journey : dao.getAllJourneys()) {
+			final List<RouteSequence> sequence = dao.getRouteSequenceForLine(journey.getLine());
+			for (int i = 0; i + 1 < sequence.size(); ++i) {
+				Assert.assertNotNull(dao.getTravelTime(journey.getTimingGroup(), sequence.get(i).getStop(),
+						sequence.get(i + 1).getStop()));
+			}
+		}
+
+		try {
+			dao.putEntity(new Period());
+			Assert.fail();
+		} catch (final IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void readSasaWithoutRequiredTable() throws IOException {
+		final File input = File.createTempFile("vdv452", ".zip");
+		try {
+			try (ZipFile zip = new ZipFile(TEST_VDV452);
+					ZipOutputStream out = new ZipOutputStream(new FileOutputStream(input))) {
+				final Enumeration<? extends ZipEntry> entries = zip.entries();
+				while (entries.hasMoreElements()) {
+					final ZipEntry entry = entries.nextElement();
+					if (entry.getName().equalsIgnoreCase("REC_FRT.x10")) {
+						continue;
+					}
+					out.putNextEntry(new ZipEntry(entry.getName()));
+					try (InputStream in = zip.getInputStream(entry)) {
+						final byte[] buffer = new byte[8192];
+						int length;
+						while ((length = in.read(buffer)) != -1) {
+							out.write(buffer, 0, length);
+						}
+					}
+					out.closeEntry();
+				}
+			}
+
+			final Vdv452Reader reader = new Vdv452Reader();
+			reader.setInputLocation(input);
+			try {
+				reader.run();
+				Assert.fail();
+			} catch (final MissingRequiredEntityException ex) {
+				// expected
+			}
+		} finally {
+			input.delete();
+		}
+	}
+
+	private static StopPoint findStopPoint(final Vdv452Dao dao, final long id) {
+		for (final StopPoint stopPoint : dao.getAllStopPoints()) {
+			if (stopPoint.getId().getId() == id) {
+				return stopPoint;
+			}
+		}
+		Assert.fail("stop point not found: " + id);
+		return null;
+	}
+
+
+	private static class TableCountingMetrics implements Vdv452Metrics {
+
+		private final AtomicInteger _tablesRead = new AtomicInteger();
+
+		public int getTablesRead() {
+			return _tablesRead.get();
+		}
+
+		@Override
+		public void tableRead(final Vdv452TableMetrics table) {
+			_tablesRead.incrementAndGet();
+		}
+
+		@Override
+		public void stopTimePatterns(final long hits, final long misses) {
+		}
+
+		@Override
+		public void gtfsFileWritten(final String filename, final long bytes) {
+		}
+
+		@Override
+		public void conversionFinished(final long elapsedNanos) {
+		}
+	}
 }
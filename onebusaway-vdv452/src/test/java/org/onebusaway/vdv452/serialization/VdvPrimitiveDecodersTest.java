@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+public class VdvPrimitiveDecodersTest {
+
+	@Test
+	public void parseIntegers() {
+		Assert.assertEquals(42, VdvPrimitiveDecoders.parseInt("42"));
+		Assert.assertEquals(-7, VdvPrimitiveDecoders.parseInt("-7"));
+		Assert.assertEquals(7, VdvPrimitiveDecoders.parseInt("+7"));
+		Assert.assertEquals(Long.MAX_VALUE,
+				VdvPrimitiveDecoders.parseLong(Long.toString(Long.MAX_VALUE)));
+		assertInvalidInt("");
+		assertInvalidInt("-");
+		assertInvalidInt("4 2");
+		assertInvalidInt("2147483648");
+	}
+
+	@Test
+	public void parseDates() {
+		Assert.assertEquals(20150329, VdvPrimitiveDecoders.parseDate("20150329"));
+		assertInvalidDate("2015032");
+		assertInvalidDate("2015-3-29");
+	}
+
+	@Test
+	public void parseDegreesMinutesSeconds() {
+		// 11 degrees, 21 minutes and 7.052 seconds
+		Assert.assertEquals(11 + 21 / 60.0 + 7.052 / 3600,
+				VdvPrimitiveDecoders.parseDegreesMinutesSeconds("0112107052"));
+		Assert.assertEquals(46 + 29 / 60.0 + 52.002 / 3600,
+				VdvPrimitiveDecoders.parseDegreesMinutesSeconds("462952002"));
+		// The sign only applies to the degrees
+		Assert.assertEquals(-11 + 30 / 60.0,
+				VdvPrimitiveDecoders.parseDegreesMinutesSeconds("-0113000000"));
+		try {
+			VdvPrimitiveDecoders.parseDegreesMinutesSeconds("46295200");
+			Assert.fail();
+		} catch (NumberFormatException ex) {
+		}
+	}
+
+	private void assertInvalidInt(String value) {
+		try {
+			VdvPrimitiveDecoders.parseInt(value);
+			Assert.fail(value);
+		} catch (NumberFormatException ex) {
+		}
+	}
+
+	private void assertInvalidDate(String value) {
+		try {
+			VdvPrimitiveDecoders.parseDate(value);
+			Assert.fail(value);
+		} catch (NumberFormatException ex) {
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2013 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.vdv452.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+public class VdvTokenizerTest {
+
+	@Test
+	public void tokenizeQuotedAndPaddedValues() throws IOException {
+		String table = "tbl; REC_LID\r\n"
+				+ "atr; BASIS_VERSION; LI_NR; LIDNAME\r\n"
+				+ "\r\n"
+				+ "rec;         1;      7; \"Ring \"\"Nord\"\"  \"\r\n"
+				+ "rec;         1;       ;\n"
+				+ "end; 2";
+		// A tiny buffer forces lines to span buffer refills
+		VdvTokenizer tokenizer = new VdvTokenizer(new ByteArrayInputStream(
+				table.getBytes("ISO-8859-1")), 4);
+		VdvRow row = new VdvRow();
+
+		Assert.assertTrue(tokenizer.next(row));
+		Assert.assertTrue(row.isRecordType("tbl"));
+		Assert.assertEquals(Arrays.asList("REC_LID"), row);
+
+		Assert.assertTrue(tokenizer.next(row));
+		Assert.assertTrue(row.isRecordType("atr"));
+		Assert.assertEquals(Arrays.asList("BASIS_VERSION", "LI_NR", "LIDNAME"), row);
+
+		Assert.assertTrue(tokenizer.next(row));
+		Assert.assertTrue(row.isRecordType("rec"));
+		Assert.assertEquals(4, row.getLineNumber());
+		Assert.assertEquals(Arrays.asList("1", "7", "Ring \"Nord\""), row);
+
+		Assert.assertTrue(tokenizer.next(row));
+		Assert.assertEquals(Arrays.asList("1", "", ""), row);
+
+		Assert.assertTrue(tokenizer.next(row));
+		Assert.assertTrue(row.isRecordType("end"));
+		Assert.assertFalse(tokenizer.next(row));
+	}
+
+	@Test
+	public void parseValuesWithoutDecoding() throws IOException {
+		String table = "rec; 00042; -5; 9223372036854775807; 1a; \"Ring \"\"Nord\"\"\"\n";
+		VdvTokenizer tokenizer = new VdvTokenizer(new ByteArrayInputStream(
+				table.getBytes("ISO-8859-1")));
+		VdvRow row = new VdvRow();
+		Assert.assertTrue(tokenizer.next(row));
+
+		Assert.assertEquals(42, row.parseLong(0));
+		Assert.assertEquals(-5, row.parseLong(1));
+		Assert.assertEquals(Long.MAX_VALUE, row.parseLong(2));
+		try {
+			row.parseLong(3);
+			Assert.fail();
+		} catch (NumberFormatException ex) {
+
+		}
+
+		Assert.assertTrue(row.valueEquals(4, "Ring \"Nord\""));
+		Assert.assertEquals("Ring \"Nord\"".hashCode(), row.valueHashCode(4));
+		Assert.assertTrue(row.valueEquals(3, "1a"));
+		Assert.assertEquals("1a".hashCode(), row.valueHashCode(3));
+	}
+}